@@ -2,12 +2,13 @@ package hr.fer.zemris.java.trazilica.shell;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
 
 import hr.fer.zemris.java.trazilica.shell.commands.QueryCommand;
 import hr.fer.zemris.java.trazilica.shell.commands.ShellCommand;
 import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
-import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
+import hr.fer.zemris.java.trazilica.shell.components.DocumentClusters;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
 
 /**
  * This interface represents an environment where the whole program works. It is
@@ -19,15 +20,17 @@ import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
 public interface Environment {
 
     /**
-     * Reads the user's input and returns it as a string.
+     * Reads the user's input and returns it as a string, or <tt>null</tt> if
+     * the end of input is reached.
      *
-     * @return the user's input
+     * @return the user's input or <tt>null</tt>
      * @throws IOException if an I/O exception occurs
      */
     public String readLine() throws IOException;
 
     /**
-     * Writes the given string using the writer.
+     * Writes the given string using the writer. Written characters may be
+     * buffered until the writer is {@linkplain #flush() flushed}.
      *
      * @param s string to be written
      * @throws IOException if an I/O exception occurs
@@ -52,6 +55,20 @@ public interface Environment {
      */
     public void writeln(String s) throws IOException;
 
+    /**
+     * Flushes the writer, so that all written characters are output.
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void flush() throws IOException;
+
+    /**
+     * Returns the format in which query results are written out.
+     *
+     * @return the format in which query results are written out
+     */
+    public OutputFormat getOutputFormat();
+
     /**
      * Returns an iterable object containing this Shell's commands.
      *
@@ -69,6 +86,9 @@ public interface Environment {
     /**
      * Sets the current path from which documents are read and loads
      * all documents from the specified <tt>path</tt> recursively.
+     * <p>
+     * Once the documents are loaded, the previous data loader is closed and
+     * its off-heap memory is freed.
      *
      * @param path the new path from which documents are read
      * @throws IllegalArgumentException if the specified path is not a directory
@@ -99,18 +119,55 @@ public interface Environment {
     public DataLoader getDataLoader();
 
     /**
-     * Returns a list of last generated results from the query search or
-     * <tt>null</tt> if {@linkplain QueryCommand} was never ran.
+     * Returns a cursor over the last generated results from the query search
+     * or <tt>null</tt> if {@linkplain QueryCommand} was never ran, documents
+     * were loaded again since, or the cursor has
+     * {@linkplain ResultCursor#isExpired() expired}.
      *
-     * @return a list of last generated results or <tt>null</tt>
+     * @return a cursor over the last generated results or <tt>null</tt>
      */
-    public List<QueryResult> getResults();
+    public ResultCursor getResults();
 
     /**
-     * Sets the list of results to the specified list.
+     * Sets the cursor over the last generated results to the specified
+     * cursor.
      *
-     * @param results list of query results
+     * @param results cursor over query results
      * @throws NullPointerException if <tt>results</tt> is <tt>null</tt>
      */
-    public void setResults(List<QueryResult> results);
+    public void setResults(ResultCursor results);
+
+    /**
+     * Returns clusters of loaded documents, or <tt>null</tt> if documents
+     * were not clustered or were loaded again since.
+     *
+     * @return clusters of loaded documents or <tt>null</tt>
+     */
+    public DocumentClusters getClusters();
+
+    /**
+     * Sets clusters of loaded documents to the specified clusters. Queries
+     * are no longer restricted to a cluster.
+     *
+     * @param clusters clusters of loaded documents
+     * @throws NullPointerException if <tt>clusters</tt> is <tt>null</tt>
+     */
+    public void setClusters(DocumentClusters clusters);
+
+    /**
+     * Returns the cluster that queries are restricted to, or <tt>-1</tt> if
+     * they are not restricted.
+     *
+     * @return the cluster that queries are restricted to, or <tt>-1</tt>
+     */
+    public int getSelectedCluster();
+
+    /**
+     * Restricts queries to the specified cluster, or removes the restriction
+     * if it is <tt>-1</tt>.
+     *
+     * @param cluster a cluster of {@linkplain #getClusters() clusters}, or <tt>-1</tt>
+     * @throws IllegalArgumentException if there is no such cluster
+     */
+    public void setSelectedCluster(int cluster);
 }
@@ -5,12 +5,12 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -18,7 +18,13 @@ import java.util.stream.Collectors;
 import hr.fer.zemris.java.trazilica.shell.commands.*;
 import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
 import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
-import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
+import hr.fer.zemris.java.trazilica.shell.components.DocumentClusters;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics;
+import hr.fer.zemris.java.trazilica.shell.components.NearDuplicates;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
+import hr.fer.zemris.java.trazilica.shell.components.PruningReport;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+import hr.fer.zemris.java.trazilica.shell.components.ShellUtil;
 
 /**
  * MyShell, this is where the magic happens. Scans the user's input and searches
@@ -30,6 +36,20 @@ import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
  * inputed. If a critical error occurs, an error message is printed out onto the
  * <b>standard error</b> with a detail message specifying what went wrong and
  * the program terminates.
+ * <p>
+ * The shell may also run non-interactively, in script mode, which is chosen
+ * by one of the following options:
+ * <ul>
+ *   <li><tt>-c "command1; command2"</tt> executes the commands given as the
+ *   argument, separated by semicolons outside of quotation marks, and
+ *   <li><tt>-s</tt> executes commands read from the standard input, one per
+ *   line, until the end of input.
+ * </ul>
+ * In script mode, no prompts, greetings or empty lines between commands are
+ * written, and a critical error terminates the program with a non-zero exit
+ * status. Output is flushed once per command in both modes. The
+ * <tt>--format text|json|tsv</tt> option chooses the
+ * {@linkplain OutputFormat format} in which query results are written out.
  *
  * @author Mario Bobic
  */
@@ -44,7 +64,12 @@ public class MyShell {
                 new QueryCommand(),
                 new TypeCommand(),
                 new ResultsCommand(),
+                new SimilarCommand(),
+                new ClusterCommand(),
                 new SetPathCommand(),
+                new RefreshCommand(),
+                new StatsCommand(),
+                new MemoryCommand(),
                 new HelpCommand(),
                 new ExitCommand()
         };
@@ -53,40 +78,119 @@ public class MyShell {
         }
     }
 
+    /** Option for executing commands given as an argument. */
+    private static final String COMMANDS_OPTION = "-c";
+    /** Option for executing commands read from the standard input. */
+    private static final String SCRIPT_OPTION = "-s";
+    /** Option for choosing the output format. */
+    private static final String FORMAT_OPTION = "--format";
+    /** Usage of the program. */
+    private static final String USAGE =
+            "Usage: MyShell [-c \"<command>; <command>...\" | -s] [--format text|json|tsv] [<directory>]";
+
     /** An environment used by MyShell. */
     private static EnvironmentImpl environment = new EnvironmentImpl();
 
     /**
      * Program entry point.
      *
-     * @param args not used in this program
+     * @param args options and the path to directory, as described by the
+     *        {@linkplain MyShell class documentation}
      * @throws IOException
      *             if an IO exception occurs while writing or reading the input.
      *             This is a critical exception which terminates the program
      *             violently.
      */
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
+        Metrics.registerMBean();
+
+        String directory = null;
+        String script = null;
+        boolean scriptMode = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case COMMANDS_OPTION:
+                        script = args[++i];
+                        scriptMode = true;
+                        break;
+                    case SCRIPT_OPTION:
+                        scriptMode = true;
+                        break;
+                    case FORMAT_OPTION:
+                        environment.outputFormat = OutputFormat.parse(args[++i]);
+                        break;
+                    default:
+                        if (directory != null) {
+                            throw new IllegalArgumentException("Only one directory may be given.");
+                        }
+                        directory = args[i];
+                }
+            }
+            if (directory == null && scriptMode) {
+                throw new IllegalArgumentException("Directory must be given in script mode.");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof IllegalArgumentException ? e.getMessage() : "Missing option value.");
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (script != null) {
+            environment.reader = new BufferedReader(new StringReader(String.join("\n", ShellUtil.splitCommands(script))));
+        }
+        if (directory == null) {
             environment.write("Enter path to directory: ");
-            args = new String[] {environment.readLine()};
+            environment.flush();
+            directory = environment.readLine();
         }
 
         try {
-            environment.setCurrentPath(args[0]);
+            environment.setCurrentPath(directory);
         } catch (Exception e) {
-            environment.writeln("Error occured while loading from " + args[0] + ": " + e.getMessage());
+            environment.writeln("Error occured while loading from " + directory + ": " + e.getMessage());
+            environment.flush();
+            if (scriptMode) {
+                System.exit(1);
+            }
             return;
         }
 
-        environment.writeln("Dictionary size: " + environment.dataLoader.getVocabularySet().size());
-        environment.writeln("Number of loaded documents: " + environment.dataLoader.getFiles().keySet().size());
-        environment.writeln("");
-        environment.writeln("Welcome to MyShell! You may enter commands.");
+        if (!scriptMode) {
+            environment.writeln("Dictionary size: " + environment.dataLoader.getVocabularySet().size());
+            environment.writeln("Number of loaded documents: " + environment.dataLoader.getDocuments().size());
+            for (String line : environment.dataLoader.getDocumentFilter().describe()) {
+                environment.writeln(line);
+            }
+            PruningReport pruning = environment.dataLoader.getPruningReport();
+            if (pruning != null) {
+                for (String line : pruning.describe()) {
+                    environment.writeln(line);
+                }
+            }
+            NearDuplicates duplicates = environment.dataLoader.getDuplicates();
+            if (duplicates != null) {
+                environment.writeln("Near duplicates: " + duplicates.duplicateCount() + " documents in "
+                        + duplicates.clusterCount() + " clusters (" + duplicates.skippedCount() + " skipped)");
+            }
+            environment.writeln("");
+            environment.writeln("Welcome to MyShell! You may enter commands.");
+        }
 
         while (true) {
-            environment.write("Enter command> ");
+            if (!scriptMode) {
+                environment.write("Enter command> ");
+                environment.flush();
+            }
 
-            String line = environment.readLine().trim();
+            String line = environment.readLine();
+            if (line == null) {
+                break;
+            }
+            line = line.trim();
+            if (scriptMode && line.isEmpty()) {
+                continue;
+            }
 
             String cmd;
             String arg;
@@ -102,7 +206,10 @@ public class MyShell {
             ShellCommand command = commands.get(cmd);
             if (command == null) {
                 environment.writeln("Unknown command!");
-                environment.writeln("");
+                if (!scriptMode) {
+                    environment.writeln("");
+                }
+                environment.flush();
                 continue;
             }
 
@@ -110,18 +217,27 @@ public class MyShell {
             try {
                 status = command.execute(environment, arg);
             } catch (RuntimeException critical) {
+                environment.flush();
                 System.err.println("A critical error occured: " + critical.getMessage());
+                if (scriptMode) {
+                    System.exit(1);
+                }
                 return;
             }
 
             if (status == CommandStatus.TERMINATE) {
                 break;
-            } else {
+            } else if (!scriptMode) {
                 environment.writeln("");
             }
+            environment.flush();
         }
 
-        environment.writeln("Goodbye!");
+        if (!scriptMode) {
+            environment.writeln("Goodbye!");
+        }
+        environment.flush();
+        environment.dataLoader.close();
     }
 
     /**
@@ -143,24 +259,34 @@ public class MyShell {
 
     /**
      * An environment implemented. Both reader and writer are implemented to
-     * work with the standard input and output.
+     * work with the standard input and output. Written characters are
+     * buffered until the environment is flushed.
      *
      * @author Mario Bobic
      */
     public static class EnvironmentImpl implements Environment {
 
+        /** Size of the buffer of the writer, in characters. */
+        private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
         /** Current path from which documents are read. */
         private Path currentPath;
 
         /** Data loader that loads all documents and creates a vocabulary. */
         private DataLoader dataLoader;
 
-        /** The last generated query search results. */
-        private List<QueryResult> queryResults;
+        /** Cursor over the last generated query search results. */
+        private ResultCursor queryResults;
+        /** Clusters of loaded documents. */
+        private DocumentClusters clusters;
+        /** Cluster that queries are restricted to, <tt>-1</tt> if none. */
+        private int selectedCluster = -1;
+        /** Format in which query results are written out. */
+        private OutputFormat outputFormat = OutputFormat.TEXT;
         /** A reader that reads from the standard input. */
         private BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         /** A writer that writes on the standard output. */
-        private BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        private BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out), WRITER_BUFFER_SIZE);
 
         @Override
         public String readLine() throws IOException {
@@ -170,14 +296,12 @@ public class MyShell {
         @Override
         public void write(String s) throws IOException {
             writer.write(s);
-            writer.flush();
         }
 
         @Override
         public void write(char cbuf[], int off, int len) {
             try {
                 writer.write(cbuf, off, len);
-                writer.flush();
             } catch (IOException e) {}
         }
 
@@ -185,9 +309,18 @@ public class MyShell {
         public void writeln(String s) throws IOException {
             write(s);
             writer.newLine();
+        }
+
+        @Override
+        public void flush() throws IOException {
             writer.flush();
         }
 
+        @Override
+        public OutputFormat getOutputFormat() {
+            return outputFormat;
+        }
+
         @Override
         public Iterable<ShellCommand> commands() {
             return commands.values()
@@ -208,7 +341,15 @@ public class MyShell {
             }
 
             currentPath = path.toAbsolutePath().normalize();
+
+            DataLoader retired = dataLoader;
             dataLoader = new DataLoader(currentPath);
+            queryResults = null;
+            clusters = null;
+            selectedCluster = -1;
+            if (retired != null) {
+                retired.close();
+            }
         }
 
         @Override
@@ -226,14 +367,41 @@ public class MyShell {
         }
 
         @Override
-        public List<QueryResult> getResults() {
+        public ResultCursor getResults() {
+            if (queryResults != null && queryResults.isExpired()) {
+                queryResults = null;
+            }
             return queryResults;
         }
 
         @Override
-        public void setResults(List<QueryResult> results) {
+        public void setResults(ResultCursor results) {
             queryResults = Objects.requireNonNull(results);
         }
+
+        @Override
+        public DocumentClusters getClusters() {
+            return clusters;
+        }
+
+        @Override
+        public void setClusters(DocumentClusters clusters) {
+            this.clusters = Objects.requireNonNull(clusters);
+            selectedCluster = -1;
+        }
+
+        @Override
+        public int getSelectedCluster() {
+            return selectedCluster;
+        }
+
+        @Override
+        public void setSelectedCluster(int cluster) {
+            if (cluster != -1 && (clusters == null || cluster < 0 || cluster >= clusters.clusterCount())) {
+                throw new IllegalArgumentException("There is no cluster " + cluster);
+            }
+            selectedCluster = cluster;
+        }
     }
 
 }
@@ -6,6 +6,7 @@ import java.util.List;
 
 import hr.fer.zemris.java.trazilica.shell.Environment;
 import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
 
 /**
  * Used as a superclass for other, usable Shell commands.
@@ -41,6 +42,29 @@ public abstract class AbstractCommand implements ShellCommand {
         writeln(env, "The syntax of the command is incorrect. Expected: " + syntax);
     }
 
+    /**
+     * Prints out an error <tt>message</tt> onto the environment <tt>env</tt>
+     * in the specified output <tt>format</tt>: as an object with the
+     * <tt>error</tt> member in JSON, as a comment line in TSV and as is in
+     * text.
+     *
+     * @param env an environment
+     * @param format the output format
+     * @param message the error message
+     */
+    protected static final void printError(Environment env, OutputFormat format, String message) {
+        switch (format) {
+            case JSON:
+                writeln(env, "{\"error\":" + OutputFormat.jsonString(message) + "}");
+                break;
+            case TSV:
+                writeln(env, "# " + message);
+                break;
+            default:
+                writeln(env, message);
+        }
+    }
+
     /**
      * Reads the user's input from the specified enviroment <tt>env</tt> and
      * returns it as a string. This method calls the
@@ -0,0 +1,263 @@
+package hr.fer.zemris.java.trazilica.shell.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.DocumentClusters;
+import hr.fer.zemris.java.trazilica.shell.components.IndexOptions;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
+import hr.fer.zemris.java.trazilica.shell.query.QueryScorer;
+
+/**
+ * A command that groups loaded documents into topics by
+ * {@linkplain DocumentClusters k-means clustering} and writes out the size
+ * and top terms of each cluster. Clusters are kept by the environment, and
+ * queries can be restricted to one of them with the <tt>--select</tt> option.
+ * <p>
+ * Clustering stays within a memory budget of
+ * <tt>trazilica.clusterMemory</tt> mebibytes, <tt>64</tt> by default, and
+ * uses as many threads as scoring of queries does.
+ *
+ * @author Mario Bobic
+ */
+public class ClusterCommand extends AbstractCommand {
+
+    /** Defines the proper syntax for using this command */
+    private static final String SYNTAX = "cluster <k> | cluster --select <cluster>|all";
+
+    /** Option for restricting queries to a cluster. */
+    private static final String SELECT_OPTION = "--select";
+    /** Argument of the select option that removes the restriction. */
+    private static final String ALL = "all";
+    /** Memory budget of clustering, in bytes. */
+    private static final long MEMORY_BUDGET = Long.getLong(IndexOptions.PROPERTY_PREFIX + "clusterMemory",
+            DocumentClusters.DEFAULT_MEMORY_BUDGET >> 20) << 20;
+
+    /**
+     * Constructs a new command object of type {@code ClusterCommand}.
+     */
+    public ClusterCommand() {
+        super("CLUSTER", createCommandDescription());
+    }
+
+    /**
+     * Creates a list of strings where each string represents a new line of this
+     * command's description. This method is generates description exclusively
+     * for the command that this class represents.
+     *
+     * @return a list of strings that represents description
+     */
+    private static List<String> createCommandDescription() {
+        List<String> desc = new ArrayList<>();
+        desc.add("Groups loaded documents into k clusters by topic and displays top terms of each cluster.");
+        desc.add("Option " + SELECT_OPTION + " <cluster> restricts the following queries to documents of the cluster, "
+                + "and " + SELECT_OPTION + " " + ALL + " removes the restriction.");
+        desc.add("Clustering uses at most " + (MEMORY_BUDGET >> 20) + " MiB besides one int per document, "
+                + "which is set by option -D" + IndexOptions.PROPERTY_PREFIX + "clusterMemory=<MiB>.");
+        return desc;
+    }
+
+    @Override
+    public CommandStatus execute(Environment env, String s) {
+        if (s == null) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        String[] args = s.trim().split("\\s+");
+        OutputFormat format = env.getOutputFormat();
+        if (args[0].equals(SELECT_OPTION)) {
+            if (args.length != 2) {
+                printSyntaxError(env, SYNTAX);
+                return CommandStatus.CONTINUE;
+            }
+            select(env, format, args[1]);
+            return CommandStatus.CONTINUE;
+        }
+
+        int k;
+        try {
+            if (args.length != 1) {
+                throw new NumberFormatException();
+            }
+            k = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        DataLoader loader = env.getDataLoader();
+        long start = System.nanoTime();
+        DocumentClusters clusters;
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            clusters = new DocumentClusters(index, k, MEMORY_BUDGET, QueryScorer.PARALLELISM);
+        } catch (IllegalArgumentException e) {
+            printError(env, format, e.getMessage());
+            return CommandStatus.CONTINUE;
+        } finally {
+            loader.releaseIndex(index);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Metrics.record(Phase.CLUSTERING, start, clusters.documentCount());
+        env.setClusters(clusters);
+
+        printClusters(env, format, loader, clusters, millis);
+        return CommandStatus.CONTINUE;
+    }
+
+    /**
+     * Restricts queries to the cluster with the specified number, or removes
+     * the restriction if the argument is {@linkplain #ALL}.
+     *
+     * @param env an environment
+     * @param format the output format
+     * @param arg number of the cluster or {@linkplain #ALL}
+     */
+    private static void select(Environment env, OutputFormat format, String arg) {
+        if (arg.equalsIgnoreCase(ALL)) {
+            env.setSelectedCluster(-1);
+            printMessage(env, format, "Queries are not restricted to a cluster.");
+            return;
+        }
+
+        DocumentClusters clusters = env.getClusters();
+        if (clusters == null) {
+            printError(env, format, "Documents must be clustered before using this option!");
+            return;
+        }
+
+        int cluster;
+        try {
+            cluster = Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            printSyntaxError(env, SYNTAX);
+            return;
+        }
+        if (cluster < 0 || cluster >= clusters.clusterCount()) {
+            printError(env, format, "Cluster is out of bounds. Valid clusters are in range [0,"
+                    + (clusters.clusterCount()-1) + "]");
+            return;
+        }
+
+        env.setSelectedCluster(cluster);
+        printMessage(env, format, "Queries are restricted to cluster " + cluster
+                + " (" + clusters.size(cluster) + " documents).");
+    }
+
+    /**
+     * Prints out the size and top terms of each of the specified
+     * <tt>clusters</tt> onto the environment <tt>env</tt> in the specified
+     * output <tt>format</tt>.
+     *
+     * @param env an environment
+     * @param format the output format
+     * @param loader data loader whose documents are clustered
+     * @param clusters clusters of documents
+     * @param millis time taken by clustering, in milliseconds
+     */
+    private static void printClusters(Environment env, OutputFormat format, DataLoader loader,
+            DocumentClusters clusters, long millis) {
+        List<String> vocabulary = loader.getVocabularyList();
+        int clustered = 0;
+        for (int cluster = 0; cluster < clusters.clusterCount(); cluster++) {
+            clustered += clusters.size(cluster);
+        }
+
+        switch (format) {
+            case JSON:
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\"documents\":").append(clustered)
+                    .append(",\"epochs\":").append(clusters.epochs())
+                    .append(",\"similarity\":").append(clusters.meanSimilarity())
+                    .append(",\"clusters\":[");
+                for (int cluster = 0; cluster < clusters.clusterCount(); cluster++) {
+                    sb.append(cluster == 0 ? "" : ",")
+                        .append("{\"cluster\":").append(cluster)
+                        .append(",\"size\":").append(clusters.size(cluster))
+                        .append(",\"terms\":[");
+                    int[] terms = clusters.topTerms(cluster);
+                    for (int i = 0; i < terms.length; i++) {
+                        sb.append(i == 0 ? "" : ",").append(OutputFormat.jsonString(vocabulary.get(terms[i])));
+                    }
+                    sb.append("]}");
+                }
+                writeln(env, sb.append("]}").toString());
+                break;
+            case TSV:
+                for (int cluster = 0; cluster < clusters.clusterCount(); cluster++) {
+                    writeln(env, cluster + "\t" + clusters.size(cluster) + "\t" + topTerms(vocabulary, clusters, cluster));
+                }
+                break;
+            default:
+                writeln(env, String.format("Clustered %d documents into %d clusters in %d epochs (%d ms), "
+                        + "mean similarity %.4f.", clustered, clusters.clusterCount(), clusters.epochs(),
+                        millis, clusters.meanSimilarity()));
+                InvertedIndex index = loader.acquireIndex();
+                int termCount;
+                int deletedCount;
+                try {
+                    termCount = index.termCount();
+                    deletedCount = index.deletedCount();
+                } finally {
+                    loader.releaseIndex(index);
+                }
+                if (clusters.featureCount() < termCount) {
+                    writeln(env, "Only " + clusters.featureCount() + " of " + termCount
+                            + " terms fit into the memory budget and were used.");
+                }
+                int unclustered = clusters.documentCount() - deletedCount - clustered;
+                if (unclustered > 0) {
+                    writeln(env, unclustered + " documents have no used terms and are not clustered.");
+                }
+                for (int cluster = 0; cluster < clusters.clusterCount(); cluster++) {
+                    writeln(env, String.format("[%d] (%d documents) %s", cluster, clusters.size(cluster),
+                            topTerms(vocabulary, clusters, cluster)));
+                }
+        }
+    }
+
+    /**
+     * Returns top terms of the specified cluster, separated by spaces.
+     *
+     * @param vocabulary the vocabulary, ordered by term keys
+     * @param clusters clusters of documents
+     * @param cluster the cluster
+     * @return top terms of the cluster
+     */
+    private static String topTerms(List<String> vocabulary, DocumentClusters clusters, int cluster) {
+        StringBuilder sb = new StringBuilder();
+        for (int term : clusters.topTerms(cluster)) {
+            sb.append(sb.length() == 0 ? "" : " ").append(vocabulary.get(term));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints out a <tt>message</tt> onto the environment <tt>env</tt> in the
+     * specified output <tt>format</tt>.
+     *
+     * @param env an environment
+     * @param format the output format
+     * @param message the message
+     */
+    private static void printMessage(Environment env, OutputFormat format, String message) {
+        switch (format) {
+            case JSON:
+                writeln(env, "{\"message\":" + OutputFormat.jsonString(message) + "}");
+                break;
+            case TSV:
+                writeln(env, "# " + message);
+                break;
+            default:
+                writeln(env, message);
+        }
+    }
+
+}
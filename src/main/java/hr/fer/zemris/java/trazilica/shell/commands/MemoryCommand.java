@@ -0,0 +1,110 @@
+package hr.fer.zemris.java.trazilica.shell.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.DocumentClusters;
+import hr.fer.zemris.java.trazilica.shell.components.MemoryReport;
+import hr.fer.zemris.java.trazilica.shell.components.PruningReport;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+
+import static hr.fer.zemris.java.trazilica.shell.components.ShellUtil.humanReadableByteCount;
+
+/**
+ * A command that displays the estimated memory footprint of the loaded index.
+ * For every index structure, the number of bytes taken on the heap and
+ * outside of it is written, followed by totals, the number of bytes per
+ * document and per term, and the heap usage reported by the virtual machine.
+ * <p>
+ * Heap sizes are estimated from known object layouts, so this command is fast
+ * even for very large indexes.
+ *
+ * @author Mario Bobic
+ */
+public class MemoryCommand extends AbstractCommand {
+
+    /** Defines the proper syntax for using this command */
+    private static final String SYNTAX = "memory";
+
+    /**
+     * Constructs a new command object of type {@code MemoryCommand}.
+     */
+    public MemoryCommand() {
+        super("MEMORY", createCommandDescription());
+    }
+
+    /**
+     * Creates a list of strings where each string represents a new line of this
+     * command's description. This method is generates description exclusively
+     * for the command that this class represents.
+     *
+     * @return a list of strings that represents description
+     */
+    private static List<String> createCommandDescription() {
+        List<String> desc = new ArrayList<>();
+        desc.add("Displays the estimated memory footprint of the loaded index.");
+        desc.add("This command takes no arguments.");
+        desc.add("Heap sizes are estimated from known object layouts, off-heap sizes are exact.");
+        desc.add("If the index is pruned, numbers of pruned terms and postings are displayed as well.");
+        return desc;
+    }
+
+    @Override
+    public CommandStatus execute(Environment env, String s) {
+        if (s != null) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        DataLoader loader = env.getDataLoader();
+        MemoryReport report = loader.getMemoryReport();
+
+        ResultCursor results = env.getResults();
+        if (results != null) {
+            report.add("query results", results.heapBytes(), 0);
+        }
+        DocumentClusters clusters = env.getClusters();
+        if (clusters != null) {
+            report.add("document clusters", clusters.heapBytes(), 0);
+        }
+
+        writeln(env, String.format("%-20s %12s %12s", "Structure", "Heap", "Off-heap"));
+        for (MemoryReport.Entry entry : report.getEntries()) {
+            writeln(env, String.format("%-20s %12s %12s", entry.structure,
+                    humanReadableByteCount(entry.heapBytes),
+                    humanReadableByteCount(entry.offHeapBytes)));
+        }
+
+        long heap = report.totalHeapBytes();
+        long offHeap = report.totalOffHeapBytes();
+        writeln(env, String.format("%-20s %12s %12s", "Total",
+                humanReadableByteCount(heap), humanReadableByteCount(offHeap)));
+
+        int documents = loader.getDocuments().size();
+        int terms = loader.getVocabularyList().size();
+        writeln(env, "");
+        writeln(env, String.format("Per document: %s (%d documents)",
+                humanReadableByteCount((heap + offHeap) / Math.max(1, documents)), documents));
+        writeln(env, String.format("Per term: %s (%d terms)",
+                humanReadableByteCount((heap + offHeap) / Math.max(1, terms)), terms));
+
+        PruningReport pruning = loader.getPruningReport();
+        if (pruning != null) {
+            for (String line : pruning.describe()) {
+                writeln(env, line);
+            }
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        writeln(env, String.format("JVM heap in use: %s of %s (max %s)",
+                humanReadableByteCount(runtime.totalMemory() - runtime.freeMemory()),
+                humanReadableByteCount(runtime.totalMemory()),
+                humanReadableByteCount(runtime.maxMemory())));
+
+        return CommandStatus.CONTINUE;
+    }
+
+}
@@ -1,38 +1,70 @@
 package hr.fer.zemris.java.trazilica.shell.commands;
 
-import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
 
 import hr.fer.zemris.java.trazilica.shell.Environment;
 import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.IndexOptions;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
 import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
-
-import static hr.fer.zemris.java.trazilica.shell.components.VectorUtilities.*;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+import hr.fer.zemris.java.trazilica.shell.components.ScoringModel;
+import hr.fer.zemris.java.trazilica.shell.components.TopResults;
+import hr.fer.zemris.java.trazilica.shell.query.BooleanQuery;
+import hr.fer.zemris.java.trazilica.shell.query.BooleanQuery.Clause;
+import hr.fer.zemris.java.trazilica.shell.query.BooleanQuery.Occur;
+import hr.fer.zemris.java.trazilica.shell.query.ClusterQuery;
+import hr.fer.zemris.java.trazilica.shell.query.FuzzyQuery;
+import hr.fer.zemris.java.trazilica.shell.query.Query;
+import hr.fer.zemris.java.trazilica.shell.query.QueryParser;
+import hr.fer.zemris.java.trazilica.shell.query.QueryScorer;
+import hr.fer.zemris.java.trazilica.shell.query.TermQuery;
 
 /**
  * A command that is responsible for executing the search. A query is expected
  * in form of words, which are searched for in the dictionary and retained as
- * query words.
+ * query words. Words enclosed in double quotes are searched for as a phrase
+ * and two words joined by the <tt>NEAR/n</tt> operator must be at most
+ * <tt>n</tt> words apart, which requires the index to store positions.
+ * Words may be required or prohibited using the <tt>+</tt> and <tt>-</tt>
+ * prefixes or the <tt>AND</tt>, <tt>OR</tt> and <tt>NOT</tt> operators, and
+ * grouped using parentheses, may contain the <tt>*</tt> and <tt>?</tt>
+ * wildcards and may be fuzzy, as described by the {@linkplain QueryParser}.
+ * If a query word is not contained in the vocabulary, a corrected query is
+ * suggested.
+ * Only documents that match the query are ranked.
  * <p>
  * If there are no query words retained at all, an error message is written and
  * the search is not done. Otherwise, the search is {@link #executeQuery
- * executed}, results are fetched and {@link #processQueryResults processed} and
- * are {@link #printQueryResults written} to the environment output stream.
+ * executed}, ranked results are kept by a {@linkplain ResultCursor} of the
+ * environment and the first page of results is {@link #printQueryResults
+ * written} to the environment output stream in the
+ * {@linkplain OutputFormat output format} of the environment. Other pages
+ * are read using the <tt>RESULTS</tt> command.
+ * <p>
+ * If a cluster of documents is selected by the <tt>CLUSTER</tt> command,
+ * only documents of the cluster match the query.
  *
  * @author Mario Bobic
  */
 public class QueryCommand extends AbstractCommand {
 
     /** Defines the proper syntax for using this command */
-    private static final String SYNTAX = "query <word1> (optional: <word2>...<wordN>)";
+    private static final String SYNTAX = "query <word1> (optional: <word2>...<wordN>, \"<phrase>\", "
+            + "<word> NEAR/<n> <word>, <pattern>*, <word>~<n>, +<word>, -<word>, AND, OR, NOT, (...))";
 
     /** Lowest limit until similarity is considered 0. */
     private static final double SIMILARITY_LIMIT = 5E-4;
 
-    /** Maximum number of query results. */
-    private static final int MAX_QUERY_RESULTS = 10;
+    /** Number of query results written out by this command. */
+    private static final int PAGE_SIZE = 10;
 
     /**
      * Constructs a new command object of type {@code QueryCommand}.
@@ -52,6 +84,13 @@ public class QueryCommand extends AbstractCommand {
         List<String> desc = new ArrayList<>();
         desc.add("Executes the search.");
         desc.add("This command requires at least one argument in order to execute the search.");
+        desc.add("Words enclosed in double quotes are searched for as a phrase.");
+        desc.add("Two words joined by NEAR/n must be at most n words apart.");
+        desc.add("Wildcards * and ? expand a word into at most " + QueryParser.MAX_EXPANSIONS + " vocabulary words.");
+        desc.add("A word followed by ~n also matches words within n typing errors, at most "
+                + FuzzyQuery.MAX_EDITS + ".");
+        desc.add("Words prefixed by + are required and words prefixed by - are prohibited.");
+        desc.add("Operators AND, OR and NOT must be written in upper case and parentheses group operands.");
         return desc;
     }
 
@@ -62,91 +101,244 @@ public class QueryCommand extends AbstractCommand {
             return CommandStatus.CONTINUE;
         }
 
-        List<String> words = env.getDataLoader().getVocabularyWords(s);
-        if (words.isEmpty()) {
-            writeln(env, "Query words not found in vocabulary (maybe it contains only stopwords).");
+        long queryStart = System.nanoTime();
+
+        long start = System.nanoTime();
+        DataLoader loader = env.getDataLoader();
+        Query query;
+        try {
+            query = QueryParser.parse(s, loader);
+        } catch (IllegalArgumentException e) {
+            printError(env, s, e.getMessage(), null);
+            return CommandStatus.CONTINUE;
+        }
+
+        List<TermQuery> terms = new ArrayList<>();
+        query.collectTerms(terms);
+        String suggestion = suggest(loader, terms);
+        terms.removeIf(term -> !term.exists());
+        Metrics.record(Phase.QUERY_ANALYSIS, start, terms.size());
+        if (terms.isEmpty()) {
+            printError(env, s, "Query words not found in vocabulary (maybe it contains only stopwords).", suggestion);
+            return CommandStatus.CONTINUE;
+        }
+        if (query.needsPositions() && !loader.getIndex().hasPositions()) {
+            printError(env, s, "Phrase and proximity queries require positions, which are not indexed. "
+                    + "Start the shell with -D" + IndexOptions.PROPERTY_PREFIX + "positions=true to index them.", null);
             return CommandStatus.CONTINUE;
         }
 
-        writeln(env, "Query is: " + words);
+        List<String> words = terms.stream().map(TermQuery::getWord).collect(Collectors.toList());
+        if (env.getOutputFormat() == OutputFormat.TEXT) {
+            writeln(env, "Query is: " + words);
+            if (!query.isBagOfWords()) {
+                writeln(env, "Parsed query: " + query);
+            }
+            if (suggestion != null) {
+                writeln(env, "Did you mean: " + suggestion + "?");
+            }
+        }
+
+        int cluster = env.getSelectedCluster();
+        Query restricted = query;
+        if (cluster >= 0) {
+            restricted = new BooleanQuery(Arrays.asList(
+                    new Clause(query, Occur.MUST),
+                    new Clause(new ClusterQuery(env.getClusters(), cluster), Occur.MUST)));
+            if (env.getOutputFormat() == OutputFormat.TEXT) {
+                writeln(env, "Restricted to cluster " + cluster + " (" + env.getClusters().size(cluster) + " documents).");
+            }
+        }
+
+        ResultCursor cursor = executeQuery(env, restricted, terms);
+        env.setResults(cursor);
 
-        List<QueryResult> queryResults = executeQuery(env, words); // Contains at least one result
-        processQueryResults(env, queryResults);
-        printQueryResults(env, queryResults);
+        start = System.nanoTime();
+        List<QueryResult> queryResults = cursor.page(0, PAGE_SIZE);
+        printQueryResults(env, s, words, query, suggestion, queryResults);
+        if (env.getOutputFormat() == OutputFormat.TEXT && cursor.size() > PAGE_SIZE) {
+            writeln(env, "Showing " + PAGE_SIZE + " of " + cursor.getMatchCount() + " results, "
+                    + "use results --page 2 to see more.");
+        }
+        Metrics.record(Phase.OUTPUT, start, queryResults.size());
 
+        Metrics.record(Phase.QUERY, queryStart, 1);
         return CommandStatus.CONTINUE;
     }
 
     /**
-     * Executes the query of the specified <tt>words</tt> by calculating the
-     * <tt>TF-IDF</tt> vector of the words and doing vector operations with
-     * vectors of file-loaded words.
-     * <p>
-     * The results are generated and returned, containing query search
-     * <tt>similarity</tt> and file <tt>path</tt>.
+     * Returns the query words with words that are not contained in the
+     * vocabulary replaced by their most likely
+     * {@linkplain DataLoader#getSuggestion(String) corrections}, or
+     * <tt>null</tt> if no word could be corrected.
      *
-     * @param env an environment
-     * @param words query words
-     * @return results of the executed query
+     * @param loader data loader whose vocabulary is used
+     * @param terms query words, including those not in the vocabulary
+     * @return corrected query words or <tt>null</tt>
      */
-    private static List<QueryResult> executeQuery(Environment env, List<String> words) {
-        List<QueryResult> queryResults = new ArrayList<>();
-
-        List<Double> userVector = env.getDataLoader().generateTfIdfVector(words);
-        Map<Integer, List<Double>> fileVectors = env.getDataLoader().getFileVectors();
-
-        Map<Integer, Path> files = env.getDataLoader().getFiles();
-
-        double userVectorNorm = norm(userVector);
-        fileVectors.forEach((fileKey, fileVector) -> {
-            double fileVectorNorm = norm(fileVector);
-            double scalarProduct = scalarProduct(userVector, fileVector);
-
-            double similarity = scalarProduct / (userVectorNorm * fileVectorNorm);
-
-            if (similarity >= SIMILARITY_LIMIT) {
-                queryResults.add(new QueryResult(similarity, files.get(fileKey)));
+    private static String suggest(DataLoader loader, List<TermQuery> terms) {
+        StringBuilder sb = new StringBuilder();
+        boolean corrected = false;
+        for (TermQuery term : terms) {
+            String word = term.getWord();
+            if (!term.exists()) {
+                String suggestion = loader.getSuggestion(word);
+                if (suggestion != null) {
+                    word = suggestion;
+                    corrected = true;
+                }
             }
-        });
-
-        return queryResults;
+            sb.append(sb.length() == 0 ? "" : " ").append(word);
+        }
+        return corrected ? sb.toString() : null;
     }
 
     /**
-     * Processes the specified <tt>queryResults</tt> by sorting them by their
-     * natural order specified by the {@linkplain QueryResult#compareTo}
-     * method and shortening the results list if it contains more than
-     * {@linkplain #MAX_QUERY_RESULTS} results.
+     * Executes the specified <tt>query</tt> by scoring documents that match
+     * the query against its <tt>terms</tt> with a {@linkplain QueryScorer},
+     * using the {@linkplain ScoringModel scoring model} of the index. By
+     * default, this is the cosine similarity of <tt>TF-IDF</tt> vectors of
+     * the query and the document.
      * <p>
-     * Finally, this method sets the current result list to the environment
-     * <tt>env</tt>.
+     * Matching documents are visited one at a time, in ascending order of
+     * their keys, and each query term's posting list is advanced to the
+     * visited document, so postings of documents that do not match are
+     * skipped instead of being scored. Queries that match many documents
+     * are scored in parallel.
+     * <p>
+     * The best documents are kept by a {@linkplain TopResults} collector and
+     * returned as a {@linkplain ResultCursor}, which ranks them.
      *
      * @param env an environment
-     * @param queryResults query results to be processed
+     * @param query the query
+     * @param terms query terms contained in the vocabulary
+     * @return a cursor over ranked results of the executed query
      */
-    private static void processQueryResults(Environment env, List<QueryResult> queryResults) {
-        queryResults.sort(null);
-
-        if (queryResults.size() > MAX_QUERY_RESULTS) {
-            queryResults.subList(MAX_QUERY_RESULTS, queryResults.size()).clear();
+    private static ResultCursor executeQuery(Environment env, Query query, List<TermQuery> terms) {
+        long start = System.nanoTime();
+        DataLoader loader = env.getDataLoader();
+        InvertedIndex index = loader.acquireIndex();
+        QueryScorer scorer;
+        TopResults results;
+        try {
+            scorer = new QueryScorer(index, query, terms, SIMILARITY_LIMIT);
+            results = scorer.score();
+        } finally {
+            loader.releaseIndex(index);
         }
+        Metrics.record(Phase.SCORING, start, scorer.getPostingsScored());
 
-        env.setResults(queryResults);
+        start = System.nanoTime();
+        ResultCursor cursor = results.toCursor(scorer.getQueryTerms(), loader.getDocuments(), loader.getDuplicates());
+        Metrics.record(Phase.TOP_K, start, results.getMatchCount());
+        return cursor;
     }
 
     /**
      * Prints out the specified <tt>queryResults</tt> onto the environment
-     * <tt>env</tt> with special formatting.
+     * <tt>env</tt> in its output format:
+     * <ul>
+     *   <li><tt>TEXT</tt> - a line with the index, similarity and path of
+     *   each result,
+     *   <li><tt>JSON</tt> - a single object with the query, its words, the
+     *   parsed query, the suggested correction and the array of results, and
+     *   <li><tt>TSV</tt> - a line with the query, index, similarity and path of
+     *   each result, preceded by the suggested correction as a comment.
+     * </ul>
      *
      * @param env an environment
+     * @param s the query as entered
+     * @param words query words contained in the vocabulary
+     * @param query the parsed query
+     * @param suggestion corrected query words, may be <tt>null</tt>
      * @param queryResults query results to be printed
      */
-    private static void printQueryResults(Environment env, List<QueryResult> queryResults) {
-        writeln(env, "Top results are:");
-        int i = 0;
-        for (QueryResult result : queryResults) {
-            writeln(env, String.format("[%d] (%.4f) %s", i++, result.similarity, result.filePath));
+    private static void printQueryResults(Environment env, String s, List<String> words, Query query,
+            String suggestion, List<QueryResult> queryResults) {
+        switch (env.getOutputFormat()) {
+            case JSON:
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\"query\":").append(OutputFormat.jsonString(s));
+                sb.append(",\"terms\":[");
+                for (int i = 0; i < words.size(); i++) {
+                    sb.append(i == 0 ? "" : ",").append(OutputFormat.jsonString(words.get(i)));
+                }
+                sb.append("],\"parsed\":").append(OutputFormat.jsonString(query.toString()));
+                sb.append(",\"suggestion\":").append(OutputFormat.jsonString(suggestion));
+                sb.append(",\"results\":[");
+                for (int i = 0; i < queryResults.size(); i++) {
+                    QueryResult result = queryResults.get(i);
+                    sb.append(i == 0 ? "" : ",")
+                        .append("{\"rank\":").append(i)
+                        .append(",\"score\":").append(result.similarity)
+                        .append(",\"path\":").append(OutputFormat.jsonString(result.filePath.toString()))
+                        .append(",\"duplicates\":").append(result.duplicateCount)
+                        .append('}');
+                }
+                writeln(env, sb.append("]}").toString());
+                break;
+            case TSV:
+                if (suggestion != null) {
+                    writeln(env, "# Did you mean: " + suggestion + "?");
+                }
+                String field = OutputFormat.tsvField(s);
+                for (int i = 0; i < queryResults.size(); i++) {
+                    QueryResult result = queryResults.get(i);
+                    writeln(env, field + "\t" + i + "\t" + result.similarity + "\t"
+                            + OutputFormat.tsvField(result.filePath.toString()));
+                }
+                break;
+            default:
+                writeln(env, "Top results are:");
+                int i = 0;
+                for (QueryResult result : queryResults) {
+                    writeln(env, String.format("[%d] (%.4f) %s", i++, result.similarity, result.filePath)
+                            + duplicatesNote(result));
+                }
         }
     }
 
+    /**
+     * Prints out an error <tt>message</tt> of the query <tt>s</tt> onto the
+     * environment <tt>env</tt> in its output format, followed by the
+     * suggested correction of the query, if there is one.
+     *
+     * @param env an environment
+     * @param s the query as entered
+     * @param message the error message
+     * @param suggestion corrected query words, may be <tt>null</tt>
+     */
+    private static void printError(Environment env, String s, String message, String suggestion) {
+        switch (env.getOutputFormat()) {
+            case JSON:
+                writeln(env, "{\"query\":" + OutputFormat.jsonString(s)
+                        + ",\"error\":" + OutputFormat.jsonString(message)
+                        + ",\"suggestion\":" + OutputFormat.jsonString(suggestion) + "}");
+                break;
+            case TSV:
+                writeln(env, "# " + message);
+                if (suggestion != null) {
+                    writeln(env, "# Did you mean: " + suggestion + "?");
+                }
+                break;
+            default:
+                writeln(env, message);
+                if (suggestion != null) {
+                    writeln(env, "Did you mean: " + suggestion + "?");
+                }
+        }
+    }
+
+    /**
+     * Returns a note on the number of near duplicates of the document of the
+     * specified <tt>result</tt>, which is appended to the result as text, or
+     * an empty string if the document has no near duplicates.
+     *
+     * @param result a query result
+     * @return a note on the number of near duplicates, or an empty string
+     */
+    static String duplicatesNote(QueryResult result) {
+        return result.duplicateCount == 0 ? "" : " (+" + result.duplicateCount + " near duplicates)";
+    }
+
 }
@@ -0,0 +1,124 @@
+package hr.fer.zemris.java.trazilica.shell.commands;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * Loads documents that were added to or modified in the current path since
+ * it was set, as a new segment of the index, without loading other documents
+ * again. Documents of modified and removed files are deleted. Segments
+ * are merged in the background, and all of them are merged into one if the
+ * <tt>--merge</tt> argument is given. If a syntax error occurs or documents
+ * fail to load, an error message is displayed to the user.
+ *
+ * @author Mario Bobic
+ */
+public class RefreshCommand extends AbstractCommand {
+
+    /** Defines the proper syntax for using this command */
+    private static final String SYNTAX = "refresh (optional: --merge)";
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Constructs a new command object of type {@code RefreshCommand}.
+     */
+    public RefreshCommand() {
+        super("REFRESH", createCommandDescription());
+    }
+
+    /**
+     * Creates a list of strings where each string represents a new line of this
+     * command's description. This method is generates description exclusively
+     * for the command that this class represents.
+     *
+     * @return a list of strings that represents description
+     */
+    private static List<String> createCommandDescription() {
+        List<String> desc = new ArrayList<>();
+        desc.add("Loads documents added to or modified in the current path since it was set.");
+        desc.add("Added documents are searched at once, as a new segment of the index.");
+        desc.add("Documents of modified and removed files are deleted from the index.");
+        desc.add("Segments are merged in the background without blocking queries.");
+        desc.add("If the argument --merge is given, all segments are merged into one.");
+        return desc;
+    }
+
+    @Override
+    public CommandStatus execute(Environment env, String s) {
+        boolean merge = false;
+        if (s != null) {
+            if (!s.equalsIgnoreCase("--merge")) {
+                printSyntaxError(env, SYNTAX);
+                return CommandStatus.CONTINUE;
+            }
+            merge = true;
+        }
+
+        DataLoader loader = env.getDataLoader();
+        int deleted = deletedCount(loader);
+        long start = System.nanoTime();
+        try {
+            int added = loader.refresh();
+            deleted = deletedCount(loader) - deleted;
+            writeln(env, String.format("Added %d and deleted %d documents in %.3f ms", added, deleted,
+                    (System.nanoTime() - start) / NANOS_PER_MILLI));
+        } catch (IOException e) {
+            writeln(env, e.getMessage());
+            return CommandStatus.CONTINUE;
+        }
+        for (String line : loader.getDocumentFilter().describe()) {
+            writeln(env, line);
+        }
+
+        if (merge) {
+            start = System.nanoTime();
+            try {
+                int merged = loader.forceMerge();
+                writeln(env, String.format("Merged %d segments in %.3f ms", merged,
+                        (System.nanoTime() - start) / NANOS_PER_MILLI));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeln(env, "Merging was interrupted.");
+            }
+        }
+
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < index.segmentCount(); i++) {
+                sb.append(i == 0 ? "" : ", ").append(index.segmentDocumentCount(i));
+            }
+            writeln(env, "Number of loaded documents: " + (index.documentCount() - index.deletedCount()));
+            writeln(env, "Segments: " + index.segmentCount() + " (" + sb + " documents)");
+        } finally {
+            loader.releaseIndex(index);
+        }
+
+        return CommandStatus.CONTINUE;
+    }
+
+    /**
+     * Returns the number of deleted documents of the index of the specified
+     * data <tt>loader</tt>, read from an acquired index.
+     *
+     * @param loader a data loader
+     * @return the number of deleted documents
+     */
+    private static int deletedCount(DataLoader loader) {
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            return index.deletedCount();
+        } finally {
+            loader.releaseIndex(index);
+        }
+    }
+
+}
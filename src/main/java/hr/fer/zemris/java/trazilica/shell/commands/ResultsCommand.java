@@ -1,21 +1,38 @@
 package hr.fer.zemris.java.trazilica.shell.commands;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import hr.fer.zemris.java.trazilica.shell.Environment;
 import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
 import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+import hr.fer.zemris.java.trazilica.shell.components.SnippetGenerator;
 
 /**
- * Displays the previously executed query search results.
+ * Displays a page of the previously executed query search results. Pages are
+ * read from the {@linkplain ResultCursor} of the last query, so documents are
+ * not scored again. Each result is followed by a snippet of its document,
+ * with query words highlighted. Results are written out in the
+ * {@linkplain OutputFormat output format} of the environment.
  *
  * @author Mario Bobic
  */
 public class ResultsCommand extends AbstractCommand {
 
     /** Defines the proper syntax for using this command */
-    private static final String SYNTAX = "results";
+    private static final String SYNTAX = "results [--page <n>] [--size <m>]";
+
+    /** Option for choosing the page. */
+    private static final String PAGE_OPTION = "--page";
+    /** Option for choosing the number of results per page. */
+    private static final String SIZE_OPTION = "--size";
+    /** Default number of results per page. */
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    /** Maximal number of results per page. */
+    private static final int MAX_PAGE_SIZE = 1000;
 
     /**
      * Constructs a new command object of type {@code ResultsCommand}.
@@ -34,27 +51,106 @@ public class ResultsCommand extends AbstractCommand {
     private static List<String> createCommandDescription() {
         List<String> desc = new ArrayList<>();
         desc.add("Displays the previously executed search results.");
-        desc.add("This command takes no arguments.");
+        desc.add("Each result is followed by a snippet of the document with query words **highlighted**.");
+        desc.add("Option " + PAGE_OPTION + " chooses the page, counting from 1, and option " + SIZE_OPTION
+                + " the number of results per page, " + DEFAULT_PAGE_SIZE + " by default.");
+        desc.add("At most " + ResultCursor.MAX_RESULTS + " results are kept and they expire after "
+                + ResultCursor.EXPIRY_MINUTES + " minutes without use.");
         desc.add("It is expected that query was executed before this command is.");
         return desc;
     }
 
     @Override
     public CommandStatus execute(Environment env, String s) {
+        int page = 1;
+        int size = DEFAULT_PAGE_SIZE;
         if (s != null) {
-            printSyntaxError(env, SYNTAX);
+            String[] args = s.split("\\s+");
+            try {
+                if (args.length % 2 != 0) {
+                    throw new IllegalArgumentException();
+                }
+                for (int i = 0; i < args.length; i += 2) {
+                    if (args[i].equals(PAGE_OPTION)) {
+                        page = Integer.parseInt(args[i + 1]);
+                    } else if (args[i].equals(SIZE_OPTION)) {
+                        size = Integer.parseInt(args[i + 1]);
+                    } else {
+                        throw new IllegalArgumentException();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                printSyntaxError(env, SYNTAX);
+                return CommandStatus.CONTINUE;
+            }
+        }
+
+        OutputFormat format = env.getOutputFormat();
+        if (page < 1 || size < 1 || size > MAX_PAGE_SIZE) {
+            printError(env, format, "The page must be positive and the size must be in range [1,"
+                    + MAX_PAGE_SIZE + "].");
+            return CommandStatus.CONTINUE;
+        }
+
+        ResultCursor cursor = env.getResults();
+        if (cursor == null) {
+            printError(env, format, "Query search must be executed before using this command! "
+                    + "Results expire after " + ResultCursor.EXPIRY_MINUTES + " minutes without use.");
             return CommandStatus.CONTINUE;
         }
 
-        List<QueryResult> results = env.getResults();
-        if (results == null) {
-            writeln(env, "Query search must be executed before using this command!");
+        int pages = Math.max(1, (cursor.size() + size - 1) / size);
+        if (page > pages) {
+            printError(env, format, "Page " + page + " does not exist, there are " + pages + " pages.");
             return CommandStatus.CONTINUE;
         }
 
-        int i = 0;
-        for (QueryResult result : results) {
-            writeln(env, String.format("[%d] (%.4f) %s", i++, result.similarity, result.filePath));
+        int from = (page - 1) * size;
+        List<QueryResult> results = cursor.page(from, size);
+        SnippetGenerator snippets = new SnippetGenerator(env.getDataLoader());
+        StringBuilder json = new StringBuilder();
+        json.append("{\"page\":").append(page)
+            .append(",\"pages\":").append(pages)
+            .append(",\"size\":").append(size)
+            .append(",\"total\":").append(cursor.getMatchCount())
+            .append(",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            QueryResult result = results.get(i);
+            int rank = from + i;
+            String snippet;
+            try {
+                snippet = snippets.snippet(result);
+            } catch (IOException e) {
+                snippet = format == OutputFormat.TEXT ? "Snippet is not available: " + e.getMessage() : "";
+            }
+
+            switch (format) {
+                case JSON:
+                    json.append(i == 0 ? "" : ",")
+                        .append("{\"rank\":").append(rank)
+                        .append(",\"score\":").append(result.similarity)
+                        .append(",\"path\":").append(OutputFormat.jsonString(result.filePath.toString()))
+                        .append(",\"duplicates\":").append(result.duplicateCount)
+                        .append(",\"snippet\":").append(OutputFormat.jsonString(snippet))
+                        .append('}');
+                    break;
+                case TSV:
+                    writeln(env, rank + "\t" + result.similarity + "\t"
+                            + OutputFormat.tsvField(result.filePath.toString()) + "\t" + OutputFormat.tsvField(snippet));
+                    break;
+                default:
+                    writeln(env, String.format("[%d] (%.4f) %s", rank, result.similarity, result.filePath)
+                            + QueryCommand.duplicatesNote(result));
+                    if (!snippet.isEmpty()) {
+                        writeln(env, "    " + snippet);
+                    }
+            }
+        }
+        if (format == OutputFormat.JSON) {
+            writeln(env, json.append("]}").toString());
+        } else if (format == OutputFormat.TEXT) {
+            String kept = cursor.getMatchCount() > cursor.size() ? ", first " + cursor.size() + " kept" : "";
+            writeln(env, "Page " + page + " of " + pages + " (" + cursor.getMatchCount() + " results" + kept + ")");
         }
 
         return CommandStatus.CONTINUE;
@@ -56,7 +56,10 @@ public class SetPathCommand extends AbstractCommand {
 
         writeln(env, "Path set to " + ShellUtil.resolvePath(s));
         writeln(env, "Dictionary size: " + env.getDataLoader().getVocabularySet().size());
-        writeln(env, "Number of loaded documents: " + env.getDataLoader().getFiles().keySet().size());
+        writeln(env, "Number of loaded documents: " + env.getDataLoader().getDocuments().size());
+        for (String line : env.getDataLoader().getDocumentFilter().describe()) {
+            writeln(env, line);
+        }
 
         return CommandStatus.CONTINUE;
     }
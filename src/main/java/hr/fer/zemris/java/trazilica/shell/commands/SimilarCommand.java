@@ -0,0 +1,181 @@
+package hr.fer.zemris.java.trazilica.shell.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.HnswGraph;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+import hr.fer.zemris.java.trazilica.shell.components.OutputFormat;
+import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+
+/**
+ * A command that finds documents most similar to the document of a query
+ * result, which may be on any page of results. Similar documents are found
+ * in the {@linkplain HnswGraph graph of similar documents}, so the document is
+ * not compared to all other documents, and become the current results, which
+ * can be paged through and typed like results of a query. Documents deleted
+ * from the index are not returned.
+ * <p>
+ * The graph is built only if the <tt>trazilica.similar</tt> option is
+ * enabled, otherwise an error message is written.
+ *
+ * @author Mario Bobic
+ */
+public class SimilarCommand extends AbstractCommand {
+
+    /** Defines the proper syntax for using this command */
+    private static final String SYNTAX = "similar <result_index> [<count>]";
+
+    /** Default number of similar documents. */
+    private static final int DEFAULT_COUNT = 10;
+    /** Maximal number of similar documents. */
+    private static final int MAX_COUNT = 1000;
+
+    /**
+     * Constructs a new command object of type {@code SimilarCommand}.
+     */
+    public SimilarCommand() {
+        super("SIMILAR", createCommandDescription());
+    }
+
+    /**
+     * Creates a list of strings where each string represents a new line of this
+     * command's description. This method is generates description exclusively
+     * for the command that this class represents.
+     *
+     * @return a list of strings that represents description
+     */
+    private static List<String> createCommandDescription() {
+        List<String> desc = new ArrayList<>();
+        desc.add("Displays documents most similar to the document of a result.");
+        desc.add("The document is specified by the result index, and optionally the number of "
+                + "similar documents may be given, " + DEFAULT_COUNT + " by default.");
+        desc.add("Similar documents replace the current results.");
+        desc.add("Documents are indexed for this command only if option -Dtrazilica.similar=true is given.");
+        return desc;
+    }
+
+    @Override
+    public CommandStatus execute(Environment env, String s) {
+        if (s == null) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        String[] args = s.trim().split("\\s+");
+        if (args.length > 2) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        int index;
+        int count = DEFAULT_COUNT;
+        try {
+            index = Integer.parseInt(args[0]);
+            if (args.length > 1) {
+                count = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
+        OutputFormat format = env.getOutputFormat();
+        if (count < 1 || count > MAX_COUNT) {
+            printError(env, format, "The number of similar documents must be in range [1," + MAX_COUNT + "].");
+            return CommandStatus.CONTINUE;
+        }
+
+        DataLoader loader = env.getDataLoader();
+        HnswGraph graph = loader.getSimilarityGraph();
+        if (graph == null) {
+            printError(env, format, "Similar documents are not indexed. "
+                    + "Restart the shell with option -Dtrazilica.similar=true.");
+            return CommandStatus.CONTINUE;
+        }
+
+        ResultCursor results = env.getResults();
+        if (results == null) {
+            printError(env, format, "Query search must be executed before using this command! "
+                    + "Results expire after " + ResultCursor.EXPIRY_MINUTES + " minutes without use.");
+            return CommandStatus.CONTINUE;
+        }
+
+        if (index < 0 || index >= results.size()) {
+            printError(env, format, "Index is out of bounds. Valid indexes are in range [0,"
+                    + (results.size()-1) + "]");
+            return CommandStatus.CONTINUE;
+        }
+
+        QueryResult source = results.get(index);
+        InvertedIndex invertedIndex = loader.acquireIndex();
+        ResultCursor similar;
+        long start = System.nanoTime();
+        try {
+            if (invertedIndex.isDeleted(source.fileKey)) {
+                printError(env, format, "The document was deleted from the index: " + source.filePath);
+                return CommandStatus.CONTINUE;
+            }
+            similar = graph.search(source.fileKey, count, doc -> !invertedIndex.isDeleted(doc))
+                    .toCursor(new int[0], loader.getDocuments(), loader.getDuplicates());
+        } finally {
+            loader.releaseIndex(invertedIndex);
+        }
+        Metrics.record(Phase.SIMILAR_SEARCH, start, similar.size());
+        env.setResults(similar);
+
+        printSimilar(env, format, source, similar.page(0, similar.size()));
+        return CommandStatus.CONTINUE;
+    }
+
+    /**
+     * Prints out documents similar to the document of the specified
+     * <tt>source</tt> result onto the environment <tt>env</tt> in the
+     * specified output <tt>format</tt>.
+     *
+     * @param env an environment
+     * @param format the output format
+     * @param source result whose document similar documents are found for
+     * @param similar results of similar documents
+     */
+    private static void printSimilar(Environment env, OutputFormat format, QueryResult source,
+            List<QueryResult> similar) {
+        switch (format) {
+            case JSON:
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\"similar\":").append(OutputFormat.jsonString(source.filePath.toString()));
+                sb.append(",\"results\":[");
+                for (int i = 0; i < similar.size(); i++) {
+                    QueryResult result = similar.get(i);
+                    sb.append(i == 0 ? "" : ",")
+                        .append("{\"rank\":").append(i)
+                        .append(",\"score\":").append(result.similarity)
+                        .append(",\"path\":").append(OutputFormat.jsonString(result.filePath.toString()))
+                        .append(",\"duplicates\":").append(result.duplicateCount)
+                        .append('}');
+                }
+                writeln(env, sb.append("]}").toString());
+                break;
+            case TSV:
+                for (int i = 0; i < similar.size(); i++) {
+                    QueryResult result = similar.get(i);
+                    writeln(env, i + "\t" + result.similarity + "\t" + OutputFormat.tsvField(result.filePath.toString()));
+                }
+                break;
+            default:
+                writeln(env, "Documents similar to " + source.filePath + ":");
+                int i = 0;
+                for (QueryResult result : similar) {
+                    writeln(env, String.format("[%d] (%.4f) %s", i++, result.similarity, result.filePath)
+                            + QueryCommand.duplicatesNote(result));
+                }
+        }
+    }
+
+}
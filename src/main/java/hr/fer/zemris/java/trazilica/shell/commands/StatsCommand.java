@@ -0,0 +1,86 @@
+package hr.fer.zemris.java.trazilica.shell.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.LatencyHistogram;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics;
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+
+/**
+ * A command that displays timing statistics of every phase of indexing and
+ * query execution, as recorded by {@linkplain Metrics}. Durations are written
+ * in milliseconds, together with latency percentiles and the number of items
+ * that each phase has processed. Statistics can be cleared by passing the
+ * <tt>reset</tt> argument.
+ *
+ * @author Mario Bobic
+ */
+public class StatsCommand extends AbstractCommand {
+
+    /** Defines the proper syntax for using this command */
+    private static final String SYNTAX = "stats (optional: reset)";
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Constructs a new command object of type {@code StatsCommand}.
+     */
+    public StatsCommand() {
+        super("STATS", createCommandDescription());
+    }
+
+    /**
+     * Creates a list of strings where each string represents a new line of this
+     * command's description. This method is generates description exclusively
+     * for the command that this class represents.
+     *
+     * @return a list of strings that represents description
+     */
+    private static List<String> createCommandDescription() {
+        List<String> desc = new ArrayList<>();
+        desc.add("Displays timing statistics of indexing and query phases.");
+        desc.add("Durations are in milliseconds, with percentiles of each phase.");
+        desc.add("If the argument reset is given, all statistics are cleared.");
+        desc.add("Statistics are also available through JMX as " + Metrics.MBEAN_NAME + ".");
+        return desc;
+    }
+
+    @Override
+    public CommandStatus execute(Environment env, String s) {
+        if (s != null) {
+            if (!s.equalsIgnoreCase("reset")) {
+                printSyntaxError(env, SYNTAX);
+                return CommandStatus.CONTINUE;
+            }
+            Metrics.reset();
+            writeln(env, "Statistics cleared.");
+            return CommandStatus.CONTINUE;
+        }
+
+        writeln(env, String.format("%-16s %8s %11s %9s %9s %9s %9s %9s %9s  %s",
+                "Phase", "Count", "Total", "Mean", "p50", "p90", "p99", "p99.9", "Max", "Items"));
+
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = Metrics.histogram(phase);
+            writeln(env, String.format("%-16s %8d %11.3f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f  %d %s",
+                    phase.getDisplayName(),
+                    h.count(),
+                    h.sum() / NANOS_PER_MILLI,
+                    h.mean() / NANOS_PER_MILLI,
+                    h.percentile(50) / NANOS_PER_MILLI,
+                    h.percentile(90) / NANOS_PER_MILLI,
+                    h.percentile(99) / NANOS_PER_MILLI,
+                    h.percentile(99.9) / NANOS_PER_MILLI,
+                    h.max() / NANOS_PER_MILLI,
+                    Metrics.items(phase),
+                    phase.getUnit()));
+        }
+
+        return CommandStatus.CONTINUE;
+    }
+
+}
@@ -1,28 +1,62 @@
 package hr.fer.zemris.java.trazilica.shell.commands;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.Reader;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import hr.fer.zemris.java.trazilica.shell.Environment;
+import hr.fer.zemris.java.trazilica.shell.components.ArchiveReader;
 import hr.fer.zemris.java.trazilica.shell.components.CommandStatus;
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.MappedDocument;
+import hr.fer.zemris.java.trazilica.shell.components.PostingsCursor;
 import hr.fer.zemris.java.trazilica.shell.components.QueryResult;
+import hr.fer.zemris.java.trazilica.shell.components.ResultCursor;
+import hr.fer.zemris.java.trazilica.shell.components.TokenCheckpoints;
 
 /**
  * A command that is used for writing out the contents of a file. The file is
  * read with <tt>UTF-8</tt> charset. The command requires an argument that is an
- * index of the query result from the query result list. If the specified index
+ * index of the query result from the query result list, which may be on any
+ * page of results. If the specified index
  * does not exist, an error message is written and the command returns.
+ * <p>
+ * The whole file is written out, unless a range of lines or a word is given,
+ * in which case only lines in the range or lines around the first occurrence
+ * of the word are written out. Files are {@linkplain MappedDocument mapped}
+ * into memory, so lines in the middle of a huge file are found without
+ * reading the lines before them more than once, and the first occurrence of
+ * a word is found from word offsets stored while indexing. Contents are
+ * written out in large batches instead of line by line. Documents that are
+ * entries of archives are decompressed into memory instead of being mapped.
+ * <p>
+ * If the file of a result no longer exists, its documents are deleted from
+ * the index, so that they are not found by following queries, and a message
+ * is written instead of an error.
  *
  * @author Mario Bobic
  */
 public class TypeCommand extends AbstractCommand {
 
     /** Defines the proper syntax for using this command */
-    private static final String SYNTAX = "type <result_index>";
+    private static final String SYNTAX = "type <result_index> [<from_line> [<count>] | --around <word>]";
+
+    /** Option for writing out lines around a word. */
+    private static final String AROUND_OPTION = "--around";
+    /** Number of lines written out if only the first line is given. */
+    private static final int PAGE_LINES = 50;
+    /** Number of lines written out before and after the line of a word. */
+    private static final int AROUND_LINES = 10;
+    /** Number of characters written out at once. */
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    /** The most recently typed document, kept mapped for paging. */
+    private MappedDocument document;
 
     /**
      * Constructs a new command object of type {@code TypeCommand}.
@@ -41,7 +75,10 @@ public class TypeCommand extends AbstractCommand {
     private static List<String> createCommandDescription() {
         List<String> desc = new ArrayList<>();
         desc.add("Displays the contents of a file.");
-        desc.add("The file is specified by the result index.");
+        desc.add("The file is specified by the result index, and may be an entry of an archive.");
+        desc.add("Optionally, the first line (counting from 1) and the number of lines may be given, "
+                + "and " + PAGE_LINES + " lines are displayed if the number is omitted.");
+        desc.add("Option " + AROUND_OPTION + " <word> displays lines around the first occurrence of the word.");
         desc.add("This command is expected to be executed after the query command has generated results.");
         return desc;
     }
@@ -53,17 +90,46 @@ public class TypeCommand extends AbstractCommand {
             return CommandStatus.CONTINUE;
         }
 
+        String[] args = s.trim().split("\\s+");
+        if (args.length > 3) {
+            printSyntaxError(env, SYNTAX);
+            return CommandStatus.CONTINUE;
+        }
+
         int index;
+        long fromLine = 1;
+        long count = Long.MAX_VALUE;
+        String word = null;
         try {
-            index = Integer.parseInt(s);
+            index = Integer.parseInt(args[0]);
+            if (args.length > 1 && args[1].equals(AROUND_OPTION)) {
+                if (args.length != 3) {
+                    printSyntaxError(env, SYNTAX);
+                    return CommandStatus.CONTINUE;
+                }
+                word = args[2].toLowerCase();
+            } else if (args.length > 1) {
+                fromLine = Long.parseLong(args[1]);
+                count = args.length > 2 ? Long.parseLong(args[2]) : PAGE_LINES;
+            }
         } catch (NumberFormatException e) {
             printSyntaxError(env, SYNTAX);
             return CommandStatus.CONTINUE;
         }
 
-        List<QueryResult> results = env.getResults();
+        if (fromLine < 1 || count < 1) {
+            writeln(env, "The first line and the number of lines must be positive.");
+            return CommandStatus.CONTINUE;
+        }
+        if (word != null && !word.chars().allMatch(Character::isLetter)) {
+            writeln(env, "The word must contain only letters.");
+            return CommandStatus.CONTINUE;
+        }
+
+        ResultCursor results = env.getResults();
         if (results == null) {
-            writeln(env, "Query search must be executed before using this command!");
+            writeln(env, "Query search must be executed before using this command! "
+                    + "Results expire after " + ResultCursor.EXPIRY_MINUTES + " minutes without use.");
             return CommandStatus.CONTINUE;
         }
 
@@ -73,30 +139,177 @@ public class TypeCommand extends AbstractCommand {
         }
 
         QueryResult result = results.get(index);
-        printDocument(env, result.filePath);
+        DataLoader loader = env.getDataLoader();
+        InvertedIndex invertedIndex = loader.acquireIndex();
+        try {
+            if (invertedIndex.isDeleted(result.fileKey)) {
+                writeln(env, "Document " + result.filePath + " was deleted from the index.");
+                return CommandStatus.CONTINUE;
+            }
+        } finally {
+            loader.releaseIndex(invertedIndex);
+        }
+        try {
+            MappedDocument document = open(result.filePath);
+            if (word != null) {
+                printAround(env, document, result.fileKey, word);
+            } else {
+                printLines(env, document, index, fromLine, count);
+            }
+        } catch (NoSuchFileException e) {
+            loader.delete(Collections.singleton(ArchiveReader.fileOf(result.filePath)));
+            writeln(env, "Document " + result.filePath + " no longer exists and was deleted from the index.");
+        } catch (IOException e) {
+            writeln(env, "An error occured while reading file " + result.filePath + ": " + e.getMessage());
+        }
 
         return CommandStatus.CONTINUE;
     }
 
     /**
-     * Prints out contents of file with the specified <tt>path</tt> onto the
-     * environment <tt>env</tt> with special formatting.
+     * Returns the mapped document of the file with the specified
+     * <tt>path</tt>. The most recently typed document is reused if it is of
+     * the same file and the file has not been modified since, so that paging
+     * through a document does not scan it again.
+     *
+     * @param path path to the file
+     * @return the mapped document of the file
+     * @throws IOException if an I/O error occurs while mapping the file
+     */
+    private MappedDocument open(Path path) throws IOException {
+        if (document != null && document.getPath().equals(path) && document.isCurrent()) {
+            return document;
+        }
+        if (document != null) {
+            document.close();
+            document = null;
+        }
+        document = new MappedDocument(path);
+        return document;
+    }
+
+    /**
+     * Prints out at most <tt>count</tt> lines of the specified
+     * <tt>document</tt>, starting with the line <tt>fromLine</tt> counted
+     * from 1. If there are more lines, a command for printing the following
+     * lines is suggested.
+     *
+     * @param env an environment
+     * @param document the document
+     * @param index index of the query result of the document
+     * @param fromLine the first line, counted from 1
+     * @param count maximal number of lines
+     */
+    private static void printLines(Environment env, MappedDocument document, int index, long fromLine, long count) {
+        long from = document.lineOffset(fromLine - 1);
+        if (from < 0) {
+            writeln(env, "Document " + document.getPath() + " has less than " + fromLine + " lines.");
+            return;
+        }
+        long to = count == Long.MAX_VALUE ? document.size() : document.lineOffset(fromLine - 1 + count);
+        if (to < 0) {
+            to = document.size();
+        }
+
+        String header = count == Long.MAX_VALUE ? null : "Lines " + fromLine + " to " + (fromLine + count - 1) + ":";
+        printDocument(env, document, from, to, header);
+        if (to < document.size()) {
+            writeln(env, "More lines follow: type " + index + " " + (fromLine + count) + " " + count);
+        }
+    }
+
+    /**
+     * Prints out lines of the specified <tt>document</tt> around the first
+     * occurrence of the specified <tt>word</tt>. If positions of words are
+     * stored by the index, the search for the word starts at the word offset
+     * that precedes the first occurrence, otherwise it starts at the
+     * beginning of the document.
      *
      * @param env an environment
-     * @param path path to file to be printed
+     * @param document the document
+     * @param fileKey key of the document
+     * @param word a word in lower case
      */
-    private static void printDocument(Environment env, Path path) {
+    private static void printAround(Environment env, MappedDocument document, int fileKey, String word) {
+        DataLoader loader = env.getDataLoader();
+        TokenCheckpoints checkpoints = loader.getCheckpoints();
+        int term = loader.getTermKey(word);
+
+        long start = 0;
+        if (checkpoints != null && term >= 0) {
+            InvertedIndex index = loader.acquireIndex();
+            try {
+                PostingsCursor cursor = index.newCursor().reset(term);
+                if (cursor.advance(fileKey) != fileKey) {
+                    writeln(env, "Word " + word + " is not found in document " + document.getPath());
+                    return;
+                }
+                start = checkpoints.offset(fileKey, checkpoints.floor(fileKey, cursor.nextPosition()));
+            } finally {
+                loader.releaseIndex(index);
+            }
+        }
+
+        long offset = document.findWord(start, word);
+        if (offset < 0) {
+            writeln(env, "Word " + word + " is not found in document " + document.getPath());
+            return;
+        }
+
+        long from = document.lineStart(offset);
+        for (int i = 0; i < AROUND_LINES && from > 0; i++) {
+            from = document.lineStart(from - 1);
+        }
+        long to = document.lineStart(offset);
+        for (int i = 0; i <= AROUND_LINES && to < document.size(); i++) {
+            to = document.nextLine(to);
+        }
+
+        printDocument(env, document, from, to, "Lines around the first occurrence of " + word + ":");
+    }
+
+    /**
+     * Prints out the part of the specified <tt>document</tt> between the
+     * specified offsets onto the environment <tt>env</tt> with special
+     * formatting. The part is written out in batches of
+     * {@linkplain #BATCH_SIZE} characters.
+     *
+     * @param env an environment
+     * @param document the document
+     * @param from offset of the first byte, inclusive
+     * @param to offset of the last byte, exclusive
+     * @param header line printed out before the part, may be <tt>null</tt>
+     */
+    private static void printDocument(Environment env, MappedDocument document, long from, long to, String header) {
         writeln(env, "-------------------------------------------------");
-        writeln(env, "Document: " + path);
+        writeln(env, "Document: " + document.getPath());
+        if (header != null) {
+            writeln(env, header);
+        }
         writeln(env, "-------------------------------------------------");
 
-        try {
-            Files.lines(path, StandardCharsets.UTF_8).forEach((line) -> {
-                writeln(env, line);
-            });
+        char[] batch = new char[BATCH_SIZE];
+        char last = '\n';
+        try (Reader reader = document.newReader(from, to)) {
+            int length = 0;
+            for (int n; (n = reader.read(batch, length, batch.length - length)) >= 0; ) {
+                length += n;
+                if (length == batch.length) {
+                    env.write(batch, 0, length);
+                    last = batch[length - 1];
+                    length = 0;
+                }
+            }
+            if (length > 0) {
+                env.write(batch, 0, length);
+                last = batch[length - 1];
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (last != '\n') {
+            writeln(env, "");
+        }
 
         writeln(env, "-------------------------------------------------");
     }
@@ -0,0 +1,590 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads documents stored in compressed files and archives, which are
+ * <tt>.gz</tt> files, <tt>.zip</tt> archives and <tt>.tar</tt> archives,
+ * optionally compressed as <tt>.tar.gz</tt> or <tt>.tgz</tt>. Contents are
+ * decompressed while they are streamed, using codecs of the JDK, so that
+ * archives never have to be extracted to disk.
+ * <p>
+ * Each entry of an archive is a document of its own, whose path is the path
+ * to the archive followed by <tt>!/</tt> and the name of the entry, for an
+ * example <tt>docs/archive.zip!/chapter/intro.txt</tt>. A <tt>.gz</tt> file
+ * has a single entry, named like the file without the <tt>.gz</tt>
+ * extension. Such paths do not exist on the file system, but documents with
+ * them can be {@linkplain #open(Path) opened} like any other document.
+ * <p>
+ * Only regular files of archives are read, while entries that are nested
+ * archives themselves are read as they are, without being decompressed.
+ *
+ * @author Mario Bobic
+ */
+public class ArchiveReader {
+
+    /** Separator of the path to an archive and the name of its entry. */
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    /** Size of a block of a tar archive. */
+    private static final int TAR_BLOCK = 512;
+    /** Size of buffers of streams of files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A consumer of entries of an archive.
+     *
+     * @author Mario Bobic
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        /**
+         * Consumes an entry of an archive, whose contents are read from the
+         * specified input stream, which must not be closed.
+         *
+         * @param path path of the entry document
+         * @param size size of the entry in bytes, or <tt>-1</tt> if unknown
+         * @param in input stream of contents of the entry
+         * @throws IOException if an I/O error occurs
+         */
+        void accept(Path path, long size, InputStream in) throws IOException;
+    }
+
+    /**
+     * Disables instantiation.
+     */
+    private ArchiveReader() {
+    }
+
+    /**
+     * Returns true if the specified file is a compressed file or an archive,
+     * judging by its extension.
+     *
+     * @param file a file
+     * @return true if the file is a compressed file or an archive
+     */
+    public static boolean isArchive(Path file) {
+        return type(file.getFileName().toString()) != null;
+    }
+
+    /**
+     * Passes each regular file of the specified <tt>archive</tt> to the
+     * specified <tt>consumer</tt>, in the order in which entries are stored.
+     * Names of entries are {@linkplain #normalizeName(String) normalized},
+     * and entries whose names lead out of the archive are skipped.
+     *
+     * @param archive path to a compressed file or an archive
+     * @param consumer consumer of entries
+     * @throws IllegalArgumentException if the file is not an archive
+     * @throws IOException if an I/O error occurs or the archive is corrupt
+     */
+    public static void read(Path archive, EntryConsumer consumer) throws IOException {
+        String name = archive.getFileName().toString();
+        Type type = type(name);
+        if (type == null) {
+            throw new IllegalArgumentException("Not an archive: " + archive);
+        }
+
+        switch (type) {
+            case ZIP:
+                try (ZipFile zip = new ZipFile(archive.toFile())) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        String entryName = normalizeName(entry.getName());
+                        if (!entry.isDirectory() && entryName != null) {
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                consumer.accept(entryPath(archive, entryName), entry.getSize(), in);
+                            }
+                        }
+                    }
+                }
+                break;
+            case GZIP:
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+                    consumer.accept(entryPath(archive, name.substring(0, name.length() - 3)), -1, in);
+                }
+                break;
+            default:
+                try (InputStream in = openTar(archive, type)) {
+                    for (TarEntry entry; (entry = TarEntry.next(in)) != null; ) {
+                        InputStream data = new BoundedInputStream(in, entry.size);
+                        String entryName = normalizeName(entry.name);
+                        if (entry.regular && entryName != null) {
+                            consumer.accept(entryPath(archive, entryName), entry.size, data);
+                        }
+                        skipFully(data, Long.MAX_VALUE);
+                        skipFully(in, -entry.size & (TAR_BLOCK - 1));
+                    }
+                }
+        }
+    }
+
+    /**
+     * Returns the path of the entry with the specified <tt>name</tt> of the
+     * specified <tt>archive</tt>.
+     *
+     * @param archive path to an archive
+     * @param name name of an entry of the archive
+     * @return the path of the entry
+     */
+    public static Path entryPath(Path archive, String name) {
+        return archive.resolveSibling(archive.getFileName() + ENTRY_SEPARATOR + name);
+    }
+
+    /**
+     * Returns the path to the archive that contains the document with the
+     * specified <tt>path</tt>, or <tt>null</tt> if the document is not an
+     * entry of an archive.
+     *
+     * @param path path of a document
+     * @return the path to the archive of the document, or <tt>null</tt>
+     */
+    public static Path archiveOf(Path path) {
+        Path entryRoot = entryRoot(path);
+        return entryRoot == null ? null : archiveOfRoot(entryRoot);
+    }
+
+    /**
+     * Returns the path to the file that holds the document with the
+     * specified <tt>path</tt>, which is its archive if the document is an
+     * entry of an archive, or the path itself otherwise.
+     *
+     * @param path path of a document
+     * @return path to the file that holds the document
+     */
+    public static Path fileOf(Path path) {
+        Path archive = archiveOf(path);
+        return archive == null ? path : archive;
+    }
+
+    /**
+     * Opens an input stream of contents of the document with the specified
+     * <tt>path</tt>, which is decompressed if the document is an entry of an
+     * archive. Entries of <tt>.zip</tt> archives are found directly, while
+     * entries of other archives are found by reading the archive from its
+     * beginning.
+     *
+     * @param path path of a document
+     * @return an input stream of contents of the document
+     * @throws NoSuchFileException if the archive has no such entry
+     * @throws IOException if an I/O error occurs
+     */
+    public static InputStream open(Path path) throws IOException {
+        Path entryRoot = entryRoot(path);
+        if (entryRoot == null) {
+            return Files.newInputStream(path);
+        }
+
+        Path archive = archiveOfRoot(entryRoot);
+        if (type(archive.getFileName().toString()) == Type.ZIP) {
+            String separator = path.getFileSystem().getSeparator();
+            String entryName = entryRoot.relativize(path).toString().replace(separator, "/");
+            ZipFile zip = new ZipFile(archive.toFile());
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry != null) {
+                return new FilterInputStream(zip.getInputStream(entry)) {
+                    @Override
+                    public void close() throws IOException {
+                        zip.close();
+                    }
+                };
+            }
+            zip.close();
+        }
+
+        byte[][] contents = new byte[1][];
+        read(archive, (entry, size, in) -> {
+            if (contents[0] == null && entry.equals(path)) {
+                contents[0] = readAll(in, size);
+            }
+        });
+        if (contents[0] == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return new ByteArrayInputStream(contents[0]);
+    }
+
+    /**
+     * Reads all bytes of the specified input stream, whose size is
+     * <tt>size</tt> bytes or unknown if it is negative.
+     *
+     * @param in an input stream
+     * @param size number of bytes of the stream, or <tt>-1</tt> if unknown
+     * @return all bytes of the stream
+     * @throws IOException if an I/O error occurs or the stream is too large
+     */
+    public static byte[] readAll(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry is too large: " + size + " bytes");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size < 0 ? BUFFER_SIZE : (int) size);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the type of a file with the specified name, or <tt>null</tt> if
+     * it is neither a compressed file nor an archive.
+     *
+     * @param name name of a file
+     * @return the type of the file, or <tt>null</tt>
+     */
+    private static Type type(String name) {
+        name = name.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            return Type.ZIP;
+        } else if (name.endsWith(".tar")) {
+            return Type.TAR;
+        } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return Type.TAR_GZIP;
+        } else if (name.endsWith(".gz") && name.length() > 3) {
+            return Type.GZIP;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the specified entry name without empty and <tt>.</tt>
+     * elements, or <tt>null</tt> if it is empty or contains a <tt>..</tt>
+     * element, which would lead out of the archive.
+     *
+     * @param name name of an entry
+     * @return the normalized name, or <tt>null</tt>
+     */
+    private static String normalizeName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (String element : name.split("/")) {
+            if (element.equals("..")) {
+                return null;
+            } else if (!element.isEmpty() && !element.equals(".")) {
+                sb.append(sb.length() == 0 ? "" : "/").append(element);
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Returns the ancestor of the specified document path whose name is the
+     * name of an existing archive followed by <tt>!</tt>, or <tt>null</tt>
+     * if the document is not an entry of an archive. Paths without a
+     * <tt>!</tt> are not walked, since most documents are plain files.
+     *
+     * @param path path of a document
+     * @return the ancestor path that stands for the archive, or <tt>null</tt>
+     */
+    private static Path entryRoot(Path path) {
+        if (path.toString().indexOf('!') < 0) {
+            return null;
+        }
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            Path name = parent.getFileName();
+            String archiveName = name == null ? "" : name.toString();
+            if (archiveName.endsWith("!") && type(archiveName.substring(0, archiveName.length() - 1)) != null
+                    && Files.isRegularFile(archiveOfRoot(parent))) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the path to the archive of the specified ancestor path of an
+     * entry, which is the ancestor without the trailing <tt>!</tt>.
+     *
+     * @param entryRoot ancestor path of an entry that stands for the archive
+     * @return path to the archive
+     */
+    private static Path archiveOfRoot(Path entryRoot) {
+        String name = entryRoot.getFileName().toString();
+        return entryRoot.resolveSibling(name.substring(0, name.length() - 1));
+    }
+
+    /**
+     * Opens a buffered input stream of a tar archive of the specified type,
+     * decompressed if needed.
+     *
+     * @param archive path to the archive
+     * @param type type of the archive
+     * @return an input stream of the tar archive
+     * @throws IOException if an I/O error occurs
+     */
+    private static InputStream openTar(Path archive, Type type) throws IOException {
+        InputStream in = Files.newInputStream(archive);
+        if (type == Type.TAR_GZIP) {
+            return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return new BufferedInputStream(in, BUFFER_SIZE);
+    }
+
+    /**
+     * Skips at most <tt>count</tt> bytes of the specified input stream,
+     * stopping only at the end of the stream.
+     *
+     * @param in an input stream
+     * @param count maximal number of bytes to skip
+     * @throws IOException if an I/O error occurs
+     */
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Types of compressed files and archives.
+     */
+    private enum Type {
+        /** A zip archive. */
+        ZIP,
+        /** A single gzip-compressed file. */
+        GZIP,
+        /** An uncompressed tar archive. */
+        TAR,
+        /** A gzip-compressed tar archive. */
+        TAR_GZIP
+    }
+
+    /**
+     * A header of an entry of a tar archive. Names longer than the
+     * <tt>ustar</tt> header allows are read from <tt>GNU</tt> long name and
+     * <tt>pax</tt> extended headers.
+     *
+     * @author Mario Bobic
+     */
+    private static class TarEntry {
+
+        /** Name of the entry. */
+        private final String name;
+        /** Size of the entry in bytes. */
+        private final long size;
+        /** Indicates if the entry is a regular file. */
+        private final boolean regular;
+
+        /**
+         * Constructs an instance of {@code TarEntry} with the specified values.
+         *
+         * @param name name of the entry
+         * @param size size of the entry in bytes
+         * @param regular true if the entry is a regular file
+         */
+        private TarEntry(String name, long size, boolean regular) {
+            this.name = name;
+            this.size = size;
+            this.regular = regular;
+        }
+
+        /**
+         * Reads the header of the next entry from the specified input stream,
+         * which is positioned at a header block, or returns <tt>null</tt> at
+         * the end of the archive.
+         *
+         * @param in input stream of a tar archive
+         * @return the header of the next entry, or <tt>null</tt>
+         * @throws IOException if an I/O error occurs or the header is corrupt
+         */
+        public static TarEntry next(InputStream in) throws IOException {
+            byte[] block = new byte[TAR_BLOCK];
+            String longName = null;
+            while (true) {
+                int n = readBlock(in, block);
+                if (n == 0 || block[0] == 0) {
+                    return null;
+                }
+                if (n < TAR_BLOCK) {
+                    throw new EOFException("Truncated tar header.");
+                }
+
+                long size = parseOctal(block, 124, 12);
+                char type = (char) block[156];
+                if (type == 'L' || type == 'x') {
+                    byte[] data = readAll(new BoundedInputStream(in, size), size);
+                    skipFully(in, -size & (TAR_BLOCK - 1));
+                    String name = type == 'L' ? cString(data, 0, data.length) : paxPath(data);
+                    longName = name != null ? name : longName;
+                    continue;
+                }
+
+                String name = longName;
+                if (name == null) {
+                    name = cString(block, 0, 100);
+                    String magic = cString(block, 257, 6);
+                    if (magic.startsWith("ustar") && block[345] != 0) {
+                        name = cString(block, 345, 155) + "/" + name;
+                    }
+                }
+                return new TarEntry(name, size, type == '0' || type == 0 || type == '7');
+            }
+        }
+
+        /**
+         * Reads a whole block into the specified array, returning the number
+         * of read bytes, which is less than a block only at the end of the
+         * stream.
+         *
+         * @param in an input stream
+         * @param block array of the size of a block
+         * @return the number of read bytes
+         * @throws IOException if an I/O error occurs
+         */
+        private static int readBlock(InputStream in, byte[] block) throws IOException {
+            int total = 0;
+            for (int n; total < block.length && (n = in.read(block, total, block.length - total)) > 0; ) {
+                total += n;
+            }
+            return total;
+        }
+
+        /**
+         * Parses an octal number of a header field.
+         *
+         * @param block the header block
+         * @param offset offset of the field
+         * @param length length of the field
+         * @return the parsed number
+         * @throws IOException if the field is not an octal number
+         */
+        private static long parseOctal(byte[] block, int offset, int length) throws IOException {
+            long value = 0;
+            for (int i = offset, end = offset + length; i < end && block[i] != 0; i++) {
+                if (block[i] == ' ') {
+                    continue;
+                }
+                if (block[i] < '0' || block[i] > '7') {
+                    throw new IOException("Corrupt tar header.");
+                }
+                value = value * 8 + block[i] - '0';
+            }
+            return value;
+        }
+
+        /**
+         * Returns a string of the specified bytes up to the first zero byte,
+         * decoded with the <tt>UTF-8</tt> charset.
+         *
+         * @param bytes bytes of a string
+         * @param offset offset of the string
+         * @param length maximal length of the string
+         * @return the decoded string
+         */
+        private static String cString(byte[] bytes, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the value of the <tt>path</tt> record of the specified
+         * <tt>pax</tt> extended header, or <tt>null</tt> if it has none.
+         * Records are of the form <tt>"length key=value\n"</tt>.
+         *
+         * @param data data of the extended header
+         * @return the path of the entry, or <tt>null</tt>
+         */
+        private static String paxPath(byte[] data) {
+            String records = new String(data, StandardCharsets.UTF_8);
+            for (String record : records.split("\n")) {
+                int space = record.indexOf(' ');
+                if (record.startsWith("path=", space + 1)) {
+                    return record.substring(space + 6);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An input stream that reads at most a given number of bytes of another
+     * input stream and never closes it.
+     *
+     * @author Mario Bobic
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        /** Number of bytes that may still be read. */
+        private long remaining;
+
+        /**
+         * Constructs an instance of {@code BoundedInputStream} that reads
+         * at most <tt>limit</tt> bytes of the specified input stream.
+         *
+         * @param in an input stream
+         * @param limit maximal number of bytes read
+         */
+        public BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            remaining -= b < 0 ? remaining : 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            remaining -= n < 0 ? remaining : n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream is closed by its owner
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * The Okapi BM25 scoring model. The TF component saturates with the term
+ * frequency and is normalized by the length of the document relative to the
+ * average document length:
+ * <pre>
+ * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength))
+ * </pre>
+ * and the IDF component is
+ * <tt>log(1 + (nDocuments - df + 0.5) / (df + 0.5))</tt>, which is never
+ * negative. Query terms are weighted by their frequency in the query and
+ * scores are not normalized.
+ *
+ * @author Mario Bobic
+ */
+public class BM25Model implements ScoringModel {
+
+    /** Name of this scoring model. */
+    public static final String NAME = "bm25";
+
+    /** Default saturation of the term frequency. */
+    public static final double DEFAULT_K1 = 1.2;
+    /** Default strength of the document length normalization. */
+    public static final double DEFAULT_B = 0.75;
+
+    /** Saturation of the term frequency. */
+    private final double k1;
+    /** Strength of the document length normalization. */
+    private final double b;
+
+    /**
+     * Constructs an instance of {@code BM25Model} with default parameters.
+     */
+    public BM25Model() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    /**
+     * Constructs an instance of {@code BM25Model} with the specified
+     * parameters.
+     *
+     * @param k1 saturation of the term frequency, non-negative
+     * @param b strength of the document length normalization, in <tt>[0, 1]</tt>
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public BM25Model(double k1, double b) {
+        if (!(k1 >= 0)) {
+            throw new IllegalArgumentException("Parameter k1 must not be negative: " + k1);
+        }
+        if (!(b >= 0 && b <= 1)) {
+            throw new IllegalArgumentException("Parameter b must be in range [0, 1]: " + b);
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public double idf(InvertedIndex index, int term) {
+        double df = index.documentFrequency(term);
+        return Math.log(1 + (index.collectionSize() - df + 0.5) / (df + 0.5));
+    }
+
+    @Override
+    public double tf(InvertedIndex index, int doc, int freq) {
+        double averageLength = index.averageDocumentLength();
+        double relativeLength = averageLength == 0 ? 1 : index.documentLength(doc) / averageLength;
+        return freq * (k1 + 1) / (freq + k1 * (1 - b + b * relativeLength));
+    }
+
+    @Override
+    public double documentNorm(InvertedIndex index, int doc) {
+        return 1.0;
+    }
+
+    @Override
+    public double queryWeight(double idf, int freq) {
+        return freq;
+    }
+
+    @Override
+    public double queryNorm(double[] weights) {
+        return 1.0;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+}
@@ -1,7 +1,14 @@
 package hr.fer.zemris.java.trazilica.shell.components;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -9,13 +16,24 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
 
 /**
  * This class represents data-loading utility whose instances serve documents
@@ -31,12 +49,25 @@ import java.util.Set;
  *     <li>{@linkplain #getVocabularySet()},
  *     <li>{@linkplain #getVocabularyList()}
  *   </ul>
- *   <li>fetching a map of files in which file paths are associated with file
- *   keys, using the {@linkplain #getFiles()} method and
- *   <li>fetching a map in which file TF-IDF vectors are associated with file
- *   keys, using the {@linkplain #getFileVectors()} method.
+ *   <li>fetching the {@linkplain DocumentTable table of documents} in which
+ *   file paths are associated with file keys, using the
+ *   {@linkplain #getDocuments()} method and
+ *   <li>fetching the {@linkplain InvertedIndex inverted index} of all
+ *   documents, using the {@linkplain #getIndex()} method.
  * </ul>
  * <p>
+ * Files are filtered by a {@linkplain DocumentFilter} before they are read,
+ * so that excluded directories are not walked and excluded, too large and
+ * binary files are not read further than necessary.
+ * <p>
+ * Posting lists and document norms are stored off-heap by the inverted index.
+ * A data loader must be {@link #close() closed} when it is no longer used,
+ * which frees the off-heap memory of its index immediately.
+ * <p>
+ * Files added to the directory later are loaded by {@linkplain #refresh()}
+ * into a new segment of the index, and segments are merged in the
+ * background by a single thread, so that queries are never blocked.
+ * <p>
  * Some very useful methods are listed below:
  * <ul>
  *   <li>obtaining a list of words from a single string, ignoring all symbols
@@ -45,12 +76,13 @@ import java.util.Set;
  *   <li>obtaining a list of words that are contained in this object's
  *   vocabulary, which is the same as calling {@linkplain #getWords(String)}
  *   and retaining only words contained in the vocabulary, and
- *   <li>generating a TF-IDF vector from a list of words.
+ *   <li>obtaining the key of a vocabulary word, which is used to access the
+ *   word's posting list in the inverted index.
  * </ul>
  *
  * @author Mario Bobic
  */
-public class DataLoader {
+public class DataLoader implements AutoCloseable {
 
     /** Set containing stop words. */
     private static Set<String> stopWords;
@@ -62,26 +94,48 @@ public class DataLoader {
         }
     }
 
-    /** A Set version of the whole vocabulary. */
-    private Set<String> vocabularySet;
-    /** A List version of the whole vocabulary. */
+    /** Map in which vocabulary words are associated with term keys. */
+    private Map<String, Integer> termKeys;
+    /** A List version of the whole vocabulary, ordered by term keys. */
     private List<String> vocabularyList;
+    /** Sorted dictionary of the vocabulary, used for wildcard expansion. */
+    private TermDictionary termDictionary;
 
-    /** Map in which file paths are associated with file keys. */
-    private Map<Integer, Path> files;
-    /** Map in which file word lists are associated with file keys. */
-    private Map<Integer, List<String>> fileWords;
+    /** Table of documents with their paths and modification times. */
+    private DocumentTable documents;
 
-    /** IDF vectors of the whole vocabulary. */
-    private List<Double> idfComponents;
-    /** Map in which file TF-IDF vectors are associated with file keys. */
-    private Map<Integer, List<Double>> fileVectors;
+    /** Directory in which documents are located. */
+    private final Path dir;
+    /** Options that control indexing. */
+    private final IndexOptions options;
+    /** Words removed from the vocabulary for being contained in too many documents. */
+    private final Set<String> commonTerms = new HashSet<>();
+
+    /** Inverted index of all loaded documents, replaced when segments are added or merged. */
+    private volatile InvertedIndex index;
+    /** Policy that chooses segments of the index to be merged. */
+    private final TieredMergePolicy mergePolicy;
+    /** Single thread that merges segments of the index, or <tt>null</tt> if not started. */
+    private ExecutorService merger;
+    /** Indicates if this data loader is closed. */
+    private boolean closed;
+    /** Word offsets of all loaded documents, or <tt>null</tt>. */
+    private TokenCheckpoints checkpoints;
+    /** Report of pruned terms and postings, or <tt>null</tt>. */
+    private PruningReport pruningReport;
+    /** Clusters of near-duplicate documents, or <tt>null</tt>. */
+    private NearDuplicates duplicates;
+    /** Graph of similar documents, or <tt>null</tt>. */
+    private HnswGraph similarityGraph;
+    /** Filter of loaded files, which counts skipped files. */
+    private DocumentFilter filter;
 
 
     /**
      * Constructs an instance of {@code DataLoader} with the specified directory
      * path <tt>dir</tt>. Fills the vocabulary from all loaded documents and
-     * creates TF-IDF vectors for all documents.
+     * creates an inverted index of all documents, using the index options
+     * {@link IndexOptions#fromSystemProperties() taken from system properties}.
      *
      * @param dir directory in which documents are located
      * @throws NullPointerException if <tt>dir</tt> is <tt>null</tt>
@@ -89,21 +143,95 @@ public class DataLoader {
      * @throws IOException if any file in <tt>dir</tt> fails to load
      */
     public DataLoader(Path dir) throws IOException {
+        this(dir, IndexOptions.fromSystemProperties());
+    }
+
+    /**
+     * Constructs an instance of {@code DataLoader} with the specified directory
+     * path <tt>dir</tt>. Fills the vocabulary from all loaded documents and
+     * creates an inverted index of all documents, using the specified index
+     * <tt>options</tt>.
+     *
+     * @param dir directory in which documents are located
+     * @param options options that control indexing
+     * @throws NullPointerException if <tt>dir</tt> or <tt>options</tt> is <tt>null</tt>
+     * @throws FileNotFoundException if <tt>dir</tt> is not found
+     * @throws IOException if any file in <tt>dir</tt> fails to load and the
+     *         options do not say that such files are skipped
+     */
+    public DataLoader(Path dir, IndexOptions options) throws IOException {
         validateDirectory(dir);
+        Objects.requireNonNull(options, "Options must not be null.");
+        this.dir = dir;
+        this.options = options;
+        this.mergePolicy = new TieredMergePolicy(options.getMergeFactor());
+
+        termKeys = new LinkedHashMap<>();
+        vocabularyList = new ArrayList<>();
+        documents = new DocumentTable();
+        filter = new DocumentFilter(dir, options);
+
+        if (options.getDuplicateMode() != DuplicateMode.OFF) {
+            duplicates = new NearDuplicates(options.getDuplicateThreshold());
+        }
+
+        // Frees the off-heap index if loading fails after it is written
+        boolean loaded = false;
+        try {
+            // Fills documents, vocabulary and postings of each term
+            LoaderVisitor visitor = new LoaderVisitor(options);
+            long start = System.nanoTime();
+            try {
+                Files.walkFileTree(dir, visitor);
+                Metrics.record(Phase.DIRECTORY_WALK, start, visitor.fileKey);
+                if (duplicates != null) {
+                    duplicates.finish();
+                }
 
-        vocabularySet = new HashSet<>();
-        files = new HashMap<>();
-        fileWords = new HashMap<>();
-        idfComponents = new ArrayList<>();
-        fileVectors = new HashMap<>();
+                int termsBefore = vocabularyList.size();
+                long postingsBefore = 0;
+                for (int term = 0; term < termsBefore; term++) {
+                    postingsBefore += visitor.documentFrequency(term);
+                }
+                int[] prunedTerms = pruneTerms(visitor, options);
 
-        // Fills files, file vocabulary and vocabulary set
-        LoaderVisitor visitor = new LoaderVisitor();
-        Files.walkFileTree(dir, visitor);
-        vocabularyList = new ArrayList<>(vocabularySet);
+                PostingsSource source = visitor.source();
+                index = new InvertedIndex(documents.size(), source, options);
+                if (options.isPruning()) {
+                    long termPostings = postingsBefore;
+                    for (int term = 0, n = source.termCount(); term < n; term++) {
+                        termPostings -= source.documentFrequency(term);
+                    }
+                    pruningReport = new PruningReport(termsBefore, prunedTerms[0], prunedTerms[1], prunedTerms[2],
+                            postingsBefore, termPostings, index.postingCount());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                visitor.close();
+            }
+            termDictionary = new TermDictionary(vocabularyList);
+            if (visitor.checkpointOffsets != null) {
+                visitor.checkpointStarts.add(visitor.checkpointOffsets.size());
+                checkpoints = new TokenCheckpoints(visitor.checkpointStarts, visitor.checkpointOffsets);
+            }
 
-        fillIdfComponents();
-        fillFileVectors();
+            if (options.isSimilar()) {
+                start = System.nanoTime();
+                int dimensions = options.getSimilarDimensions();
+                float[] vectors = RandomProjection.project(index, dimensions);
+                similarityGraph = new HnswGraph(dimensions, documents.size());
+                for (int doc = 0, n = documents.size(); doc < n; doc++) {
+                    similarityGraph.add(vectors, doc * dimensions);
+                }
+                Metrics.record(Phase.SIMILARITY_GRAPH, start, documents.size());
+            }
+            loaded = true;
+        } finally {
+            if (!loaded && index != null) {
+                index.close();
+            }
+        }
     }
 
     /**
@@ -115,7 +243,7 @@ public class DataLoader {
      * @return the whole vocabulary as an unmodifiable <tt>Set</tt>
      */
     public Set<String> getVocabularySet() {
-        return Collections.unmodifiableSet(vocabularySet);
+        return Collections.unmodifiableSet(termKeys.keySet());
     }
 
     /**
@@ -131,21 +259,557 @@ public class DataLoader {
     }
 
     /**
-     * Returns the map in which file paths are associated with file keys.
+     * Returns the sorted dictionary of the vocabulary, which is used for
+     * expanding prefix and wildcard patterns into vocabulary words.
+     *
+     * @return the sorted dictionary of the vocabulary
+     */
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    /**
+     * Returns the table of documents in which file paths are associated with
+     * file keys.
+     *
+     * @return the table of documents
+     */
+    public DocumentTable getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Returns the inverted index of all loaded documents. Term keys of the
+     * index are indexes of words in the {@link #getVocabularyList()
+     * vocabulary List} and document keys are keys of the {@link #getDocuments()
+     * table of documents}.
+     * <p>
+     * Segments of the returned index may be closed when they are merged in
+     * the background, so posting lists, norms and lengths of documents
+     * should be read from an index returned by the {@linkplain
+     * #acquireIndex()} method instead.
+     *
+     * @return the inverted index of all loaded documents
+     */
+    public InvertedIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the inverted index of all loaded documents, as the {@linkplain
+     * #getIndex()} method does, and acquires references to its segments, so
+     * that they are not closed while the index is read, even if they are
+     * merged away in the meantime. The index must be {@linkplain
+     * #releaseIndex(InvertedIndex) released} when it is no longer read.
+     *
+     * @return the inverted index of all loaded documents
+     * @throws IllegalStateException if this data loader is closed
+     */
+    public InvertedIndex acquireIndex() {
+        while (true) {
+            InvertedIndex current = index;
+            if (current.tryAcquire()) {
+                return current;
+            }
+            // a segment is closed only after an index without it is published
+            if (current == index) {
+                throw new IllegalStateException("Data loader is closed.");
+            }
+        }
+    }
+
+    /**
+     * Releases references to segments of the specified index, which was
+     * returned by the {@linkplain #acquireIndex()} method. Segments that are
+     * no longer held by any index are closed.
+     *
+     * @param index an acquired index
+     */
+    public void releaseIndex(InvertedIndex index) {
+        index.release();
+    }
+
+    /**
+     * Returns word offsets of all loaded documents, which are used for
+     * reading a part of a document around a word position, or <tt>null</tt>
+     * if positions are not stored by the {@link #getIndex() index}.
+     *
+     * @return word offsets of all loaded documents, or <tt>null</tt>
+     */
+    public TokenCheckpoints getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Returns clusters of near-duplicate documents, or <tt>null</tt> if near
+     * duplicates are not detected.
+     *
+     * @return clusters of near-duplicate documents, or <tt>null</tt>
+     */
+    public NearDuplicates getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the graph of similar documents, whose nodes are documents
+     * numbered by their keys, or <tt>null</tt> if the graph is not built.
+     *
+     * @return the graph of similar documents, or <tt>null</tt>
+     */
+    public HnswGraph getSimilarityGraph() {
+        return similarityGraph;
+    }
+
+    /**
+     * Returns the filter of loaded files, which describes files that were
+     * skipped while loading.
+     *
+     * @return the filter of loaded files
+     */
+    public DocumentFilter getDocumentFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns a report of terms and postings pruned from the
+     * {@link #getIndex() index}, or <tt>null</tt> if the index options do
+     * not prune the index.
+     *
+     * @return a report of pruned terms and postings, or <tt>null</tt>
+     */
+    public PruningReport getPruningReport() {
+        return pruningReport;
+    }
+
+    /**
+     * Returns a report of estimated memory taken by structures of this data
+     * loader. Heap sizes are calculated from known object layouts using the
+     * {@linkplain MemoryEstimator}, while off-heap sizes are the exact sizes
+     * of allocated buffers.
+     * <p>
+     * The report contains the following entries:
+     * <ul>
+     *   <li><tt>term dictionary</tt> - vocabulary words, the map of term keys,
+     *   the vocabulary list and the sorted dictionary with its k-gram index,
+     *   if it is built,
+     *   <li><tt>postings</tt> - posting lists and per-term arrays that
+     *   locate them,
+     *   <li><tt>document table</tt> - the table of documents with their paths, the
+     *   document norms and word offsets, if they are stored,
+     *   <li><tt>impacts</tt> - precomputed impacts of postings, if they are
+     *   stored,
+     *   <li><tt>near duplicates</tt> - clusters of near-duplicate documents,
+     *   if they are detected, and
+     *   <li><tt>similarity graph</tt> - projected document vectors and the
+     *   graph of similar documents, if it is built.
+     * </ul>
+     *
+     * @return a report of estimated memory taken by this data loader
+     */
+    public MemoryReport getMemoryReport() {
+        MemoryReport report = new MemoryReport();
+
+        long dictionary = MemoryEstimator.hashMap(termKeys.size(), true)
+                + MemoryEstimator.arrayList(vocabularyList.size());
+        for (int i = 0, n = vocabularyList.size(); i < n; i++) {
+            dictionary += MemoryEstimator.string(vocabularyList.get(i)) + MemoryEstimator.boxedInteger(i);
+        }
+        dictionary += termDictionary.heapBytes();
+        report.add("term dictionary", dictionary, 0);
+
+        report.add("postings", index.postingsHeapBytes(),
+                index.offHeapBytes() - index.documentTableBytes() - index.impactBytes());
+        if (index.hasImpacts()) {
+            report.add("impacts", 0, index.impactBytes());
+        }
+
+        long documentTable = documents.heapBytes();
+        if (checkpoints != null) {
+            documentTable += checkpoints.heapBytes();
+        }
+        report.add("document table", documentTable, index.documentTableBytes());
+
+        if (duplicates != null) {
+            report.add("near duplicates", duplicates.heapBytes(), 0);
+        }
+        if (similarityGraph != null) {
+            report.add("similarity graph", similarityGraph.heapBytes(), 0);
+        }
+
+        return report;
+    }
+
+    /**
+     * Returns the key of the specified vocabulary <tt>word</tt>, or
+     * <tt>-1</tt> if the word is not contained in the vocabulary. A word
+     * is no longer contained in the vocabulary once all documents that
+     * contained it are deleted and purged from the index by a merge.
+     *
+     * @param word a word
+     * @return the key of the word or <tt>-1</tt> if it is not in the vocabulary
+     */
+    public int getTermKey(String word) {
+        Integer key = termKeys.get(word);
+        return key == null || index.documentFrequency(key) == 0 ? -1 : key;
+    }
+
+    /**
+     * Returns the vocabulary word that is the most likely correction of the
+     * specified misspelled <tt>word</tt>, or <tt>null</tt> if there is no
+     * vocabulary word within two edits of it. Words with fewer edits are
+     * preferred, and among them the word contained in the most documents.
+     *
+     * @param word a word that is not contained in the vocabulary
+     * @return the most likely correction or <tt>null</tt>
+     */
+    public String getSuggestion(String word) {
+        for (int maxEdits = 1; maxEdits <= 2; maxEdits++) {
+            IntList ordinals = termDictionary.fuzzy(word, maxEdits, null);
+
+            int best = -1;
+            for (int i = 0; i < ordinals.size(); i++) {
+                int term = termDictionary.termKey(ordinals.get(i));
+                if (index.documentFrequency(term) == 0) {
+                    continue;
+                }
+                if (best < 0 || index.documentFrequency(term) > index.documentFrequency(best)) {
+                    best = term;
+                }
+            }
+            if (best >= 0) {
+                return vocabularyList.get(best);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads files of the directory that were added or modified since they
+     * were last loaded, and adds them to the {@link #getIndex() index} as a
+     * new segment. Documents of files that were modified, removed or are no
+     * longer accepted by the filter are {@linkplain #delete(Collection)
+     * deleted}, so that a modified file is replaced by its new version.
+     * Files and archives are recognized by their paths and modification
+     * times, and unchanged files are not read again. Words of added files
+     * extend the vocabulary, except words that are too long or were removed
+     * from the initial vocabulary for being contained in too many documents.
+     * Added files are not checked for near duplicates. A new
+     * {@linkplain #getDocumentFilter() filter} describes files skipped by
+     * this refresh.
+     * <p>
+     * The new index is published at once, while queries that already read
+     * the old index keep reading it. Segments of the index are then merged
+     * in the background, as chosen by the {@linkplain TieredMergePolicy}.
+     *
+     * @return the number of added documents
+     * @throws IOException if any added file fails to load and the options do
+     *         not say that such files are skipped, in which case no files
+     *         are added
+     * @throws IllegalStateException if this data loader is closed
+     */
+    public synchronized int refresh() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Data loader is closed.");
+        }
+        validateDirectory(dir);
+
+        InvertedIndex current = index;
+        Map<Path, IntList> known = new HashMap<>();
+        documents.forEach((path, doc) -> {
+            if (!current.isDeleted(doc)) {
+                known.computeIfAbsent(ArchiveReader.fileOf(path), file -> new IntList()).add(doc);
+            }
+        });
+        if (duplicates != null) {
+            for (int doc = 0, n = current.documentCount(); doc < n; doc++) {
+                for (Path path : duplicates.skippedDuplicates(doc)) {
+                    known.putIfAbsent(ArchiveReader.fileOf(path), new IntList());
+                }
+            }
+        }
+        filter = new DocumentFilter(dir, options);
+
+        int docBase = current.documentCount();
+        int termBase = vocabularyList.size();
+        LoaderVisitor visitor = new LoaderVisitor(options, docBase, known);
+        InvertedIndex refreshed;
+        boolean added = false;
+        long start = System.nanoTime();
+        try {
+            Files.walkFileTree(dir, visitor);
+            Metrics.record(Phase.DIRECTORY_WALK, start, visitor.documentCount());
+            for (IntList docs : known.values()) {
+                for (int i = 0; i < docs.size(); i++) {
+                    visitor.stale.add(docs.get(i));
+                }
+            }
+            if (visitor.documentCount() == 0) {
+                if (deleteDocuments(visitor.stale.toArray()) > 0) {
+                    scheduleMerge();
+                }
+                return 0;
+            }
+            pruneNewTerms(visitor, termBase);
+            refreshed = current.addSegment(visitor.documentCount(), visitor.source());
+            added = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            visitor.close();
+            if (!added) {
+                discardFrom(docBase, termBase);
+            }
+        }
+
+        if (vocabularyList.size() > termBase) {
+            termDictionary = new TermDictionary(vocabularyList);
+        }
+        if (visitor.checkpointOffsets != null) {
+            visitor.checkpointStarts.add(visitor.checkpointOffsets.size());
+            checkpoints = checkpoints.append(visitor.checkpointStarts, visitor.checkpointOffsets);
+        }
+        if (similarityGraph != null) {
+            start = System.nanoTime();
+            int dimensions = similarityGraph.getDimensions();
+            int count = visitor.documentCount();
+            float[] vectors = RandomProjection.project(refreshed, dimensions, docBase, docBase + count);
+            for (int doc = 0; doc < count; doc++) {
+                similarityGraph.add(vectors, doc * dimensions);
+            }
+            Metrics.record(Phase.SIMILARITY_GRAPH, start, count);
+        }
+
+        publish(refreshed);
+        deleteDocuments(visitor.stale.toArray());
+        scheduleMerge();
+        return visitor.documentCount();
+    }
+
+    /**
+     * Deletes documents of the specified files from the {@link #getIndex()
+     * index}, where a path of an archive deletes all of its entries. Deleted
+     * documents are no longer found by queries, while the table of documents keeps
+     * their paths, so that results that were found before can still be
+     * displayed. Postings of deleted documents are removed, and statistics
+     * of the index corrected, when their segments are merged in the
+     * background.
+     *
+     * @param paths paths to files or archives
+     * @return the number of deleted documents
+     * @throws IllegalStateException if this data loader is closed
+     */
+    public synchronized int delete(Collection<Path> paths) {
+        if (closed) {
+            throw new IllegalStateException("Data loader is closed.");
+        }
+        Set<Path> deleted = new HashSet<>();
+        for (Path path : paths) {
+            deleted.add(path.toAbsolutePath().normalize());
+        }
+
+        IntList docs = new IntList();
+        documents.forEach((path, doc) -> {
+            if (deleted.contains(path) || deleted.contains(ArchiveReader.fileOf(path))) {
+                docs.add(doc);
+            }
+        });
+        int count = deleteDocuments(docs.toArray());
+        if (count > 0) {
+            scheduleMerge();
+        }
+        return count;
+    }
+
+    /**
+     * Deletes documents with the specified keys from the index, recording
+     * the time it took.
+     *
+     * @param docs keys of documents
+     * @return the number of newly deleted documents
+     */
+    private int deleteDocuments(int[] docs) {
+        if (docs.length == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int count = index.deleteDocuments(docs);
+        Metrics.record(Phase.DOCUMENT_DELETION, start, count);
+        return count;
+    }
+
+    /**
+     * Merges all segments of the {@link #getIndex() index} into a single
+     * segment, after merges that are already scheduled, and waits until it
+     * is done. Postings of deleted documents are removed in the merged
+     * segment, so a single segment is merged as well if it has deleted
+     * documents that are not yet purged.
+     *
+     * @return the number of merged segments, or <tt>0</tt> if nothing was merged
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws IllegalStateException if this data loader is closed
+     */
+    public int forceMerge() throws InterruptedException {
+        Future<Integer> merge;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Data loader is closed.");
+            }
+            merge = merger().submit(() -> {
+                InvertedIndex snapshot = index;
+                int count = snapshot.segmentCount();
+                IndexSegment first = snapshot.segment(0);
+                boolean purge = first.deletedCount() > first.purgedCount();
+                return (count > 1 || purge) && merge(snapshot, 0, count) ? count : 0;
+            });
+        }
+
+        try {
+            return merge.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Merging segments failed.", cause);
+        }
+    }
+
+    /**
+     * Removes files whose keys start from <tt>docBase</tt> and vocabulary
+     * words whose keys start from <tt>termBase</tt>, which were loaded by a
+     * refresh that failed.
+     *
+     * @param docBase key of the first removed file
+     * @param termBase key of the first removed word
+     */
+    private void discardFrom(int docBase, int termBase) {
+        documents.truncate(docBase);
+        for (int term = termBase, n = vocabularyList.size(); term < n; term++) {
+            termKeys.remove(vocabularyList.get(term));
+        }
+        vocabularyList.subList(termBase, vocabularyList.size()).clear();
+    }
+
+    /**
+     * Returns the single thread that merges segments, starting it if it is
+     * not started.
      *
-     * @return the map in which file paths are associated with file keys
+     * @return the thread that merges segments
      */
-    public Map<Integer, Path> getFiles() {
-        return files;
+    private synchronized ExecutorService merger() {
+        if (merger == null) {
+            merger = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "segment-merger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return merger;
+    }
+
+    /**
+     * Schedules merges of segments of the index in the background, which
+     * go on for as long as the merge policy finds segments to be merged.
+     */
+    private void scheduleMerge() {
+        merger().execute(() -> {
+            while (true) {
+                InvertedIndex snapshot = index;
+                int[] sizes = new int[snapshot.segmentCount()];
+                int[] deleted = new int[sizes.length];
+                for (int i = 0; i < sizes.length; i++) {
+                    IndexSegment segment = snapshot.segment(i);
+                    sizes[i] = segment.documentCount() - segment.deletedCount();
+                    deleted[i] = segment.deletedCount() - segment.purgedCount();
+                }
+                int[] range = mergePolicy.findMerge(sizes, deleted);
+                if (range == null || !merge(snapshot, range[0], range[1])) {
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Merges segments of the specified <tt>snapshot</tt> of the index in
+     * range <tt>[from, to)</tt> and publishes the index with the merged
+     * segment. Queries are not blocked while segments are merged. If a
+     * segment was added to the index in the meantime, the merged segment
+     * replaces the same segments of the current index, which starts with
+     * all segments of the snapshot, since segments are merged by a single
+     * thread only.
+     * <p>
+     * Documents deleted while segments were being merged are deleted in the
+     * merged segment as well. Segments that are merged away are closed as
+     * soon as no query that {@linkplain #acquireIndex() acquired} an older
+     * index reads them.
+     *
+     * @param snapshot index whose segments are merged
+     * @param from index of the first merged segment, inclusive
+     * @param to index of the last merged segment, exclusive
+     * @return true if the merged segment was published, false if this data
+     *         loader was closed
+     */
+    private boolean merge(InvertedIndex snapshot, int from, int to) {
+        long start = System.nanoTime();
+        InvertedIndex merged;
+        try {
+            merged = snapshot.mergeSegments(from, to);
+        } catch (IllegalStateException e) {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                merged.segment(from).close();
+                return false;
+            }
+            InvertedIndex latest = index;
+            if (latest != snapshot) {
+                int count = merged.segmentCount();
+                IndexSegment[] segments = new IndexSegment[count + latest.segmentCount() - snapshot.segmentCount()];
+                for (int i = 0; i < count; i++) {
+                    segments[i] = merged.segment(i);
+                }
+                for (int i = snapshot.segmentCount(); i < latest.segmentCount(); i++) {
+                    segments[count + i - snapshot.segmentCount()] = latest.segment(i);
+                }
+                merged = latest.withSegments(segments);
+            }
+            int[] deleted = snapshot.deletedDocuments(snapshot.docBase(from), snapshot.docBase(to));
+            merged.deleteDocuments(deleted);
+            publish(merged);
+        }
+        Metrics.record(Phase.SEGMENT_MERGE, start, merged.segmentDocumentCount(from));
+        return true;
     }
 
     /**
-     * Returns the map in which file TF-IDF vectors are associated with file keys.
+     * Replaces the index by the specified new index, which holds the
+     * references of this data loader to segments it shares with the old
+     * index. References to segments of the old index that the new index does
+     * not contain are released, so they are closed once no query reads them.
      *
-     * @return the map in which file TF-IDF vectors are associated with file keys
+     * @param next the new index
      */
-    public Map<Integer, List<Double>> getFileVectors() {
-        return fileVectors;
+    private void publish(InvertedIndex next) {
+        InvertedIndex previous = index;
+        index = next;
+
+        Set<IndexSegment> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < next.segmentCount(); i++) {
+            kept.add(next.segment(i));
+        }
+        for (int i = 0; i < previous.segmentCount(); i++) {
+            if (!kept.contains(previous.segment(i))) {
+                previous.segment(i).decRef();
+            }
+        }
     }
 
     /**
@@ -166,23 +830,244 @@ public class DataLoader {
     }
 
     /**
-     * Loads all words from file specified by the <tt>file</tt> path, ignoring
+     * Removes terms that are longer than the maximal term length or whose
+     * document frequency is out of the range given by the specified
+     * <tt>options</tt> from the vocabulary and from postings collected by the
+     * <tt>visitor</tt>. Keys of the remaining terms are renumbered in the
+     * same order.
+     *
+     * @param visitor visitor that collected postings of all terms
+     * @param options options that control indexing
+     * @return numbers of terms removed for being too long, too rare and too common
+     * @throws IOException if an I/O error occurs while spilling postings
+     */
+    private int[] pruneTerms(LoaderVisitor visitor, IndexOptions options) throws IOException {
+        int[] pruned = new int[3];
+        int maxDf = (int) Math.floor(options.getMaxDocumentFraction() * documents.size());
+        int termCount = vocabularyList.size();
+
+        int[] termMap = new int[termCount];
+        int kept = 0;
+        for (int term = 0; term < termCount; term++) {
+            String word = vocabularyList.get(term);
+            int df = visitor.documentFrequency(term);
+            if (word.length() > options.getMaxTermLength()) {
+                pruned[0]++;
+            } else if (df < options.getMinDocumentFrequency()) {
+                pruned[1]++;
+            } else if (df > maxDf) {
+                pruned[2]++;
+                commonTerms.add(word);
+            } else {
+                vocabularyList.set(kept, word);
+                termMap[term] = kept++;
+                continue;
+            }
+            termMap[term] = -1;
+            termKeys.remove(word);
+        }
+        retainTerms(visitor, termMap, kept);
+        return pruned;
+    }
+
+    /**
+     * Removes terms first loaded by a {@linkplain #refresh() refresh}, whose
+     * keys start from <tt>firstTerm</tt>, from the vocabulary and from
+     * postings collected by the <tt>visitor</tt>, if they are longer than the
+     * maximal term length or were removed from the initial vocabulary for
+     * being contained in too many documents. Keys of older terms do not
+     * change.
+     *
+     * @param visitor visitor that collected postings of refreshed files
+     * @param firstTerm key of the first term loaded by the refresh
+     * @throws IOException if an I/O error occurs while spilling postings
+     */
+    private void pruneNewTerms(LoaderVisitor visitor, int firstTerm) throws IOException {
+        int termCount = vocabularyList.size();
+        int[] termMap = new int[termCount];
+        int kept = 0;
+        for (int term = 0; term < termCount; term++) {
+            String word = vocabularyList.get(term);
+            if (term >= firstTerm && (word.length() > options.getMaxTermLength() || commonTerms.contains(word))) {
+                termMap[term] = -1;
+                termKeys.remove(word);
+            } else {
+                vocabularyList.set(kept, word);
+                termMap[term] = kept++;
+            }
+        }
+        retainTerms(visitor, termMap, kept);
+    }
+
+    /**
+     * Keeps only those terms that are kept by the specified <tt>termMap</tt>
+     * in postings collected by the <tt>visitor</tt>, and renumbers keys of
+     * vocabulary words, whose first <tt>keptCount</tt> elements of the
+     * vocabulary list must already be the kept words in order.
+     *
+     * @param visitor visitor that collected postings
+     * @param termMap new keys of terms, negative for removed terms
+     * @param keptCount number of kept terms
+     * @throws IOException if an I/O error occurs while spilling postings
+     */
+    private void retainTerms(LoaderVisitor visitor, int[] termMap, int keptCount) throws IOException {
+        int termCount = vocabularyList.size();
+        if (keptCount == termCount) {
+            visitor.retainTerms(null, keptCount);
+            return;
+        }
+
+        visitor.retainTerms(termMap, keptCount);
+        vocabularyList.subList(keptCount, termCount).clear();
+        int first = 0;
+        while (termMap[first] == first) {
+            first++;
+        }
+        for (int term = first; term < keptCount; term++) {
+            termKeys.put(vocabularyList.get(term), term);
+        }
+    }
+
+    /**
+     * Loads all words from the specified input stream of a document, ignoring
      * all symbols but letters, which are determined by the
      * {@linkplain Character#isLetter(char)} method.
      *
-     * @param file path to file
-     * @return a list of words contained in the file, may contain duplicates
-     * @throws NullPointerException if <tt>file</tt> is <tt>null</tt>
-     * @throws RuntimeException if an error occurs while reading the file
+     * Positions of loaded words are added to the specified <tt>positions</tt>
+     * list and offsets of every n-th word to the <tt>checkpoints</tt> list, as
+     * described by the {@linkplain #getWords(String, IntList, IntList, boolean)}
+     * method. Offsets are numbers of bytes of the document itself, even where
+     * it is not valid <tt>UTF-8</tt>, so that every malformed sequence of
+     * bytes, which is decoded into a single replacement character, counts
+     * as many bytes as it takes in the document.
+     * <p>
+     * If the <tt>filter</tt> skips binary files, the start of the document is
+     * checked before the rest of it is read, and <tt>null</tt> is returned
+     * if it looks binary.
+     *
+     * @param in input stream of the document
+     * @param size expected size of the document in bytes, or <tt>-1</tt> if unknown
+     * @param filter filter of loaded files
+     * @param positions list where positions of words are added to
+     * @param checkpoints list where offsets of every n-th word are added to, may be <tt>null</tt>
+     * @param numericTokens true if letters joined to digits are loaded
+     * @return a list of words contained in the document, may contain duplicates,
+     *         or <tt>null</tt> if the document is binary
+     * @throws IOException if an error occurs while reading the document
      */
-    private static List<String> loadWords(Path file) {
-        String text;
-        try {
-            text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
-            return getWords(text);
-        } catch (Exception e) {
-            throw new RuntimeException("An error occured while reading file " + file, e);
+    private static List<String> loadWords(InputStream in, long size, DocumentFilter filter,
+            IntList positions, IntList checkpoints, boolean numericTokens) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = readBytes(in, size, filter);
+        if (bytes == null) {
+            return null;
+        }
+        Metrics.record(Phase.FILE_READ, start, bytes.length);
+
+        start = System.nanoTime();
+        IntList malformed = new IntList();
+        String text = decode(bytes, malformed);
+        List<String> words = getWords(text, positions, checkpoints, numericTokens, malformed);
+        Metrics.record(Phase.TOKENIZATION, start, words.size());
+        return words;
+    }
+
+    /**
+     * Decodes the specified <tt>UTF-8</tt> bytes into a string, replacing
+     * every malformed sequence of bytes by a single replacement character,
+     * as the {@linkplain String#String(byte[], java.nio.charset.Charset)}
+     * constructor does. For each replacement, its index in the string and
+     * the length of the replaced sequence in bytes are added to the
+     * <tt>malformed</tt> list.
+     *
+     * @param bytes bytes to be decoded
+     * @param malformed list where indexes and lengths of replaced sequences are added to
+     * @return the decoded string
+     */
+    private static String decode(byte[] bytes, IntList malformed) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        // UTF-8 never decodes into more characters than there are bytes
+        CharBuffer out = CharBuffer.allocate(bytes.length);
+        while (true) {
+            CoderResult result = decoder.decode(in, out, true);
+            if (result.isUnderflow()) {
+                break;
+            }
+            int length = result.length();
+            malformed.add(out.position());
+            malformed.add(length);
+            out.put('\uFFFD');
+            in.position(in.position() + length);
+        }
+        decoder.flush(out);
+        return new String(out.array(), 0, out.position());
+    }
+
+    /**
+     * Reads all bytes of the specified input stream of a document, whose
+     * size is expected to be <tt>size</tt> bytes, but may have changed since
+     * or be unknown. If the <tt>filter</tt> skips binary files, only the first
+     * {@value DocumentFilter#SNIFF_LENGTH} bytes are read and checked first,
+     * and <tt>null</tt> is returned if they look binary.
+     *
+     * @param in input stream of the document
+     * @param size expected size of the document in bytes, or <tt>-1</tt> if unknown
+     * @param filter filter of loaded files
+     * @return all bytes of the document, or <tt>null</tt> if it is binary
+     * @throws IOException if an error occurs while reading the document or
+     *         it is too large for an array
+     */
+    private static byte[] readBytes(InputStream in, long size, DocumentFilter filter) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Document is too large: " + size + " bytes");
+        }
+
+        byte[] bytes = new byte[size < 0 ? DocumentFilter.SNIFF_LENGTH : (int) size];
+        int length = 0;
+        if (filter.isSkipBinary()) {
+            length = readFully(in, bytes, 0, Math.min(bytes.length, DocumentFilter.SNIFF_LENGTH));
+            if (!filter.acceptsContent(bytes, length, Math.max(size, length))) {
+                return null;
+            }
         }
+        length += readFully(in, bytes, length, bytes.length - length);
+
+        int next = length < bytes.length ? -1 : in.read();
+        if (next < 0) {
+            return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 * length + DocumentFilter.SNIFF_LENGTH);
+        out.write(bytes, 0, length);
+        out.write(next);
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads up to <tt>length</tt> bytes from the input stream into the
+     * specified array, stopping only at the end of the stream.
+     *
+     * @param in an input stream
+     * @param bytes array the bytes are read into
+     * @param offset offset in the array at which bytes are stored
+     * @param length maximal number of bytes to read
+     * @return the number of bytes read
+     * @throws IOException if an error occurs while reading
+     */
+    private static int readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(bytes, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
     }
 
     /**
@@ -195,27 +1080,150 @@ public class DataLoader {
      * @throws NullPointerException if <tt>text</tt> is <tt>null</tt>
      */
     public static List<String> getWords(String text) {
+        return getWords(text, null);
+    }
+
+    /**
+     * Loads all words into a list from the specified <tt>text</tt> string,
+     * ignoring all symbols but letters, which are determined by the
+     * {@linkplain Character#isLetter(char)} method.
+     * <p>
+     * If the <tt>positions</tt> list is not <tt>null</tt>, the position of
+     * each returned word is added to it. A position of a word is the number of
+     * words that precede it in the text, <strong>including</strong> stopwords,
+     * so that distances between words are preserved.
+     *
+     * @param text text to be read
+     * @param positions list where positions of words are added to, may be <tt>null</tt>
+     * @return a list of words contained in the text, may contain duplicates
+     * @throws NullPointerException if <tt>text</tt> is <tt>null</tt>
+     */
+    public static List<String> getWords(String text, IntList positions) {
+        return getWords(text, positions, null);
+    }
+
+    /**
+     * Loads all words into a list from the specified <tt>text</tt> string,
+     * ignoring all symbols but letters, which are determined by the
+     * {@linkplain Character#isLetter(char)} method.
+     * <p>
+     * Positions of words are added to the <tt>positions</tt> list as described
+     * by the {@linkplain #getWords(String, IntList)} method. If the
+     * <tt>checkpoints</tt> list is not <tt>null</tt>, the offset of every
+     * {@value TokenCheckpoints#INTERVAL}-th word, including stopwords, is
+     * added to it. An offset of a word is the number of bytes that precede it
+     * in the <tt>UTF-8</tt> encoding of the text.
+     *
+     * @param text text to be read
+     * @param positions list where positions of words are added to, may be <tt>null</tt>
+     * @param checkpoints list where offsets of every n-th word are added to, may be <tt>null</tt>
+     * @return a list of words contained in the text, may contain duplicates
+     * @throws NullPointerException if <tt>text</tt> is <tt>null</tt>
+     */
+    public static List<String> getWords(String text, IntList positions, IntList checkpoints) {
+        return getWords(text, positions, checkpoints, true);
+    }
+
+    /**
+     * Loads all words into a list from the specified <tt>text</tt> string,
+     * as described by the {@linkplain #getWords(String, IntList, IntList)}
+     * method. If <tt>numericTokens</tt> is false, words that are immediately
+     * preceded or followed by a digit, such as <tt>x</tt> in <tt>0x1f</tt>,
+     * are skipped like stopwords.
+     *
+     * @param text text to be read
+     * @param positions list where positions of words are added to, may be <tt>null</tt>
+     * @param checkpoints list where offsets of every n-th word are added to, may be <tt>null</tt>
+     * @param numericTokens true if words joined to digits are loaded
+     * @return a list of words contained in the text, may contain duplicates
+     * @throws NullPointerException if <tt>text</tt> is <tt>null</tt>
+     */
+    public static List<String> getWords(String text, IntList positions, IntList checkpoints, boolean numericTokens) {
+        return getWords(text, positions, checkpoints, numericTokens, null);
+    }
+
+    /**
+     * Loads all words into a list from the specified <tt>text</tt> string,
+     * as described by the {@linkplain #getWords(String, IntList, IntList, boolean)}
+     * method. If the <tt>malformed</tt> list is not <tt>null</tt>, it holds
+     * pairs of indexes of replacement characters in the text and lengths of
+     * malformed sequences of bytes they replace, in ascending order, as
+     * filled by the {@linkplain #decode(byte[], IntList)} method, so that
+     * offsets of words are offsets in the undecoded bytes.
+     *
+     * @param text text to be read
+     * @param positions list where positions of words are added to, may be <tt>null</tt>
+     * @param checkpoints list where offsets of every n-th word are added to, may be <tt>null</tt>
+     * @param numericTokens true if words joined to digits are loaded
+     * @param malformed indexes and lengths of replaced sequences of bytes, may be <tt>null</tt>
+     * @return a list of words contained in the text, may contain duplicates
+     */
+    private static List<String> getWords(String text, IntList positions, IntList checkpoints,
+            boolean numericTokens, IntList malformed) {
         text = text.concat(" "); // add last space
         char[] chars = text.toCharArray();
 
         List<String> words = new ArrayList<>();
         StringBuilder sb = new StringBuilder();
+        int position = 0;
+        int offset = 0;
+        int wordOffset = 0;
+        boolean numeric = false;
+        int nextMalformed = 0;
 
         for (int i = 0; i < chars.length; i++) {
             if (Character.isLetter(chars[i])) {
+                if (sb.length() == 0) {
+                    wordOffset = offset;
+                    numeric = i > 0 && Character.isDigit(chars[i-1]);
+                }
                 sb.append(chars[i]);
             } else {
                 String word = sb.toString().trim().toLowerCase();
-                if (word.length() != 0 && !stopWords.contains(word)) {
-                    words.add(word);
+                if (word.length() != 0) {
+                    numeric |= Character.isDigit(chars[i]);
+                    if (!stopWords.contains(word) && (numericTokens || !numeric)) {
+                        words.add(word);
+                        if (positions != null) {
+                            positions.add(position);
+                        }
+                    }
+                    if (checkpoints != null && position % TokenCheckpoints.INTERVAL == 0) {
+                        checkpoints.add(wordOffset);
+                    }
+                    position++;
                 }
                 sb.setLength(0);
             }
+            if (malformed != null && nextMalformed < malformed.size() && malformed.get(nextMalformed) == i) {
+                offset += malformed.get(nextMalformed + 1);
+                nextMalformed += 2;
+            } else {
+                offset += utf8Length(chars[i]);
+            }
         }
 
         return words;
     }
 
+    /**
+     * Returns the number of bytes the specified character takes in the
+     * <tt>UTF-8</tt> encoding. Each half of a surrogate pair takes two bytes,
+     * which adds up to the four bytes of the supplementary character.
+     *
+     * @param c a character
+     * @return the number of bytes the character takes in <tt>UTF-8</tt>
+     */
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
     /**
      * Loads all words into a list from the specified <tt>text</tt> string,
      * ignoring all symbols but letters, which are determined by the
@@ -230,120 +1238,373 @@ public class DataLoader {
      */
     public List<String> getVocabularyWords(String text) {
         List<String> words = getWords(text);
-        words.retainAll(vocabularySet);
+        words.retainAll(termKeys.keySet());
         return words;
     }
 
     /**
-     * Fills IDF components of this object. The IDF components list must be
-     * initialized before calling this method.
-     * <p>
-     * This method shortens the execution time by a factor of 100 by
-     * transforming every list from the <tt>fileWords</tt> map to a set which is
-     * then asked if it contains a word from the vocabulary, for each word.
+     * Stops merging segments in the background and frees the off-heap memory
+     * of the inverted index, except for segments of an {@linkplain
+     * #acquireIndex() acquired} index, which are freed when it is released.
+     * This data loader must not be used after this method is called.
      */
-    private void fillIdfComponents() {
-        Integer nDocuments = files.keySet().size();
-
-        Map<Integer, Set<String>> fileVocabulary = new HashMap<>();
-        fileWords.forEach((fileKey, wordsList) -> {
-            fileVocabulary.put(fileKey, new HashSet<>(wordsList));
-        });
-
-        for (String word : vocabularySet) {
-            int nDocumentsContainingWord = 0;
-
-            for (Set<String> vocabulary : fileVocabulary.values()) {
-                if (vocabulary.contains(word)) {
-                    nDocumentsContainingWord++;
-                }
+    @Override
+    public void close() {
+        ExecutorService merger;
+        synchronized (this) {
+            if (closed) {
+                return;
             }
-
-            Double idf = Math.log((double) nDocuments / nDocumentsContainingWord);
-            idfComponents.add(idf);
-        }
-    }
-
-    /**
-     * Fills TF-IDF vectors of this object. The file vectors field must be
-     * initialized before calling this method.
-     */
-    private void fillFileVectors() {
-        for (Integer key : files.keySet()) {
-            List<Double> tfIdfVector = generateTfIdfVector(fileWords.get(key));
-            fileVectors.put(key, tfIdfVector);
+            closed = true;
+            merger = this.merger;
         }
-    }
-
-    /**
-     * Generates a single TF-IDF vector based on the specified list of
-     * <tt>words</tt> considering only the word contained in this object's
-     * vocabulary.
-     * <p>
-     * To speed up the process, the list of words is transformed into a set,
-     * so the set is first asked if it contains a word from the vocabulary,
-     * and if it does then the list is asked for the frequency of the word.
-     *
-     * @param words list of words
-     * @return a TF-IDF vector
-     */
-    public List<Double> generateTfIdfVector(List<String> words) {
-        List<Double> tfIdfVector = new ArrayList<>();
-
-        Set<String> wordsSet = new HashSet<>(words);  // serves to speed up the process
-
-        for (int i = 0, n = vocabularyList.size(); i < n; i++) {
-            String word = vocabularyList.get(i);
-            if (!wordsSet.contains(word)) {
-                tfIdfVector.add(0.0);
-                continue;
+        if (merger != null) {
+            merger.shutdown();
+            try {
+                merger.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-
-            long tf = Collections.frequency(words, word);
-            double idf = idfComponents.get(i);
-
-            tfIdfVector.add(tf*idf);
         }
-
-        return tfIdfVector;
+        index.release();
     }
 
     /**
-     * This class is a simple file visitor that re-implements two methods of the
-     * {@linkplain SimpleFileVisitor} class:
+     * This class is a simple file visitor that re-implements three methods of
+     * the {@linkplain SimpleFileVisitor} class:
      * <ul>
+     * <li>the {@link #preVisitDirectory(Path, BasicFileAttributes) preVisitDirectory}
+     * method, which skips subtrees of excluded directories,
      * <li>the {@link #visitFile(Path, BasicFileAttributes) visitFile} method and
      * <li>the {@link #visitFileFailed(Path, IOException) visitFileFailed} method.
      * </ul>
      * <p>
-     * The <tt>visitFile</tt> method fills map of files, vocabulary for each file
-     * and the whole vocabulary set.
+     * The <tt>visitFile</tt> method fills the table of documents, the whole vocabulary
+     * and posting lists of all terms. Since files are visited in ascending
+     * order of their keys, each posting list is sorted by the document key.
+     * Files that are not accepted by the {@linkplain DocumentFilter} are
+     * skipped, as well as files that fail to load if the options say so.
+     * Each entry of a compressed file or an archive is loaded as a document
+     * of its own by the {@linkplain ArchiveReader}, if the options say so.
      *
      * @author Mario Bobic
      */
     private class LoaderVisitor extends SimpleFileVisitor<Path> {
 
+        /** Key of the first loaded file, which is local key <tt>0</tt> of postings. */
+        private final int docBase;
         /** Key of the file used by maps. */
-        private int fileKey = 0;
+        private int fileKey;
+        /** Keys of live documents of loaded files and archives, removed when visited. */
+        private final Map<Path, IntList> known;
+        /** Keys of documents of loaded files that were modified. */
+        private final IntList stale = new IntList();
+        /** Time of the last modification of the visited file, in milliseconds. */
+        private long modifiedTime;
+        /** Clusters the loaded files are added to, or <tt>null</tt>. */
+        private final NearDuplicates clusters;
+
+        /** Posting lists of all terms, indexed by term keys, <tt>null</tt> if there are none. */
+        private List<IntList> postings = new ArrayList<>();
+        /** Positions of all terms, indexed by term keys, or <tt>null</tt>. */
+        private List<IntList> positions;
+        /** Posting lists spilled to disk, or <tt>null</tt> if they are kept in lists. */
+        private PostingsRuns runs;
+        /** Index of the first word offset of each file, or <tt>null</tt>. */
+        private IntList checkpointStarts;
+        /** Offsets of every n-th word of all files, or <tt>null</tt>. */
+        private IntList checkpointOffsets;
+        /** Indicates if letters joined to digits are loaded. */
+        private boolean numericTokens;
+        /** Indicates if near duplicates of indexed documents are skipped. */
+        private boolean skipDuplicates;
+        /** Indicates if files that fail to load are skipped. */
+        private boolean skipErrors;
+        /** Indicates if entries of archives are loaded. */
+        private boolean archives;
+
+        /**
+         * Constructs an instance of {@code LoaderVisitor} that collects
+         * positions of terms and offsets of words, skips letters joined to
+         * digits and spills postings to disk if the specified
+         * <tt>options</tt> say so.
+         *
+         * @param options options that control indexing
+         */
+        public LoaderVisitor(IndexOptions options) {
+            this(options, 0, new HashMap<>());
+        }
+
+        /**
+         * Constructs an instance of {@code LoaderVisitor} as described by the
+         * {@linkplain #LoaderVisitor(IndexOptions)} constructor, which skips
+         * <tt>known</tt> files and archives that were not modified since
+         * their documents were loaded, and gives loaded files keys starting
+         * from <tt>docBase</tt>. Visited files are removed from the
+         * <tt>known</tt> map, and documents of modified files are added to
+         * the {@linkplain #stale} list. Keys of documents in collected
+         * postings are local, starting from <tt>0</tt>. Near duplicates are
+         * detected only if no files were loaded before.
+         *
+         * @param options options that control indexing
+         * @param docBase key of the first loaded file
+         * @param known keys of live documents of loaded files and archives
+         */
+        public LoaderVisitor(IndexOptions options, int docBase, Map<Path, IntList> known) {
+            this.docBase = docBase;
+            this.fileKey = docBase;
+            this.known = known;
+            this.clusters = docBase == 0 ? duplicates : null;
+            numericTokens = options.isNumericTokens();
+            skipDuplicates = options.getDuplicateMode() == DuplicateMode.SKIP;
+            skipErrors = options.isSkipErrors();
+            archives = options.isArchives();
+            if (options.isPositions()) {
+                positions = new ArrayList<>();
+                checkpointStarts = new IntList();
+                checkpointOffsets = new IntList();
+            }
+            if (options.getBuildMemory() > 0) {
+                runs = new PostingsRuns(options.isPositions(), options.getBuildMemory());
+            }
+        }
+
+        /**
+         * Returns the number of loaded documents.
+         *
+         * @return the number of loaded documents
+         */
+        public int documentCount() {
+            return fileKey - docBase;
+        }
+
+        /**
+         * Returns the number of loaded documents containing the term with
+         * the specified key.
+         *
+         * @param term key of the term
+         * @return the number of documents containing the term
+         */
+        public int documentFrequency(int term) {
+            if (runs != null) {
+                return runs.addedFrequency(term);
+            }
+            IntList list = term < postings.size() ? postings.get(term) : null;
+            return list == null ? 0 : list.size() / 2;
+        }
+
+        /**
+         * Keeps postings of only those terms that are kept by the specified
+         * <tt>termMap</tt>, renumbering them as described by the
+         * {@linkplain PostingsRuns#finish(int[], int)} method. Kept terms
+         * that occur in no loaded document have no postings. Must be called
+         * once after all documents are loaded.
+         *
+         * @param termMap new keys of terms, or <tt>null</tt> to keep all terms
+         * @param keptCount number of kept terms
+         * @throws IOException if an I/O error occurs while spilling postings
+         */
+        public void retainTerms(int[] termMap, int keptCount) throws IOException {
+            if (runs != null) {
+                runs.finish(termMap, keptCount);
+                return;
+            }
+            int termCount = termMap == null ? keptCount : termMap.length;
+            while (postings.size() < termCount) {
+                postings.add(null);
+                if (positions != null) {
+                    positions.add(null);
+                }
+            }
+            if (termMap == null) {
+                return;
+            }
+
+            for (int term = 0; term < termCount; term++) {
+                int kept = termMap[term];
+                if (kept >= 0) {
+                    postings.set(kept, postings.get(term));
+                    if (positions != null) {
+                        positions.set(kept, positions.get(term));
+                    }
+                }
+            }
+            postings.subList(keptCount, termCount).clear();
+            if (positions != null) {
+                positions.subList(keptCount, termCount).clear();
+            }
+        }
+
+        /**
+         * Returns the source of posting lists of all kept terms.
+         *
+         * @return the source of posting lists of all kept terms
+         */
+        public PostingsSource source() {
+            return runs != null ? runs : PostingsSource.of(postings, positions);
+        }
+
+        /**
+         * Deletes temporary files of spilled postings, if there are any.
+         *
+         * @throws IOException if an I/O error occurs while deleting files
+         */
+        public void close() throws IOException {
+            if (runs != null) {
+                runs.close();
+            }
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            return filter.acceptsDirectory(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+        }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            if (Files.isRegularFile(file)) {
-                files.put(fileKey, file.toAbsolutePath().normalize());
+            boolean link = attrs.isSymbolicLink() && Files.isRegularFile(file);
+            if (!attrs.isRegularFile() && !link) {
+                return FileVisitResult.CONTINUE;
+            }
+            long size = link ? Files.size(file) : attrs.size();
+            Path path = file.toAbsolutePath().normalize();
+            modifiedTime = (link ? Files.getLastModifiedTime(file) : attrs.lastModifiedTime()).toMillis();
+            IntList loaded = known.remove(path);
+            if (loaded != null) {
+                if (loaded.size() == 0 || documents.modifiedTime(loaded.get(0)) == modifiedTime) {
+                    return FileVisitResult.CONTINUE;
+                }
+                for (int i = 0; i < loaded.size(); i++) {
+                    stale.add(loaded.get(i));
+                }
+            }
 
-                List<String> words = loadWords(file);
+            if (archives && ArchiveReader.isArchive(file)) {
+                if (filter.acceptsArchive(file, size)) {
+                    try {
+                        ArchiveReader.read(path, (entry, entrySize, in) -> {
+                            if (filter.acceptsFile(entry, entrySize)) {
+                                addDocument(entry, entrySize, in);
+                            }
+                        });
+                    } catch (UncheckedIOException e) {
+                        // spilling postings failed, not reading the archive
+                        throw e;
+                    } catch (IOException | RuntimeException e) {
+                        if (!skipErrors) {
+                            throw new IOException("An error occured while reading archive " + file, e);
+                        }
+                        filter.addFailed(path, e);
+                    }
+                }
+            } else if (filter.acceptsFile(file, size)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    addDocument(path, size, in);
+                } catch (IOException e) {
+                    if (!skipErrors) {
+                        throw new IOException("An error occured while reading file " + file, e);
+                    }
+                    filter.addFailed(path, e);
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
 
-                fileWords.put(fileKey, words);
-                vocabularySet.addAll(words);
+        /**
+         * Loads the document with the specified <tt>path</tt> from the
+         * specified input stream, adding it to the table of documents and its words
+         * to the vocabulary and posting lists, unless it is binary or a
+         * skipped near duplicate.
+         *
+         * @param path path of the document
+         * @param size expected size of the document in bytes, or <tt>-1</tt> if unknown
+         * @param in input stream of the document
+         * @throws IOException if an error occurs while reading the document
+         */
+        private void addDocument(Path path, long size, InputStream in) throws IOException {
+            IntList wordPositions = new IntList();
+            int checkpointStart = checkpointOffsets == null ? 0 : checkpointOffsets.size();
+            List<String> words = loadWords(in, size, filter, wordPositions, checkpointOffsets, numericTokens);
+            if (words == null) {
+                return;
+            }
 
-                fileKey++;
+            if (clusters != null) {
+                int representative = clusters.representative(words);
+                if (skipDuplicates && representative >= 0) {
+                    clusters.addSkipped(representative, path);
+                    if (checkpointOffsets != null) {
+                        checkpointOffsets.truncate(checkpointStart);
+                    }
+                    return;
+                }
+                clusters.add(fileKey, representative);
+            }
+
+            documents.add(path, modifiedTime);
+            if (checkpointOffsets != null) {
+                checkpointStarts.add(checkpointStart);
+            }
+
+            Map<String, IntList> occurrences = new LinkedHashMap<>();
+            for (int i = 0, n = words.size(); i < n; i++) {
+                occurrences.computeIfAbsent(words.get(i), w -> new IntList()).add(wordPositions.get(i));
+            }
+
+            int doc = fileKey - docBase;
+            occurrences.forEach((word, occurrencePositions) -> {
+                Integer termKey = termKeys.get(word);
+                if (termKey == null) {
+                    termKey = vocabularyList.size();
+                    termKeys.put(word, termKey);
+                    vocabularyList.add(word);
+                }
+
+                if (runs != null) {
+                    runs.add(termKey, doc, occurrencePositions);
+                    return;
+                }
+
+                while (postings.size() <= termKey) {
+                    postings.add(null);
+                    if (positions != null) {
+                        positions.add(null);
+                    }
+                }
+                IntList list = postings.get(termKey);
+                if (list == null) {
+                    list = new IntList();
+                    postings.set(termKey, list);
+                    if (positions != null) {
+                        positions.set(termKey, new IntList());
+                    }
+                }
+                list.add(doc);
+                list.add(occurrencePositions.size());
+
+                if (positions != null) {
+                    IntList termPositions = positions.get(termKey);
+                    for (int i = 0, n = occurrencePositions.size(); i < n; i++) {
+                        termPositions.add(occurrencePositions.get(i));
+                    }
+                }
+            });
+
+            fileKey++;
+            if (runs != null) {
+                try {
+                    runs.endDocument();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to spill postings to disk.", e);
+                }
             }
-            return FileVisitResult.CONTINUE;
         }
 
         @Override
         public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-            if (Files.isRegularFile(file)) {
+            if (skipErrors) {
+                filter.addFailed(file, exc);
+            } else if (Files.isRegularFile(file)) {
                 throw new IOException("An error occured while reading file " + file, exc);
             }
             return FileVisitResult.CONTINUE;
@@ -0,0 +1,887 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Clusters documents of an {@linkplain InvertedIndex} into topics by
+ * mini-batch spherical k-means over their sparse document vectors, weighted
+ * by the {@linkplain ScoringModel scoring model} of the index and normalized
+ * to unit length. Each document belongs to the cluster whose centroid has
+ * the greatest cosine similarity to it, and each centroid is kept at unit
+ * length.
+ * <p>
+ * Document vectors are never stored as a whole. Documents are split into
+ * blocks of consecutive keys, and in each epoch the blocks are visited in
+ * random order, a batch of blocks at a time. Vectors of a batch are read
+ * from posting lists of all terms at once, their documents are assigned to
+ * the nearest centroids and the centroids are moved towards them, each by
+ * a learning rate inverse to the number of documents it was given so far.
+ * An epoch reads every posting once, so its time is linear in the number of
+ * postings times the number of clusters. Epochs are repeated until fewer
+ * than {@value #CONVERGENCE_PERCENT}% of documents change their cluster, at
+ * most {@value #MAX_EPOCHS} times, after which all documents are assigned
+ * to the final centroids.
+ * <p>
+ * Memory is bounded by a budget. Half of it is given to dense centroids, so
+ * only terms contained in the most documents are used if there are too many
+ * terms, and the other half to vectors of a batch, which determines the
+ * size of a batch. Reading and assigning a batch is done in parallel by a
+ * {@linkplain ForkJoinPool}, while moving centroids is sequential, so the
+ * result does not depend on the number of threads. Besides the budget,
+ * clusters keep one <tt>int</tt> per document and
+ * {@value #TOP_TERMS} top terms per cluster, and one <tt>float</tt> per
+ * document is used while clustering.
+ *
+ * @author Mario Bobic
+ */
+public class DocumentClusters {
+
+    /** Maximal number of clusters. */
+    public static final int MAX_CLUSTERS = 1000;
+    /** Default memory budget, in bytes. */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    /** Maximal number of epochs. */
+    public static final int MAX_EPOCHS = 10;
+    /** Percent of documents changing their cluster below which clustering stops. */
+    public static final double CONVERGENCE_PERCENT = 0.5;
+    /** Number of top terms kept for each cluster. */
+    public static final int TOP_TERMS = 10;
+
+    /** Maximal number of documents in a block. */
+    private static final int MAX_BLOCK_SIZE = 1024;
+    /** Maximal number of documents in a batch. */
+    private static final int MAX_BATCH_SIZE = 8192;
+    /** Estimated number of bytes taken by a term of a batch vector while it is read. */
+    private static final int ENTRY_BYTES = 20;
+    /** Least scale of a centroid before it is applied to the centroid. */
+    private static final double MIN_SCALE = 1e-20;
+    /** Seed of random choices. */
+    private static final long SEED = 0x1B873593L;
+
+    /** Number of clusters. */
+    private final int clusterCount;
+    /** Cluster of each document, <tt>-1</tt> if it has no used terms. */
+    private final int[] assignments;
+    /** Number of documents of each cluster. */
+    private final int[] sizes;
+    /** Keys of top terms of each cluster. */
+    private final int[][] topTerms;
+    /** Number of terms used for clustering. */
+    private final int featureCount;
+    /** Number of epochs done. */
+    private int epochs;
+    /** Mean cosine similarity of documents to centroids of their clusters. */
+    private double meanSimilarity;
+
+    /** Index whose documents are clustered. */
+    private final InvertedIndex index;
+    /** Model by which document vectors are weighted. */
+    private final ScoringModel model;
+    /** Number of documents. */
+    private final int documentCount;
+    /** Pool of threads that read and assign batches. */
+    private final ForkJoinPool pool;
+    /** Number of tasks a batch is split into. */
+    private final int taskCount;
+
+    /** Key of each used term, in ascending order. */
+    private int[] features;
+    /** IDF of each used term. */
+    private double[] featureIdfs;
+    /** Inverse norm of each document vector. */
+    private float[] inverseNorms;
+    /** Number of documents in a block. */
+    private int blockSize;
+    /** Number of blocks in a batch. */
+    private int blocksPerBatch;
+
+    /** Centroids without their scales, stored term-major. */
+    private float[] centroids;
+    /** Scale of each centroid. */
+    private double[] scales;
+    /** Squared norm of each scaled centroid. */
+    private double[] squaredNorms;
+    /** Number of documents each centroid was moved towards, plus one. */
+    private double[] counts;
+
+    /**
+     * Constructs an instance of {@code DocumentClusters} by clustering
+     * documents of the specified <tt>index</tt> into <tt>k</tt> clusters
+     * within the specified memory budget, using the specified number of
+     * threads.
+     *
+     * @param index an inverted index
+     * @param k number of clusters
+     * @param memoryBudget memory budget, in bytes
+     * @param parallelism number of threads
+     * @throws IllegalArgumentException if <tt>k</tt> is not in range
+     *         <tt>[1, {@value #MAX_CLUSTERS}]</tt> or is greater than the
+     *         number of documents with terms, or the budget is too small
+     */
+    public DocumentClusters(InvertedIndex index, int k, long memoryBudget, int parallelism) {
+        if (k < 1 || k > MAX_CLUSTERS) {
+            throw new IllegalArgumentException("Number of clusters must be in range [1," + MAX_CLUSTERS + "]: " + k);
+        }
+        long featureBudget = memoryBudget / 2 / ((long) Float.BYTES * k);
+        if (featureBudget < 1) {
+            throw new IllegalArgumentException("Memory budget is too small for " + k + " clusters: " + memoryBudget);
+        }
+
+        this.index = index;
+        this.model = index.getScoringModel();
+        this.documentCount = index.documentCount();
+        this.clusterCount = k;
+        this.featureCount = (int) Math.min(index.termCount(), Math.min(featureBudget, Integer.MAX_VALUE / k));
+        this.taskCount = Math.max(1, parallelism) * 4;
+
+        selectFeatures();
+        long entries = computeNorms();
+
+        int clustered = 0;
+        for (float inverseNorm : inverseNorms) {
+            if (inverseNorm > 0) {
+                clustered++;
+            }
+        }
+        if (clustered < k) {
+            throw new IllegalArgumentException("Only " + clustered + " documents can be clustered into " + k + " clusters.");
+        }
+
+        long averageEntries = entries / Math.max(1, documentCount) + 1;
+        long batchSize = (memoryBudget / 2) / ENTRY_BYTES / averageEntries;
+        batchSize = Math.max(batchSize, Math.min(documentCount, 4L * k));
+        batchSize = Math.max(1, Math.min(batchSize, Math.max(MAX_BATCH_SIZE, 4L * k)));
+        blockSize = (int) Math.min(MAX_BLOCK_SIZE, batchSize);
+        blocksPerBatch = (int) Math.max(1, batchSize / blockSize);
+
+        assignments = new int[documentCount];
+        Arrays.fill(assignments, -1);
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            cluster();
+        } finally {
+            pool.shutdown();
+        }
+
+        sizes = new int[k];
+        for (int cluster : assignments) {
+            if (cluster >= 0) {
+                sizes[cluster]++;
+            }
+        }
+        topTerms = new int[k][];
+        for (int cluster = 0; cluster < k; cluster++) {
+            topTerms[cluster] = findTopTerms(cluster);
+        }
+
+        features = null;
+        featureIdfs = null;
+        inverseNorms = null;
+        centroids = null;
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return the number of clusters
+     */
+    public int clusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Returns the number of documents, clustered or not.
+     *
+     * @return the number of documents
+     */
+    public int documentCount() {
+        return assignments.length;
+    }
+
+    /**
+     * Returns the cluster of the specified document, or <tt>-1</tt> if the
+     * document has none of the terms used for clustering.
+     *
+     * @param doc key of the document
+     * @return the cluster of the document, or <tt>-1</tt>
+     */
+    public int clusterOf(int doc) {
+        return assignments[doc];
+    }
+
+    /**
+     * Returns the number of documents of the specified cluster.
+     *
+     * @param cluster the cluster
+     * @return the number of documents of the cluster
+     */
+    public int size(int cluster) {
+        return sizes[cluster];
+    }
+
+    /**
+     * Returns keys of at most {@value #TOP_TERMS} terms with the greatest
+     * weights in the centroid of the specified cluster, ordered by
+     * descending weight.
+     *
+     * @param cluster the cluster
+     * @return keys of top terms of the cluster
+     */
+    public int[] topTerms(int cluster) {
+        return topTerms[cluster].clone();
+    }
+
+    /**
+     * Returns the number of terms used for clustering, which is less than
+     * the number of terms if they did not fit into the memory budget.
+     *
+     * @return the number of terms used for clustering
+     */
+    public int featureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Returns the number of epochs done before clustering stopped.
+     *
+     * @return the number of epochs
+     */
+    public int epochs() {
+        return epochs;
+    }
+
+    /**
+     * Returns the mean cosine similarity of clustered documents to centroids
+     * of their clusters, which is greater for tighter clusters.
+     *
+     * @return the mean cosine similarity of documents to their centroids
+     */
+    public double meanSimilarity() {
+        return meanSimilarity;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by clusters.
+     *
+     * @return the estimated number of heap bytes taken by clusters
+     */
+    public long heapBytes() {
+        long bytes = MemoryEstimator.array(assignments.length, Integer.BYTES)
+                + MemoryEstimator.array(sizes.length, Integer.BYTES)
+                + MemoryEstimator.array(topTerms.length, MemoryEstimator.REFERENCE);
+        for (int[] terms : topTerms) {
+            bytes += MemoryEstimator.array(terms.length, Integer.BYTES);
+        }
+        return bytes;
+    }
+
+    /**
+     * Selects terms used for clustering, which are all terms or, if they do
+     * not fit into the memory budget, terms contained in the most documents.
+     */
+    private void selectFeatures() {
+        int termCount = index.termCount();
+        long[] order = new long[termCount];
+        for (int term = 0; term < termCount; term++) {
+            order[term] = (long) (Integer.MAX_VALUE - index.documentFrequency(term)) << 32 | term;
+        }
+        Arrays.sort(order);
+
+        features = new int[featureCount];
+        for (int i = 0; i < featureCount; i++) {
+            features[i] = (int) order[i];
+        }
+        // Terms are read in ascending order of their keys
+        Arrays.sort(features);
+        featureIdfs = new double[featureCount];
+        for (int i = 0; i < featureCount; i++) {
+            featureIdfs[i] = model.idf(index, features[i]);
+        }
+    }
+
+    /**
+     * Computes inverse norms of document vectors of used terms and returns
+     * the number of their non-zero components.
+     *
+     * @return the number of non-zero components of document vectors
+     */
+    private long computeNorms() {
+        double[] squares = new double[documentCount];
+        long entries = 0;
+        PostingsCursor cursor = index.newCursor();
+        for (int f = 0; f < featureCount; f++) {
+            cursor.reset(features[f]);
+            for (int doc; (doc = cursor.nextDoc()) != PostingsCursor.NO_MORE_DOCS; ) {
+                double weight = model.tf(index, doc, cursor.freq()) * featureIdfs[f];
+                squares[doc] += weight * weight;
+                entries++;
+            }
+        }
+
+        inverseNorms = new float[documentCount];
+        for (int doc = 0; doc < documentCount; doc++) {
+            if (squares[doc] > 0) {
+                inverseNorms[doc] = (float) (1 / Math.sqrt(squares[doc]));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Runs epochs of mini-batch k-means until clusters converge, then assigns
+     * all documents to the final centroids.
+     */
+    private void cluster() {
+        Random random = new Random(SEED);
+        int blockCount = (documentCount + blockSize - 1) / blockSize;
+        int[] order = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            order[i] = i;
+        }
+
+        while (epochs < MAX_EPOCHS) {
+            for (int i = blockCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int block = order[i];
+                order[i] = order[j];
+                order[j] = block;
+            }
+
+            long changes = 0;
+            for (int i = 0; i < blockCount; i += blocksPerBatch) {
+                int[] blocks = Arrays.copyOfRange(order, i, Math.min(blockCount, i + blocksPerBatch));
+                Arrays.sort(blocks);
+                Batch batch = read(blocks);
+                if (centroids == null) {
+                    seed(batch, random);
+                }
+
+                float[] similarities = new float[batch.slotCount()];
+                int[] labels = assign(batch, similarities);
+                for (int slot = 0; slot < labels.length; slot++) {
+                    if (labels[slot] >= 0) {
+                        int doc = batch.docs[slot];
+                        if (assignments[doc] != labels[slot]) {
+                            assignments[doc] = labels[slot];
+                            changes++;
+                        }
+                        move(batch, slot, labels[slot]);
+                    }
+                }
+                normalizeCentroids();
+            }
+            epochs++;
+            recomputeNorms();
+            if (changes * 100.0 < CONVERGENCE_PERCENT * documentCount) {
+                break;
+            }
+        }
+
+        double sum = 0;
+        long clustered = 0;
+        for (int first = 0; first < blockCount; first += blocksPerBatch) {
+            int[] blocks = new int[Math.min(blocksPerBatch, blockCount - first)];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = first + i;
+            }
+            Batch batch = read(blocks);
+            float[] similarities = new float[batch.slotCount()];
+            int[] labels = assign(batch, similarities);
+            for (int slot = 0; slot < labels.length; slot++) {
+                if (labels[slot] >= 0) {
+                    assignments[batch.docs[slot]] = labels[slot];
+                    sum += similarities[slot];
+                    clustered++;
+                }
+            }
+        }
+        meanSimilarity = clustered == 0 ? 0 : sum / clustered;
+    }
+
+    /**
+     * Reads normalized vectors of documents of the specified blocks, which
+     * are sorted, from posting lists of all used terms. Terms are split into
+     * ranges read in parallel, and vectors are then gathered by document.
+     *
+     * @param blocks indexes of blocks, sorted
+     * @return vectors of documents of the blocks
+     */
+    private Batch read(int[] blocks) {
+        List<ReadTask> tasks = new ArrayList<>();
+        int step = Math.max(1, (featureCount + taskCount - 1) / taskCount);
+        for (int from = 0; from < featureCount; from += step) {
+            tasks.add(new ReadTask(blocks, from, Math.min(featureCount, from + step)));
+        }
+        for (ReadTask task : tasks) {
+            pool.execute(task);
+        }
+
+        Batch batch = new Batch(blocks);
+        int slots = batch.slotCount();
+        int[] starts = new int[slots + 1];
+        List<Entries> parts = new ArrayList<>();
+        for (ReadTask task : tasks) {
+            Entries entries = task.join();
+            parts.add(entries);
+            for (int i = 0; i < entries.size; i++) {
+                starts[batch.slotOf(entries.docs[i]) + 1]++;
+            }
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            starts[slot + 1] += starts[slot];
+        }
+
+        int[] next = Arrays.copyOf(starts, slots);
+        batch.starts = starts;
+        batch.features = new int[starts[slots]];
+        batch.weights = new float[starts[slots]];
+        for (Entries entries : parts) {
+            for (int i = 0; i < entries.size; i++) {
+                int position = next[batch.slotOf(entries.docs[i])]++;
+                batch.features[position] = entries.features[i];
+                batch.weights[position] = entries.weights[i];
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Chooses initial centroids among documents of the specified batch by
+     * k-means++, where each following centroid is a document chosen with
+     * probability proportional to its squared distance to the nearest
+     * centroid chosen so far.
+     *
+     * @param batch the first batch
+     * @param random generator of random choices
+     */
+    private void seed(Batch batch, Random random) {
+        int k = clusterCount;
+        centroids = new float[featureCount * k];
+        scales = new double[k];
+        squaredNorms = new double[k];
+        counts = new double[k];
+
+        IntList candidates = new IntList();
+        for (int slot = 0; slot < batch.slotCount(); slot++) {
+            if (batch.starts[slot + 1] > batch.starts[slot]) {
+                candidates.add(slot);
+            }
+        }
+        int n = candidates.size();
+        double[] distances = new double[n];
+        Arrays.fill(distances, Double.MAX_VALUE);
+        float[] dense = new float[featureCount];
+
+        int chosen = candidates.get(random.nextInt(n));
+        for (int cluster = 0; cluster < k; cluster++) {
+            for (int i = batch.starts[chosen]; i < batch.starts[chosen + 1]; i++) {
+                centroids[batch.features[i] * k + cluster] = batch.weights[i];
+                dense[batch.features[i]] = batch.weights[i];
+            }
+            scales[cluster] = 1;
+            squaredNorms[cluster] = 1;
+            counts[cluster] = 1;
+
+            double total = 0;
+            for (int c = 0; c < n; c++) {
+                int slot = candidates.get(c);
+                double similarity = 0;
+                for (int i = batch.starts[slot]; i < batch.starts[slot + 1]; i++) {
+                    similarity += batch.weights[i] * dense[batch.features[i]];
+                }
+                double distance = Math.max(0, 1 - similarity);
+                distances[c] = Math.min(distances[c], distance * distance);
+                total += distances[c];
+            }
+            for (int i = batch.starts[chosen]; i < batch.starts[chosen + 1]; i++) {
+                dense[batch.features[i]] = 0;
+            }
+
+            // Chooses the next centroid, uniformly if all documents are covered
+            double target = random.nextDouble() * total;
+            int next = n - 1;
+            for (int c = 0; c < n && total > 0; c++) {
+                target -= distances[c];
+                if (target < 0) {
+                    next = c;
+                    break;
+                }
+            }
+            chosen = total > 0 ? candidates.get(next) : candidates.get(random.nextInt(n));
+        }
+    }
+
+    /**
+     * Assigns documents of the specified batch to the nearest centroids in
+     * parallel, storing cosine similarities to the centroids into the
+     * specified array. Documents without terms are given the cluster
+     * <tt>-1</tt>.
+     *
+     * @param batch the batch
+     * @param similarities array for similarities to the nearest centroids
+     * @return the nearest cluster of each slot of the batch
+     */
+    private int[] assign(Batch batch, float[] similarities) {
+        int[] labels = new int[batch.slotCount()];
+        int step = Math.max(64, (labels.length + taskCount - 1) / taskCount);
+        pool.invoke(new AssignTask(batch, labels, similarities, 0, labels.length, step));
+        return labels;
+    }
+
+    /**
+     * Moves the centroid of the specified cluster towards the vector of the
+     * specified slot of the batch, by the learning rate inverse to the number
+     * of documents given to the centroid. The centroid is scaled lazily, so
+     * the move takes time proportional to the number of terms of the vector.
+     *
+     * @param batch the batch
+     * @param slot slot of the document
+     * @param cluster the cluster
+     */
+    private void move(Batch batch, int slot, int cluster) {
+        int k = clusterCount;
+        double eta = 1 / ++counts[cluster];
+        double scale = scales[cluster];
+
+        double product = 0;
+        for (int i = batch.starts[slot]; i < batch.starts[slot + 1]; i++) {
+            product += batch.weights[i] * centroids[batch.features[i] * k + cluster];
+        }
+        product *= scale;
+
+        double newScale = scale * (1 - eta);
+        if (newScale < MIN_SCALE) {
+            applyScale(cluster);
+            newScale = 1 - eta;
+        }
+        scales[cluster] = newScale;
+        double increment = eta / newScale;
+        for (int i = batch.starts[slot]; i < batch.starts[slot + 1]; i++) {
+            centroids[batch.features[i] * k + cluster] += (float) (increment * batch.weights[i]);
+        }
+        squaredNorms[cluster] = (1 - eta) * (1 - eta) * squaredNorms[cluster]
+                + 2 * eta * (1 - eta) * product + eta * eta;
+    }
+
+    /**
+     * Scales all centroids to unit length.
+     */
+    private void normalizeCentroids() {
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            if (squaredNorms[cluster] > 0) {
+                scales[cluster] /= Math.sqrt(squaredNorms[cluster]);
+                squaredNorms[cluster] = 1;
+                if (scales[cluster] < MIN_SCALE) {
+                    applyScale(cluster);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes exact squared norms of all centroids, which removes rounding
+     * errors accumulated by moving them, and scales them to unit length.
+     */
+    private void recomputeNorms() {
+        int k = clusterCount;
+        Arrays.fill(squaredNorms, 0);
+        for (int f = 0; f < featureCount; f++) {
+            for (int cluster = 0; cluster < k; cluster++) {
+                double value = centroids[f * k + cluster];
+                squaredNorms[cluster] += value * value;
+            }
+        }
+        for (int cluster = 0; cluster < k; cluster++) {
+            squaredNorms[cluster] *= scales[cluster] * scales[cluster];
+        }
+        normalizeCentroids();
+    }
+
+    /**
+     * Multiplies the centroid of the specified cluster by its scale and
+     * resets the scale to <tt>1</tt>.
+     *
+     * @param cluster the cluster
+     */
+    private void applyScale(int cluster) {
+        int k = clusterCount;
+        float scale = (float) scales[cluster];
+        for (int f = 0; f < featureCount; f++) {
+            centroids[f * k + cluster] *= scale;
+        }
+        scales[cluster] = 1;
+    }
+
+    /**
+     * Returns keys of top terms of the specified cluster, ordered by
+     * descending weight in its centroid.
+     *
+     * @param cluster the cluster
+     * @return keys of top terms of the cluster
+     */
+    private int[] findTopTerms(int cluster) {
+        int k = clusterCount;
+        int[] best = new int[Math.min(TOP_TERMS, featureCount)];
+        float[] weights = new float[best.length];
+        int n = 0;
+        for (int f = 0; f < featureCount; f++) {
+            float weight = centroids[f * k + cluster];
+            if (weight <= 0 || (n == best.length && weight <= weights[n - 1])) {
+                continue;
+            }
+            int i = n < best.length ? n++ : n - 1;
+            for (; i > 0 && weights[i - 1] < weight; i--) {
+                best[i] = best[i - 1];
+                weights[i] = weights[i - 1];
+            }
+            best[i] = features[f];
+            weights[i] = weight;
+        }
+        return Arrays.copyOf(best, n);
+    }
+
+    /**
+     * Vectors of documents of a batch of blocks, stored by slots. Documents
+     * of the <tt>i</tt>-th block of the batch take slots starting from
+     * <tt>i * blockSize</tt>.
+     *
+     * @author Mario Bobic
+     */
+    private class Batch {
+
+        /** Slot of each block of the index, <tt>-1</tt> if it is not in the batch. */
+        private final int[] blockSlots;
+        /** Key of the document of each slot. */
+        private final int[] docs;
+        /** Index of the first term of each slot, followed by the number of terms. */
+        private int[] starts;
+        /** Used terms of the vectors. */
+        private int[] features;
+        /** Weights of the terms of the vectors. */
+        private float[] weights;
+
+        /**
+         * Constructs an instance of {@code Batch} of the specified blocks.
+         *
+         * @param blocks indexes of blocks, sorted
+         */
+        public Batch(int[] blocks) {
+            this.blockSlots = new int[(documentCount + blockSize - 1) / blockSize];
+            Arrays.fill(blockSlots, -1);
+            IntList docs = new IntList();
+            for (int i = 0; i < blocks.length; i++) {
+                blockSlots[blocks[i]] = docs.size();
+                for (int doc = blocks[i] * blockSize, end = Math.min(documentCount, doc + blockSize); doc < end; doc++) {
+                    docs.add(doc);
+                }
+            }
+            this.docs = docs.toArray();
+        }
+
+        /**
+         * Returns the number of slots of this batch.
+         *
+         * @return the number of slots
+         */
+        public int slotCount() {
+            return docs.length;
+        }
+
+        /**
+         * Returns the slot of the specified document, which must be in a
+         * block of this batch.
+         *
+         * @param doc key of the document
+         * @return the slot of the document
+         */
+        public int slotOf(int doc) {
+            return blockSlots[doc / blockSize] + doc % blockSize;
+        }
+    }
+
+    /**
+     * Terms of document vectors read by a single task, with their documents
+     * and weights.
+     *
+     * @author Mario Bobic
+     */
+    private static class Entries {
+
+        /** Keys of documents. */
+        private int[] docs = new int[256];
+        /** Used terms. */
+        private int[] features = new int[256];
+        /** Weights of the terms in the documents. */
+        private float[] weights = new float[256];
+        /** Number of entries. */
+        private int size;
+
+        /**
+         * Adds an entry with the specified parameters.
+         *
+         * @param doc key of the document
+         * @param feature the used term
+         * @param weight weight of the term in the document
+         */
+        public void add(int doc, int feature, float weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                features = Arrays.copyOf(features, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            features[size] = feature;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * A task that reads terms in a range of used terms of documents of a
+     * batch of blocks.
+     *
+     * @author Mario Bobic
+     */
+    private class ReadTask extends RecursiveTask<Entries> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** Indexes of blocks, sorted. */
+        private final int[] blocks;
+        /** The first used term, inclusive. */
+        private final int from;
+        /** The last used term, exclusive. */
+        private final int to;
+
+        /**
+         * Constructs an instance of {@code ReadTask} with the specified
+         * parameters.
+         *
+         * @param blocks indexes of blocks, sorted
+         * @param from the first used term, inclusive
+         * @param to the last used term, exclusive
+         */
+        public ReadTask(int[] blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Entries compute() {
+            Entries entries = new Entries();
+            PostingsCursor cursor = index.newCursor();
+            for (int f = from; f < to; f++) {
+                cursor.reset(features[f]);
+                double idf = featureIdfs[f];
+                for (int block : blocks) {
+                    int end = Math.min(documentCount, (block + 1) * blockSize);
+                    int doc = cursor.advance(block * blockSize);
+                    for (; doc < end; doc = cursor.nextDoc()) {
+                        double weight = model.tf(index, doc, cursor.freq()) * idf * inverseNorms[doc];
+                        entries.add(doc, f, (float) weight);
+                    }
+                    if (doc == PostingsCursor.NO_MORE_DOCS) {
+                        break;
+                    }
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * A task that assigns documents in a range of slots of a batch to the
+     * nearest centroids, splitting the range into halves until it is not
+     * greater than the step.
+     *
+     * @author Mario Bobic
+     */
+    private class AssignTask extends RecursiveAction {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The batch. */
+        private final Batch batch;
+        /** Array for the nearest cluster of each slot. */
+        private final int[] labels;
+        /** Array for similarities to the nearest centroids. */
+        private final float[] similarities;
+        /** The first slot, inclusive. */
+        private final int from;
+        /** The last slot, exclusive. */
+        private final int to;
+        /** Greatest number of slots assigned without splitting. */
+        private final int step;
+
+        /**
+         * Constructs an instance of {@code AssignTask} with the specified
+         * parameters.
+         *
+         * @param batch the batch
+         * @param labels array for the nearest cluster of each slot
+         * @param similarities array for similarities to the nearest centroids
+         * @param from the first slot, inclusive
+         * @param to the last slot, exclusive
+         * @param step greatest number of slots assigned without splitting
+         */
+        public AssignTask(Batch batch, int[] labels, float[] similarities, int from, int to, int step) {
+            this.batch = batch;
+            this.labels = labels;
+            this.similarities = similarities;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > step) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AssignTask(batch, labels, similarities, from, middle, step),
+                        new AssignTask(batch, labels, similarities, middle, to, step));
+                return;
+            }
+
+            int k = clusterCount;
+            double[] products = new double[k];
+            for (int slot = from; slot < to; slot++) {
+                int start = batch.starts[slot];
+                int end = batch.starts[slot + 1];
+                if (start == end) {
+                    labels[slot] = -1;
+                    continue;
+                }
+
+                Arrays.fill(products, 0);
+                for (int i = start; i < end; i++) {
+                    float weight = batch.weights[i];
+                    for (int cluster = 0, base = batch.features[i] * k; cluster < k; cluster++) {
+                        products[cluster] += weight * centroids[base + cluster];
+                    }
+                }
+
+                int best = 0;
+                double bestSimilarity = products[0] * scales[0];
+                for (int cluster = 1; cluster < k; cluster++) {
+                    double similarity = products[cluster] * scales[cluster];
+                    if (similarity > bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = cluster;
+                    }
+                }
+                labels[slot] = best;
+                similarities[slot] = (float) bestSimilarity;
+            }
+        }
+    }
+
+}
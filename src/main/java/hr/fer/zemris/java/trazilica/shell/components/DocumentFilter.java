@@ -0,0 +1,318 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which files of a directory are loaded as documents, using the
+ * include and exclude patterns, the maximal file size and binary file
+ * detection given by {@linkplain IndexOptions index options}, and counts
+ * files that are skipped for each reason.
+ * <p>
+ * Patterns are glob patterns, as described by the
+ * {@linkplain FileSystem#getPathMatcher(String)} method. A pattern without a
+ * <tt>/</tt> is matched against the name of a file or directory, for an
+ * example <tt>*.png</tt> or <tt>.git</tt>, and other patterns are matched
+ * against the path relative to the loaded directory, for an example
+ * <tt>src/**&#47;*.java</tt>. Exclude patterns are matched against both files
+ * and directories, so that whole subtrees of excluded directories are
+ * skipped without being walked, while include patterns are matched only
+ * against files.
+ * <p>
+ * A file is binary if its first {@value #SNIFF_LENGTH} bytes contain a zero
+ * byte or more than one sixteenth of control characters other than
+ * whitespace, which is the case for images, archives, compiled classes and
+ * compressed objects of version control systems, but rarely for text in any
+ * encoding compatible with <tt>ASCII</tt>.
+ *
+ * @author Mario Bobic
+ */
+public class DocumentFilter {
+
+    /** Number of bytes at the start of a file that are checked for binary content. */
+    public static final int SNIFF_LENGTH = 1024;
+    /** Maximal number of kept messages of files that failed to load. */
+    private static final int MAX_ERRORS = 10;
+
+    /** Root directory of the loaded files. */
+    private final Path root;
+    /** Matchers of included files, empty if all files are included. */
+    private final List<Matcher> includes = new ArrayList<>();
+    /** Matchers of excluded files and directories. */
+    private final List<Matcher> excludes = new ArrayList<>();
+    /** Maximal size of a loaded file in bytes, <tt>0</tt> if unlimited. */
+    private final long maxFileSize;
+    /** Indicates if binary files are skipped. */
+    private final boolean skipBinary;
+
+    /** Number of skipped directories. */
+    private int excludedDirectories;
+    /** Number of files that are excluded or not included. */
+    private int excludedFiles;
+    /** Number of files larger than the maximal file size. */
+    private int largeFiles;
+    /** Number of binary files. */
+    private int binaryFiles;
+    /** Number of files that failed to load. */
+    private int failedFiles;
+    /** Bytes of files skipped without being read. */
+    private long skippedBytes;
+    /** Messages of the first files that failed to load. */
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Constructs an instance of {@code DocumentFilter} for files of the
+     * specified <tt>root</tt> directory, filtered as the specified
+     * <tt>options</tt> say.
+     *
+     * @param root root directory of the loaded files
+     * @param options options that control indexing
+     */
+    public DocumentFilter(Path root, IndexOptions options) {
+        this.root = root.toAbsolutePath().normalize();
+        FileSystem fileSystem = root.getFileSystem();
+        for (String pattern : options.getIncludePatterns()) {
+            includes.add(new Matcher(fileSystem, pattern));
+        }
+        for (String pattern : options.getExcludePatterns()) {
+            excludes.add(new Matcher(fileSystem, pattern));
+        }
+        maxFileSize = options.getMaxFileSize();
+        skipBinary = options.isSkipBinary();
+    }
+
+    /**
+     * Returns true if files of the specified directory should be walked.
+     * The root directory is always walked.
+     *
+     * @param dir a directory
+     * @return true if the directory should be walked
+     */
+    public boolean acceptsDirectory(Path dir) {
+        Path relative = relativize(dir);
+        if (relative.toString().isEmpty() || !matches(excludes, relative)) {
+            return true;
+        }
+        excludedDirectories++;
+        return false;
+    }
+
+    /**
+     * Returns true if the specified file of the specified <tt>size</tt>
+     * should be read. Files that are read may still be skipped as binary.
+     * Files of unknown size, such as some entries of archives, are not
+     * limited by the maximal file size.
+     *
+     * @param file a file, which may be an entry of an archive
+     * @param size size of the file in bytes, or <tt>-1</tt> if unknown
+     * @return true if the file should be read
+     */
+    public boolean acceptsFile(Path file, long size) {
+        Path relative = relativize(file);
+        if (!includes.isEmpty() && !matches(includes, relative) || matches(excludes, relative)) {
+            excludedFiles++;
+        } else if (maxFileSize > 0 && size > maxFileSize) {
+            largeFiles++;
+        } else {
+            return true;
+        }
+        skippedBytes += Math.max(size, 0);
+        return false;
+    }
+
+    /**
+     * Returns true if entries of the specified archive of the specified
+     * <tt>size</tt> should be read, which is if the archive is not excluded.
+     * Include patterns and the maximal file size are not applied to the
+     * archive, but to each of its entries.
+     *
+     * @param archive an archive
+     * @param size size of the archive in bytes
+     * @return true if entries of the archive should be read
+     */
+    public boolean acceptsArchive(Path archive, long size) {
+        if (!matches(excludes, relativize(archive))) {
+            return true;
+        }
+        excludedFiles++;
+        skippedBytes += size;
+        return false;
+    }
+
+    /**
+     * Returns true if binary files are skipped, so that the start of a file
+     * should be {@linkplain #acceptsContent(byte[], int, long) checked} before the
+     * rest of it is read.
+     *
+     * @return true if binary files are skipped
+     */
+    public boolean isSkipBinary() {
+        return skipBinary;
+    }
+
+    /**
+     * Returns true if the first <tt>length</tt> bytes of a file, which are
+     * the start of the specified array, look like text. Otherwise the file is
+     * counted as a skipped binary file.
+     *
+     * @param bytes bytes of a file
+     * @param length number of bytes read from the start of the file
+     * @param size size of the file in bytes
+     * @return true if the bytes look like text
+     */
+    public boolean acceptsContent(byte[] bytes, int length, long size) {
+        int controls = 0;
+        for (int i = 0; i < length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b == 0) {
+                controls = length;
+                break;
+            } else if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B || b == 0x7F) {
+                controls++;
+            }
+        }
+        if (controls * 16 <= length) {
+            return true;
+        }
+        binaryFiles++;
+        skippedBytes += size - length;
+        return false;
+    }
+
+    /**
+     * Counts the specified file as failed to load, keeping the message of
+     * the error for the first few files.
+     *
+     * @param file a file that failed to load
+     * @param e the error
+     */
+    public void addFailed(Path file, Exception e) {
+        failedFiles++;
+        if (errors.size() < MAX_ERRORS) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            errors.add(file + ": " + cause);
+        }
+    }
+
+    /**
+     * Returns the number of skipped files, including files that failed to
+     * load, but not files of skipped directories.
+     *
+     * @return the number of skipped files
+     */
+    public int skippedCount() {
+        return excludedFiles + largeFiles + binaryFiles + failedFiles;
+    }
+
+    /**
+     * Returns the number of directories whose files were skipped without
+     * being walked.
+     *
+     * @return the number of skipped directories
+     */
+    public int excludedDirectoryCount() {
+        return excludedDirectories;
+    }
+
+    /**
+     * Returns lines that describe skipped files and directories, for an
+     * example:
+     * <pre>
+     * Skipped 14 files (2.3 MiB not read): 9 excluded, 1 too large, 4 binary, 0 failed
+     * Skipped 1 excluded directories
+     * </pre>
+     * followed by messages of the first files that failed to load. No lines
+     * are returned if nothing was skipped.
+     *
+     * @return lines that describe skipped files and directories
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        if (skippedCount() > 0) {
+            lines.add(String.format("Skipped %,d files (%s not read): %,d excluded, %,d too large, %,d binary, %,d failed",
+                    skippedCount(), ShellUtil.humanReadableByteCount(skippedBytes),
+                    excludedFiles, largeFiles, binaryFiles, failedFiles));
+        }
+        if (excludedDirectories > 0) {
+            lines.add(String.format("Skipped %,d excluded directories", excludedDirectories));
+        }
+        for (String error : errors) {
+            lines.add("Failed to load " + error);
+        }
+        if (failedFiles > errors.size()) {
+            lines.add("... and " + (failedFiles - errors.size()) + " more");
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the specified path relative to the root directory.
+     *
+     * @param path a path within the root directory
+     * @return the path relative to the root directory
+     */
+    private Path relativize(Path path) {
+        return root.relativize(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Returns true if any of the specified matchers matches the specified
+     * relative path.
+     *
+     * @param matchers matchers of paths
+     * @param relative path relative to the root directory
+     * @return true if any matcher matches the path
+     */
+    private static boolean matches(List<Matcher> matchers, Path relative) {
+        for (Matcher matcher : matchers) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A glob pattern matched against either the name or the relative path
+     * of a file.
+     *
+     * @author Mario Bobic
+     */
+    private static class Matcher {
+
+        /** Matcher of the glob pattern. */
+        private final PathMatcher matcher;
+        /** Indicates if only the name of a file is matched. */
+        private final boolean nameOnly;
+
+        /**
+         * Constructs an instance of {@code Matcher} with the specified glob
+         * <tt>pattern</tt>.
+         *
+         * @param fileSystem file system of matched paths
+         * @param pattern a glob pattern
+         */
+        public Matcher(FileSystem fileSystem, String pattern) {
+            matcher = fileSystem.getPathMatcher("glob:" + pattern);
+            nameOnly = pattern.indexOf('/') < 0;
+        }
+
+        /**
+         * Returns true if the specified relative path matches this pattern.
+         *
+         * @param relative path relative to the root directory
+         * @return true if the path matches
+         */
+        public boolean matches(Path relative) {
+            if (nameOnly) {
+                Path name = relative.getFileName();
+                return name != null && matcher.matches(name);
+            }
+            return matcher.matches(relative);
+        }
+    }
+
+}
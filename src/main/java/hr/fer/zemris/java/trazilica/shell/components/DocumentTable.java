@@ -0,0 +1,250 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A table of loaded documents, in which documents are identified by dense
+ * keys starting from <tt>0</tt> and their paths and modification times are
+ * kept in primitive arrays instead of a map of boxed keys and path objects.
+ * <p>
+ * Paths are stored as <tt>UTF-8</tt> bytes of their string form and are front
+ * coded, since documents are added in the order the directory is walked, so
+ * consecutive paths share long directory prefixes. Paths are grouped into
+ * blocks of {@value #BLOCK_SIZE}, where the first path of a block is stored
+ * whole and each following path is stored as the length of the prefix it
+ * shares with the previous path and the remaining suffix, both lengths
+ * written as {@linkplain VByteCodec variable-byte} integers. A path is found
+ * by decoding its block from the start, so at most <tt>BLOCK_SIZE - 1</tt>
+ * other paths are decoded, and is turned into a {@linkplain Path} object only
+ * when it is returned. Paths of all documents are visited in order by
+ * decoding each path once.
+ * <p>
+ * Documents are added by a single thread, while paths of documents that were
+ * already added may be read by other threads.
+ *
+ * @author Mario Bobic
+ */
+public class DocumentTable {
+
+    /** Number of paths in a block, of which only the first is stored whole. */
+    public static final int BLOCK_SIZE = 16;
+    /** Initial capacity of arrays of documents. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Front-coded path bytes of all documents. */
+    private byte[] data = new byte[INITIAL_CAPACITY * BLOCK_SIZE];
+    /** Number of used bytes of the data array. */
+    private int dataLength;
+    /** Offsets of blocks in the data array. */
+    private int[] blockOffsets = new int[INITIAL_CAPACITY];
+    /** Time of the last modification of the file of each document, in milliseconds. */
+    private long[] modifiedTimes = new long[INITIAL_CAPACITY];
+    /** Number of documents. */
+    private volatile int size;
+
+    /** Bytes of the path of the last document. */
+    private byte[] last = new byte[0];
+    /** Length of the longest path in bytes. */
+    private int maxLength;
+
+    /**
+     * Adds a document with the specified <tt>path</tt> and modification time
+     * to the end of this table and returns its key.
+     *
+     * @param path path of the document
+     * @param modifiedTime time of the last modification of the file, in milliseconds
+     * @return key of the added document
+     */
+    public int add(Path path, long modifiedTime) {
+        byte[] bytes = path.toString().getBytes(StandardCharsets.UTF_8);
+        int doc = size;
+        if (doc == modifiedTimes.length) {
+            modifiedTimes = Arrays.copyOf(modifiedTimes, 2 * doc);
+        }
+        modifiedTimes[doc] = modifiedTime;
+
+        int prefix = 0;
+        if (doc % BLOCK_SIZE == 0) {
+            int block = doc / BLOCK_SIZE;
+            if (block == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, 2 * block);
+            }
+            blockOffsets[block] = dataLength;
+        } else {
+            int n = Math.min(last.length, bytes.length);
+            while (prefix < n && last[prefix] == bytes[prefix]) {
+                prefix++;
+            }
+        }
+
+        int suffix = bytes.length - prefix;
+        ensureCapacity(dataLength + 2 * 5 + suffix);
+        ByteBuffer out = ByteBuffer.wrap(data);
+        dataLength = VByteCodec.writeVInt(out, dataLength, prefix);
+        dataLength = VByteCodec.writeVInt(out, dataLength, suffix);
+        System.arraycopy(bytes, prefix, data, dataLength, suffix);
+        dataLength += suffix;
+
+        last = bytes;
+        maxLength = Math.max(maxLength, bytes.length);
+        size = doc + 1;
+        return doc;
+    }
+
+    /**
+     * Returns the number of documents of this table.
+     *
+     * @return the number of documents
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the path of the document with the specified key.
+     *
+     * @param doc key of the document
+     * @return the path of the document
+     * @throws IndexOutOfBoundsException if there is no document with the key
+     */
+    public Path path(int doc) {
+        checkDocument(doc);
+        byte[] buffer = new byte[maxLength];
+        int length = decode(doc, buffer, null);
+        return Paths.get(new String(buffer, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Performs the specified action for the path of each document, in order
+     * of document keys, decoding each path only once.
+     *
+     * @param action action that accepts a path and the key of its document
+     */
+    public void forEach(ObjIntConsumer<Path> action) {
+        int size = this.size;
+        byte[] data = this.data;
+        ByteBuffer in = ByteBuffer.wrap(data);
+        byte[] buffer = new byte[maxLength];
+        int offset = 0;
+        for (int doc = 0; doc < size; doc++) {
+            int prefix = VByteCodec.readVInt(in, offset);
+            offset += VByteCodec.vIntLength(prefix);
+            int suffix = VByteCodec.readVInt(in, offset);
+            offset += VByteCodec.vIntLength(suffix);
+            System.arraycopy(data, offset, buffer, prefix, suffix);
+            offset += suffix;
+            action.accept(Paths.get(new String(buffer, 0, prefix + suffix, StandardCharsets.UTF_8)), doc);
+        }
+    }
+
+    /**
+     * Returns the time of the last modification of the file of the document
+     * with the specified key, as it was when the document was loaded.
+     *
+     * @param doc key of the document
+     * @return the time of the last modification, in milliseconds
+     * @throws IndexOutOfBoundsException if there is no document with the key
+     */
+    public long modifiedTime(int doc) {
+        checkDocument(doc);
+        return modifiedTimes[doc];
+    }
+
+    /**
+     * Removes documents whose keys are not less than the specified
+     * <tt>size</tt>, so that documents of a failed load can be added again.
+     *
+     * @param size the new number of documents
+     * @throws IndexOutOfBoundsException if <tt>size</tt> is negative or
+     *         greater than the number of documents
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Invalid size: " + size + ", documents: " + this.size);
+        }
+        if (size == 0) {
+            dataLength = 0;
+            last = new byte[0];
+        } else {
+            byte[] buffer = new byte[maxLength];
+            int[] end = new int[1];
+            last = Arrays.copyOf(buffer, decode(size - 1, buffer, end));
+            dataLength = end[0];
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by this table.
+     *
+     * @return the estimated number of heap bytes taken by this table
+     */
+    public long heapBytes() {
+        return MemoryEstimator.array(data.length, Byte.BYTES)
+                + MemoryEstimator.array(blockOffsets.length, Integer.BYTES)
+                + MemoryEstimator.array(modifiedTimes.length, Long.BYTES)
+                + MemoryEstimator.array(last.length, Byte.BYTES);
+    }
+
+    /**
+     * Decodes path bytes of the document with the specified key into the
+     * specified buffer, starting from the first path of its block.
+     *
+     * @param doc key of the document
+     * @param buffer buffer for path bytes, at least as long as the longest path
+     * @param end array for the offset following the entry of the document, or <tt>null</tt>
+     * @return the number of path bytes
+     */
+    private int decode(int doc, byte[] buffer, int[] end) {
+        byte[] data = this.data;
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int offset = blockOffsets[doc / BLOCK_SIZE];
+        int length = 0;
+        for (int i = doc - doc % BLOCK_SIZE; i <= doc; i++) {
+            int prefix = VByteCodec.readVInt(in, offset);
+            offset += VByteCodec.vIntLength(prefix);
+            int suffix = VByteCodec.readVInt(in, offset);
+            offset += VByteCodec.vIntLength(suffix);
+            System.arraycopy(data, offset, buffer, prefix, suffix);
+            offset += suffix;
+            length = prefix + suffix;
+        }
+        if (end != null) {
+            end[0] = offset;
+        }
+        return length;
+    }
+
+    /**
+     * Ensures that the data array holds at least <tt>capacity</tt> bytes.
+     *
+     * @param capacity the least number of bytes
+     * @throws IllegalStateException if the capacity exceeds the greatest array size
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalStateException("Paths of documents take more than 2 GB.");
+        }
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, (int) Math.min(Integer.MAX_VALUE - 8, 2L * data.length)));
+        }
+    }
+
+    /**
+     * Checks that there is a document with the specified key.
+     *
+     * @param doc key of the document
+     * @throws IndexOutOfBoundsException if there is no document with the key
+     */
+    private void checkDocument(int doc) {
+        if (doc < 0 || doc >= size) {
+            throw new IndexOutOfBoundsException("Invalid document: " + doc + ", documents: " + size);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * An enumeration of ways in which {@linkplain NearDuplicates near-duplicate}
+ * documents are handled while indexing.
+ *
+ * @author Mario Bobic
+ */
+public enum DuplicateMode {
+
+    /**
+     * Near duplicates are not detected.
+     */
+    OFF,
+
+    /**
+     * All documents are indexed and near duplicates are collapsed in query
+     * results, so that only the best scored document of a cluster is shown.
+     */
+    COLLAPSE,
+
+    /**
+     * Only the first document of a cluster of near duplicates is indexed and
+     * other documents of the cluster are listed as its duplicates.
+     */
+    SKIP;
+
+    /**
+     * Returns the duplicate mode with the specified case-insensitive
+     * <tt>name</tt>.
+     *
+     * @param name name of the duplicate mode
+     * @return the duplicate mode with the specified name
+     * @throws IllegalArgumentException if there is no such duplicate mode
+     */
+    public static DuplicateMode parse(String name) {
+        for (DuplicateMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown duplicate mode: " + name);
+    }
+
+}
@@ -0,0 +1,608 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * A hierarchical navigable small world (HNSW) graph over dense normalized
+ * vectors, which finds approximate nearest neighbours of a vector by cosine
+ * similarity without comparing it to all vectors.
+ * <p>
+ * Vectors are nodes of a graph with several layers. Every node is in the
+ * bottom layer, and each following layer holds a random fraction of
+ * <tt>1/{@value #MAX_CONNECTIONS}</tt> of the nodes of the layer below it.
+ * A search starts at the top layer, walks greedily towards the query vector
+ * and descends to the next layer from the closest node found, so it reaches
+ * the neighbourhood of the query in a logarithmic number of steps. The
+ * bottom layer is then searched with a list of the best
+ * <tt>ef</tt> nodes found so far.
+ * <p>
+ * Nodes are added one at a time and are connected to the nodes found by
+ * searching for their own vector. Neighbours are selected by the heuristic
+ * that skips a candidate closer to an already selected neighbour than to the
+ * added node, which keeps the graph navigable across clusters of similar
+ * vectors. Nodes have at most {@value #MAX_CONNECTIONS} neighbours in upper
+ * layers and twice as many in the bottom layer. The graph is built from a
+ * fixed seed, so the same vectors always give the same graph.
+ * <p>
+ * Nodes are never removed. A search may be given a filter of accepted
+ * nodes, where other nodes are still walked through, so that the graph
+ * stays navigable, but are not returned.
+ * <p>
+ * Searches share their working arrays, so they are synchronized.
+ *
+ * @author Mario Bobic
+ */
+public class HnswGraph {
+
+    /** Maximal number of neighbours of a node in upper layers. */
+    public static final int MAX_CONNECTIONS = 16;
+    /** Number of nodes searched for when a node is added. */
+    public static final int EF_CONSTRUCTION = 64;
+    /** Least number of nodes searched for by a query. */
+    public static final int EF_SEARCH = 64;
+
+    /** Maximal number of neighbours of a node in the bottom layer. */
+    private static final int MAX_CONNECTIONS_0 = 2 * MAX_CONNECTIONS;
+    /** Seed of random layers of nodes. */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /** Number of dimensions of vectors. */
+    private final int dimensions;
+    /** Vectors of all nodes, stored one after another. */
+    private float[] vectors;
+    /** Number of neighbours followed by neighbours of each node in the bottom layer. */
+    private int[] links0;
+    /** Number of neighbours followed by neighbours of each node in each upper layer. */
+    private int[][] upperLinks;
+    /** Number of nodes. */
+    private int size;
+    /** Node from which searches start, <tt>-1</tt> if there are no nodes. */
+    private int entryPoint = -1;
+    /** Top layer of the graph. */
+    private int maxLevel = -1;
+
+    /** Generator of random layers of nodes. */
+    private final Random random = new Random(SEED);
+    /** Multiplier of the logarithm that gives random layers of nodes. */
+    private final double levelMultiplier = 1 / Math.log(MAX_CONNECTIONS);
+
+    /** Mark of each visited node, equal to {@linkplain #visitedMark}. */
+    private int[] visited;
+    /** Mark of nodes visited by the current search. */
+    private int visitedMark;
+    /** Nodes that are yet to be expanded, the best on top. */
+    private final NodeHeap candidates = new NodeHeap();
+    /** Best nodes found, the worst on top. */
+    private final NodeHeap found = new NodeHeap();
+
+    /**
+     * Constructs an empty {@code HnswGraph} of vectors with the specified
+     * number of <tt>dimensions</tt>, with room for <tt>capacity</tt> nodes.
+     *
+     * @param dimensions number of dimensions of vectors
+     * @param capacity expected number of nodes
+     * @throws IllegalArgumentException if <tt>dimensions</tt> is not positive
+     */
+    public HnswGraph(int dimensions, int capacity) {
+        if (dimensions < 1) {
+            throw new IllegalArgumentException("Number of dimensions must be positive: " + dimensions);
+        }
+        capacity = Math.max(capacity, 16);
+        this.dimensions = dimensions;
+        this.vectors = new float[capacity * dimensions];
+        this.links0 = new int[capacity * (MAX_CONNECTIONS_0 + 1)];
+        this.upperLinks = new int[capacity][];
+        this.visited = new int[capacity];
+    }
+
+    /**
+     * Returns the number of nodes of this graph.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of dimensions of vectors.
+     *
+     * @return the number of dimensions of vectors
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Adds a node with the normalized vector that starts at the specified
+     * <tt>offset</tt> of the specified array and connects it to its nearest
+     * neighbours. Nodes are numbered from <tt>0</tt> in the order in which
+     * they are added.
+     *
+     * @param vector array that contains the vector
+     * @param offset offset of the vector in the array
+     * @return the number of the added node
+     */
+    public synchronized int add(float[] vector, int offset) {
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(vector, offset, vectors, node * dimensions, dimensions);
+
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        if (level > 0) {
+            upperLinks[node] = new int[level * (MAX_CONNECTIONS + 1)];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int query = node * dimensions;
+        int nearest = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            nearest = greedySearch(query, nearest, l);
+        }
+
+        int[] neighbours = new int[EF_CONSTRUCTION];
+        float[] similarities = new float[EF_CONSTRUCTION];
+        int[] selected = new int[MAX_CONNECTIONS_0];
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            searchLayer(query, nearest, EF_CONSTRUCTION, l, null);
+            int count = drain(neighbours, similarities);
+            nearest = neighbours[0];
+
+            int[] links = links(node, l);
+            int base = base(node, l);
+            int n = selectNeighbours(node, neighbours, similarities, count, MAX_CONNECTIONS, selected);
+            links[base] = n;
+            System.arraycopy(selected, 0, links, base + 1, n);
+            for (int i = 0; i < n; i++) {
+                connect(selected[i], node, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * Returns at most <tt>count</tt> approximate nearest neighbours of the
+     * specified <tt>node</tt>, not including the node itself, with cosine
+     * similarities of their vectors as scores.
+     *
+     * @param node number of the node
+     * @param count maximal number of neighbours
+     * @return approximate nearest neighbours of the node
+     */
+    public TopResults search(int node, int count) {
+        return search(node, count, null);
+    }
+
+    /**
+     * Returns at most <tt>count</tt> approximate nearest neighbours of the
+     * specified <tt>node</tt> that are accepted by the specified filter, not
+     * including the node itself, with cosine similarities of their vectors
+     * as scores. Nodes that are not accepted are walked through, but not
+     * returned.
+     *
+     * @param node number of the node
+     * @param count maximal number of neighbours
+     * @param accepted filter of accepted nodes, or <tt>null</tt> to accept all nodes
+     * @return approximate nearest neighbours of the node
+     */
+    public synchronized TopResults search(int node, int count, IntPredicate accepted) {
+        TopResults results = new TopResults(count);
+        if (entryPoint < 0) {
+            return results;
+        }
+
+        int query = node * dimensions;
+        int nearest = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            nearest = greedySearch(query, nearest, l);
+        }
+        searchLayer(query, nearest, Math.max(EF_SEARCH, count + 1), 0, accepted);
+        while (found.size() > 0) {
+            float similarity = found.topScore();
+            int neighbour = found.pop();
+            if (neighbour != node) {
+                results.add(neighbour, similarity);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns at most <tt>count</tt> exact nearest neighbours of the
+     * specified <tt>node</tt>, not including the node itself, found by
+     * comparing its vector to vectors of all nodes.
+     *
+     * @param node number of the node
+     * @param count maximal number of neighbours
+     * @return exact nearest neighbours of the node
+     */
+    public synchronized TopResults searchExact(int node, int count) {
+        TopResults results = new TopResults(count);
+        for (int other = 0; other < size; other++) {
+            if (other != node) {
+                results.add(other, similarity(node * dimensions, other));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by this graph.
+     *
+     * @return the estimated number of heap bytes taken by this graph
+     */
+    public long heapBytes() {
+        long bytes = MemoryEstimator.array(vectors.length, Float.BYTES)
+                + MemoryEstimator.array(links0.length, Integer.BYTES)
+                + MemoryEstimator.array(upperLinks.length, MemoryEstimator.REFERENCE)
+                + MemoryEstimator.array(visited.length, Integer.BYTES);
+        for (int node = 0; node < size; node++) {
+            if (upperLinks[node] != null) {
+                bytes += MemoryEstimator.array(upperLinks[node].length, Integer.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Walks greedily from the specified node towards the vector at the
+     * specified offset in the specified layer and returns the closest node
+     * found.
+     *
+     * @param query offset of the query vector
+     * @param start node where the walk starts
+     * @param level the layer
+     * @return the closest node found
+     */
+    private int greedySearch(int query, int start, int level) {
+        int nearest = start;
+        float best = similarity(query, nearest);
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            int[] links = links(nearest, level);
+            int base = base(nearest, level);
+            for (int i = 1, n = links[base]; i <= n; i++) {
+                int neighbour = links[base + i];
+                float similarity = similarity(query, neighbour);
+                if (similarity > best) {
+                    best = similarity;
+                    nearest = neighbour;
+                    changed = true;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Searches the specified layer for <tt>ef</tt> accepted nodes closest to
+     * the vector at the specified offset, starting from the specified node.
+     * The nodes are left in the {@linkplain #found} heap.
+     *
+     * @param query offset of the query vector
+     * @param start node where the search starts
+     * @param ef number of nodes searched for
+     * @param level the layer
+     * @param accepted filter of accepted nodes, or <tt>null</tt> to accept all nodes
+     */
+    private void searchLayer(int query, int start, int ef, int level, IntPredicate accepted) {
+        if (++visitedMark == 0) {
+            Arrays.fill(visited, 0);
+            visitedMark = 1;
+        }
+        candidates.clear();
+        found.clear();
+
+        float startSimilarity = similarity(query, start);
+        visited[start] = visitedMark;
+        candidates.push(start, -startSimilarity);
+        if (accepted == null || accepted.test(start)) {
+            found.push(start, startSimilarity);
+        }
+
+        while (candidates.size() > 0) {
+            float similarity = -candidates.topScore();
+            int candidate = candidates.pop();
+            if (found.size() >= ef && similarity < found.topScore()) {
+                break;
+            }
+
+            int[] links = links(candidate, level);
+            int base = base(candidate, level);
+            for (int i = 1, n = links[base]; i <= n; i++) {
+                int neighbour = links[base + i];
+                if (visited[neighbour] == visitedMark) {
+                    continue;
+                }
+                visited[neighbour] = visitedMark;
+
+                float neighbourSimilarity = similarity(query, neighbour);
+                if (found.size() < ef || neighbourSimilarity > found.topScore()) {
+                    candidates.push(neighbour, -neighbourSimilarity);
+                    if (accepted == null || accepted.test(neighbour)) {
+                        found.push(neighbour, neighbourSimilarity);
+                        if (found.size() > ef) {
+                            found.pop();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves nodes of the {@linkplain #found} heap into the specified arrays,
+     * ordered by descending similarity.
+     *
+     * @param nodes array for nodes
+     * @param similarities array for similarities of nodes
+     * @return the number of nodes
+     */
+    private int drain(int[] nodes, float[] similarities) {
+        int count = found.size();
+        for (int i = count - 1; i >= 0; i--) {
+            similarities[i] = found.topScore();
+            nodes[i] = found.pop();
+        }
+        return count;
+    }
+
+    /**
+     * Selects at most <tt>max</tt> neighbours of the specified node from
+     * <tt>count</tt> candidates, ordered by descending similarity to the
+     * node. A candidate is skipped if it is closer to an already selected
+     * neighbour than to the node, and skipped candidates fill the remaining
+     * places only if there are too few selected neighbours.
+     *
+     * @param node the node
+     * @param nodes candidates, ordered by descending similarity
+     * @param similarities similarities of candidates to the node
+     * @param count number of candidates
+     * @param max maximal number of neighbours
+     * @param selected array for selected neighbours
+     * @return the number of selected neighbours
+     */
+    private int selectNeighbours(int node, int[] nodes, float[] similarities, int count, int max, int[] selected) {
+        boolean[] skipped = new boolean[count];
+        int n = 0;
+        for (int i = 0; i < count && n < max; i++) {
+            int candidate = nodes[i];
+            if (candidate == node) {
+                continue;
+            }
+            int offset = candidate * dimensions;
+            boolean diverse = true;
+            for (int j = 0; j < n; j++) {
+                if (similarity(offset, selected[j]) > similarities[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[n++] = candidate;
+            } else {
+                skipped[i] = true;
+            }
+        }
+        for (int i = 0; i < count && n < max; i++) {
+            if (skipped[i]) {
+                selected[n++] = nodes[i];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Connects the specified node to the specified new neighbour in the
+     * specified layer. If the node already has the maximal number of
+     * neighbours, one neighbour is removed: the worst ranked one that is
+     * closer to a better ranked neighbour than to the node, or the worst
+     * ranked one if there is no such neighbour. Old neighbours were already
+     * selected by the heuristic, so they are not selected again.
+     *
+     * @param node the node
+     * @param neighbour the new neighbour
+     * @param level the layer
+     */
+    private void connect(int node, int neighbour, int level) {
+        int max = level == 0 ? MAX_CONNECTIONS_0 : MAX_CONNECTIONS;
+        int[] links = links(node, level);
+        int base = base(node, level);
+        int n = links[base];
+        if (n < max) {
+            links[base + n + 1] = neighbour;
+            links[base] = n + 1;
+            return;
+        }
+
+        int offset = node * dimensions;
+        int[] nodes = new int[n + 1];
+        float[] similarities = new float[n + 1];
+        for (int i = 0; i <= n; i++) {
+            int candidate = i < n ? links[base + i + 1] : neighbour;
+            float similarity = similarity(offset, candidate);
+            int j = i;
+            for (; j > 0 && similarities[j - 1] < similarity; j--) {
+                nodes[j] = nodes[j - 1];
+                similarities[j] = similarities[j - 1];
+            }
+            nodes[j] = candidate;
+            similarities[j] = similarity;
+        }
+
+        int removed = n;
+        search:
+        for (int i = n; i > 0; i--) {
+            int offset2 = nodes[i] * dimensions;
+            for (int j = 0; j < i; j++) {
+                if (similarity(offset2, nodes[j]) > similarities[i]) {
+                    removed = i;
+                    break search;
+                }
+            }
+        }
+        for (int i = 0, k = base + 1; i <= n; i++) {
+            if (i != removed) {
+                links[k++] = nodes[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the array of neighbours of the specified node in the specified
+     * layer.
+     *
+     * @param node the node
+     * @param level the layer
+     * @return the array of neighbours of the node
+     */
+    private int[] links(int node, int level) {
+        return level == 0 ? links0 : upperLinks[node];
+    }
+
+    /**
+     * Returns the index of the number of neighbours of the specified node in
+     * the specified layer, which is followed by the neighbours.
+     *
+     * @param node the node
+     * @param level the layer
+     * @return the index of the number of neighbours of the node
+     */
+    private static int base(int node, int level) {
+        return level == 0 ? node * (MAX_CONNECTIONS_0 + 1) : (level - 1) * (MAX_CONNECTIONS + 1);
+    }
+
+    /**
+     * Returns the cosine similarity of the normalized vector at the specified
+     * offset and the vector of the specified node.
+     *
+     * @param offset offset of a vector
+     * @param node the node
+     * @return the cosine similarity of the vectors
+     */
+    private float similarity(int offset, int node) {
+        return (float) VectorUtilities.scalarProduct(vectors, offset, vectors, node * dimensions, dimensions);
+    }
+
+    /**
+     * Ensures that there is room for the specified number of nodes.
+     *
+     * @param capacity the number of nodes
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= visited.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, visited.length + (visited.length >> 1));
+        vectors = Arrays.copyOf(vectors, newCapacity * dimensions);
+        links0 = Arrays.copyOf(links0, newCapacity * (MAX_CONNECTIONS_0 + 1));
+        upperLinks = Arrays.copyOf(upperLinks, newCapacity);
+        visited = Arrays.copyOf(visited, newCapacity);
+    }
+
+    /**
+     * A binary min-heap of nodes ordered by their scores.
+     *
+     * @author Mario Bobic
+     */
+    private static class NodeHeap {
+
+        /** Nodes in heap order. */
+        private int[] nodes = new int[64];
+        /** Scores of nodes in heap order. */
+        private float[] scores = new float[64];
+        /** Number of nodes. */
+        private int size;
+
+        /**
+         * Returns the number of nodes of this heap.
+         *
+         * @return the number of nodes
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Removes all nodes from this heap.
+         */
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the least score of nodes of this heap, which must not be
+         * empty.
+         *
+         * @return the least score
+         */
+        public float topScore() {
+            return scores[0];
+        }
+
+        /**
+         * Adds the specified node with the specified score.
+         *
+         * @param node the node
+         * @param score score of the node
+         */
+        public void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        /**
+         * Removes and returns the node with the least score, which must
+         * exist.
+         *
+         * @return the node with the least score
+         */
+        public int pop() {
+            int top = nodes[0];
+            int node = nodes[--size];
+            float score = scores[size];
+            int i = 0;
+            for (int child; (child = 2 * i + 1) < size; i = child) {
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (score <= scores[child]) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+            }
+            nodes[i] = node;
+            scores[i] = score;
+            return top;
+        }
+    }
+
+}
@@ -0,0 +1,781 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Options that control how documents are indexed by a {@linkplain DataLoader}.
+ * Every option has a default value that can be overridden with a system
+ * property, for an example <tt>-Dtrazilica.codec=pfor</tt>, when options are
+ * created using the {@linkplain #fromSystemProperties()} method.
+ * <p>
+ * Supported options are:
+ * <ul>
+ *   <li><tt>trazilica.codec</tt> - name of the {@linkplain PostingsCodec}
+ *   used for compressing posting lists, either <tt>vbyte</tt> or
+ *   <tt>pfor</tt> (default),
+ *   <li><tt>trazilica.positions</tt> - <tt>true</tt> (default) if positions
+ *   of terms are stored in posting lists, which is needed for phrase and
+ *   proximity queries, or <tt>false</tt> otherwise,
+ *   <li><tt>trazilica.scoring</tt> - name of the {@linkplain ScoringModel}
+ *   by which documents are scored, either <tt>tfidf</tt> (default) or
+ *   <tt>bm25</tt>,
+ *   <li><tt>trazilica.impacts</tt> - <tt>true</tt> if weights of postings
+ *   are precomputed and quantized at index time, which makes scoring cheaper
+ *   but approximate, or <tt>false</tt> (default) otherwise,
+ *   <li><tt>trazilica.minDf</tt> - minimal number of documents a term must
+ *   be contained in to be indexed, <tt>1</tt> by default,
+ *   <li><tt>trazilica.maxDf</tt> - maximal fraction of documents a term may
+ *   be contained in to be indexed, <tt>1.0</tt> by default, so that terms
+ *   contained in every document are indexed,
+ *   <li><tt>trazilica.maxTermLength</tt> - maximal length of an indexed
+ *   term, unlimited by default,
+ *   <li><tt>trazilica.numericTokens</tt> - <tt>true</tt> (default) if
+ *   letters joined to digits, such as <tt>x</tt> in <tt>0x1f</tt> or
+ *   <tt>px</tt> in <tt>12px</tt>, are indexed, or <tt>false</tt> if they are
+ *   skipped like stopwords,
+ *   <li><tt>trazilica.maxPostings</tt> - maximal number of postings kept
+ *   for each term, those with the greatest weight given by the scoring
+ *   model, or <tt>0</tt> (default) to keep all postings,
+ *   <li><tt>trazilica.duplicates</tt> - how {@linkplain NearDuplicates near
+ *   duplicates} are handled, as named by a {@linkplain DuplicateMode}:
+ *   <tt>off</tt> (default), <tt>collapse</tt> or <tt>skip</tt>,
+ *   <li><tt>trazilica.duplicateThreshold</tt> - least estimated similarity
+ *   of near duplicates, <tt>0.8</tt> by default,
+ *   <li><tt>trazilica.similar</tt> - <tt>true</tt> if an {@linkplain
+ *   HnswGraph HNSW graph} of documents is built, so that documents similar
+ *   to a document can be found, or <tt>false</tt> (default) otherwise,
+ *   <li><tt>trazilica.similarDimensions</tt> - number of dimensions to
+ *   which document vectors are reduced by {@linkplain RandomProjection
+ *   random projection} for the graph, <tt>128</tt> by default,
+ *   <li><tt>trazilica.include</tt> - comma-separated glob patterns of
+ *   loaded files, as described by the {@linkplain DocumentFilter}, so that
+ *   for an example <tt>*.txt,*.{md,html}</tt> loads only text, markdown and
+ *   <tt>HTML</tt> files, while all files are loaded by default,
+ *   <li><tt>trazilica.exclude</tt> - comma-separated glob patterns of
+ *   skipped files and directories, for an example <tt>.git,*.jar</tt>,
+ *   <li><tt>trazilica.maxFileSize</tt> - maximal size of a loaded file in
+ *   bytes, optionally followed by <tt>k</tt>, <tt>m</tt> or <tt>g</tt>, or
+ *   <tt>0</tt> (default) to load files of any size,
+ *   <li><tt>trazilica.skipBinary</tt> - <tt>true</tt> (default) if files
+ *   whose start looks binary are skipped, or <tt>false</tt> if all files are
+ *   read as text,
+ *   <li><tt>trazilica.skipErrors</tt> - <tt>true</tt> if files that fail to
+ *   load are reported and skipped, or <tt>false</tt> (default) if loading
+ *   fails with them,
+ *   <li><tt>trazilica.archives</tt> - <tt>true</tt> (default) if each entry
+ *   of <tt>.gz</tt>, <tt>.zip</tt>, <tt>.tar</tt> and <tt>.tar.gz</tt> files
+ *   is loaded as a document of its own, as described by the {@linkplain
+ *   ArchiveReader}, or <tt>false</tt> if such files are loaded like any
+ *   other file,
+ *   <li><tt>trazilica.buildMemory</tt> - memory budget of posting lists
+ *   collected while loading, in bytes, optionally followed by <tt>k</tt>,
+ *   <tt>m</tt> or <tt>g</tt>, beyond which they are spilled to temporary
+ *   files and merged when the index is built, or
+ *   <tt>0</tt> (default) to keep all posting lists in memory,
+ *   <li><tt>trazilica.mergeFactor</tt> - number of adjacent segments of the
+ *   same size tier that are merged into one by the {@linkplain
+ *   TieredMergePolicy}, <tt>10</tt> by default.
+ * </ul>
+ * Options from the minimal document frequency to the maximal number of
+ * postings prune the index, which makes it smaller but also means that pruned terms and
+ * postings can not be found.
+ *
+ * @author Mario Bobic
+ */
+public class IndexOptions {
+
+    /** Prefix of system properties that override default options. */
+    public static final String PROPERTY_PREFIX = "trazilica.";
+
+    /** Codec used for compressing posting lists. */
+    private PostingsCodec codec = new PForDeltaCodec();
+    /** Indicates if positions of terms are stored. */
+    private boolean positions = true;
+    /** Model by which documents are scored. */
+    private ScoringModel scoringModel = new TfIdfModel();
+    /** Indicates if impacts of postings are precomputed. */
+    private boolean impacts;
+    /** Minimal number of documents containing an indexed term. */
+    private int minDocumentFrequency = 1;
+    /** Maximal fraction of documents containing an indexed term. */
+    private double maxDocumentFraction = 1.0;
+    /** Maximal length of an indexed term. */
+    private int maxTermLength = Integer.MAX_VALUE;
+    /** Indicates if letters joined to digits are indexed. */
+    private boolean numericTokens = true;
+    /** Maximal number of postings of each term, <tt>0</tt> if unlimited. */
+    private int maxPostings;
+    /** How near duplicates are handled. */
+    private DuplicateMode duplicateMode = DuplicateMode.OFF;
+    /** Least estimated similarity of near duplicates. */
+    private double duplicateThreshold = NearDuplicates.DEFAULT_THRESHOLD;
+    /** Indicates if a graph of similar documents is built. */
+    private boolean similar;
+    /** Number of dimensions of projected document vectors. */
+    private int similarDimensions = RandomProjection.DEFAULT_DIMENSIONS;
+    /** Glob patterns of loaded files, empty if all files are loaded. */
+    private List<String> includePatterns = Collections.emptyList();
+    /** Glob patterns of skipped files and directories. */
+    private List<String> excludePatterns = Collections.emptyList();
+    /** Maximal size of a loaded file in bytes, <tt>0</tt> if unlimited. */
+    private long maxFileSize;
+    /** Indicates if binary files are skipped. */
+    private boolean skipBinary = true;
+    /** Indicates if files that fail to load are skipped. */
+    private boolean skipErrors;
+    /** Indicates if entries of archives are loaded. */
+    private boolean archives = true;
+    /** Memory budget of collected posting lists in bytes, <tt>0</tt> if unlimited. */
+    private long buildMemory;
+    /** Number of segments of the same size tier merged into one. */
+    private int mergeFactor = TieredMergePolicy.DEFAULT_MERGE_FACTOR;
+
+    /**
+     * Returns the options with default values overridden by system properties.
+     *
+     * @return the options with values taken from system properties
+     * @throws IllegalArgumentException if a system property has an invalid value
+     */
+    public static IndexOptions fromSystemProperties() {
+        IndexOptions options = new IndexOptions();
+
+        String codec = property("codec");
+        if (codec != null) {
+            options.setCodec(PostingsCodec.forName(codec));
+        }
+
+        String positions = property("positions");
+        if (positions != null) {
+            options.setPositions(Boolean.parseBoolean(positions));
+        }
+
+        String scoring = property("scoring");
+        if (scoring != null) {
+            options.setScoringModel(ScoringModel.forName(scoring));
+        }
+
+        String impacts = property("impacts");
+        if (impacts != null) {
+            options.setImpacts(Boolean.parseBoolean(impacts));
+        }
+
+        String minDf = property("minDf");
+        if (minDf != null) {
+            options.setMinDocumentFrequency(Integer.parseInt(minDf));
+        }
+
+        String maxDf = property("maxDf");
+        if (maxDf != null) {
+            options.setMaxDocumentFraction(Double.parseDouble(maxDf));
+        }
+
+        String maxTermLength = property("maxTermLength");
+        if (maxTermLength != null) {
+            options.setMaxTermLength(Integer.parseInt(maxTermLength));
+        }
+
+        String numericTokens = property("numericTokens");
+        if (numericTokens != null) {
+            options.setNumericTokens(Boolean.parseBoolean(numericTokens));
+        }
+
+        String maxPostings = property("maxPostings");
+        if (maxPostings != null) {
+            options.setMaxPostings(Integer.parseInt(maxPostings));
+        }
+
+        String duplicates = property("duplicates");
+        if (duplicates != null) {
+            options.setDuplicateMode(DuplicateMode.parse(duplicates));
+        }
+
+        String duplicateThreshold = property("duplicateThreshold");
+        if (duplicateThreshold != null) {
+            options.setDuplicateThreshold(Double.parseDouble(duplicateThreshold));
+        }
+
+        String similar = property("similar");
+        if (similar != null) {
+            options.setSimilar(Boolean.parseBoolean(similar));
+        }
+
+        String similarDimensions = property("similarDimensions");
+        if (similarDimensions != null) {
+            options.setSimilarDimensions(Integer.parseInt(similarDimensions));
+        }
+
+        String include = property("include");
+        if (include != null) {
+            options.setIncludePatterns(splitPatterns(include));
+        }
+
+        String exclude = property("exclude");
+        if (exclude != null) {
+            options.setExcludePatterns(splitPatterns(exclude));
+        }
+
+        String maxFileSize = property("maxFileSize");
+        if (maxFileSize != null) {
+            options.setMaxFileSize(parseSize(maxFileSize));
+        }
+
+        String skipBinary = property("skipBinary");
+        if (skipBinary != null) {
+            options.setSkipBinary(Boolean.parseBoolean(skipBinary));
+        }
+
+        String skipErrors = property("skipErrors");
+        if (skipErrors != null) {
+            options.setSkipErrors(Boolean.parseBoolean(skipErrors));
+        }
+
+        String archives = property("archives");
+        if (archives != null) {
+            options.setArchives(Boolean.parseBoolean(archives));
+        }
+
+        String buildMemory = property("buildMemory");
+        if (buildMemory != null) {
+            options.setBuildMemory(parseSize(buildMemory));
+        }
+
+        String mergeFactor = property("mergeFactor");
+        if (mergeFactor != null) {
+            options.setMergeFactor(Integer.parseInt(mergeFactor));
+        }
+
+        return options;
+    }
+
+    /**
+     * Returns the value of the system property with the specified option
+     * <tt>name</tt>, or <tt>null</tt> if the property is not set.
+     *
+     * @param name name of the option, without the property prefix
+     * @return the value of the property or <tt>null</tt>
+     */
+    private static String property(String name) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        return value == null ? null : value.trim();
+    }
+
+    /**
+     * Splits the specified comma-separated glob patterns. Commas inside
+     * braces separate alternatives of a single pattern and do not split it.
+     *
+     * @param patterns comma-separated glob patterns
+     * @return a list of non-empty glob patterns
+     */
+    private static List<String> splitPatterns(String patterns) {
+        List<String> list = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= patterns.length(); i++) {
+            char c = i < patterns.length() ? patterns.charAt(i) : ',';
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (c == ',' && depth <= 0) {
+                String pattern = patterns.substring(start, i).trim();
+                if (!pattern.isEmpty()) {
+                    list.add(pattern);
+                }
+                start = i + 1;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Parses the specified size in bytes, which may be followed by one of
+     * case-insensitive suffixes <tt>k</tt>, <tt>m</tt> and <tt>g</tt> for
+     * kibibytes, mebibytes and gibibytes.
+     *
+     * @param size size in bytes, optionally with a suffix
+     * @return the size in bytes
+     * @throws NumberFormatException if the size can not be parsed
+     */
+    private static long parseSize(String size) {
+        int shift = 0;
+        switch (size.isEmpty() ? ' ' : Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 'k': shift = 10; break;
+            case 'm': shift = 20; break;
+            case 'g': shift = 30; break;
+            default: return Long.parseLong(size);
+        }
+        return Long.parseLong(size.substring(0, size.length() - 1).trim()) << shift;
+    }
+
+    /**
+     * Returns the codec used for compressing posting lists.
+     *
+     * @return the codec used for compressing posting lists
+     */
+    public PostingsCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used for compressing posting lists.
+     *
+     * @param codec the codec used for compressing posting lists
+     * @throws NullPointerException if <tt>codec</tt> is <tt>null</tt>
+     */
+    public void setCodec(PostingsCodec codec) {
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * Returns true if positions of terms are stored in posting lists.
+     *
+     * @return true if positions of terms are stored in posting lists
+     */
+    public boolean isPositions() {
+        return positions;
+    }
+
+    /**
+     * Sets whether positions of terms are stored in posting lists.
+     *
+     * @param positions true if positions of terms should be stored
+     */
+    public void setPositions(boolean positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Returns the model by which documents are scored.
+     *
+     * @return the model by which documents are scored
+     */
+    public ScoringModel getScoringModel() {
+        return scoringModel;
+    }
+
+    /**
+     * Sets the model by which documents are scored.
+     *
+     * @param scoringModel the model by which documents are scored
+     * @throws NullPointerException if <tt>scoringModel</tt> is <tt>null</tt>
+     */
+    public void setScoringModel(ScoringModel scoringModel) {
+        this.scoringModel = Objects.requireNonNull(scoringModel);
+    }
+
+    /**
+     * Returns true if impacts of postings are precomputed.
+     *
+     * @return true if impacts of postings are precomputed
+     */
+    public boolean isImpacts() {
+        return impacts;
+    }
+
+    /**
+     * Sets whether impacts of postings are precomputed.
+     *
+     * @param impacts true if impacts of postings should be precomputed
+     */
+    public void setImpacts(boolean impacts) {
+        this.impacts = impacts;
+    }
+
+    /**
+     * Returns the minimal number of documents a term must be contained in to
+     * be indexed.
+     *
+     * @return the minimal document frequency of an indexed term
+     */
+    public int getMinDocumentFrequency() {
+        return minDocumentFrequency;
+    }
+
+    /**
+     * Sets the minimal number of documents a term must be contained in to be
+     * indexed.
+     *
+     * @param minDocumentFrequency the minimal document frequency of an indexed term
+     * @throws IllegalArgumentException if <tt>minDocumentFrequency</tt> is less than <tt>1</tt>
+     */
+    public void setMinDocumentFrequency(int minDocumentFrequency) {
+        if (minDocumentFrequency < 1) {
+            throw new IllegalArgumentException("Minimal document frequency must be positive: " + minDocumentFrequency);
+        }
+        this.minDocumentFrequency = minDocumentFrequency;
+    }
+
+    /**
+     * Returns the maximal fraction of documents a term may be contained in to
+     * be indexed.
+     *
+     * @return the maximal fraction of documents containing an indexed term
+     */
+    public double getMaxDocumentFraction() {
+        return maxDocumentFraction;
+    }
+
+    /**
+     * Sets the maximal fraction of documents a term may be contained in to be
+     * indexed.
+     *
+     * @param maxDocumentFraction the maximal fraction of documents containing an indexed term
+     * @throws IllegalArgumentException if <tt>maxDocumentFraction</tt> is not in range <tt>(0, 1]</tt>
+     */
+    public void setMaxDocumentFraction(double maxDocumentFraction) {
+        if (!(maxDocumentFraction > 0 && maxDocumentFraction <= 1)) {
+            throw new IllegalArgumentException("Maximal document fraction must be in range (0, 1]: " + maxDocumentFraction);
+        }
+        this.maxDocumentFraction = maxDocumentFraction;
+    }
+
+    /**
+     * Returns the maximal length of an indexed term.
+     *
+     * @return the maximal length of an indexed term
+     */
+    public int getMaxTermLength() {
+        return maxTermLength;
+    }
+
+    /**
+     * Sets the maximal length of an indexed term.
+     *
+     * @param maxTermLength the maximal length of an indexed term
+     * @throws IllegalArgumentException if <tt>maxTermLength</tt> is less than <tt>1</tt>
+     */
+    public void setMaxTermLength(int maxTermLength) {
+        if (maxTermLength < 1) {
+            throw new IllegalArgumentException("Maximal term length must be positive: " + maxTermLength);
+        }
+        this.maxTermLength = maxTermLength;
+    }
+
+    /**
+     * Returns true if letters joined to digits are indexed.
+     *
+     * @return true if letters joined to digits are indexed
+     */
+    public boolean isNumericTokens() {
+        return numericTokens;
+    }
+
+    /**
+     * Sets whether letters joined to digits are indexed.
+     *
+     * @param numericTokens true if letters joined to digits should be indexed
+     */
+    public void setNumericTokens(boolean numericTokens) {
+        this.numericTokens = numericTokens;
+    }
+
+    /**
+     * Returns the maximal number of postings kept for each term, or
+     * <tt>0</tt> if all postings are kept.
+     *
+     * @return the maximal number of postings of each term, or <tt>0</tt>
+     */
+    public int getMaxPostings() {
+        return maxPostings;
+    }
+
+    /**
+     * Sets the maximal number of postings kept for each term, where
+     * <tt>0</tt> means that all postings are kept.
+     *
+     * @param maxPostings the maximal number of postings of each term, or <tt>0</tt>
+     * @throws IllegalArgumentException if <tt>maxPostings</tt> is negative
+     */
+    public void setMaxPostings(int maxPostings) {
+        if (maxPostings < 0) {
+            throw new IllegalArgumentException("Maximal number of postings must not be negative: " + maxPostings);
+        }
+        this.maxPostings = maxPostings;
+    }
+
+    /**
+     * Returns how near duplicates are handled.
+     *
+     * @return how near duplicates are handled
+     */
+    public DuplicateMode getDuplicateMode() {
+        return duplicateMode;
+    }
+
+    /**
+     * Sets how near duplicates are handled.
+     *
+     * @param duplicateMode how near duplicates are handled
+     * @throws NullPointerException if <tt>duplicateMode</tt> is <tt>null</tt>
+     */
+    public void setDuplicateMode(DuplicateMode duplicateMode) {
+        this.duplicateMode = Objects.requireNonNull(duplicateMode);
+    }
+
+    /**
+     * Returns the least estimated similarity of near duplicates.
+     *
+     * @return the least estimated similarity of near duplicates
+     */
+    public double getDuplicateThreshold() {
+        return duplicateThreshold;
+    }
+
+    /**
+     * Sets the least estimated similarity of near duplicates.
+     *
+     * @param duplicateThreshold the least estimated similarity of near duplicates
+     * @throws IllegalArgumentException if <tt>duplicateThreshold</tt> is not in range <tt>(0, 1]</tt>
+     */
+    public void setDuplicateThreshold(double duplicateThreshold) {
+        if (!(duplicateThreshold > 0 && duplicateThreshold <= 1)) {
+            throw new IllegalArgumentException("Duplicate threshold must be in range (0, 1]: " + duplicateThreshold);
+        }
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    /**
+     * Returns true if a graph of similar documents is built.
+     *
+     * @return true if a graph of similar documents is built
+     */
+    public boolean isSimilar() {
+        return similar;
+    }
+
+    /**
+     * Sets whether a graph of similar documents is built.
+     *
+     * @param similar true if a graph of similar documents should be built
+     */
+    public void setSimilar(boolean similar) {
+        this.similar = similar;
+    }
+
+    /**
+     * Returns the number of dimensions of projected document vectors.
+     *
+     * @return the number of dimensions of projected document vectors
+     */
+    public int getSimilarDimensions() {
+        return similarDimensions;
+    }
+
+    /**
+     * Sets the number of dimensions of projected document vectors.
+     *
+     * @param similarDimensions the number of dimensions of projected document vectors
+     * @throws IllegalArgumentException if <tt>similarDimensions</tt> is less than <tt>1</tt>
+     */
+    public void setSimilarDimensions(int similarDimensions) {
+        if (similarDimensions < 1) {
+            throw new IllegalArgumentException("Number of dimensions must be positive: " + similarDimensions);
+        }
+        this.similarDimensions = similarDimensions;
+    }
+
+    /**
+     * Returns glob patterns of loaded files, which is an empty list if all
+     * files are loaded.
+     *
+     * @return glob patterns of loaded files
+     */
+    public List<String> getIncludePatterns() {
+        return includePatterns;
+    }
+
+    /**
+     * Sets glob patterns of loaded files, where an empty list means that all
+     * files are loaded.
+     *
+     * @param includePatterns glob patterns of loaded files
+     * @throws NullPointerException if <tt>includePatterns</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public void setIncludePatterns(List<String> includePatterns) {
+        this.includePatterns = validatePatterns(includePatterns);
+    }
+
+    /**
+     * Returns glob patterns of skipped files and directories.
+     *
+     * @return glob patterns of skipped files and directories
+     */
+    public List<String> getExcludePatterns() {
+        return excludePatterns;
+    }
+
+    /**
+     * Sets glob patterns of skipped files and directories.
+     *
+     * @param excludePatterns glob patterns of skipped files and directories
+     * @throws NullPointerException if <tt>excludePatterns</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public void setExcludePatterns(List<String> excludePatterns) {
+        this.excludePatterns = validatePatterns(excludePatterns);
+    }
+
+    /**
+     * Returns an unmodifiable copy of the specified glob patterns, after
+     * checking that each of them is valid.
+     *
+     * @param patterns glob patterns
+     * @return an unmodifiable copy of the patterns
+     * @throws NullPointerException if <tt>patterns</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    private static List<String> validatePatterns(List<String> patterns) {
+        List<String> copy = new ArrayList<>(patterns);
+        for (String pattern : copy) {
+            FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Returns the maximal size of a loaded file in bytes, or <tt>0</tt> if
+     * files of any size are loaded.
+     *
+     * @return the maximal size of a loaded file, or <tt>0</tt>
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Sets the maximal size of a loaded file in bytes, where <tt>0</tt>
+     * means that files of any size are loaded.
+     *
+     * @param maxFileSize the maximal size of a loaded file, or <tt>0</tt>
+     * @throws IllegalArgumentException if <tt>maxFileSize</tt> is negative
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("Maximal file size must not be negative: " + maxFileSize);
+        }
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Returns true if binary files are skipped.
+     *
+     * @return true if binary files are skipped
+     */
+    public boolean isSkipBinary() {
+        return skipBinary;
+    }
+
+    /**
+     * Sets whether binary files are skipped.
+     *
+     * @param skipBinary true if binary files should be skipped
+     */
+    public void setSkipBinary(boolean skipBinary) {
+        this.skipBinary = skipBinary;
+    }
+
+    /**
+     * Returns true if files that fail to load are skipped.
+     *
+     * @return true if files that fail to load are skipped
+     */
+    public boolean isSkipErrors() {
+        return skipErrors;
+    }
+
+    /**
+     * Sets whether files that fail to load are skipped, instead of failing
+     * the whole loading.
+     *
+     * @param skipErrors true if files that fail to load should be skipped
+     */
+    public void setSkipErrors(boolean skipErrors) {
+        this.skipErrors = skipErrors;
+    }
+
+    /**
+     * Returns true if entries of compressed files and archives are loaded as
+     * documents.
+     *
+     * @return true if entries of archives are loaded
+     */
+    public boolean isArchives() {
+        return archives;
+    }
+
+    /**
+     * Sets whether entries of compressed files and archives are loaded as
+     * documents.
+     *
+     * @param archives true if entries of archives should be loaded
+     */
+    public void setArchives(boolean archives) {
+        this.archives = archives;
+    }
+
+    /**
+     * Returns the memory budget of posting lists collected while loading in
+     * bytes, or <tt>0</tt> if all posting lists are kept in memory.
+     *
+     * @return the memory budget of collected posting lists, or <tt>0</tt>
+     */
+    public long getBuildMemory() {
+        return buildMemory;
+    }
+
+    /**
+     * Sets the memory budget of posting lists collected while loading in
+     * bytes, beyond which they are spilled to temporary files, where
+     * <tt>0</tt> means that all posting lists are kept in memory.
+     *
+     * @param buildMemory the memory budget of collected posting lists, or <tt>0</tt>
+     * @throws IllegalArgumentException if <tt>buildMemory</tt> is negative
+     */
+    public void setBuildMemory(long buildMemory) {
+        if (buildMemory < 0) {
+            throw new IllegalArgumentException("Build memory must not be negative: " + buildMemory);
+        }
+        this.buildMemory = buildMemory;
+    }
+
+    /**
+     * Returns the number of adjacent segments of the same size tier that are
+     * merged into one.
+     *
+     * @return the number of segments merged into one
+     */
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    /**
+     * Sets the number of adjacent segments of the same size tier that are
+     * merged into one.
+     *
+     * @param mergeFactor the number of segments merged into one
+     * @throws IllegalArgumentException if <tt>mergeFactor</tt> is less than <tt>2</tt>
+     */
+    public void setMergeFactor(int mergeFactor) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+        }
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * Returns true if any of these options prunes terms or postings from the
+     * index.
+     *
+     * @return true if the index is pruned
+     */
+    public boolean isPruning() {
+        return minDocumentFrequency > 1 || maxDocumentFraction < 1 || maxTermLength < Integer.MAX_VALUE
+                || !numericTokens || maxPostings > 0;
+    }
+
+}
@@ -0,0 +1,798 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hr.fer.zemris.java.trazilica.shell.components.InvertedIndex.*;
+
+/**
+ * An immutable segment of an {@linkplain InvertedIndex}, which holds posting
+ * lists and the document table of a contiguous range of documents. Documents
+ * of a segment have local keys in range <tt>[0, documentCount)</tt>, which
+ * the index turns into global keys by adding the key of the first document
+ * of the segment.
+ * <p>
+ * Posting lists and the document table are stored off-heap, in the format
+ * described by the {@linkplain InvertedIndex}. Terms are keyed the same way
+ * in all segments of an index, so a segment written before a term was first
+ * seen simply has no postings of the term.
+ * <p>
+ * A segment is written in two steps. The constructor writes the document
+ * table, after which the segment is added to its index, so that the scoring
+ * model can see its documents, and the {@linkplain #encode(InvertedIndex,
+ * int, PostingsSource, IndexOptions) encode} method then writes posting lists
+ * and impacts, whose weights are given by the scoring model of the index.
+ * <p>
+ * The only mutable part of a segment is its bitset of live documents.
+ * Deleted documents are cleared from it, so that postings cursors skip them,
+ * while their postings stay in the segment until it is merged. The bitset is
+ * copied on each deletion and replaced as a whole, so that a cursor reads a
+ * consistent bitset without locking.
+ * <p>
+ * A segment may be shared by several snapshots of an index, so it counts
+ * references to it. A new segment has a single reference, held by whoever
+ * created it, and its off-heap memory is freed as soon as the last
+ * reference is {@linkplain #decRef() released}.
+ *
+ * @author Mario Bobic
+ */
+final class IndexSegment implements AutoCloseable {
+
+    /** Arena that owns all off-heap memory of this segment. */
+    private final OffHeapArena arena = new OffHeapArena();
+    /** Number of references to this segment, <tt>0</tt> once it is closed. */
+    private final AtomicInteger references = new AtomicInteger(1);
+    /** Codec used for compressing posting lists. */
+    private final PostingsCodec codec;
+    /** Indicates if positions of terms are stored. */
+    private final boolean positional;
+    /** Number of bytes taken by a single skip table entry. */
+    private final int skipEntryBytes;
+
+    /** Number of documents in this segment. */
+    private final int documentCount;
+    /** Off-heap document table. */
+    private final ByteBuffer documentTable;
+    /** Sum of lengths of all documents. */
+    private final long totalLength;
+    /** Number of documents of this segment containing each term. */
+    private final int[] documentFrequencies;
+
+    /** Bits of live documents by local keys, or <tt>null</tt> if all documents are live. */
+    private volatile long[] liveDocs;
+    /** Number of deleted documents. */
+    private volatile int deletedCount;
+    /** Number of documents that were deleted before this segment was written. */
+    private final int purgedCount;
+
+    /** Chunks of off-heap memory containing posting lists. */
+    private ByteBuffer[] chunks;
+    /** Index of the chunk containing the posting list of each term. */
+    private int[] termChunks;
+    /** Offset of the posting list of each term within its chunk. */
+    private int[] termOffsets;
+    /** Number of postings of each term, or <tt>null</tt> if no postings are pruned. */
+    private int[] postingCounts;
+    /** Number of postings of all terms. */
+    private long postingCount;
+    /** Number of bytes taken by encoded posting lists. */
+    private long postingsBytes;
+
+    /** Chunks of off-heap memory containing impacts, or <tt>null</tt>. */
+    private ByteBuffer[] impactChunks;
+    /** Index of the chunk containing impacts of each term. */
+    private int[] termImpactChunks;
+    /** Offset of impacts of each term within their chunk. */
+    private int[] termImpactOffsets;
+    /** Weight of a single impact unit of each term. */
+    private float[] impactScales;
+    /** Number of bytes allocated for impacts. */
+    private long impactBytes;
+
+    /**
+     * Constructs an instance of {@code IndexSegment} of documents with the
+     * specified norms and lengths, whose terms are contained in as many
+     * documents as the specified <tt>source</tt> says. Posting lists must
+     * then be {@linkplain #encode(InvertedIndex, int, PostingsSource,
+     * IndexOptions) encoded}.
+     * <p>
+     * Documents with the specified <tt>purged</tt> keys were deleted before
+     * the segment is written, so the source has no postings of them and
+     * their norms and lengths are zero. They are deleted in this segment
+     * as well.
+     *
+     * @param source source of posting lists of all terms
+     * @param norms norms of TF-IDF vectors of documents
+     * @param lengths lengths of documents
+     * @param purged local keys of deleted documents, or <tt>null</tt>
+     * @param codec codec used for compressing posting lists
+     */
+    IndexSegment(PostingsSource source, double[] norms, int[] lengths, IntList purged, PostingsCodec codec) {
+        this.codec = codec;
+        this.positional = source.hasPositions();
+        this.skipEntryBytes = positional ? POSITIONAL_SKIP_ENTRY_BYTES : SKIP_ENTRY_BYTES;
+        this.documentCount = norms.length;
+        this.purgedCount = purged == null ? 0 : delete(purged);
+
+        int termCount = source.termCount();
+        documentFrequencies = new int[termCount];
+        for (int term = 0; term < termCount; term++) {
+            documentFrequencies[term] = source.documentFrequency(term);
+        }
+
+        long total = 0;
+        documentTable = arena.allocate(documentCount * DOCUMENT_ENTRY_BYTES);
+        for (int doc = 0; doc < documentCount; doc++) {
+            documentTable.putDouble(doc * DOCUMENT_ENTRY_BYTES, norms[doc]);
+            documentTable.putInt(doc * DOCUMENT_ENTRY_BYTES + Double.BYTES, lengths[doc]);
+            total += lengths[doc];
+        }
+        totalLength = total;
+    }
+
+    /**
+     * Encodes posting lists of the specified <tt>source</tt>, pruning them
+     * and precomputing their impacts if the specified <tt>options</tt> say
+     * so, where weights of postings are given by the scoring model of the
+     * specified <tt>index</tt>, which already contains this segment.
+     *
+     * @param index index that contains this segment
+     * @param docBase global key of the first document of this segment
+     * @param source source of posting lists of all terms
+     * @param options options that control indexing
+     * @throws java.io.UncheckedIOException if an I/O error occurs while reading the source
+     */
+    void encode(InvertedIndex index, int docBase, PostingsSource source, IndexOptions options) {
+        int termCount = documentFrequencies.length;
+        termChunks = new int[termCount];
+        termOffsets = new int[termCount];
+
+        int maxPostings = options.getMaxPostings();
+        if (maxPostings > 0) {
+            postingCounts = documentFrequencies.clone();
+        }
+        ImpactBuilder impacts = options.isImpacts() ? new ImpactBuilder(index, docBase, termCount) : null;
+
+        List<ByteBuffer> chunkList = new ArrayList<>();
+        ByteBuffer chunk = null;
+        int position = 0;
+
+        ByteBuffer scratch = ByteBuffer.allocate(0);
+        int[] block = new int[BLOCK_SIZE];
+
+        try (PostingsSource.TermCursor terms = source.terms()) {
+            while (terms.next()) {
+                int term = terms.term();
+                IntList list = terms.postings();
+                IntList termPositions = terms.positions();
+                if (maxPostings > 0) {
+                    if (list.size() / 2 > maxPostings) {
+                        IntList[] pruned = prunePostings(index, docBase, term, list, termPositions, maxPostings);
+                        list = pruned[0];
+                        termPositions = pruned[1];
+                    }
+                    postingCounts[term] = list.size() / 2;
+                }
+                int df = postingCount(term);
+                postingCount += df;
+
+                int maxBytes = maxEncodedBytes(df, termPositions);
+                if (scratch.capacity() < maxBytes) {
+                    scratch = ByteBuffer.allocate(maxBytes).order(ByteOrder.nativeOrder());
+                }
+                int bytes = encodePostings(list, termPositions, scratch, block);
+
+                if (chunk == null || chunk.capacity() - position < bytes) {
+                    chunk = arena.allocateChunk(bytes);
+                    chunkList.add(chunk);
+                    position = 0;
+                }
+
+                ByteBuffer target = chunk.duplicate();
+                target.position(position);
+                target.put(scratch.array(), 0, bytes);
+
+                termChunks[term] = chunkList.size() - 1;
+                termOffsets[term] = position;
+                position += bytes;
+                postingsBytes += bytes;
+
+                if (impacts != null) {
+                    impacts.add(term, list);
+                }
+            }
+        }
+        chunks = chunkList.toArray(new ByteBuffer[chunkList.size()]);
+
+        if (impacts != null) {
+            impactChunks = impacts.chunkList.toArray(new ByteBuffer[impacts.chunkList.size()]);
+        }
+    }
+
+    /**
+     * Returns a posting list and positions of the specified term that
+     * contain only <tt>maxPostings</tt> postings with the greatest weight
+     * given by the scoring model of the specified <tt>index</tt>.
+     *
+     * @param index index that contains this segment
+     * @param docBase global key of the first document of this segment
+     * @param term key of the term
+     * @param list posting list of the term
+     * @param termPositions positions of the term, or <tt>null</tt>
+     * @param maxPostings number of postings to be kept
+     * @return the pruned posting list and positions, which are <tt>null</tt>
+     *         if positions are not given
+     */
+    private static IntList[] prunePostings(InvertedIndex index, int docBase, int term, IntList list,
+            IntList termPositions, int maxPostings) {
+        ScoringModel scoringModel = index.getScoringModel();
+        int df = list.size() / 2;
+        double idf = scoringModel.idf(index, term);
+
+        double[] weights = new double[df];
+        for (int i = 0; i < df; i++) {
+            int doc = docBase + list.get(2 * i);
+            double norm = scoringModel.documentNorm(index, doc);
+            weights[i] = norm == 0 ? 0 : idf * scoringModel.tf(index, doc, list.get(2 * i + 1)) / norm;
+        }
+        double[] sorted = weights.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[df - maxPostings];
+        int above = 0;
+        for (int i = 0; i < df; i++) {
+            if (weights[i] > threshold) {
+                above++;
+            }
+        }
+
+        IntList pruned = new IntList(2 * maxPostings);
+        IntList prunedPositions = termPositions == null ? null : new IntList();
+        int ties = maxPostings - above;
+        for (int i = 0, p = 0; i < df; i++) {
+            int freq = list.get(2 * i + 1);
+            boolean kept = weights[i] > threshold || (weights[i] == threshold && ties-- > 0);
+            if (kept) {
+                pruned.add(list.get(2 * i));
+                pruned.add(freq);
+                for (int j = 0; prunedPositions != null && j < freq; j++) {
+                    prunedPositions.add(termPositions.get(p + j));
+                }
+            }
+            p += freq;
+        }
+
+        return new IntList[] {pruned, prunedPositions};
+    }
+
+    /**
+     * Precomputes impacts of postings using the scoring model of an index,
+     * term by term. The weight of each posting is divided by the greatest
+     * weight in its posting list and rounded to an integer in range
+     * <tt>[0, {@value InvertedIndex#MAX_IMPACT}]</tt>, so that the greatest
+     * weight of every term is represented exactly.
+     *
+     * @author Mario Bobic
+     */
+    private class ImpactBuilder {
+
+        /** Index that contains this segment. */
+        private final InvertedIndex index;
+        /** Global key of the first document of this segment. */
+        private final int docBase;
+        /** Chunks of off-heap memory containing impacts. */
+        private final List<ByteBuffer> chunkList = new ArrayList<>();
+        /** The chunk impacts are currently written to. */
+        private ByteBuffer chunk;
+        /** Offset of the next impact within the current chunk. */
+        private int position;
+        /** Weights of postings of the current term. */
+        private double[] weights = new double[0];
+
+        /**
+         * Constructs an instance of {@code ImpactBuilder} for the specified
+         * number of terms.
+         *
+         * @param index index that contains this segment
+         * @param docBase global key of the first document of this segment
+         * @param termCount number of terms
+         */
+        public ImpactBuilder(InvertedIndex index, int docBase, int termCount) {
+            this.index = index;
+            this.docBase = docBase;
+            termImpactChunks = new int[termCount];
+            termImpactOffsets = new int[termCount];
+            impactScales = new float[termCount];
+        }
+
+        /**
+         * Precomputes impacts of postings of the specified term.
+         *
+         * @param term key of the term
+         * @param list posting list of the term, possibly pruned
+         */
+        public void add(int term, IntList list) {
+            int df = postingCount(term);
+            if (weights.length < df) {
+                weights = new double[Math.max(df, 2 * weights.length)];
+            }
+
+            ScoringModel scoringModel = index.getScoringModel();
+            double idf = scoringModel.idf(index, term);
+            double max = 0;
+            for (int i = 0; i < df; i++) {
+                int doc = docBase + list.get(2 * i);
+                double norm = scoringModel.documentNorm(index, doc);
+                weights[i] = norm == 0 ? 0 : idf * scoringModel.tf(index, doc, list.get(2 * i + 1)) / norm;
+                max = Math.max(max, weights[i]);
+            }
+
+            if (chunk == null || chunk.capacity() - position < df) {
+                chunk = arena.allocateChunk(df);
+                chunkList.add(chunk);
+                position = 0;
+                impactBytes += chunk.capacity();
+            }
+            for (int i = 0; i < df; i++) {
+                int impact = max == 0 ? 0 : (int) Math.round(weights[i] / max * MAX_IMPACT);
+                chunk.put(position + i, (byte) impact);
+            }
+
+            termImpactChunks[term] = chunkList.size() - 1;
+            termImpactOffsets[term] = position;
+            impactScales[term] = (float) (max / MAX_IMPACT);
+            position += df;
+        }
+    }
+
+    /**
+     * Returns the maximal number of bytes needed for an encoded posting list
+     * with the specified number of postings and positions.
+     *
+     * @param df number of postings
+     * @param positions positions of the term, or <tt>null</tt>
+     * @return the maximal number of bytes needed for the encoded posting list
+     */
+    private int maxEncodedBytes(int df, IntList positions) {
+        int blocks = blockCount(df);
+        int bytes = blocks * skipEntryBytes + 2 * blocks * codec.maxEncodedBytes(BLOCK_SIZE);
+        if (positions != null) {
+            bytes += positions.size() * 5;
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes the specified posting <tt>list</tt> into the <tt>out</tt>
+     * buffer, starting at offset <tt>0</tt>. The skip table is written first,
+     * followed by blocks, each containing encoded deltas of document keys and
+     * encoded term frequencies decremented by one. Positions, if given, are
+     * written last.
+     *
+     * @param list posting list of pairs of a document key and term frequency
+     * @param positions positions of the term, or <tt>null</tt>
+     * @param out buffer where the posting list is encoded to
+     * @param block buffer for values of a single block
+     * @return number of bytes of the encoded posting list
+     */
+    private int encodePostings(IntList list, IntList positions, ByteBuffer out, int[] block) {
+        int df = list.size() / 2;
+        int blocks = blockCount(df);
+
+        int offset = blocks * skipEntryBytes;
+        int previousDoc = -1;
+        for (int b = 0; b < blocks; b++) {
+            int start = b * BLOCK_SIZE;
+            int length = Math.min(BLOCK_SIZE, df - start);
+
+            out.putInt(b * skipEntryBytes, list.get(2 * (start + length - 1)));
+            out.putInt(b * skipEntryBytes + Integer.BYTES, offset);
+
+            for (int i = 0; i < length; i++) {
+                int doc = list.get(2 * (start + i));
+                block[i] = doc - previousDoc - 1;
+                previousDoc = doc;
+            }
+            offset = codec.encode(block, length, out, offset);
+
+            for (int i = 0; i < length; i++) {
+                block[i] = list.get(2 * (start + i) + 1) - 1;
+            }
+            offset = codec.encode(block, length, out, offset);
+        }
+
+        if (positions != null) {
+            int p = 0;
+            for (int b = 0; b < blocks; b++) {
+                out.putInt(b * skipEntryBytes + 2 * Integer.BYTES, offset);
+
+                int start = b * BLOCK_SIZE;
+                int end = Math.min(df, start + BLOCK_SIZE);
+                for (int i = start; i < end; i++) {
+                    int tf = list.get(2 * i + 1);
+                    int previous = -1;
+                    for (int j = 0; j < tf; j++, p++) {
+                        int position = positions.get(p);
+                        offset = VByteCodec.writeVInt(out, offset, position - previous - 1);
+                        previous = position;
+                    }
+                }
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Returns the number of documents in this segment.
+     *
+     * @return the number of documents in this segment
+     */
+    public int documentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Returns the number of terms known when this segment was written.
+     * Terms with greater keys have no postings in this segment.
+     *
+     * @return the number of terms known when this segment was written
+     */
+    public int termCount() {
+        return documentFrequencies.length;
+    }
+
+    /**
+     * Returns the number of documents of this segment containing the term
+     * with the specified key.
+     *
+     * @param term key of the term
+     * @return the number of documents containing the term
+     */
+    public int documentFrequency(int term) {
+        return term < documentFrequencies.length ? documentFrequencies[term] : 0;
+    }
+
+    /**
+     * Returns the number of postings of the term with the specified key in
+     * this segment, which is less than its document frequency if postings of
+     * the term are pruned.
+     *
+     * @param term key of the term
+     * @return the number of postings of the term
+     */
+    public int postingCount(int term) {
+        if (term >= documentFrequencies.length) {
+            return 0;
+        }
+        return postingCounts == null ? documentFrequencies[term] : postingCounts[term];
+    }
+
+    /**
+     * Returns the bitset of live documents of this segment by their local
+     * keys, or <tt>null</tt> if all documents are live. The bitset is never
+     * modified and is tested by the {@linkplain #isLive(long[], int)} method.
+     *
+     * @return the bitset of live documents, or <tt>null</tt>
+     */
+    long[] liveDocs() {
+        return liveDocs;
+    }
+
+    /**
+     * Returns true if the document with the specified local key is set in
+     * the specified bitset of live documents.
+     *
+     * @param liveDocs a bitset of live documents
+     * @param doc local key of the document
+     * @return true if the document is live
+     */
+    static boolean isLive(long[] liveDocs, int doc) {
+        return (liveDocs[doc >>> 6] & (1L << doc)) != 0;
+    }
+
+    /**
+     * Returns true if the document with the specified local key is not
+     * deleted.
+     *
+     * @param doc local key of the document
+     * @return true if the document is live
+     */
+    public boolean isLive(int doc) {
+        long[] live = liveDocs;
+        return live == null || isLive(live, doc);
+    }
+
+    /**
+     * Returns the number of deleted documents of this segment.
+     *
+     * @return the number of deleted documents
+     */
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Returns the number of documents that were deleted before this segment
+     * was written, whose postings are not in this segment and which are not
+     * counted by statistics of the index.
+     *
+     * @return the number of documents deleted before this segment was written
+     */
+    public int purgedCount() {
+        return purgedCount;
+    }
+
+    /**
+     * Deletes documents with the specified local keys, replacing the bitset
+     * of live documents with an updated copy. Documents that are already
+     * deleted are skipped.
+     *
+     * @param docs local keys of documents
+     * @return the number of newly deleted documents
+     */
+    synchronized int delete(IntList docs) {
+        long[] live = liveDocs;
+        if (live == null) {
+            live = new long[(documentCount + 63) >>> 6];
+            Arrays.fill(live, -1L);
+        } else {
+            live = live.clone();
+        }
+
+        int deleted = 0;
+        for (int i = 0, n = docs.size(); i < n; i++) {
+            int doc = docs.get(i);
+            if (isLive(live, doc)) {
+                live[doc >>> 6] &= ~(1L << doc);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            liveDocs = live;
+            deletedCount += deleted;
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns true if postings of some terms of this segment are pruned.
+     *
+     * @return true if postings are pruned
+     */
+    public boolean isPruned() {
+        return postingCounts != null;
+    }
+
+    /**
+     * Returns the number of postings of all terms in this segment.
+     *
+     * @return the number of postings of all terms
+     */
+    public long postingCount() {
+        return postingCount;
+    }
+
+    /**
+     * Returns the sum of lengths of all documents of this segment.
+     *
+     * @return the sum of lengths of all documents
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * Returns the norm of the TF-IDF vector of the document with the
+     * specified local key.
+     *
+     * @param doc local key of the document
+     * @return the norm of the document's TF-IDF vector
+     * @throws IllegalStateException if this segment is closed
+     */
+    public double documentNorm(int doc) {
+        checkOpen();
+        return documentTable.getDouble(doc * DOCUMENT_ENTRY_BYTES);
+    }
+
+    /**
+     * Returns the length of the document with the specified local key.
+     *
+     * @param doc local key of the document
+     * @return the length of the document
+     * @throws IllegalStateException if this segment is closed
+     */
+    public int documentLength(int doc) {
+        checkOpen();
+        return documentTable.getInt(doc * DOCUMENT_ENTRY_BYTES + Double.BYTES);
+    }
+
+    /**
+     * Returns true if this segment stores positions of terms.
+     *
+     * @return true if this segment stores positions of terms
+     */
+    public boolean hasPositions() {
+        return positional;
+    }
+
+    /**
+     * Returns true if impacts of postings are precomputed.
+     *
+     * @return true if impacts of postings are precomputed
+     */
+    public boolean hasImpacts() {
+        return impactChunks != null;
+    }
+
+    /**
+     * Returns the weight of a single impact unit of the specified term in
+     * this segment.
+     *
+     * @param term key of the term
+     * @return the weight of a single impact unit of the term
+     */
+    public double impactScale(int term) {
+        return term < impactScales.length ? impactScales[term] : 0;
+    }
+
+    /**
+     * Returns the chunk containing the posting list of the specified term, or
+     * <tt>null</tt> if the term has no postings in this segment.
+     *
+     * @param term key of the term
+     * @return the chunk containing the posting list of the term, or <tt>null</tt>
+     */
+    ByteBuffer chunk(int term) {
+        return postingCount(term) == 0 ? null : chunks[termChunks[term]];
+    }
+
+    /**
+     * Returns the offset of the posting list of the specified term within its
+     * {@link #chunk(int) chunk}.
+     *
+     * @param term key of the term
+     * @return the offset of the posting list within its chunk
+     */
+    int offset(int term) {
+        return term < termOffsets.length ? termOffsets[term] : 0;
+    }
+
+    /**
+     * Returns the chunk containing impacts of the specified term, or
+     * <tt>null</tt> if impacts are not precomputed or the term has no
+     * postings in this segment.
+     *
+     * @param term key of the term
+     * @return the chunk containing impacts of the term, or <tt>null</tt>
+     */
+    ByteBuffer impactChunk(int term) {
+        return impactChunks == null || postingCount(term) == 0 ? null : impactChunks[termImpactChunks[term]];
+    }
+
+    /**
+     * Returns the offset of impacts of the specified term within their
+     * {@link #impactChunk(int) chunk}.
+     *
+     * @param term key of the term
+     * @return the offset of impacts within their chunk
+     */
+    int impactOffset(int term) {
+        return term < termImpactOffsets.length ? termImpactOffsets[term] : 0;
+    }
+
+    /**
+     * Returns the number of bytes taken by encoded posting lists, including
+     * their skip tables.
+     *
+     * @return the number of bytes taken by encoded posting lists
+     */
+    public long postingsBytes() {
+        return postingsBytes;
+    }
+
+    /**
+     * Returns the number of off-heap bytes allocated by this segment.
+     *
+     * @return the number of off-heap bytes allocated by this segment
+     */
+    public long offHeapBytes() {
+        return arena.allocatedBytes();
+    }
+
+    /**
+     * Returns the number of off-heap bytes taken by the document table.
+     *
+     * @return the number of off-heap bytes taken by the document table
+     */
+    public long documentTableBytes() {
+        return documentTable.capacity();
+    }
+
+    /**
+     * Returns the number of off-heap bytes taken by impacts.
+     *
+     * @return the number of off-heap bytes taken by impacts
+     */
+    public long impactBytes() {
+        return impactBytes;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by per-term arrays and
+     * the bitset of live documents of this segment.
+     *
+     * @return the estimated number of heap bytes taken by heap arrays
+     */
+    public long heapBytes() {
+        int terms = termCount();
+        long bytes = MemoryEstimator.array(terms, Integer.BYTES) * 3
+                + MemoryEstimator.array(chunks.length, MemoryEstimator.REFERENCE);
+        if (postingCounts != null) {
+            bytes += MemoryEstimator.array(terms, Integer.BYTES);
+        }
+        long[] live = liveDocs;
+        if (live != null) {
+            bytes += MemoryEstimator.array(live.length, Long.BYTES);
+        }
+        if (hasImpacts()) {
+            bytes += MemoryEstimator.array(terms, Integer.BYTES) * 2
+                    + MemoryEstimator.array(terms, Float.BYTES)
+                    + MemoryEstimator.array(impactChunks.length, MemoryEstimator.REFERENCE);
+        }
+        return bytes;
+    }
+
+    /**
+     * Throws an exception if this segment is closed.
+     *
+     * @throws IllegalStateException if this segment is closed
+     */
+    void checkOpen() {
+        if (arena.isClosed()) {
+            throw new IllegalStateException("Index is closed.");
+        }
+    }
+
+    /**
+     * Acquires a reference to this segment, unless the segment is already
+     * closed.
+     *
+     * @return true if the reference is acquired, false if this segment is closed
+     */
+    boolean tryIncRef() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to this segment and closes the segment if it was
+     * the last reference.
+     */
+    void decRef() {
+        if (references.decrementAndGet() == 0) {
+            arena.close();
+        }
+    }
+
+    /**
+     * Frees all off-heap memory of this segment at once, regardless of its
+     * references.
+     */
+    @Override
+    public void close() {
+        references.set(0);
+        arena.close();
+    }
+
+}
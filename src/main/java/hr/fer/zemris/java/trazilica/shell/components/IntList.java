@@ -0,0 +1,109 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive <tt>int</tt> values. Used while building index
+ * structures, where a list of boxed integers would cost several times more
+ * memory than the values themselves.
+ *
+ * @author Mario Bobic
+ */
+public class IntList {
+
+    /** Default initial capacity. */
+    private static final int DEFAULT_CAPACITY = 4;
+
+    /** Elements of this list. */
+    private int[] elements;
+    /** Number of elements in this list. */
+    private int size;
+
+    /**
+     * Constructs an empty {@code IntList} with the default initial capacity.
+     */
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty {@code IntList} with the specified initial
+     * <tt>capacity</tt>.
+     *
+     * @param capacity initial capacity
+     * @throws NegativeArraySizeException if <tt>capacity</tt> is negative
+     */
+    public IntList(int capacity) {
+        elements = new int[capacity];
+    }
+
+    /**
+     * Appends the specified <tt>value</tt> to the end of this list.
+     *
+     * @param value value to be appended
+     */
+    public void add(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(DEFAULT_CAPACITY, size + (size >> 1)));
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Returns the element at the specified <tt>index</tt>. The index is not
+     * checked against the size of this list.
+     *
+     * @param index index of the element
+     * @return the element at the specified index
+     */
+    public int get(int index) {
+        return elements[index];
+    }
+
+    /**
+     * Replaces the element at the specified <tt>index</tt>. The index is not
+     * checked against the size of this list.
+     *
+     * @param index index of the element
+     * @param value new value of the element
+     */
+    public void set(int index, int value) {
+        elements[index] = value;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes elements from the end of this list, so that it contains only
+     * the specified number of elements, keeping its capacity.
+     *
+     * @param size number of elements to be kept, not greater than the size
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Removes all elements from this list, keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns a new array containing all elements of this list.
+     *
+     * @return a new array containing all elements of this list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+}
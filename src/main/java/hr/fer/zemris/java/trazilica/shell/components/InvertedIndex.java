@@ -0,0 +1,1102 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+
+/**
+ * An inverted index whose posting lists and document table are stored outside
+ * of the Java heap, in direct buffers of an {@linkplain OffHeapArena}. Only
+ * small per-term arrays are kept on the heap, so the number of heap objects
+ * does not grow with the number of postings or documents.
+ * <p>
+ * A posting list of a term is a sequence of <tt>(document key, term
+ * frequency)</tt> pairs, sorted by the document key. Posting lists are split
+ * into blocks of {@linkplain #BLOCK_SIZE} postings, where document keys are
+ * delta-encoded and both keys and frequencies are compressed by a
+ * {@linkplain PostingsCodec}. Every posting list starts with a skip table
+ * which holds the last document key and the offset of each block, so that
+ * blocks which can not contain a wanted document are never decoded.
+ * <p>
+ * If the index is positional, the blocks of a posting list are followed by
+ * positions of the term in each document. Positions of a block are written
+ * as a single stream of variable-byte encoded values, where the first
+ * position in a document is written as is and every other is written as the
+ * gap from the previous one, decremented by one. The skip table then also
+ * holds the offset of positions of each block.
+ * <p>
+ * Posting lists are read using a {@linkplain PostingsCursor}, which is a
+ * flyweight that can be reset to any term and does not allocate any objects
+ * while iterating.
+ * <p>
+ * The document table holds the norm of the TF-IDF vector of each document,
+ * where the TF-IDF weight of a term in a document is the term frequency
+ * multiplied by the term's IDF, which is calculated as
+ * <tt>log(nDocuments / nDocumentsContainingTerm)</tt>, and the length of
+ * each document, which is the sum of frequencies of its terms.
+ * <p>
+ * Documents are scored by a {@linkplain ScoringModel}. If the index is
+ * built with impacts, the weight of every posting given by the scoring model
+ * is precomputed and quantized to a single byte, relative to the greatest
+ * weight in the posting list of its term. Impacts are kept in separate
+ * chunks, in the same order as postings.
+ * <p>
+ * The index is made of immutable {@linkplain IndexSegment segments}, each
+ * holding posting lists and the document table of a contiguous range of
+ * documents. An index is built as a single segment, and documents loaded
+ * later are {@linkplain #addSegment(int, PostingsSource) added} as a new
+ * segment, which gives a new index that shares all older segments, while
+ * the old index stays usable by queries that still read it. Adjacent
+ * segments are {@linkplain #mergeSegments(int, int) merged} in the same way.
+ * Posting lists of a term in all segments together form its posting list in
+ * the whole index, since segments hold ascending ranges of document keys.
+ * <p>
+ * Document frequencies and IDF components are global, summed over all
+ * segments, so a term is weighed the same in every segment. Norms of
+ * documents and impacts are computed with the global IDF components of the
+ * time their segment is written, and computed again when it is merged.
+ * Between merges, norms of older segments are therefore approximate, since
+ * IDF components change as documents are added and purged, and a forced
+ * merge into a single segment makes all norms equal to those of an index
+ * built anew. Norms of segments whose postings are pruned are carried over
+ * by merges, since they can not be computed from kept postings.
+ * <p>
+ * The index must be {@link #close() closed} when it is no longer used, which
+ * frees off-heap memory of all of its segments immediately. Indexes that
+ * share segments instead {@linkplain #tryAcquire() acquire} and
+ * {@linkplain #release() release} references to them, and a segment is
+ * freed when its last reference is released.
+ *
+ * @author Mario Bobic
+ */
+public class InvertedIndex implements AutoCloseable {
+
+    /** Number of postings in a single block. */
+    public static final int BLOCK_SIZE = 128;
+
+    /** Number of bytes taken by a skip table entry of a non-positional index. */
+    static final int SKIP_ENTRY_BYTES = 2 * Integer.BYTES;
+    /** Number of bytes taken by a skip table entry of a positional index. */
+    static final int POSITIONAL_SKIP_ENTRY_BYTES = 3 * Integer.BYTES;
+    /** Number of bytes taken by a single document table entry. */
+    static final int DOCUMENT_ENTRY_BYTES = Double.BYTES + Integer.BYTES;
+    /** Greatest value of a quantized impact. */
+    public static final int MAX_IMPACT = 255;
+
+    /** Options by which segments are written. */
+    private final IndexOptions options;
+    /** Codec used for compressing posting lists. */
+    private final PostingsCodec codec;
+    /** Indicates if positions of terms are stored. */
+    private final boolean positional;
+    /** Number of bytes taken by a single skip table entry. */
+    private final int skipEntryBytes;
+    /** Model by which documents are scored. */
+    private final ScoringModel scoringModel;
+
+    /** Segments of this index, in ascending order of their documents. */
+    private final IndexSegment[] segments;
+    /** Global key of the first document of each segment, followed by the document count. */
+    private final int[] docBases;
+    /** Number of documents in this index, including deleted ones. */
+    private final int documentCount;
+    /** Number of documents counted by statistics. */
+    private final int collectionSize;
+    /** Number of documents containing each term. */
+    private final int[] documentFrequencies;
+    /** IDF component of each term. */
+    private final double[] idfComponents;
+    /** Sum of lengths of all documents. */
+    private final long totalLength;
+    /** Number of postings of all terms. */
+    private final long postingCount;
+
+    /**
+     * Constructs an instance of {@code InvertedIndex} from the specified
+     * <tt>postings</tt>, where the list at index <tt>i</tt> contains postings
+     * of the term with key <tt>i</tt>, as consecutive pairs of a document key
+     * and term frequency, sorted by the document key.
+     * <p>
+     * If <tt>positions</tt> are not <tt>null</tt>, the list at index
+     * <tt>i</tt> contains positions of the term with key <tt>i</tt> in each
+     * document of its posting list, in the same order, where positions within
+     * a single document are ascending and their count is the term frequency.
+     * <p>
+     * Document keys must be in range <tt>[0, documentCount)</tt>. The
+     * specified lists are copied and may be discarded afterwards. Documents
+     * are scored by the {@linkplain TfIdfModel TF-IDF model} and impacts are
+     * not precomputed.
+     *
+     * @param documentCount number of documents
+     * @param postings posting lists of all terms
+     * @param positions positions of all terms, or <tt>null</tt> for a non-positional index
+     * @param codec codec used for compressing posting lists
+     * @throws NullPointerException if <tt>postings</tt> or <tt>codec</tt> is <tt>null</tt>
+     */
+    public InvertedIndex(int documentCount, List<IntList> postings, List<IntList> positions, PostingsCodec codec) {
+        this(documentCount, postings, positions, withCodec(codec));
+    }
+
+    /**
+     * Constructs an instance of {@code InvertedIndex} from the specified
+     * <tt>postings</tt> and <tt>positions</tt>, as described by the
+     * {@linkplain #InvertedIndex(int, List, List, PostingsCodec)}
+     * constructor, using the codec, scoring model and impacts of the
+     * specified <tt>options</tt>.
+     * <p>
+     * If the options limit the number of postings of a term, only postings
+     * with the greatest weight given by the scoring model are kept, where
+     * ties are resolved in favour of lower document keys. Document
+     * frequencies, norms and lengths are still calculated from all postings,
+     * so scores of kept postings do not change.
+     *
+     * @param documentCount number of documents
+     * @param postings posting lists of all terms
+     * @param positions positions of all terms, or <tt>null</tt> for a non-positional index
+     * @param options options that control indexing
+     * @throws NullPointerException if <tt>postings</tt> or <tt>options</tt> is <tt>null</tt>
+     */
+    public InvertedIndex(int documentCount, List<IntList> postings, List<IntList> positions, IndexOptions options) {
+        this(documentCount, PostingsSource.of(postings, positions), options);
+    }
+
+    /**
+     * Constructs an instance of {@code InvertedIndex} from posting lists of
+     * the specified <tt>source</tt>, as described by the
+     * {@linkplain #InvertedIndex(int, List, List, IndexOptions)} constructor.
+     * Posting lists are read term by term, once for calculating norms and
+     * lengths of documents and once more for encoding them, so that they do
+     * not have to be held in memory all at once.
+     *
+     * @param documentCount number of documents
+     * @param source source of posting lists of all terms
+     * @param options options that control indexing
+     * @throws NullPointerException if <tt>source</tt> or <tt>options</tt> is <tt>null</tt>
+     * @throws java.io.UncheckedIOException if an I/O error occurs while reading the source
+     */
+    InvertedIndex(int documentCount, PostingsSource source, IndexOptions options) {
+        this(Collections.emptyList(), documentCount, source, null, null, null, Collections.emptyList(), options);
+    }
+
+    /**
+     * Constructs an instance of {@code InvertedIndex} made of the specified
+     * segments and a new segment written from posting lists of the specified
+     * <tt>source</tt>, placed between the <tt>before</tt> and <tt>after</tt>
+     * segments. Keys of documents in the source are local to the new
+     * segment. Global document frequencies and IDF components are calculated
+     * first, so that norms and impacts of the new segment are computed with
+     * them.
+     *
+     * @param before segments that precede the new segment
+     * @param documentCount number of documents of the new segment
+     * @param source source of posting lists of the new segment
+     * @param norms norms of documents of the new segment, or <tt>null</tt>
+     *        if they are calculated from the source
+     * @param lengths lengths of documents of the new segment, or <tt>null</tt>
+     *        if they are calculated from the source
+     * @param purged local keys of deleted documents of the new segment,
+     *        which have no postings in the source, or <tt>null</tt>
+     * @param after segments that follow the new segment
+     * @param options options that control indexing
+     * @throws java.io.UncheckedIOException if an I/O error occurs while reading the source
+     */
+    private InvertedIndex(List<IndexSegment> before, int documentCount, PostingsSource source,
+            double[] norms, int[] lengths, IntList purged, List<IndexSegment> after, IndexOptions options) {
+        this.options = options;
+        this.codec = options.getCodec();
+        this.scoringModel = options.getScoringModel();
+        this.positional = source.hasPositions();
+        this.skipEntryBytes = positional ? POSITIONAL_SKIP_ENTRY_BYTES : SKIP_ENTRY_BYTES;
+
+        int at = before.size();
+        segments = new IndexSegment[at + 1 + after.size()];
+        for (int i = 0; i < at; i++) {
+            segments[i] = before.get(i);
+        }
+        for (int i = 0; i < after.size(); i++) {
+            segments[at + 1 + i] = after.get(i);
+        }
+
+        int termCount = source.termCount();
+        documentFrequencies = new int[termCount];
+        idfComponents = new double[termCount];
+
+        long start = System.nanoTime();
+        int documents = documentCount - (purged == null ? 0 : purged.size());
+        for (IndexSegment segment : segments) {
+            if (segment != null) {
+                documents += segment.documentCount() - segment.purgedCount();
+            }
+        }
+        for (int term = 0; term < termCount; term++) {
+            int df = source.documentFrequency(term);
+            for (IndexSegment segment : segments) {
+                if (segment != null) {
+                    df += segment.documentFrequency(term);
+                }
+            }
+            documentFrequencies[term] = df;
+            idfComponents[term] = idfComponent(documents, df);
+        }
+        Metrics.record(Phase.IDF_COMPUTATION, start, termCount);
+
+        start = System.nanoTime();
+        if (norms == null) {
+            norms = new double[documentCount];
+            lengths = new int[documentCount];
+            measure(source, idfComponents, norms, lengths);
+        }
+        segments[at] = new IndexSegment(source, norms, lengths, purged, codec);
+
+        docBases = docBases(segments);
+        this.documentCount = docBases[segments.length];
+        this.collectionSize = documents;
+        this.totalLength = totalLength(segments);
+        try {
+            segments[at].encode(this, docBases[at], source, options);
+        } catch (RuntimeException | Error e) {
+            segments[at].close();
+            throw e;
+        }
+        this.postingCount = postingCount(segments);
+        Metrics.record(Phase.VECTOR_BUILDING, start, segments[at].postingCount());
+    }
+
+    /**
+     * Constructs an instance of {@code InvertedIndex} made of the specified
+     * existing <tt>segments</tt>, which were written with the same options
+     * as the <tt>template</tt> index, and whose terms are known by it.
+     *
+     * @param template an index whose options and terms are used
+     * @param segments segments of the index
+     */
+    private InvertedIndex(InvertedIndex template, IndexSegment[] segments) {
+        this.options = template.options;
+        this.codec = template.codec;
+        this.scoringModel = template.scoringModel;
+        this.positional = template.positional;
+        this.skipEntryBytes = template.skipEntryBytes;
+        this.segments = segments;
+
+        int termCount = template.termCount();
+        docBases = docBases(segments);
+        documentCount = docBases[segments.length];
+        collectionSize = collectionSize(segments);
+        documentFrequencies = new int[termCount];
+        idfComponents = new double[termCount];
+        for (int term = 0; term < termCount; term++) {
+            int df = 0;
+            for (IndexSegment segment : segments) {
+                df += segment.documentFrequency(term);
+            }
+            documentFrequencies[term] = df;
+            idfComponents[term] = idfComponent(collectionSize, df);
+        }
+        totalLength = totalLength(segments);
+        postingCount = postingCount(segments);
+    }
+
+    /**
+     * Returns index options with default values and the specified
+     * <tt>codec</tt>.
+     *
+     * @param codec codec used for compressing posting lists
+     * @return index options with the specified codec
+     * @throws NullPointerException if <tt>codec</tt> is <tt>null</tt>
+     */
+    private static IndexOptions withCodec(PostingsCodec codec) {
+        IndexOptions options = new IndexOptions();
+        options.setCodec(codec);
+        return options;
+    }
+
+    /**
+     * Returns the IDF component of a term with the specified document
+     * frequency in a collection of the specified size. A term without
+     * documents, which is left in the vocabulary when all documents that
+     * contained it are deleted and purged by a merge, has the IDF component
+     * of <tt>0</tt>, so it adds nothing to scores and norms.
+     *
+     * @param documents number of documents of the collection
+     * @param df document frequency of the term
+     * @return the IDF component of the term
+     */
+    private static double idfComponent(int documents, int df) {
+        return df == 0 ? 0 : Math.log((double) documents / df);
+    }
+
+    /**
+     * Calculates norms of TF-IDF vectors and lengths of documents from
+     * posting lists of the specified <tt>source</tt>, using the specified
+     * IDF components of terms.
+     *
+     * @param source source of posting lists of all terms
+     * @param idfComponents IDF components of all terms
+     * @param norms array that is filled with norms of documents
+     * @param lengths array that is filled with lengths of documents
+     */
+    private static void measure(PostingsSource source, double[] idfComponents, double[] norms, int[] lengths) {
+        try (PostingsSource.TermCursor terms = source.terms()) {
+            while (terms.next()) {
+                IntList list = terms.postings();
+                double idf = idfComponents[terms.term()];
+                for (int i = 0, n = list.size(); i < n; i += 2) {
+                    double weight = list.get(i+1) * idf;
+                    norms[list.get(i)] += weight * weight;
+                    lengths[list.get(i)] += list.get(i+1);
+                }
+            }
+        }
+        for (int doc = 0; doc < norms.length; doc++) {
+            norms[doc] = Math.sqrt(norms[doc]);
+        }
+    }
+
+    /**
+     * Returns global keys of the first document of each of the specified
+     * segments, followed by the number of all documents.
+     *
+     * @param segments segments in ascending order of their documents
+     * @return global keys of first documents of segments
+     */
+    private static int[] docBases(IndexSegment[] segments) {
+        int[] bases = new int[segments.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            bases[i + 1] = bases[i] + segments[i].documentCount();
+        }
+        return bases;
+    }
+
+    /**
+     * Returns the number of blocks of a posting list with the specified
+     * number of postings.
+     *
+     * @param df number of postings
+     * @return the number of blocks
+     */
+    static int blockCount(int df) {
+        return (df + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the number of documents of the specified segments that are
+     * counted by statistics, which are all documents but those deleted
+     * before their segments were written.
+     *
+     * @param segments segments of an index
+     * @return the number of documents counted by statistics
+     */
+    private static int collectionSize(IndexSegment[] segments) {
+        int size = 0;
+        for (IndexSegment segment : segments) {
+            size += segment.documentCount() - segment.purgedCount();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the sum of lengths of all documents of the specified segments.
+     *
+     * @param segments segments of an index
+     * @return the sum of lengths of all documents
+     */
+    private static long totalLength(IndexSegment[] segments) {
+        long total = 0;
+        for (IndexSegment segment : segments) {
+            total += segment.totalLength();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of postings of all terms of the specified segments.
+     *
+     * @param segments segments of an index
+     * @return the number of postings of all terms
+     */
+    private static long postingCount(IndexSegment[] segments) {
+        long count = 0;
+        for (IndexSegment segment : segments) {
+            count += segment.postingCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a new index made of segments of this index and a new segment
+     * written from posting lists of the specified <tt>source</tt>, whose
+     * documents follow all documents of this index. The source must know all
+     * terms of this index, and keys of its documents are local to the new
+     * segment. This index is left unchanged.
+     *
+     * @param documentCount number of documents of the new segment
+     * @param source source of posting lists of the new segment
+     * @return a new index with the added segment
+     * @throws java.io.UncheckedIOException if an I/O error occurs while reading the source
+     */
+    InvertedIndex addSegment(int documentCount, PostingsSource source) {
+        return new InvertedIndex(Arrays.asList(segments), documentCount, source, null, null, null,
+                Collections.emptyList(), options);
+    }
+
+    /**
+     * Returns a new index where adjacent segments in range <tt>[from,
+     * to)</tt> are merged into a single segment, or a single segment is
+     * written again. Posting lists of the merged segment are concatenated
+     * from the merged segments, leaving out postings of deleted documents,
+     * and norms and impacts of its documents are computed with the current
+     * global IDF components. Deleted documents stay deleted in the merged
+     * segment, but are no longer counted by statistics. If postings of any
+     * merged segment are pruned, norms and lengths of documents are carried
+     * over, since they can not be computed from kept postings alone. This
+     * index is left unchanged and its merged segments are not closed.
+     * <p>
+     * Documents deleted while segments are being merged are deleted in
+     * merged segments only, and have to be {@linkplain #deleteDocuments(int[])
+     * deleted} in the new index again.
+     *
+     * @param from index of the first merged segment, inclusive
+     * @param to index of the last merged segment, exclusive
+     * @return a new index with merged segments
+     * @throws IllegalArgumentException if the range is invalid
+     */
+    InvertedIndex mergeSegments(int from, int to) {
+        if (from < 0 || to > segments.length || to - from < 1) {
+            throw new IllegalArgumentException("Invalid range of merged segments: [" + from + ", " + to + ")");
+        }
+
+        MergedSegments source = new MergedSegments(from, to);
+        int count = docBases[to] - docBases[from];
+        double[] norms = null;
+        int[] lengths = null;
+        for (int i = from; i < to; i++) {
+            if (segments[i].isPruned()) {
+                norms = new double[count];
+                lengths = new int[count];
+                for (int doc = 0; doc < count; doc++) {
+                    int s = segmentOf(docBases[from] + doc);
+                    int local = docBases[from] + doc - docBases[s];
+                    if (source.isLive(s, local)) {
+                        norms[doc] = segments[s].documentNorm(local);
+                        lengths[doc] = segments[s].documentLength(local);
+                    }
+                }
+                break;
+            }
+        }
+
+        return new InvertedIndex(Arrays.asList(segments).subList(0, from), count, source, norms, lengths,
+                source.purged, Arrays.asList(segments).subList(to, segments.length), options);
+    }
+
+    /**
+     * Deletes documents with the specified keys, which are skipped by
+     * postings cursors from then on. Segments are shared by indexes made
+     * from this index, so documents are deleted in all of them. Statistics
+     * of the index, such as document frequencies, do not change until
+     * segments of deleted documents are {@linkplain #mergeSegments(int, int)
+     * merged}. Documents that are already deleted are skipped.
+     *
+     * @param docs keys of documents, in any order
+     * @return the number of newly deleted documents
+     * @throws IndexOutOfBoundsException if a key is out of range
+     */
+    public int deleteDocuments(int[] docs) {
+        int[] sorted = docs.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && (sorted[0] < 0 || sorted[sorted.length - 1] >= documentCount)) {
+            throw new IndexOutOfBoundsException("Document keys must be in range [0, " + documentCount + ")");
+        }
+
+        int deleted = 0;
+        IntList locals = new IntList();
+        for (int i = 0; i < sorted.length; ) {
+            int s = segmentOf(sorted[i]);
+            locals.clear();
+            for (; i < sorted.length && sorted[i] < docBases[s + 1]; i++) {
+                locals.add(sorted[i] - docBases[s]);
+            }
+            deleted += segments[s].delete(locals);
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns keys of deleted documents whose keys are in range <tt>[from,
+     * to)</tt>, in ascending order.
+     *
+     * @param from the least document key, inclusive
+     * @param to the greatest document key, exclusive
+     * @return keys of deleted documents in the range
+     */
+    int[] deletedDocuments(int from, int to) {
+        IntList deleted = new IntList();
+        for (int s = segmentOf(from); s < segments.length && docBases[s] < to; s++) {
+            long[] live = segments[s].liveDocs();
+            if (live == null) {
+                continue;
+            }
+            for (int doc = Math.max(from, docBases[s]), end = Math.min(to, docBases[s + 1]); doc < end; doc++) {
+                if (!IndexSegment.isLive(live, doc - docBases[s])) {
+                    deleted.add(doc);
+                }
+            }
+        }
+        return deleted.toArray();
+    }
+
+    /**
+     * Returns true if the document with the specified key is deleted.
+     *
+     * @param doc key of the document
+     * @return true if the document is deleted
+     */
+    public boolean isDeleted(int doc) {
+        int s = segmentOf(doc);
+        return !segments[s].isLive(doc - docBases[s]);
+    }
+
+    /**
+     * Returns the number of deleted documents of this index.
+     *
+     * @return the number of deleted documents
+     */
+    public int deletedCount() {
+        int count = 0;
+        for (IndexSegment segment : segments) {
+            count += segment.deletedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a new index made of the specified segments, which must have
+     * been written with the options of this index, such as segments of this
+     * index where some of them are replaced by their merged segment.
+     *
+     * @param segments segments of the new index
+     * @return a new index made of the specified segments
+     */
+    InvertedIndex withSegments(IndexSegment[] segments) {
+        return new InvertedIndex(this, segments);
+    }
+
+    /**
+     * Returns the number of documents in this index, including deleted
+     * documents, whose keys are in range <tt>[0, documentCount)</tt>.
+     *
+     * @return the number of documents in this index
+     */
+    public int documentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Returns the number of documents counted by statistics of this index,
+     * such as IDF components and the average document length. Deleted
+     * documents are counted until their segments are merged.
+     *
+     * @return the number of documents counted by statistics
+     */
+    public int collectionSize() {
+        return collectionSize;
+    }
+
+    /**
+     * Returns the number of terms in this index.
+     *
+     * @return the number of terms in this index
+     */
+    public int termCount() {
+        return documentFrequencies.length;
+    }
+
+    /**
+     * Returns the number of documents containing the term with the specified
+     * key.
+     *
+     * @param term key of the term
+     * @return the number of documents containing the term
+     */
+    public int documentFrequency(int term) {
+        return documentFrequencies[term];
+    }
+
+    /**
+     * Returns the number of postings of the term with the specified key,
+     * which is less than its document frequency if postings of the term are
+     * pruned.
+     *
+     * @param term key of the term
+     * @return the number of postings of the term
+     */
+    public int postingCount(int term) {
+        if (segments.length == 1) {
+            return segments[0].postingCount(term);
+        }
+        int count = 0;
+        for (IndexSegment segment : segments) {
+            count += segment.postingCount(term);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of postings of all terms in this index.
+     *
+     * @return the number of postings of all terms
+     */
+    public long postingCount() {
+        return postingCount;
+    }
+
+    /**
+     * Returns the IDF component of the term with the specified key.
+     *
+     * @param term key of the term
+     * @return the IDF component of the term
+     */
+    public double idf(int term) {
+        return idfComponents[term];
+    }
+
+    /**
+     * Returns the norm of the TF-IDF vector of the document with the
+     * specified key.
+     *
+     * @param doc key of the document
+     * @return the norm of the document's TF-IDF vector
+     * @throws IllegalStateException if this index is closed
+     */
+    public double documentNorm(int doc) {
+        int s = segmentOf(doc);
+        return segments[s].documentNorm(doc - docBases[s]);
+    }
+
+    /**
+     * Returns the length of the document with the specified key, which is
+     * the sum of frequencies of its terms.
+     *
+     * @param doc key of the document
+     * @return the length of the document
+     * @throws IllegalStateException if this index is closed
+     */
+    public int documentLength(int doc) {
+        int s = segmentOf(doc);
+        return segments[s].documentLength(doc - docBases[s]);
+    }
+
+    /**
+     * Returns the average length of documents in this index, or <tt>0</tt> if
+     * the index has no documents.
+     *
+     * @return the average length of documents
+     */
+    public double averageDocumentLength() {
+        return collectionSize == 0 ? 0 : (double) totalLength / collectionSize;
+    }
+
+    /**
+     * Returns the model by which documents of this index are scored.
+     *
+     * @return the model by which documents of this index are scored
+     */
+    public ScoringModel getScoringModel() {
+        return scoringModel;
+    }
+
+    /**
+     * Returns true if impacts of postings are precomputed. The weight of a
+     * single impact unit is given by the {@linkplain
+     * PostingsCursor#impactScale()} method, since it differs between
+     * segments.
+     *
+     * @return true if impacts of postings are precomputed
+     */
+    public boolean hasImpacts() {
+        return options.isImpacts();
+    }
+
+    /**
+     * Creates a new postings cursor over this index. The cursor must be
+     * {@link PostingsCursor#reset(int) reset} to a term before iterating and
+     * may be reused for any number of terms.
+     *
+     * @return a new postings cursor over this index
+     */
+    public PostingsCursor newCursor() {
+        return new PostingsCursor(this);
+    }
+
+    /**
+     * Returns true if this index stores positions of terms.
+     *
+     * @return true if this index stores positions of terms
+     */
+    public boolean hasPositions() {
+        return positional;
+    }
+
+    /**
+     * Returns the number of bytes taken by a single skip table entry.
+     *
+     * @return the number of bytes taken by a single skip table entry
+     */
+    int skipEntryBytes() {
+        return skipEntryBytes;
+    }
+
+    /**
+     * Returns the codec used for compressing posting lists.
+     *
+     * @return the codec used for compressing posting lists
+     */
+    public PostingsCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the number of segments of this index.
+     *
+     * @return the number of segments
+     */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the number of documents of the segment with the specified
+     * index.
+     *
+     * @param segment index of the segment
+     * @return the number of documents of the segment
+     */
+    public int segmentDocumentCount(int segment) {
+        return segments[segment].documentCount();
+    }
+
+    /**
+     * Returns the segment with the specified index.
+     *
+     * @param segment index of the segment
+     * @return the segment
+     */
+    IndexSegment segment(int segment) {
+        return segments[segment];
+    }
+
+    /**
+     * Returns the global key of the first document of the segment with the
+     * specified index, or the number of documents if the index equals the
+     * number of segments.
+     *
+     * @param segment index of the segment
+     * @return the global key of the first document of the segment
+     */
+    int docBase(int segment) {
+        return docBases[segment];
+    }
+
+    /**
+     * Returns the index of the segment containing the document with the
+     * specified key.
+     *
+     * @param doc key of the document
+     * @return the index of the segment containing the document
+     */
+    int segmentOf(int doc) {
+        if (segments.length == 1) {
+            return 0;
+        }
+        int i = Arrays.binarySearch(docBases, 0, segments.length, doc);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Returns the number of bytes taken by encoded posting lists, including
+     * their skip tables.
+     *
+     * @return the number of bytes taken by encoded posting lists
+     */
+    public long postingsBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.postingsBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of off-heap bytes allocated by this index.
+     *
+     * @return the number of off-heap bytes allocated by this index
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.offHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of off-heap bytes taken by the document table.
+     *
+     * @return the number of off-heap bytes taken by the document table
+     */
+    public long documentTableBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.documentTableBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of off-heap bytes taken by impacts, which is
+     * <tt>0</tt> if impacts are not precomputed.
+     *
+     * @return the number of off-heap bytes taken by impacts
+     */
+    public long impactBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.impactBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by per-term arrays of
+     * this index and its segments, which locate and describe posting lists.
+     *
+     * @return the estimated number of heap bytes taken by per-term arrays
+     */
+    public long postingsHeapBytes() {
+        int terms = termCount();
+        long bytes = MemoryEstimator.array(terms, Integer.BYTES)
+                + MemoryEstimator.array(terms, Double.BYTES)
+                + MemoryEstimator.array(segments.length, MemoryEstimator.REFERENCE)
+                + MemoryEstimator.array(docBases.length, Integer.BYTES);
+        for (IndexSegment segment : segments) {
+            bytes += segment.heapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Throws an exception if this index is closed.
+     *
+     * @throws IllegalStateException if this index is closed
+     */
+    void checkOpen() {
+        for (IndexSegment segment : segments) {
+            segment.checkOpen();
+        }
+    }
+
+    /**
+     * Acquires a reference to each segment of this index, so that segments
+     * are not closed while this index is read, even if an index that
+     * replaces this one no longer holds them. The references must be
+     * {@linkplain #release() released} when the index is no longer read.
+     *
+     * @return true if references are acquired, false if a segment is already closed
+     */
+    boolean tryAcquire() {
+        for (int i = 0; i < segments.length; i++) {
+            if (!segments[i].tryIncRef()) {
+                for (int j = 0; j < i; j++) {
+                    segments[j].decRef();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases a reference to each segment of this index, closing segments
+     * that are no longer referenced.
+     */
+    void release() {
+        for (IndexSegment segment : segments) {
+            segment.decRef();
+        }
+    }
+
+    /**
+     * Frees all off-heap memory of segments of this index, regardless of
+     * their references. The index, other indexes that share its segments and
+     * all of their cursors must not be used after this method is called.
+     */
+    @Override
+    public void close() {
+        for (IndexSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * A source of posting lists of adjacent segments of this index, where
+     * posting lists of a term in all segments are concatenated and document
+     * keys are local to the merged segment. Postings of documents that are
+     * deleted when the source is constructed are left out, and document
+     * frequencies of terms are reduced by the number of left out postings.
+     *
+     * @author Mario Bobic
+     */
+    private class MergedSegments implements PostingsSource {
+
+        /** Index of the first merged segment, inclusive. */
+        private final int from;
+        /** Index of the last merged segment, exclusive. */
+        private final int to;
+        /** Bitsets of live documents of merged segments, <tt>null</tt> elements if all are live. */
+        private final long[][] liveDocs;
+        /** Local keys of deleted documents in the merged segment, or <tt>null</tt>. */
+        private final IntList purged;
+        /** Number of left out postings of each term, or <tt>null</tt>. */
+        private final int[] purgedPostings;
+
+        /**
+         * Constructs an instance of {@code MergedSegments} of segments in
+         * range <tt>[from, to)</tt>.
+         *
+         * @param from index of the first merged segment, inclusive
+         * @param to index of the last merged segment, exclusive
+         */
+        public MergedSegments(int from, int to) {
+            this.from = from;
+            this.to = to;
+
+            liveDocs = new long[to - from][];
+            IntList deleted = new IntList();
+            for (int s = from; s < to; s++) {
+                long[] live = segments[s].liveDocs();
+                liveDocs[s - from] = live;
+                for (int doc = 0, n = segments[s].documentCount(); live != null && doc < n; doc++) {
+                    if (!IndexSegment.isLive(live, doc)) {
+                        deleted.add(docBases[s] - docBases[from] + doc);
+                    }
+                }
+            }
+            purged = deleted.size() == 0 ? null : deleted;
+            purgedPostings = purged == null ? null : countPurgedPostings();
+        }
+
+        /**
+         * Returns true if the document with the specified local key of the
+         * specified segment was live when this source was constructed.
+         *
+         * @param segment index of the segment
+         * @param doc local key of the document in the segment
+         * @return true if the document is live
+         */
+        public boolean isLive(int segment, int doc) {
+            long[] live = liveDocs[segment - from];
+            return live == null || IndexSegment.isLive(live, doc);
+        }
+
+        /**
+         * Counts postings of deleted documents of each term.
+         *
+         * @return the number of postings of deleted documents of each term
+         */
+        private int[] countPurgedPostings() {
+            int[] counts = new int[termCount()];
+            PostingsCursor cursor = new PostingsCursor(InvertedIndex.this, false);
+            int first = docBases[from];
+            int end = docBases[to];
+            for (int term = 0; term < counts.length; term++) {
+                cursor.reset(term);
+                for (int doc = cursor.advance(first); doc < end; doc = cursor.nextDoc()) {
+                    int s = segmentOf(doc);
+                    if (!isLive(s, doc - docBases[s])) {
+                        counts[term]++;
+                    }
+                }
+            }
+            return counts;
+        }
+
+        @Override
+        public int termCount() {
+            return InvertedIndex.this.termCount();
+        }
+
+        @Override
+        public int documentFrequency(int term) {
+            int df = purgedPostings == null ? 0 : -purgedPostings[term];
+            for (int i = from; i < to; i++) {
+                df += segments[i].documentFrequency(term);
+            }
+            return df;
+        }
+
+        @Override
+        public boolean hasPositions() {
+            return positional;
+        }
+
+        @Override
+        public TermCursor terms() {
+            PostingsCursor cursor = new PostingsCursor(InvertedIndex.this, false);
+            IntList postings = new IntList();
+            IntList positions = positional ? new IntList() : null;
+            int first = docBases[from];
+            int end = docBases[to];
+
+            return new TermCursor() {
+                private int term = -1;
+
+                @Override
+                public boolean next() {
+                    postings.clear();
+                    if (positions != null) {
+                        positions.clear();
+                    }
+                    while (++term < termCount()) {
+                        cursor.reset(term);
+                        for (int doc = cursor.advance(first); doc < end; doc = cursor.nextDoc()) {
+                            if (purged != null) {
+                                int s = segmentOf(doc);
+                                if (!isLive(s, doc - docBases[s])) {
+                                    continue;
+                                }
+                            }
+                            int freq = cursor.freq();
+                            postings.add(doc - first);
+                            postings.add(freq);
+                            for (int i = 0; positions != null && i < freq; i++) {
+                                positions.add(cursor.nextPosition());
+                            }
+                        }
+                        if (postings.size() > 0) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                @Override
+                public int term() {
+                    return term;
+                }
+
+                @Override
+                public IntList postings() {
+                    return postings;
+                }
+
+                @Override
+                public IntList positions() {
+                    return positions;
+                }
+            };
+        }
+    }
+
+}
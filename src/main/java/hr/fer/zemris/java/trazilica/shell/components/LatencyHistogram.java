@@ -0,0 +1,169 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations in nanoseconds with logarithmic buckets.
+ * Every power of two is split into {@linkplain #SUB_BUCKETS} linear buckets,
+ * so the relative error of a reported percentile is at most
+ * <tt>1/SUB_BUCKETS</tt> while the whole histogram takes a few kilobytes.
+ * <p>
+ * Recording a value is a single atomic increment of a bucket and a few
+ * uncontended additions, without any locks or allocation.
+ *
+ * @author Mario Bobic
+ */
+public class LatencyHistogram {
+
+    /** Number of bits used for linear buckets within a power of two. */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** Number of linear buckets within a power of two. */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Total number of buckets. */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** Number of recorded values in each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /** Number of recorded values. */
+    private final LongAdder count = new LongAdder();
+    /** Sum of recorded values. */
+    private final LongAdder sum = new LongAdder();
+    /** Maximal recorded value. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the specified duration in nanoseconds. Negative durations are
+     * recorded as zero.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        sum.add(nanos);
+
+        long currentMax;
+        while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos));
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of recorded values in nanoseconds.
+     *
+     * @return the sum of recorded values
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the mean of recorded values in nanoseconds, or <tt>0</tt> if
+     * there are no recorded values.
+     *
+     * @return the mean of recorded values
+     */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /**
+     * Returns the maximal recorded value in nanoseconds.
+     *
+     * @return the maximal recorded value
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value in nanoseconds below which the specified
+     * <tt>percentile</tt> of recorded values fall, or <tt>0</tt> if there are
+     * no recorded values. The returned value is the upper bound of the bucket
+     * containing the percentile, but never greater than the maximal value.
+     *
+     * @param percentile a percentile in range <tt>[0, 100]</tt>
+     * @return the value at the specified percentile
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Returns the index of the bucket containing the specified value.
+     *
+     * @param value a non-negative value
+     * @return the index of the bucket containing the value
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the greatest value contained in the bucket with the specified
+     * index.
+     *
+     * @param index index of the bucket
+     * @return the greatest value contained in the bucket
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+}
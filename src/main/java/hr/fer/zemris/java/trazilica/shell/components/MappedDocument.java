@@ -0,0 +1,364 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A document whose file is mapped into memory, so that any part of it can be
+ * read without reading the parts before it. Files larger than a single
+ * mapping are mapped in segments of {@linkplain #SEGMENT_SIZE} bytes.
+ * <p>
+ * Lines are located by a sparse line-offset index that holds the offset of
+ * every {@value #LINE_INTERVAL}-th line. The index is built lazily, only as
+ * far as the lines that were asked for, so a line at the beginning of a huge
+ * document is found immediately, while a line deep inside it is found by a
+ * single scan for line breaks that is never repeated.
+ * <p>
+ * Documents that are entries of archives can not be mapped, so they are
+ * {@linkplain ArchiveReader decompressed} into memory instead, and are
+ * read the same way afterwards.
+ * <p>
+ * A mapped document must be {@link #close() closed} when it is no longer
+ * used, which unmaps its file immediately.
+ *
+ * @author Mario Bobic
+ */
+public class MappedDocument implements AutoCloseable {
+
+    /** Number of lines between two entries of the line-offset index. */
+    public static final int LINE_INTERVAL = 1024;
+    /** Size of a single mapped segment of the file, in bytes. */
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    /** Number of bits of an offset within a segment. */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /** Path of the document. */
+    private final Path path;
+    /** Path to the file that holds the document, which may be an archive. */
+    private final Path file;
+    /** Size of the document, in bytes. */
+    private final long size;
+    /** Size of the file when it was mapped. */
+    private final long fileSize;
+    /** Last modification time of the file when it was mapped. */
+    private final long lastModified;
+    /** Mapped or decompressed segments of the document. */
+    private ByteBuffer[] segments;
+
+    /** Offsets of every n-th line, as far as the file was scanned. */
+    private long[] lineOffsets = new long[16];
+    /** Number of known entries of the line-offset index. */
+    private int lineOffsetCount = 1;
+
+    /**
+     * Constructs an instance of {@code MappedDocument} by mapping the file
+     * with the specified <tt>path</tt> into memory, or by decompressing it if
+     * the path is of an entry of an archive.
+     *
+     * @param path path of the document
+     * @throws IOException if an I/O error occurs while mapping the file
+     */
+    public MappedDocument(Path path) throws IOException {
+        this.path = path;
+        this.file = ArchiveReader.fileOf(path);
+        this.lastModified = Files.getLastModifiedTime(file).toMillis();
+        this.fileSize = Files.size(file);
+
+        if (!file.equals(path)) {
+            byte[] bytes;
+            try (InputStream in = ArchiveReader.open(path)) {
+                bytes = ArchiveReader.readAll(in, -1);
+            }
+            size = bytes.length;
+            segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                int position = i << SEGMENT_SHIFT;
+                segments[i] = ByteBuffer.wrap(bytes, position, Math.min(SEGMENT_SIZE, bytes.length - position)).slice();
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+        }
+    }
+
+    /**
+     * Returns the path of this document, which may be the path of an entry
+     * of an archive.
+     *
+     * @return the path of this document
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the size of this document, in bytes.
+     *
+     * @return the size of this document
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the file of this document, which is its archive if the
+     * document is an entry of an archive, has not been modified since it was
+     * mapped, judging by its size and last modification time.
+     *
+     * @return true if the file has not been modified since it was mapped
+     */
+    public boolean isCurrent() {
+        try {
+            return Files.size(file) == fileSize && Files.getLastModifiedTime(file).toMillis() == lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the byte at the specified <tt>offset</tt> of this document.
+     *
+     * @param offset offset of the byte
+     * @return the byte at the specified offset
+     */
+    public byte get(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].get((int) (offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Returns the offset of the line with the specified zero-based
+     * <tt>line</tt> number, or <tt>-1</tt> if the document has fewer lines.
+     * Line-offset index entries are added for all lines scanned on the way.
+     *
+     * @param line zero-based line number
+     * @return the offset of the line, or <tt>-1</tt> if there is no such line
+     */
+    public long lineOffset(long line) {
+        int entry = (int) Math.min(line / LINE_INTERVAL, lineOffsetCount - 1);
+        long offset = lineOffsets[entry];
+        for (long current = (long) entry * LINE_INTERVAL; current < line; ) {
+            offset = nextLine(offset);
+            if (offset == size) {
+                return -1;
+            }
+            current++;
+            if (current == (long) lineOffsetCount * LINE_INTERVAL) {
+                if (lineOffsetCount == lineOffsets.length) {
+                    lineOffsets = Arrays.copyOf(lineOffsets, lineOffsetCount * 2);
+                }
+                lineOffsets[lineOffsetCount++] = offset;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the line that follows the line containing the
+     * specified <tt>offset</tt>, or the size of this document if there is no
+     * such line.
+     *
+     * @param offset an offset within a line
+     * @return the offset of the following line, or the size of this document
+     */
+    public long nextLine(long offset) {
+        while (offset < size) {
+            ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int base = (int) (offset & (SEGMENT_SIZE - 1));
+            int limit = segment.limit();
+            for (int i = base; i < limit; i++) {
+                if (segment.get(i) == '\n') {
+                    return offset + (i - base) + 1;
+                }
+            }
+            offset += limit - base;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the offset of the line containing the specified
+     * <tt>offset</tt>.
+     *
+     * @param offset an offset within a line
+     * @return the offset of the line containing the offset
+     */
+    public long lineStart(long offset) {
+        while (offset > 0 && get(offset - 1) != '\n') {
+            offset--;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the specified
+     * <tt>word</tt> at or after the specified <tt>offset</tt>, or
+     * <tt>-1</tt> if there is no such occurrence. Words are split the same way
+     * as by the {@linkplain DataLoader#getWords(String)} method, and the
+     * specified word must be in lower case.
+     *
+     * @param offset offset where the search starts, at a word boundary
+     * @param word a word in lower case
+     * @return the offset of the first occurrence of the word, or <tt>-1</tt>
+     */
+    public long findWord(long offset, String word) {
+        while (offset < size) {
+            if (!isWordByte(get(offset))) {
+                offset++;
+                continue;
+            }
+
+            long start = offset;
+            boolean ascii = true;
+            for (byte b; offset < size && isWordByte(b = get(offset)); offset++) {
+                ascii &= b >= 0;
+            }
+
+            if (ascii) {
+                if (offset - start == word.length() && matchesAscii(start, word)) {
+                    return start;
+                }
+                continue;
+            }
+
+            // Non-ASCII letters and symbols are told apart after decoding
+            byte[] bytes = new byte[(int) (offset - start)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = get(start + i);
+            }
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isLetter(text.charAt(i))) {
+                    int wordStart = i;
+                    while (i < text.length() && Character.isLetter(text.charAt(i))) {
+                        i++;
+                    }
+                    if (text.substring(wordStart, i).toLowerCase().equals(word)) {
+                        return start + text.substring(0, wordStart).getBytes(StandardCharsets.UTF_8).length;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a reader of the part of this document between the specified
+     * offsets, decoded with the <tt>UTF-8</tt> charset.
+     *
+     * @param from offset of the first byte, inclusive
+     * @param to offset of the last byte, exclusive
+     * @return a reader of the part of this document
+     */
+    public Reader newReader(long from, long to) {
+        return new InputStreamReader(new RangeInputStream(from, to), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unmaps the file of this document, or releases its decompressed
+     * contents. This document must not be used after this method is called.
+     */
+    @Override
+    public void close() {
+        if (segments != null) {
+            for (ByteBuffer segment : segments) {
+                if (segment.isDirect()) {
+                    OffHeapArena.free(segment);
+                }
+            }
+            segments = null;
+        }
+    }
+
+    /**
+     * Returns true if the specified byte may be a part of a word, which is
+     * an ASCII letter or any byte of a non-ASCII character.
+     *
+     * @param b a byte
+     * @return true if the byte may be a part of a word
+     */
+    private static boolean isWordByte(byte b) {
+        return b < 0 || Character.isLetter((char) b);
+    }
+
+    /**
+     * Returns true if the ASCII word at the specified <tt>offset</tt> equals
+     * the specified <tt>word</tt> of the same length, ignoring case.
+     *
+     * @param offset offset of the ASCII word
+     * @param word a word in lower case
+     * @return true if the words are equal, ignoring case
+     */
+    private boolean matchesAscii(long offset, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase((char) get(offset + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An input stream of bytes of this document between two offsets.
+     *
+     * @author Mario Bobic
+     */
+    private class RangeInputStream extends InputStream {
+
+        /** Offset of the next byte. */
+        private long offset;
+        /** Offset after the last byte. */
+        private final long end;
+
+        /**
+         * Constructs an instance of {@code RangeInputStream} with the
+         * specified offsets.
+         *
+         * @param from offset of the first byte, inclusive
+         * @param to offset of the last byte, exclusive
+         */
+        public RangeInputStream(long from, long to) {
+            offset = from;
+            end = Math.min(to, size);
+        }
+
+        @Override
+        public int read() {
+            return offset < end ? get(offset++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (offset >= end) {
+                return -1;
+            }
+            ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int base = (int) (offset & (SEGMENT_SIZE - 1));
+            int n = (int) Math.min(Math.min(len, end - offset), segment.limit() - base);
+
+            ByteBuffer view = segment.duplicate();
+            view.position(base);
+            view.get(b, off, n);
+            offset += n;
+            return n;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.file.Path;
+
+/**
+ * A memory estimation utility class. Used for estimating the number of heap
+ * bytes taken by common objects from their known layouts on a 64-bit virtual
+ * machine with compressed object references, without walking object graphs.
+ * <p>
+ * All estimates are approximations. Object sizes are aligned to
+ * {@linkplain #ALIGNMENT} bytes and strings are estimated by the layout of the
+ * running Java version, which stores Latin-1 strings in one byte per
+ * character since Java 9.
+ *
+ * @author Mario Bobic
+ */
+public class MemoryEstimator {
+
+    /** Size of an object header. */
+    public static final int OBJECT_HEADER = 12;
+    /** Size of an array header, including the length. */
+    public static final int ARRAY_HEADER = 16;
+    /** Size of an object reference. */
+    public static final int REFERENCE = 4;
+    /** Alignment of objects. */
+    public static final int ALIGNMENT = 8;
+
+    /** Size of a <tt>String</tt> object without its array. */
+    private static final long STRING_OBJECT = align(OBJECT_HEADER + REFERENCE + 2 * Integer.BYTES);
+    /** Size of a <tt>HashMap.Node</tt> object. */
+    private static final long HASH_MAP_NODE = align(OBJECT_HEADER + Integer.BYTES + 3 * REFERENCE);
+    /** Size of a <tt>LinkedHashMap.Entry</tt> object. */
+    private static final long LINKED_HASH_MAP_ENTRY = align(HASH_MAP_NODE + 2 * REFERENCE);
+    /** Size of a <tt>HashMap</tt> object without its table. */
+    private static final long HASH_MAP_OBJECT = align(OBJECT_HEADER + 4 * REFERENCE + 4 * Integer.BYTES);
+    /** Size of an <tt>Integer</tt> object. */
+    private static final long INTEGER_OBJECT = align(OBJECT_HEADER + Integer.BYTES);
+    /** Size of a <tt>Path</tt> object without its arrays. */
+    private static final long PATH_OBJECT = align(OBJECT_HEADER + 3 * REFERENCE + Integer.BYTES);
+
+    /** Indicates if strings of the running Java version may be compact. */
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version").startsWith("1.");
+
+    /**
+     * Disables instantiation.
+     */
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Aligns the specified number of <tt>bytes</tt> to {@linkplain #ALIGNMENT}.
+     *
+     * @param bytes number of bytes
+     * @return the aligned number of bytes
+     */
+    public static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Returns the estimated size of an array of the specified <tt>length</tt>
+     * whose elements take the specified number of bytes.
+     *
+     * @param length length of the array
+     * @param elementBytes number of bytes of a single element
+     * @return the estimated size of the array
+     */
+    public static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * Returns the estimated size of the specified string, including its
+     * character array.
+     *
+     * @param s a string
+     * @return the estimated size of the string
+     */
+    public static long string(String s) {
+        int bytesPerChar = 2;
+        if (COMPACT_STRINGS) {
+            bytesPerChar = 1;
+            for (int i = 0, n = s.length(); i < n; i++) {
+                if (s.charAt(i) > 0xFF) {
+                    bytesPerChar = 2;
+                    break;
+                }
+            }
+        }
+        return STRING_OBJECT + array(s.length(), bytesPerChar);
+    }
+
+    /**
+     * Returns the estimated size of a boxed integer with the specified
+     * <tt>value</tt>, which is zero for values that are cached by the
+     * {@linkplain Integer#valueOf(int)} method.
+     *
+     * @param value value of the integer
+     * @return the estimated size of the boxed integer
+     */
+    public static long boxedInteger(int value) {
+        return value >= -128 && value <= 127 ? 0 : INTEGER_OBJECT;
+    }
+
+    /**
+     * Returns the estimated size of a hash map with the specified number of
+     * entries, excluding keys and values. The capacity of the table is
+     * estimated for the default load factor.
+     *
+     * @param size number of entries
+     * @param linked true if the map is a <tt>LinkedHashMap</tt>
+     * @return the estimated size of the hash map
+     */
+    public static long hashMap(int size, boolean linked) {
+        long capacity = Long.highestOneBit(Math.max(1, (long) (size / 0.75f) * 2 - 1));
+        long entry = linked ? LINKED_HASH_MAP_ENTRY : HASH_MAP_NODE;
+        return HASH_MAP_OBJECT + array(capacity, REFERENCE) + size * entry;
+    }
+
+    /**
+     * Returns the estimated size of an array list with the specified number
+     * of elements, excluding the elements.
+     *
+     * @param size number of elements
+     * @return the estimated size of the array list
+     */
+    public static long arrayList(int size) {
+        return align(OBJECT_HEADER + 2 * Integer.BYTES + REFERENCE) + array(size, REFERENCE);
+    }
+
+    /**
+     * Returns the estimated size of the specified path, including its cached
+     * string representation.
+     *
+     * @param path a path
+     * @return the estimated size of the path
+     */
+    public static long path(Path path) {
+        String s = path.toString();
+        return PATH_OBJECT
+                + array(s.length(), Byte.BYTES)
+                + array(path.getNameCount(), Integer.BYTES)
+                + string(s);
+    }
+
+}
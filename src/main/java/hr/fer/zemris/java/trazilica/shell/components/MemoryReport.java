@@ -0,0 +1,86 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A report of estimated memory taken by index structures. Each entry of the
+ * report names a single structure and holds the number of bytes it takes on
+ * the Java heap and outside of it.
+ *
+ * @author Mario Bobic
+ */
+public class MemoryReport {
+
+    /** Entries of this report. */
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds an entry for the specified <tt>structure</tt> to this report.
+     *
+     * @param structure name of the structure
+     * @param heapBytes number of bytes taken on the heap
+     * @param offHeapBytes number of bytes taken outside of the heap
+     */
+    public void add(String structure, long heapBytes, long offHeapBytes) {
+        entries.add(new Entry(structure, heapBytes, offHeapBytes));
+    }
+
+    /**
+     * Returns an unmodifiable list of entries of this report.
+     *
+     * @return an unmodifiable list of entries of this report
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the total number of heap bytes of all entries.
+     *
+     * @return the total number of heap bytes
+     */
+    public long totalHeapBytes() {
+        return entries.stream().mapToLong(e -> e.heapBytes).sum();
+    }
+
+    /**
+     * Returns the total number of off-heap bytes of all entries.
+     *
+     * @return the total number of off-heap bytes
+     */
+    public long totalOffHeapBytes() {
+        return entries.stream().mapToLong(e -> e.offHeapBytes).sum();
+    }
+
+    /**
+     * A single entry of a memory report.
+     *
+     * @author Mario Bobic
+     */
+    public static class Entry {
+
+        /** Name of the structure. */
+        public final String structure;
+        /** Number of bytes taken on the heap. */
+        public final long heapBytes;
+        /** Number of bytes taken outside of the heap. */
+        public final long offHeapBytes;
+
+        /**
+         * Constructs an instance of {@code Entry} with the specified
+         * parameters.
+         *
+         * @param structure name of the structure
+         * @param heapBytes number of bytes taken on the heap
+         * @param offHeapBytes number of bytes taken outside of the heap
+         */
+        public Entry(String structure, long heapBytes, long offHeapBytes) {
+            this.structure = structure;
+            this.heapBytes = heapBytes;
+            this.offHeapBytes = offHeapBytes;
+        }
+    }
+
+}
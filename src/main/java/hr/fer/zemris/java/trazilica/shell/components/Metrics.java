@@ -0,0 +1,264 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of timers and counters for every phase of indexing and query
+ * execution. Each {@linkplain Phase} has a {@linkplain LatencyHistogram} of
+ * its durations and a counter of processed items, whose unit depends on the
+ * phase, for an example bytes for reading files or postings for scoring.
+ * <p>
+ * A phase is timed by taking {@linkplain System#nanoTime()} before it starts
+ * and passing it to one of the <tt>record</tt> methods after it ends:
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * Metrics.record(Phase.SCORING, start, postingsScored);
+ * </pre>
+ * <p>
+ * All metrics are also exposed through JMX once the
+ * {@linkplain #registerMBean()} method is called.
+ *
+ * @author Mario Bobic
+ */
+public class Metrics {
+
+    /** Name under which the metrics MBean is registered. */
+    public static final String MBEAN_NAME = "hr.fer.zemris.java.trazilica:type=Metrics";
+
+    /** Histograms of durations of each phase. */
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Phase.values().length];
+    /** Counters of items processed by each phase. */
+    private static final LongAdder[] ITEMS = new LongAdder[Phase.values().length];
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+            ITEMS[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Disables instantiation.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Records a single execution of the specified <tt>phase</tt> that started
+     * at the specified time.
+     *
+     * @param phase the executed phase
+     * @param startNanos value of {@linkplain System#nanoTime()} when the phase started
+     */
+    public static void record(Phase phase, long startNanos) {
+        HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a single execution of the specified <tt>phase</tt> that started
+     * at the specified time and processed the specified number of items.
+     *
+     * @param phase the executed phase
+     * @param startNanos value of {@linkplain System#nanoTime()} when the phase started
+     * @param items number of items processed by the phase
+     */
+    public static void record(Phase phase, long startNanos, long items) {
+        record(phase, startNanos);
+        ITEMS[phase.ordinal()].add(items);
+    }
+
+    /**
+     * Returns the histogram of durations of the specified <tt>phase</tt>.
+     *
+     * @param phase a phase
+     * @return the histogram of durations of the phase
+     */
+    public static LatencyHistogram histogram(Phase phase) {
+        return HISTOGRAMS[phase.ordinal()];
+    }
+
+    /**
+     * Returns the number of items processed by the specified <tt>phase</tt>.
+     *
+     * @param phase a phase
+     * @return the number of items processed by the phase
+     */
+    public static long items(Phase phase) {
+        return ITEMS[phase.ordinal()].sum();
+    }
+
+    /**
+     * Removes all recorded durations and item counts.
+     */
+    public static void reset() {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i].reset();
+            ITEMS[i].reset();
+        }
+    }
+
+    /**
+     * Registers the metrics MBean with the platform MBean server under the
+     * {@linkplain #MBEAN_NAME} name, if it is not already registered.
+     *
+     * @throws RuntimeException if registration fails
+     */
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsBean(), name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException("Error registering metrics MBean.", e);
+        }
+    }
+
+    /**
+     * An enumeration of timed phases of indexing and query execution.
+     *
+     * @author Mario Bobic
+     */
+    public enum Phase {
+
+        /** Walking the directory tree, including processing of files. */
+        DIRECTORY_WALK("directory walk", "files"),
+        /** Reading contents of a single file. */
+        FILE_READ("file read", "bytes"),
+        /** Splitting text of a single file into words. */
+        TOKENIZATION("tokenization", "words"),
+        /** Writing buffered posting lists to temporary files and merging them. */
+        POSTINGS_SPILL("postings spill", "postings"),
+        /** Calculating IDF components of all terms. */
+        IDF_COMPUTATION("IDF computation", "terms"),
+        /** Encoding posting lists and calculating document norms. */
+        VECTOR_BUILDING("vector building", "postings"),
+        /** Projecting document vectors and building the graph of similar documents. */
+        SIMILARITY_GRAPH("similarity graph", "documents"),
+        /** Marking documents of the index deleted. */
+        DOCUMENT_DELETION("document deletion", "documents"),
+        /** Merging segments of the index in the background. */
+        SEGMENT_MERGE("segment merge", "documents"),
+        /** Extracting query words and their weights. */
+        QUERY_ANALYSIS("query analysis", "words"),
+        /** Calculating similarities of documents to the query. */
+        SCORING("scoring", "postings"),
+        /** Sorting results and retaining the top ones. */
+        TOP_K("sort/top-k", "results"),
+        /** Writing results to the environment. */
+        OUTPUT("output", "results"),
+        /** Clustering documents by k-means. */
+        CLUSTERING("clustering", "documents"),
+        /** Searching the graph for documents similar to a document. */
+        SIMILAR_SEARCH("similar search", "results"),
+        /** Whole execution of a query command. */
+        QUERY("query", "queries");
+
+        /** Human readable name of the phase. */
+        private final String displayName;
+        /** Unit of items processed by the phase. */
+        private final String unit;
+
+        /**
+         * Constructs a phase with the specified name and unit of items.
+         *
+         * @param displayName human readable name of the phase
+         * @param unit unit of items processed by the phase
+         */
+        private Phase(String displayName, String unit) {
+            this.displayName = displayName;
+            this.unit = unit;
+        }
+
+        /**
+         * Returns the human readable name of this phase.
+         *
+         * @return the human readable name of this phase
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * Returns the unit of items processed by this phase.
+         *
+         * @return the unit of items processed by this phase
+         */
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    /**
+     * Implementation of the metrics MBean, backed by the static registry.
+     *
+     * @author Mario Bobic
+     */
+    private static class MetricsBean implements MetricsMXBean {
+
+        /** Number of nanoseconds in a millisecond. */
+        private static final double NANOS_PER_MILLI = 1e6;
+
+        @Override
+        public long getQueryCount() {
+            return histogram(Phase.QUERY).count();
+        }
+
+        @Override
+        public double getQueryLatencyMeanMillis() {
+            return histogram(Phase.QUERY).mean() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getQueryLatencyP50Millis() {
+            return histogram(Phase.QUERY).percentile(50) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getQueryLatencyP90Millis() {
+            return histogram(Phase.QUERY).percentile(90) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getQueryLatencyP99Millis() {
+            return histogram(Phase.QUERY).percentile(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getQueryLatencyP999Millis() {
+            return histogram(Phase.QUERY).percentile(99.9) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getQueryLatencyMaxMillis() {
+            return histogram(Phase.QUERY).max() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public String[] getPhaseReport() {
+            Phase[] phases = Phase.values();
+            String[] report = new String[phases.length];
+            for (int i = 0; i < phases.length; i++) {
+                LatencyHistogram h = histogram(phases[i]);
+                report[i] = String.format("%s: count=%d total=%.3fms p50=%.3fms p99=%.3fms max=%.3fms %s=%d",
+                        phases[i].getDisplayName(), h.count(), h.sum() / NANOS_PER_MILLI,
+                        h.percentile(50) / NANOS_PER_MILLI, h.percentile(99) / NANOS_PER_MILLI,
+                        h.max() / NANOS_PER_MILLI, phases[i].getUnit(), items(phases[i]));
+            }
+            return report;
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+
+}
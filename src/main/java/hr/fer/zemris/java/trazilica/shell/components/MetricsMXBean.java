@@ -0,0 +1,74 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * A management interface exposing {@linkplain Metrics} through JMX. Query
+ * latency percentiles are exposed as separate attributes so that they can be
+ * monitored directly, while other phases are summarized by the
+ * {@linkplain #getPhaseReport()} attribute.
+ *
+ * @author Mario Bobic
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Returns the number of executed queries.
+     *
+     * @return the number of executed queries
+     */
+    long getQueryCount();
+
+    /**
+     * Returns the mean query latency in milliseconds.
+     *
+     * @return the mean query latency in milliseconds
+     */
+    double getQueryLatencyMeanMillis();
+
+    /**
+     * Returns the median query latency in milliseconds.
+     *
+     * @return the median query latency in milliseconds
+     */
+    double getQueryLatencyP50Millis();
+
+    /**
+     * Returns the 90th percentile of query latency in milliseconds.
+     *
+     * @return the 90th percentile of query latency in milliseconds
+     */
+    double getQueryLatencyP90Millis();
+
+    /**
+     * Returns the 99th percentile of query latency in milliseconds.
+     *
+     * @return the 99th percentile of query latency in milliseconds
+     */
+    double getQueryLatencyP99Millis();
+
+    /**
+     * Returns the 99.9th percentile of query latency in milliseconds.
+     *
+     * @return the 99.9th percentile of query latency in milliseconds
+     */
+    double getQueryLatencyP999Millis();
+
+    /**
+     * Returns the maximal query latency in milliseconds.
+     *
+     * @return the maximal query latency in milliseconds
+     */
+    double getQueryLatencyMaxMillis();
+
+    /**
+     * Returns a summary of every phase, one line per phase.
+     *
+     * @return a summary of every phase
+     */
+    String[] getPhaseReport();
+
+    /**
+     * Removes all recorded durations and item counts.
+     */
+    void reset();
+
+}
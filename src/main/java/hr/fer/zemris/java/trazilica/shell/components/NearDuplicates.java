@@ -0,0 +1,432 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clusters of near-duplicate documents, found while documents are indexed.
+ * <p>
+ * The similarity of two documents is the Jaccard similarity of their sets of
+ * shingles, which are sequences of {@value #SHINGLE_SIZE} consecutive words.
+ * It is estimated from MinHash signatures of {@value #SIGNATURE_SIZE}
+ * values, computed by one-permutation hashing: every shingle is hashed once,
+ * the hash selects one of the signature's bins and the bin keeps the least
+ * hash it is given. Empty bins are filled from the next non-empty bin. Each
+ * value is truncated to 16 bits, which makes accidental matches negligible.
+ * <p>
+ * Candidate duplicates are found by LSH banding. A signature is split into
+ * {@value #BANDS} bands of {@value #ROWS} values, and two documents are
+ * candidates if any of their bands are equal. A candidate is accepted if the
+ * estimated similarity is at least the threshold.
+ * <p>
+ * Clusters are formed incrementally, in order in which documents are added.
+ * A document joins the cluster of the first matching representative, or
+ * becomes the representative of a new cluster. Only signatures and bands of
+ * representatives are kept, and both are discarded when the
+ * {@link #finish() building is finished}.
+ *
+ * @author Mario Bobic
+ */
+public class NearDuplicates {
+
+    /** Number of words in a shingle. */
+    public static final int SHINGLE_SIZE = 3;
+    /** Number of values of a signature. */
+    public static final int SIGNATURE_SIZE = 64;
+    /** Number of bands of a signature. */
+    public static final int BANDS = 16;
+    /** Number of values in a band. */
+    public static final int ROWS = SIGNATURE_SIZE / BANDS;
+    /** Default least estimated similarity of near duplicates. */
+    public static final double DEFAULT_THRESHOLD = 0.8;
+
+    /** Multiplier used for mixing hashes. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Least number of equal signature values of near duplicates. */
+    private final int minMatches;
+
+    /** Signature of the document last passed to {@link #representative(List)}. */
+    private final char[] signature = new char[SIGNATURE_SIZE];
+    /** Least hashes of the bins of the signature. */
+    private final long[] bins = new long[SIGNATURE_SIZE];
+    /** Indicates if the last document has a signature. */
+    private boolean signed;
+
+    /** Signatures of representatives, in order of their clusters. */
+    private char[] signatures = new char[16 * SIGNATURE_SIZE];
+    /** Key of the representative of each cluster. */
+    private IntList clusterRepresentatives = new IntList();
+    /** Band hashes of representatives, open-addressed, <tt>0</tt> if empty. */
+    private long[] bandKeys = new long[1024];
+    /** Cluster of each band hash. */
+    private int[] bandClusters = new int[1024];
+    /** Number of band hashes. */
+    private int bandCount;
+
+    /** Cluster of each document, <tt>-1</tt> if it has no signature. */
+    private IntList documentClusters = new IntList();
+    /** Number of documents in each cluster, including skipped ones. */
+    private IntList clusterSizes = new IntList();
+    /** Paths to skipped documents of each cluster. */
+    private final Map<Integer, List<Path>> skipped = new HashMap<>();
+    /** Number of skipped documents. */
+    private int skippedCount;
+
+    /** Key of the representative of each document, set when finished. */
+    private int[] representatives;
+    /** Number of documents in each cluster, set when finished. */
+    private int[] sizes;
+
+    /**
+     * Constructs an instance of {@code NearDuplicates} where documents are
+     * near duplicates if their estimated similarity is at least the specified
+     * <tt>threshold</tt>.
+     *
+     * @param threshold least estimated similarity of near duplicates
+     * @throws IllegalArgumentException if <tt>threshold</tt> is not in range <tt>(0, 1]</tt>
+     */
+    public NearDuplicates(double threshold) {
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("Threshold must be in range (0, 1]: " + threshold);
+        }
+        this.minMatches = (int) Math.ceil(threshold * SIGNATURE_SIZE);
+    }
+
+    /**
+     * Computes the signature of a document with the specified <tt>words</tt>
+     * and returns the key of the representative of its near duplicates, or
+     * <tt>-1</tt> if there are none. The document must be
+     * {@linkplain #add(int, int) added} or {@linkplain #addSkipped(int, Path)
+     * skipped} before the next document is passed to this method.
+     *
+     * @param words words of the document
+     * @return key of the representative of near duplicates, or <tt>-1</tt>
+     */
+    public int representative(List<String> words) {
+        signed = sign(words);
+        if (!signed) {
+            return -1;
+        }
+
+        for (int band = 0; band < BANDS; band++) {
+            int cluster = findBand(bandKey(band));
+            if (cluster >= 0 && matches(cluster)) {
+                return clusterRepresentatives.get(cluster);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the document with the specified key, whose words were last passed
+     * to the {@linkplain #representative(List)} method, to the cluster of the
+     * specified <tt>representative</tt>, or to a new cluster if it is
+     * <tt>-1</tt>. Documents must be added in ascending order of their keys,
+     * starting from <tt>0</tt>.
+     *
+     * @param doc key of the document
+     * @param representative key of the representative, or <tt>-1</tt>
+     */
+    public void add(int doc, int representative) {
+        if (!signed) {
+            documentClusters.add(-1);
+            return;
+        }
+        if (representative >= 0) {
+            int cluster = documentClusters.get(representative);
+            documentClusters.add(cluster);
+            clusterSizes.set(cluster, clusterSizes.get(cluster) + 1);
+            return;
+        }
+
+        int cluster = clusterRepresentatives.size();
+        clusterRepresentatives.add(doc);
+        clusterSizes.add(1);
+        documentClusters.add(cluster);
+
+        if (signatures.length < (cluster + 1) * SIGNATURE_SIZE) {
+            signatures = Arrays.copyOf(signatures, signatures.length * 2);
+        }
+        System.arraycopy(signature, 0, signatures, cluster * SIGNATURE_SIZE, SIGNATURE_SIZE);
+        for (int band = 0; band < BANDS; band++) {
+            addBand(bandKey(band), cluster);
+        }
+    }
+
+    /**
+     * Records that the document with the specified <tt>path</tt> is a near
+     * duplicate of the specified <tt>representative</tt> and was not indexed.
+     *
+     * @param representative key of the representative
+     * @param path path to the skipped document
+     */
+    public void addSkipped(int representative, Path path) {
+        int cluster = documentClusters.get(representative);
+        clusterSizes.set(cluster, clusterSizes.get(cluster) + 1);
+        skipped.computeIfAbsent(representative, r -> new ArrayList<>()).add(path);
+        skippedCount++;
+    }
+
+    /**
+     * Finishes building of clusters and discards signatures and bands. No
+     * documents can be added afterwards.
+     */
+    public void finish() {
+        int documents = documentClusters.size();
+        representatives = new int[documents];
+        sizes = new int[documents];
+        for (int doc = 0; doc < documents; doc++) {
+            int cluster = documentClusters.get(doc);
+            representatives[doc] = cluster < 0 ? doc : clusterRepresentatives.get(cluster);
+            sizes[doc] = cluster < 0 ? 1 : clusterSizes.get(cluster);
+        }
+
+        signatures = null;
+        bandKeys = null;
+        bandClusters = null;
+        documentClusters = null;
+        clusterSizes = null;
+        clusterRepresentatives = null;
+    }
+
+    /**
+     * Returns the key of the representative of the cluster of the specified
+     * indexed document, which is the document itself if it has no near
+     * duplicates. Documents indexed after clusters were {@linkplain
+     * #finish() finished} are not clustered and are their own representatives.
+     *
+     * @param doc key of the document
+     * @return key of the representative of the document's cluster
+     */
+    public int representativeOf(int doc) {
+        return doc < representatives.length ? representatives[doc] : doc;
+    }
+
+    /**
+     * Returns the number of near duplicates of the specified document,
+     * indexed or skipped.
+     *
+     * @param doc key of the document
+     * @return the number of near duplicates of the document
+     */
+    public int duplicateCount(int doc) {
+        return doc < sizes.length ? sizes[doc] - 1 : 0;
+    }
+
+    /**
+     * Returns paths to skipped near duplicates of the specified document,
+     * which is empty unless the document is a representative.
+     *
+     * @param doc key of the document
+     * @return paths to skipped near duplicates of the document
+     */
+    public List<Path> skippedDuplicates(int doc) {
+        List<Path> paths = skipped.get(doc);
+        return paths == null ? Collections.emptyList() : Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Returns the number of documents that are near duplicates of a
+     * representative, indexed or skipped.
+     *
+     * @return the number of near duplicates
+     */
+    public int duplicateCount() {
+        int count = skippedCount;
+        for (int doc = 0; doc < representatives.length; doc++) {
+            if (representatives[doc] != doc) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of clusters with more than one document.
+     *
+     * @return the number of clusters with more than one document
+     */
+    public int clusterCount() {
+        int count = 0;
+        for (int doc = 0; doc < representatives.length; doc++) {
+            if (representatives[doc] == doc && sizes[doc] > 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of skipped documents.
+     *
+     * @return the number of skipped documents
+     */
+    public int skippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by clusters.
+     *
+     * @return the estimated number of heap bytes taken by clusters
+     */
+    public long heapBytes() {
+        long bytes = MemoryEstimator.array(representatives.length, Integer.BYTES) * 2
+                + MemoryEstimator.hashMap(skipped.size(), true);
+        for (List<Path> paths : skipped.values()) {
+            bytes += MemoryEstimator.arrayList(paths.size());
+            for (Path path : paths) {
+                bytes += MemoryEstimator.path(path);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Computes the signature of a document with the specified <tt>words</tt>,
+     * or returns false if it has no words.
+     *
+     * @param words words of the document
+     * @return true if the signature is computed
+     */
+    private boolean sign(List<String> words) {
+        int n = words.size();
+        if (n == 0) {
+            return false;
+        }
+
+        Arrays.fill(bins, Long.MAX_VALUE);
+        int shingles = Math.max(1, n - SHINGLE_SIZE + 1);
+        for (int i = 0; i < shingles; i++) {
+            long hash = 0;
+            for (int j = i, end = Math.min(n, i + SHINGLE_SIZE); j < end; j++) {
+                hash = (hash + words.get(j).hashCode()) * GOLDEN_GAMMA;
+            }
+            hash = mix(hash);
+            int bin = (int) (hash >>> 58);
+            long value = hash & 0x03FF_FFFF_FFFF_FFFFL;
+            if (value < bins[bin]) {
+                bins[bin] = value;
+            }
+        }
+
+        // Empty bins are filled from the next non-empty bin
+        for (int bin = 0; bin < SIGNATURE_SIZE; bin++) {
+            int source = bin;
+            int distance = 0;
+            while (bins[source] == Long.MAX_VALUE) {
+                source = (source + 1) % SIGNATURE_SIZE;
+                distance++;
+            }
+            long value = distance == 0 ? bins[source] : mix(bins[source] + distance * GOLDEN_GAMMA);
+            signature[bin] = (char) value;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the signature of the last document matches the
+     * signature of the representative of the specified cluster.
+     *
+     * @param cluster index of the cluster
+     * @return true if the signatures match
+     */
+    private boolean matches(int cluster) {
+        int offset = cluster * SIGNATURE_SIZE;
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (signatures[offset + i] == signature[i]) {
+                equal++;
+            }
+        }
+        return equal >= minMatches;
+    }
+
+    /**
+     * Returns the hash of the specified band of the last signature, which is
+     * never <tt>0</tt>.
+     *
+     * @param band index of the band
+     * @return the hash of the band
+     */
+    private long bandKey(int band) {
+        long key = band;
+        for (int i = band * ROWS, end = i + ROWS; i < end; i++) {
+            key = (key << 16 | signature[i]) * GOLDEN_GAMMA;
+        }
+        key = mix(key);
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * Returns the cluster with the specified band hash, or <tt>-1</tt> if
+     * there is none.
+     *
+     * @param key the band hash
+     * @return the cluster with the band hash, or <tt>-1</tt>
+     */
+    private int findBand(long key) {
+        int mask = bandKeys.length - 1;
+        for (int i = (int) key & mask; bandKeys[i] != 0; i = (i + 1) & mask) {
+            if (bandKeys[i] == key) {
+                return bandClusters[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Associates the specified band hash with the specified cluster, unless
+     * it is already associated with another cluster.
+     *
+     * @param key the band hash
+     * @param cluster index of the cluster
+     */
+    private void addBand(long key, int cluster) {
+        if (2 * (bandCount + 1) > bandKeys.length) {
+            long[] oldKeys = bandKeys;
+            int[] oldClusters = bandClusters;
+            bandKeys = new long[oldKeys.length * 2];
+            bandClusters = new int[oldKeys.length * 2];
+            bandCount = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    addBand(oldKeys[i], oldClusters[i]);
+                }
+            }
+        }
+
+        int mask = bandKeys.length - 1;
+        int i = (int) key & mask;
+        for (; bandKeys[i] != 0; i = (i + 1) & mask) {
+            if (bandKeys[i] == key) {
+                return;
+            }
+        }
+        bandKeys[i] = key;
+        bandClusters[i] = cluster;
+        bandCount++;
+    }
+
+    /**
+     * Mixes bits of the specified hash, using the finalizer of MurmurHash3.
+     *
+     * @param hash a hash
+     * @return the mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85A33L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
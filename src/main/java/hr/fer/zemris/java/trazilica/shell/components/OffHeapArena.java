@@ -0,0 +1,201 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An arena of direct byte buffers that live outside of the Java heap. Index
+ * structures allocate their memory from an arena and the arena frees all of
+ * it at once when it is {@link #close() closed}, without waiting for the
+ * garbage collector to discover that the buffers are unreachable.
+ * <p>
+ * Memory is handed out in chunks whose size starts at
+ * {@linkplain #MIN_CHUNK_SIZE} and doubles with every new chunk up to
+ * {@linkplain #CHUNK_SIZE}, so that small indexes do not reserve more memory
+ * than they need, while large indexes consist of few chunks. All buffers are
+ * in the {@linkplain ByteOrder#nativeOrder() native byte order} and should be
+ * accessed using absolute get and put methods only, so that no per-access
+ * objects are created.
+ * <p>
+ * After the arena is closed, any buffer obtained from it must not be used
+ * anymore, since its memory may already be returned to the operating system.
+ *
+ * @author Mario Bobic
+ */
+public class OffHeapArena implements AutoCloseable {
+
+    /** Maximal size of a single chunk, in bytes. */
+    public static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    /** Size of the first chunk, in bytes. */
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    /** Strategy used for freeing direct buffers, <tt>null</tt> if unsupported. */
+    private static final BufferFreer FREER = createFreer();
+
+    /** Buffers allocated by this arena. */
+    private List<ByteBuffer> buffers = new ArrayList<>();
+    /** Total number of bytes allocated by this arena. */
+    private long allocatedBytes;
+    /** Size of the next chunk, in bytes. */
+    private int nextChunkSize = MIN_CHUNK_SIZE;
+    /** Indicates if this arena has been closed. */
+    private boolean closed;
+
+    /**
+     * Allocates a new chunk, which is a direct buffer of at least the
+     * specified <tt>size</tt>. The buffer is owned by this arena and freed
+     * when this arena is closed.
+     *
+     * @param size minimal number of bytes to be allocated
+     * @return a new direct buffer in the native byte order
+     * @throws IllegalStateException if this arena is closed
+     */
+    public ByteBuffer allocateChunk(int size) {
+        ByteBuffer chunk = allocate(Math.max(size, nextChunkSize));
+        nextChunkSize = Math.min(CHUNK_SIZE, nextChunkSize * 2);
+        return chunk;
+    }
+
+    /**
+     * Allocates a new direct buffer of exactly the specified <tt>size</tt>.
+     * The buffer is owned by this arena and freed when this arena is closed.
+     *
+     * @param size number of bytes to be allocated
+     * @return a new direct buffer in the native byte order
+     * @throws IllegalArgumentException if <tt>size</tt> is negative
+     * @throws IllegalStateException if this arena is closed
+     */
+    public ByteBuffer allocate(int size) {
+        if (closed) {
+            throw new IllegalStateException("Arena is closed.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        buffers.add(buffer);
+        allocatedBytes += size;
+        return buffer;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by this arena.
+     *
+     * @return the total number of bytes allocated by this arena
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns true if this arena has been closed.
+     *
+     * @return true if this arena has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Frees all buffers allocated by this arena. Calling this method more
+     * than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (FREER != null) {
+            for (ByteBuffer buffer : buffers) {
+                FREER.free(buffer);
+            }
+        }
+        buffers = null;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * Frees memory of the specified direct or memory-mapped <tt>buffer</tt>
+     * immediately, if it is supported by the running Java version. Otherwise
+     * the memory is released by the garbage collector. The buffer must not be
+     * used after this method is called.
+     *
+     * @param buffer buffer to be freed
+     */
+    static void free(ByteBuffer buffer) {
+        if (FREER != null) {
+            FREER.free(buffer);
+        }
+    }
+
+    /**
+     * Creates a strategy for freeing direct buffers that works on the running
+     * Java version. Java 9 and later offer <tt>Unsafe.invokeCleaner</tt>,
+     * while Java 8 requires invoking the buffer's cleaner directly. Returns
+     * <tt>null</tt> if neither is available, in which case the memory is
+     * released by the garbage collector.
+     *
+     * @return a strategy for freeing direct buffers or <tt>null</tt>
+     */
+    private static BufferFreer createFreer() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (Exception ignorable) {}
+
+        try {
+            ByteBuffer probe = ByteBuffer.allocateDirect(1);
+            Method cleanerMethod = probe.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Method cleanMethod = cleanerMethod.getReturnType().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            };
+        } catch (Exception ignorable) {}
+
+        return null;
+    }
+
+    /**
+     * A strategy for freeing memory of a single direct buffer.
+     *
+     * @author Mario Bobic
+     */
+    @FunctionalInterface
+    private interface BufferFreer {
+
+        /**
+         * Frees memory of the specified direct <tt>buffer</tt>.
+         *
+         * @param buffer buffer to be freed
+         * @throws Exception if freeing fails
+         */
+        void invoke(ByteBuffer buffer) throws Exception;
+
+        /**
+         * Frees memory of the specified direct <tt>buffer</tt>, ignoring any
+         * failures, in which case the memory is released by the garbage
+         * collector.
+         *
+         * @param buffer buffer to be freed
+         */
+        default void free(ByteBuffer buffer) {
+            try {
+                invoke(buffer);
+            } catch (Exception ignorable) {}
+        }
+    }
+
+}
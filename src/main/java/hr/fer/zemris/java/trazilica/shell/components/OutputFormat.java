@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * An enumeration of formats in which query results are written out. The
+ * {@linkplain #TEXT} format is meant for people, while the other formats are
+ * meant for programs that read the output of the shell.
+ *
+ * @author Mario Bobic
+ */
+public enum OutputFormat {
+
+    /**
+     * Results are written out as human-readable text.
+     */
+    TEXT,
+
+    /**
+     * Output of each command is written out as a single line containing a
+     * JSON object.
+     */
+    JSON,
+
+    /**
+     * Each result is written out as a single line of tab-separated values.
+     * Messages are written out as lines starting with <tt>#</tt>.
+     */
+    TSV;
+
+    /**
+     * Returns the output format with the specified case-insensitive
+     * <tt>name</tt>.
+     *
+     * @param name name of the output format
+     * @return the output format with the specified name
+     * @throws IllegalArgumentException if there is no such output format
+     */
+    public static OutputFormat parse(String name) {
+        for (OutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name);
+    }
+
+    /**
+     * Returns the specified string <tt>s</tt> as a quoted JSON string, or
+     * <tt>null</tt> if the string is <tt>null</tt>.
+     *
+     * @param s a string, may be <tt>null</tt>
+     * @return the string as a JSON value
+     */
+    public static String jsonString(String s) {
+        if (s == null) {
+            return "null";
+        }
+
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Returns the specified string <tt>s</tt> as a field of tab-separated
+     * values, escaping tabs, line breaks and backslashes with a backslash.
+     *
+     * @param s a string
+     * @return the string as a field of tab-separated values
+     */
+    public static String tsvField(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:   sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
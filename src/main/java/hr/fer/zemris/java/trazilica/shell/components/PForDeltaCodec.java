@@ -0,0 +1,182 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static hr.fer.zemris.java.trazilica.shell.components.VByteCodec.*;
+
+/**
+ * A patched frame-of-reference codec. A block of values is bit-packed using a
+ * single bit width <tt>b</tt>, chosen so that the encoded block is as small
+ * as possible. Values that do not fit into <tt>b</tt> bits are
+ * <em>exceptions</em>: their lowest <tt>b</tt> bits are packed with the other
+ * values and their remaining high bits are patched in after unpacking.
+ * <p>
+ * A block is laid out as follows:
+ * <ul>
+ *   <li>a single byte containing the bit width <tt>b</tt>,
+ *   <li>a variable-byte encoded number of exceptions,
+ *   <li><tt>ceil(count * b / 8)</tt> bytes of packed values and
+ *   <li>for each exception, a variable-byte encoded distance from the
+ *   previous exception and the variable-byte encoded high bits.
+ * </ul>
+ *
+ * @author Mario Bobic
+ */
+public class PForDeltaCodec implements PostingsCodec {
+
+    /** Name of this codec. */
+    public static final String NAME = "pfor";
+
+    @Override
+    public int encode(int[] values, int count, ByteBuffer out, int offset) {
+        int bits = bestBitWidth(values, count);
+
+        int exceptions = 0;
+        for (int i = 0; i < count; i++) {
+            if (isException(values[i], bits)) {
+                exceptions++;
+            }
+        }
+
+        out.put(offset++, (byte) bits);
+        offset = writeVInt(out, offset, exceptions);
+
+        long mask = mask(bits);
+        long accumulator = 0;
+        int accumulated = 0;
+        for (int i = 0; i < count; i++) {
+            accumulator |= (values[i] & mask) << accumulated;
+            accumulated += bits;
+            while (accumulated >= 8) {
+                out.put(offset++, (byte) accumulator);
+                accumulator >>>= 8;
+                accumulated -= 8;
+            }
+        }
+        if (accumulated > 0) {
+            out.put(offset++, (byte) accumulator);
+        }
+
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            if (isException(values[i], bits)) {
+                offset = writeVInt(out, offset, i - previous);
+                offset = writeVInt(out, offset, values[i] >>> bits);
+                previous = i;
+            }
+        }
+
+        return offset;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int offset, int[] values, int count) {
+        int bits = in.get(offset++) & 0xFF;
+        int exceptions = readVInt(in, offset);
+        offset += vIntLength(exceptions);
+
+        int packedEnd = offset + (int) (((long) count * bits + 7) / 8);
+        boolean wordReads = in.order() == ByteOrder.LITTLE_ENDIAN;
+        int wordLimit = in.limit() - Integer.BYTES;
+
+        long mask = mask(bits);
+        long accumulator = 0;
+        int accumulated = 0;
+        for (int i = 0; i < count; i++) {
+            if (accumulated < bits) {
+                // bytes past the packed values may be read, but are never used
+                if (wordReads && offset <= wordLimit) {
+                    accumulator |= (in.getInt(offset) & 0xFFFFFFFFL) << accumulated;
+                    offset += Integer.BYTES;
+                    accumulated += Integer.SIZE;
+                } else {
+                    while (accumulated < bits) {
+                        accumulator |= (in.get(offset++) & 0xFFL) << accumulated;
+                        accumulated += Byte.SIZE;
+                    }
+                }
+            }
+            values[i] = (int) (accumulator & mask);
+            accumulator >>>= bits;
+            accumulated -= bits;
+        }
+        offset = packedEnd;
+
+        int position = 0;
+        for (int e = 0; e < exceptions; e++) {
+            int distance = readVInt(in, offset);
+            offset += vIntLength(distance);
+            int high = readVInt(in, offset);
+            offset += vIntLength(high);
+
+            position += distance;
+            values[position] |= high << bits;
+        }
+
+        return offset;
+    }
+
+    @Override
+    public int maxEncodedBytes(int count) {
+        return 1 + 5 + count * Integer.BYTES + count * 10;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Returns the bit width for which the encoded block of the specified
+     * values is the smallest, estimating each exception to take one byte for
+     * its distance and as many bytes as needed for its high bits.
+     *
+     * @param values values to be encoded
+     * @param count number of values to be encoded
+     * @return the best bit width, in range <tt>[0, 32]</tt>
+     */
+    private static int bestBitWidth(int[] values, int count) {
+        int[] histogram = new int[33];
+        for (int i = 0; i < count; i++) {
+            histogram[32 - Integer.numberOfLeadingZeros(values[i])]++;
+        }
+
+        int bestBits = 32;
+        long bestCost = Long.MAX_VALUE;
+        for (int bits = 0; bits <= 32; bits++) {
+            long cost = ((long) count * bits + 7) / 8;
+            for (int length = bits + 1; length <= 32; length++) {
+                cost += histogram[length] * (1 + (length - bits + 6) / 7);
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestBits = bits;
+            }
+        }
+        return bestBits;
+    }
+
+    /**
+     * Returns true if the specified <tt>value</tt> does not fit into the
+     * specified number of <tt>bits</tt>.
+     *
+     * @param value a value
+     * @param bits number of bits
+     * @return true if the value does not fit into the number of bits
+     */
+    private static boolean isException(int value, int bits) {
+        return bits < 32 && (value >>> bits) != 0;
+    }
+
+    /**
+     * Returns a mask of the specified number of lowest <tt>bits</tt>.
+     *
+     * @param bits number of bits
+     * @return a mask of the lowest bits
+     */
+    private static long mask(int bits) {
+        return (1L << bits) - 1;
+    }
+
+}
@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A codec that compresses blocks of non-negative integers, used for encoding
+ * blocks of posting lists. Posting lists are delta-encoded before they are
+ * passed to a codec, so most values are expected to be small.
+ * <p>
+ * Both encoding and decoding work with absolute offsets of the specified
+ * buffers and never change their positions. Decoding must not allocate any
+ * objects.
+ *
+ * @author Mario Bobic
+ */
+public interface PostingsCodec {
+
+    /**
+     * Encodes the first <tt>count</tt> values of the specified array into the
+     * <tt>out</tt> buffer, starting at the specified <tt>offset</tt>.
+     *
+     * @param values values to be encoded, all non-negative
+     * @param count number of values to be encoded
+     * @param out buffer where values are encoded to
+     * @param offset offset in the buffer where encoding starts
+     * @return offset in the buffer right after the encoded values
+     */
+    int encode(int[] values, int count, ByteBuffer out, int offset);
+
+    /**
+     * Decodes <tt>count</tt> values from the <tt>in</tt> buffer, starting at
+     * the specified <tt>offset</tt>, into the specified array.
+     *
+     * @param in buffer where values are decoded from
+     * @param offset offset in the buffer where decoding starts
+     * @param values array where decoded values are stored
+     * @param count number of values to be decoded
+     * @return offset in the buffer right after the decoded values
+     */
+    int decode(ByteBuffer in, int offset, int[] values, int count);
+
+    /**
+     * Returns the maximal number of bytes needed for encoding <tt>count</tt>
+     * values.
+     *
+     * @param count number of values
+     * @return the maximal number of bytes needed for encoding the values
+     */
+    int maxEncodedBytes(int count);
+
+    /**
+     * Returns the name of this codec.
+     *
+     * @return the name of this codec
+     */
+    String getName();
+
+    /**
+     * Returns a codec with the specified <tt>name</tt>, ignoring case. Known
+     * codecs are <tt>vbyte</tt> and <tt>pfor</tt>.
+     *
+     * @param name name of the codec
+     * @return a codec with the specified name
+     * @throws IllegalArgumentException if there is no codec with the name
+     */
+    static PostingsCodec forName(String name) {
+        switch (name.toLowerCase()) {
+        case VByteCodec.NAME:
+            return new VByteCodec();
+        case PForDeltaCodec.NAME:
+            return new PForDeltaCodec();
+        default:
+            throw new IllegalArgumentException("Unknown postings codec: " + name);
+        }
+    }
+
+}
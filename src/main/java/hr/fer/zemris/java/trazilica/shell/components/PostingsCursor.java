@@ -0,0 +1,510 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+
+import static hr.fer.zemris.java.trazilica.shell.components.InvertedIndex.*;
+
+/**
+ * A flyweight cursor over a posting list of an {@linkplain InvertedIndex}.
+ * The cursor is positioned to a term using the {@linkplain #reset(int)}
+ * method, after which documents containing the term are visited in ascending
+ * order of their keys using the {@linkplain #nextDoc()} and
+ * {@linkplain #advance(int)} methods.
+ * <p>
+ * Posting lists are decoded one block at a time into int buffers owned by the
+ * cursor. Term frequencies of a block are decoded only if they are asked for,
+ * and {@linkplain #advance(int)} gallops over the skip table of the posting
+ * list, starting from the current block, to jump over blocks that can not
+ * contain the target document. Targets close to the current document are
+ * thus found in a few steps, while distant ones take a logarithmic number of
+ * steps. Reading postings
+ * never allocates objects, so a single cursor can be used to iterate over any
+ * number of posting lists.
+ * <p>
+ * If the index {@linkplain InvertedIndex#hasPositions() stores positions},
+ * positions of the term in the current document are read using the
+ * {@linkplain #nextPosition()} method. Positions of documents that are
+ * stepped over are skipped without being decoded. Likewise, if the index
+ * {@linkplain InvertedIndex#hasImpacts() stores impacts}, the impact of the
+ * current posting is read using the {@linkplain #impact()} method.
+ * <p>
+ * A posting list of the index is read segment by segment, skipping segments
+ * without postings of the term, and keys of documents in a segment are
+ * turned into global keys by adding the key of its first document. Advancing
+ * to a target in a later segment starts from that segment directly.
+ * <p>
+ * Documents {@linkplain InvertedIndex#deleteDocuments(int[]) deleted} from
+ * the index are skipped, by testing a bit of the live documents of their
+ * segment, which is read when the cursor enters the segment. Segments
+ * without deleted documents are not tested at all.
+ *
+ * @author Mario Bobic
+ */
+public class PostingsCursor {
+
+    /** Document key returned when there are no more documents. */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /** Index whose posting lists are read. */
+    private final InvertedIndex index;
+    /** Codec used for decoding blocks. */
+    private final PostingsCodec codec;
+    /** Number of bytes taken by a single skip table entry. */
+    private final int skipEntryBytes;
+    /** Indicates if positions of terms are stored. */
+    private final boolean positional;
+    /** Indicates if deleted documents are skipped. */
+    private final boolean liveOnly;
+
+    /** Decoded document keys of the current block. */
+    private final int[] docBuffer = new int[BLOCK_SIZE];
+    /** Decoded term frequencies of the current block. */
+    private final int[] freqBuffer = new int[BLOCK_SIZE];
+
+    /** Key of the current term. */
+    private int term;
+    /** Number of postings of the current term in all segments. */
+    private int cost;
+    /** Index of the current segment. */
+    private int segment;
+    /** Global key of the first document of the current segment. */
+    private int docBase;
+    /** Bitset of live documents of the current segment, or <tt>null</tt> if all are visited. */
+    private long[] liveDocs;
+
+    /** Chunk containing the current posting list. */
+    private ByteBuffer chunk;
+    /** Offset of the current posting list within the chunk. */
+    private int start;
+    /** Number of postings in the current posting list. */
+    private int length;
+    /** Number of blocks of the current posting list. */
+    private int blocks;
+    /** Chunk containing impacts of the current posting list, or <tt>null</tt>. */
+    private ByteBuffer impactChunk;
+    /** Offset of impacts of the current posting list within their chunk. */
+    private int impactStart;
+    /** Weight of a single impact unit of the current posting list. */
+    private double impactScale;
+
+    /** Index of the current block. */
+    private int block;
+    /** Number of postings in the current block. */
+    private int blockLength;
+    /** Offset of the encoded term frequencies of the current block. */
+    private int freqOffset;
+    /** Indicates if term frequencies of the current block are decoded. */
+    private boolean freqsDecoded;
+    /** Position of the current posting within the current block. */
+    private int position;
+
+    /** Key of the current document. */
+    private int doc;
+
+    /** Offset of the next encoded position to be read. */
+    private int positionOffset;
+    /** Position within the current block of the posting whose positions are read. */
+    private int positionPosting;
+    /** Number of unread positions of that posting, <tt>-1</tt> if not started. */
+    private int positionsLeft;
+    /** Last position that was read. */
+    private int lastPosition;
+
+    /**
+     * Constructs an instance of {@code PostingsCursor} over the specified
+     * <tt>index</tt>, which skips deleted documents.
+     *
+     * @param index index whose posting lists are read
+     */
+    PostingsCursor(InvertedIndex index) {
+        this(index, true);
+    }
+
+    /**
+     * Constructs an instance of {@code PostingsCursor} over the specified
+     * <tt>index</tt>, which skips deleted documents if <tt>liveOnly</tt> is
+     * true, or visits all postings otherwise.
+     *
+     * @param index index whose posting lists are read
+     * @param liveOnly true if deleted documents are skipped
+     */
+    PostingsCursor(InvertedIndex index, boolean liveOnly) {
+        this.liveOnly = liveOnly;
+        this.index = index;
+        this.codec = index.getCodec();
+        this.skipEntryBytes = index.skipEntryBytes();
+        this.positional = index.hasPositions();
+        this.doc = NO_MORE_DOCS;
+        this.positionsLeft = -1;
+    }
+
+    /**
+     * Positions this cursor before the first posting of the term with the
+     * specified key.
+     *
+     * @param term key of the term
+     * @return this cursor
+     * @throws IllegalStateException if the index is closed
+     */
+    public PostingsCursor reset(int term) {
+        index.checkOpen();
+        this.term = term;
+        cost = index.postingCount(term);
+        openSegment(0);
+        doc = -1;
+        return this;
+    }
+
+    /**
+     * Positions this cursor before the first posting of the current term in
+     * the first segment, starting from the specified one, that has postings
+     * of the term.
+     *
+     * @param s index of the first segment that is looked at
+     * @return true if a segment with postings of the term is found
+     */
+    private boolean openSegment(int s) {
+        int segmentCount = index.segmentCount();
+        while (s < segmentCount && index.segment(s).postingCount(term) == 0) {
+            s++;
+        }
+        segment = s;
+        block = -1;
+        blockLength = 0;
+        position = -1;
+        positionPosting = 0;
+        positionsLeft = -1;
+        if (s >= segmentCount) {
+            chunk = null;
+            liveDocs = null;
+            impactChunk = null;
+            length = 0;
+            blocks = 0;
+            return false;
+        }
+
+        IndexSegment current = index.segment(s);
+        docBase = index.docBase(s);
+        liveDocs = liveOnly ? current.liveDocs() : null;
+        chunk = current.chunk(term);
+        start = current.offset(term);
+        length = current.postingCount(term);
+        blocks = blockCount(length);
+        impactChunk = current.impactChunk(term);
+        impactStart = impactChunk == null ? 0 : current.impactOffset(term);
+        impactScale = impactChunk == null ? 0 : current.impactScale(term);
+        return true;
+    }
+
+    /**
+     * Advances to the next document of the posting list and returns its key,
+     * or {@linkplain #NO_MORE_DOCS} if there are no more documents.
+     *
+     * @return key of the next document or {@linkplain #NO_MORE_DOCS}
+     */
+    public int nextDoc() {
+        int next = nextPosting();
+        while (liveDocs != null && next != NO_MORE_DOCS && !IndexSegment.isLive(liveDocs, next - docBase)) {
+            next = nextPosting();
+        }
+        return next;
+    }
+
+    /**
+     * Advances to the next posting of the posting list and returns the key
+     * of its document, even if it is deleted, or {@linkplain #NO_MORE_DOCS}
+     * if there are no more postings.
+     *
+     * @return key of the next document or {@linkplain #NO_MORE_DOCS}
+     */
+    private int nextPosting() {
+        if (++position < blockLength) {
+            doc = docBase + docBuffer[position];
+            return doc;
+        }
+        if (block + 1 >= blocks && !openSegment(segment + 1)) {
+            return exhaust();
+        }
+
+        loadBlock(block + 1);
+        position = 0;
+        doc = docBase + docBuffer[0];
+        return doc;
+    }
+
+    /**
+     * Advances to the first document whose key is greater than or equal to
+     * the specified <tt>target</tt> and returns its key, or
+     * {@linkplain #NO_MORE_DOCS} if there is no such document. The target
+     * should be greater than the current document key.
+     *
+     * @param target key of the target document
+     * @return key of the first document beyond target or {@linkplain #NO_MORE_DOCS}
+     */
+    public int advance(int target) {
+        int next = advancePosting(target);
+        if (liveDocs == null || next == NO_MORE_DOCS || IndexSegment.isLive(liveDocs, next - docBase)) {
+            return next;
+        }
+        return nextDoc();
+    }
+
+    /**
+     * Advances to the first posting whose document key is greater than or
+     * equal to the specified <tt>target</tt> and returns the key, even if
+     * the document is deleted, or {@linkplain #NO_MORE_DOCS} if there is no
+     * such posting.
+     *
+     * @param target key of the target document
+     * @return key of the first document beyond target or {@linkplain #NO_MORE_DOCS}
+     */
+    private int advancePosting(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        if (target >= index.documentCount()) {
+            return exhaust();
+        }
+        int s = index.segmentOf(target);
+        if (s > segment && !openSegment(s)) {
+            return exhaust();
+        }
+
+        while (true) {
+            int local = advanceLocal(Math.max(0, target - docBase));
+            if (local >= 0) {
+                doc = docBase + local;
+                return doc;
+            }
+            if (!openSegment(segment + 1)) {
+                return exhaust();
+            }
+        }
+    }
+
+    /**
+     * Advances within the current segment to the first document whose local
+     * key is greater than or equal to the specified <tt>target</tt> and
+     * returns its local key, or <tt>-1</tt> if there is no such document in
+     * the segment. The target should be greater than the local key of the
+     * current document.
+     *
+     * @param target local key of the target document
+     * @return local key of the first document beyond target or <tt>-1</tt>
+     */
+    private int advanceLocal(int target) {
+        if (block < 0 || lastDoc(block) < target) {
+            // gallop over the skip table, then binary search the last step
+            int low = block + 1;
+            int high = low;
+            for (int step = 1; high < blocks && lastDoc(high) < target; step <<= 1) {
+                low = high + 1;
+                high += step;
+            }
+            high = Math.min(high, blocks - 1);
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (lastDoc(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (low >= blocks) {
+                return -1;
+            }
+            loadBlock(low);
+            position = -1;
+        }
+
+        // the current block's last document is not less than target
+        while (docBuffer[++position] < target);
+        return docBuffer[position];
+    }
+
+    /**
+     * Returns the key of the current document, <tt>-1</tt> if iteration has
+     * not started or {@linkplain #NO_MORE_DOCS} if it has ended.
+     *
+     * @return the key of the current document
+     */
+    public int docId() {
+        return doc;
+    }
+
+    /**
+     * Returns the frequency of the term in the current document.
+     *
+     * @return the frequency of the term in the current document
+     */
+    public int freq() {
+        if (!freqsDecoded) {
+            codec.decode(chunk, freqOffset, freqBuffer, blockLength);
+            for (int i = 0; i < blockLength; i++) {
+                freqBuffer[i]++;
+            }
+            freqsDecoded = true;
+        }
+        return freqBuffer[position];
+    }
+
+    /**
+     * Returns the quantized impact of the current posting, in range
+     * <tt>[0, {@value InvertedIndex#MAX_IMPACT}]</tt>.
+     *
+     * @return the quantized impact of the current posting
+     * @throws UnsupportedOperationException if the index does not store impacts
+     */
+    public int impact() {
+        if (impactChunk == null) {
+            throw new UnsupportedOperationException("Index does not store impacts.");
+        }
+        return impactChunk.get(impactStart + block * BLOCK_SIZE + position) & 0xFF;
+    }
+
+    /**
+     * Returns the weight of a single impact unit of the current posting, so
+     * that the weight of the posting, divided by the document norm, is
+     * approximately its {@linkplain #impact() impact} multiplied by the
+     * scale. The scale is the same for all postings of a term in a single
+     * segment.
+     *
+     * @return the weight of a single impact unit of the current posting
+     * @throws UnsupportedOperationException if the index does not store impacts
+     */
+    public double impactScale() {
+        if (impactChunk == null) {
+            throw new UnsupportedOperationException("Index does not store impacts.");
+        }
+        return impactScale;
+    }
+
+    /**
+     * Returns the next position of the term in the current document. This
+     * method may be called at most {@linkplain #freq()} times per document
+     * and positions are returned in ascending order. Positions count all
+     * words of a document, including stopwords, starting from zero.
+     *
+     * @return the next position of the term in the current document
+     * @throws UnsupportedOperationException if the index does not store positions
+     */
+    public int nextPosition() {
+        if (positionPosting != position) {
+            if (!positional) {
+                throw new UnsupportedOperationException("Index does not store positions.");
+            }
+            int skipped = positionsLeft < 0 ? freq(positionPosting) : positionsLeft;
+            for (int i = positionPosting + 1; i < position; i++) {
+                skipped += freq(i);
+            }
+            positionOffset = skipVInts(positionOffset, skipped);
+            positionPosting = position;
+            positionsLeft = -1;
+        }
+        if (positionsLeft < 0) {
+            if (!positional) {
+                throw new UnsupportedOperationException("Index does not store positions.");
+            }
+            positionsLeft = freq();
+            lastPosition = -1;
+        }
+
+        int gap = VByteCodec.readVInt(chunk, positionOffset);
+        positionOffset += VByteCodec.vIntLength(gap);
+        positionsLeft--;
+        lastPosition += gap + 1;
+        return lastPosition;
+    }
+
+    /**
+     * Returns the number of documents in the current posting list.
+     *
+     * @return the number of documents in the current posting list
+     */
+    public int cost() {
+        return cost;
+    }
+
+    /**
+     * Returns the last document key of the specified block, as written in the
+     * skip table.
+     *
+     * @param b index of the block
+     * @return the last document key of the block
+     */
+    private int lastDoc(int b) {
+        return chunk.getInt(start + b * skipEntryBytes);
+    }
+
+    /**
+     * Returns the term frequency of the posting at the specified position
+     * within the current block.
+     *
+     * @param i position of the posting within the current block
+     * @return the term frequency of the posting
+     */
+    private int freq(int i) {
+        if (!freqsDecoded) {
+            freq();
+        }
+        return freqBuffer[i];
+    }
+
+    /**
+     * Skips the specified number of variable-byte encoded values starting at
+     * the specified <tt>offset</tt> and returns the offset after them.
+     *
+     * @param offset offset of the first value
+     * @param count number of values to be skipped
+     * @return offset after the skipped values
+     */
+    private int skipVInts(int offset, int count) {
+        while (count > 0) {
+            if (chunk.get(offset++) >= 0) {
+                count--;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes document keys of the specified block into the document buffer.
+     *
+     * @param b index of the block
+     */
+    private void loadBlock(int b) {
+        int entry = start + b * skipEntryBytes;
+        int offset = start + chunk.getInt(entry + Integer.BYTES);
+        blockLength = Math.min(BLOCK_SIZE, length - b * BLOCK_SIZE);
+        freqOffset = codec.decode(chunk, offset, docBuffer, blockLength);
+        freqsDecoded = false;
+
+        int previousDoc = b == 0 ? -1 : lastDoc(b - 1);
+        for (int i = 0; i < blockLength; i++) {
+            previousDoc += docBuffer[i] + 1;
+            docBuffer[i] = previousDoc;
+        }
+        block = b;
+
+        if (positional) {
+            positionOffset = start + chunk.getInt(entry + 2 * Integer.BYTES);
+            positionPosting = 0;
+            positionsLeft = -1;
+        }
+    }
+
+    /**
+     * Positions this cursor after the last posting.
+     *
+     * @return {@linkplain #NO_MORE_DOCS}
+     */
+    private int exhaust() {
+        segment = index.segmentCount();
+        block = blocks;
+        blockLength = 0;
+        position = 0;
+        doc = NO_MORE_DOCS;
+        return doc;
+    }
+
+}
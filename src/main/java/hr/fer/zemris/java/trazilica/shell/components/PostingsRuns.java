@@ -0,0 +1,633 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import hr.fer.zemris.java.trazilica.shell.components.Metrics.Phase;
+
+/**
+ * Posting lists of an index under construction that are buffered in memory
+ * only up to a memory budget. Whenever buffered postings exceed the budget,
+ * they are written to a temporary file as a sorted run, which holds posting
+ * lists of all buffered terms in ascending order of term keys, and the buffer
+ * is cleared. Posting lists are then read by a k-way merge of all runs, as a
+ * {@linkplain PostingsSource}, so the heap taken by postings does not depend
+ * on the size of the corpus.
+ * <p>
+ * Documents are added in ascending order of their keys, so each run holds
+ * documents that follow all documents of the previous run, and a posting
+ * list of a term is merged simply by concatenating its parts from all runs in
+ * the order in which runs were written. If there are more than
+ * {@value #MAX_FAN_IN} runs, groups of runs are first merged into larger
+ * runs, so that the number of files read at once stays limited.
+ * <p>
+ * Runs are written as variable-byte encoded integers, where document keys
+ * and positions are written as gaps. Temporary files are deleted when these
+ * postings are {@link #close() closed}.
+ *
+ * @author Mario Bobic
+ */
+class PostingsRuns implements PostingsSource, AutoCloseable {
+
+    /** Maximal number of runs merged at once. */
+    public static final int MAX_FAN_IN = 64;
+
+    /** Estimated heap bytes of an empty buffered posting list with its positions. */
+    private static final int TERM_OVERHEAD = 128;
+    /** Least size of the buffer of a read or written run, in bytes. */
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    /** Greatest size of the buffer of a read or written run, in bytes. */
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    /** Indicates if positions of terms are buffered. */
+    private final boolean positional;
+    /** Memory budget of buffered postings, in bytes. */
+    private final long memoryBudget;
+    /** Size of buffers of read and written runs, in bytes. */
+    private final int bufferSize;
+
+    /** Directory of temporary files, or <tt>null</tt> if none was created. */
+    private Path directory;
+    /** Temporary files of runs, in the order they were written. */
+    private final List<Path> runs = new ArrayList<>();
+    /** Number of bytes written to temporary files. */
+    private long spilledBytes;
+
+    /** Buffered posting lists, indexed by term keys. */
+    private IntList[] bufferedPostings = new IntList[16];
+    /** Buffered positions, indexed by term keys, or <tt>null</tt>. */
+    private IntList[] bufferedPositions;
+    /** Keys of terms with buffered postings. */
+    private final IntList bufferedTerms = new IntList();
+    /** Number of buffered values of posting lists and positions. */
+    private long bufferedValues;
+
+    /** Number of documents containing each term. */
+    private int[] documentFrequencies = new int[16];
+    /** Number of terms. */
+    private int termCount;
+
+    /** New keys of terms, or <tt>null</tt> if terms are not renumbered. */
+    private int[] termMap;
+    /** Document frequencies of terms by their new keys. */
+    private int[] keptFrequencies;
+
+    /**
+     * Constructs an instance of {@code PostingsRuns} that buffers at most
+     * about <tt>memoryBudget</tt> bytes of postings.
+     *
+     * @param positional true if positions of terms are buffered
+     * @param memoryBudget memory budget of buffered postings, in bytes
+     * @throws IllegalArgumentException if <tt>memoryBudget</tt> is not positive
+     */
+    public PostingsRuns(boolean positional, long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+        this.positional = positional;
+        this.memoryBudget = memoryBudget;
+        this.bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, memoryBudget / (4 * MAX_FAN_IN)));
+        if (positional) {
+            bufferedPositions = new IntList[bufferedPostings.length];
+        }
+    }
+
+    /**
+     * Adds a posting of the specified document to the posting list of the
+     * specified term, where the term frequency is the number of the specified
+     * positions of the term in the document. Documents must be added in
+     * ascending order of their keys.
+     *
+     * @param term key of the term
+     * @param doc key of the document
+     * @param termPositions positions of the term in the document
+     */
+    public void add(int term, int doc, IntList termPositions) {
+        if (term >= bufferedPostings.length) {
+            int length = Math.max(term + 1, 2 * bufferedPostings.length);
+            bufferedPostings = Arrays.copyOf(bufferedPostings, length);
+            if (positional) {
+                bufferedPositions = Arrays.copyOf(bufferedPositions, length);
+            }
+            documentFrequencies = Arrays.copyOf(documentFrequencies, length);
+        }
+        termCount = Math.max(termCount, term + 1);
+        documentFrequencies[term]++;
+
+        IntList list = bufferedPostings[term];
+        if (list == null) {
+            list = bufferedPostings[term] = new IntList();
+            if (positional) {
+                bufferedPositions[term] = new IntList();
+            }
+            bufferedTerms.add(term);
+        }
+        list.add(doc);
+        list.add(termPositions.size());
+        bufferedValues += 2;
+
+        if (positional) {
+            IntList positions = bufferedPositions[term];
+            for (int i = 0, n = termPositions.size(); i < n; i++) {
+                positions.add(termPositions.get(i));
+            }
+            bufferedValues += termPositions.size();
+        }
+    }
+
+    /**
+     * Writes buffered postings to disk as a run if they exceed the memory
+     * budget. Should be called after all postings of a document are added.
+     *
+     * @throws IOException if an I/O error occurs while writing the run
+     */
+    public void endDocument() throws IOException {
+        // lists grow by half of their size, so they may be a third empty
+        long estimate = bufferedValues * Integer.BYTES * 3 / 2 + (long) bufferedTerms.size() * TERM_OVERHEAD;
+        if (estimate > memoryBudget) {
+            flush();
+        }
+    }
+
+    /**
+     * Finishes adding postings, writing the remaining buffered postings to
+     * disk, and renumbers terms by the specified <tt>termMap</tt>, so that
+     * the term with key <tt>i</tt> gets the key <tt>termMap[i]</tt>, or is
+     * left out if it is negative. New keys must be in the same order as the
+     * old ones. Kept terms without added postings have no postings.
+     *
+     * @param termMap new keys of terms, or <tt>null</tt> to keep all terms
+     * @param keptCount number of kept terms
+     * @throws IOException if an I/O error occurs while writing runs
+     */
+    public void finish(int[] termMap, int keptCount) throws IOException {
+        flush();
+        bufferedPostings = null;
+        bufferedPositions = null;
+
+        long start = System.nanoTime();
+        long merged = 0;
+        while (runs.size() > MAX_FAN_IN) {
+            List<Path> level = new ArrayList<>(runs);
+            runs.clear();
+            for (int from = 0; from < level.size(); from += MAX_FAN_IN) {
+                List<Path> group = level.subList(from, Math.min(level.size(), from + MAX_FAN_IN));
+                if (group.size() == 1) {
+                    runs.add(group.get(0));
+                    continue;
+                }
+                merged += writeRun(new MergeCursor(group, null));
+                for (Path run : group) {
+                    Files.delete(run);
+                }
+            }
+        }
+        if (merged > 0) {
+            Metrics.record(Phase.POSTINGS_SPILL, start, merged);
+        }
+
+        this.termMap = termMap;
+        keptFrequencies = new int[keptCount];
+        for (int term = 0; term < termCount; term++) {
+            int kept = termMap == null ? term : termMap[term];
+            if (kept >= 0) {
+                keptFrequencies[kept] = documentFrequencies[term];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of documents containing the term with the specified
+     * key, before terms are renumbered.
+     *
+     * @param term key of the term
+     * @return the number of documents containing the term
+     */
+    public int addedFrequency(int term) {
+        return term < termCount ? documentFrequencies[term] : 0;
+    }
+
+    /**
+     * Returns the number of runs on disk.
+     *
+     * @return the number of runs on disk
+     */
+    public int runCount() {
+        return runs.size();
+    }
+
+    /**
+     * Returns the number of bytes written to temporary files, including
+     * runs that were merged into larger runs.
+     *
+     * @return the number of bytes written to temporary files
+     */
+    public long spilledBytes() {
+        return spilledBytes;
+    }
+
+    @Override
+    public int termCount() {
+        return keptFrequencies.length;
+    }
+
+    @Override
+    public int documentFrequency(int term) {
+        return keptFrequencies[term];
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positional;
+    }
+
+    @Override
+    public TermCursor terms() {
+        try {
+            return new MergeCursor(runs, termMap);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes all temporary files.
+     *
+     * @throws IOException if an I/O error occurs while deleting files
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        if (directory != null) {
+            Files.deleteIfExists(directory);
+            directory = null;
+        }
+    }
+
+    /**
+     * Writes all buffered postings to disk as a run and clears the buffer.
+     *
+     * @throws IOException if an I/O error occurs while writing the run
+     */
+    private void flush() throws IOException {
+        if (bufferedTerms.size() == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int[] terms = bufferedTerms.toArray();
+        Arrays.sort(terms);
+        long postings = writeRun(new PostingsSource.TermCursor() {
+            private int i = -1;
+
+            @Override
+            public boolean next() {
+                return ++i < terms.length;
+            }
+
+            @Override
+            public int term() {
+                return terms[i];
+            }
+
+            @Override
+            public IntList postings() {
+                return bufferedPostings[terms[i]];
+            }
+
+            @Override
+            public IntList positions() {
+                return positional ? bufferedPositions[terms[i]] : null;
+            }
+        });
+
+        for (int term : terms) {
+            bufferedPostings[term] = null;
+            if (positional) {
+                bufferedPositions[term] = null;
+            }
+        }
+        bufferedTerms.clear();
+        bufferedValues = 0;
+        Metrics.record(Phase.POSTINGS_SPILL, start, postings);
+    }
+
+    /**
+     * Writes posting lists of all terms of the specified cursor to a new
+     * temporary file, which is added to the list of runs, and closes the
+     * cursor.
+     *
+     * @param cursor cursor over posting lists of terms
+     * @return the number of written postings
+     * @throws IOException if an I/O error occurs while writing the run
+     */
+    private long writeRun(PostingsSource.TermCursor cursor) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("trazilica-runs");
+        }
+        Path run = Files.createTempFile(directory, "run", ".bin");
+        runs.add(run);
+
+        long postings = 0;
+        try (PostingsSource.TermCursor terms = cursor;
+                CountingOutputStream out = new CountingOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(run), bufferSize))) {
+            int previousTerm = 0;
+            while (terms.next()) {
+                IntList list = terms.postings();
+                IntList termPositions = terms.positions();
+                int df = list.size() / 2;
+                writeVInt(out, terms.term() - previousTerm);
+                writeVInt(out, df);
+                previousTerm = terms.term();
+                postings += df;
+
+                int previousDoc = 0;
+                for (int i = 0, p = 0; i < df; i++) {
+                    int doc = list.get(2 * i);
+                    int freq = list.get(2 * i + 1);
+                    writeVInt(out, doc - previousDoc);
+                    writeVInt(out, freq);
+                    previousDoc = doc;
+                    if (termPositions != null) {
+                        int previous = 0;
+                        for (int end = p + freq; p < end; p++) {
+                            writeVInt(out, termPositions.get(p) - previous);
+                            previous = termPositions.get(p);
+                        }
+                    }
+                }
+            }
+            // a term without postings marks the end of the run
+            writeVInt(out, 0);
+            writeVInt(out, 0);
+            spilledBytes += out.count;
+        }
+        return postings;
+    }
+
+    /**
+     * Writes the specified non-negative value as a variable-byte encoded
+     * integer, seven bits per byte, where the highest bit of a byte is set if
+     * more bytes follow.
+     *
+     * @param out an output stream
+     * @param value a non-negative value
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeVInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads a variable-byte encoded integer written by the
+     * {@linkplain #writeVInt(OutputStream, int)} method.
+     *
+     * @param in an input stream
+     * @return the read value
+     * @throws IOException if an I/O error occurs or the stream ends
+     */
+    private static int readVInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated run of postings.");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * A reader of a single run, positioned at the posting list of a term.
+     *
+     * @author Mario Bobic
+     */
+    private class RunReader {
+
+        /** Input stream of the run. */
+        private final InputStream in;
+        /** Index of the run in the order runs were written. */
+        private final int index;
+        /** Key of the current term. */
+        private int term;
+        /** Number of postings of the current term. */
+        private int df;
+
+        /**
+         * Constructs an instance of {@code RunReader} of the specified run.
+         *
+         * @param run path to the run
+         * @param index index of the run in the order runs were written
+         * @throws IOException if an I/O error occurs
+         */
+        public RunReader(Path run, int index) throws IOException {
+            this.in = new BufferedInputStream(Files.newInputStream(run), bufferSize);
+            this.index = index;
+        }
+
+        /**
+         * Moves to the next term of the run, after postings of the current
+         * term were read.
+         *
+         * @return true if there is a next term, false at the end of the run
+         * @throws IOException if an I/O error occurs
+         */
+        public boolean advance() throws IOException {
+            int delta = readVInt(in);
+            df = readVInt(in);
+            term += delta;
+            return df > 0;
+        }
+
+        /**
+         * Appends postings and positions of the current term to the
+         * specified lists.
+         *
+         * @param postings list where postings are appended to
+         * @param positions list where positions are appended to, or <tt>null</tt>
+         * @throws IOException if an I/O error occurs
+         */
+        public void read(IntList postings, IntList positions) throws IOException {
+            int doc = 0;
+            for (int i = 0; i < df; i++) {
+                doc += readVInt(in);
+                int freq = readVInt(in);
+                postings.add(doc);
+                postings.add(freq);
+                if (positional) {
+                    int position = 0;
+                    for (int j = 0; j < freq; j++) {
+                        position += readVInt(in);
+                        positions.add(position);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes the input stream of the run.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * A cursor that merges posting lists of several runs, optionally
+     * renumbering terms and leaving some of them out.
+     *
+     * @author Mario Bobic
+     */
+    private class MergeCursor implements PostingsSource.TermCursor {
+
+        /** Readers of runs positioned at a term, ordered by the term and run. */
+        private final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                (a, b) -> a.term != b.term ? Integer.compare(a.term, b.term) : Integer.compare(a.index, b.index));
+        /** All readers of runs. */
+        private final List<RunReader> readers = new ArrayList<>();
+        /** New keys of terms, or <tt>null</tt>. */
+        private final int[] termMap;
+        /** Merged posting list of the current term. */
+        private final IntList postings = new IntList();
+        /** Merged positions of the current term, or <tt>null</tt>. */
+        private final IntList positions = positional ? new IntList() : null;
+        /** Key of the current term. */
+        private int term = -1;
+
+        /**
+         * Constructs an instance of {@code MergeCursor} of the specified runs.
+         *
+         * @param runs paths to runs, in the order they were written
+         * @param termMap new keys of terms, or <tt>null</tt>
+         * @throws IOException if an I/O error occurs
+         */
+        public MergeCursor(List<Path> runs, int[] termMap) throws IOException {
+            this.termMap = termMap;
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(runs.get(i), i);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                while (!queue.isEmpty()) {
+                    int next = queue.peek().term;
+                    postings.clear();
+                    if (positions != null) {
+                        positions.clear();
+                    }
+                    while (!queue.isEmpty() && queue.peek().term == next) {
+                        RunReader reader = queue.poll();
+                        reader.read(postings, positions);
+                        if (reader.advance()) {
+                            queue.add(reader);
+                        }
+                    }
+
+                    term = termMap == null ? next : termMap[next];
+                    if (term >= 0) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int term() {
+            return term;
+        }
+
+        @Override
+        public IntList postings() {
+            return postings;
+        }
+
+        @Override
+        public IntList positions() {
+            return positions;
+        }
+
+        @Override
+        public void close() {
+            for (RunReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ignorable) {
+                    // the run is only read
+                }
+            }
+        }
+    }
+
+    /**
+     * An output stream that counts written bytes.
+     *
+     * @author Mario Bobic
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /** Number of written bytes. */
+        private long count;
+
+        /**
+         * Constructs an instance of {@code CountingOutputStream} that writes
+         * to the specified output stream.
+         *
+         * @param out an output stream
+         */
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.List;
+
+/**
+ * A source of posting lists of all terms of an {@linkplain InvertedIndex}
+ * under construction. Posting lists are read term by term, in ascending order
+ * of term keys, so that they do not have to be held in memory all at once,
+ * and may be read more than once.
+ * <p>
+ * A posting list is a sequence of <tt>(document key, term frequency)</tt>
+ * pairs, sorted by the document key, and positions of a term are given in
+ * the same order, as described by the
+ * {@linkplain InvertedIndex#InvertedIndex(int, List, List, PostingsCodec)}
+ * constructor.
+ *
+ * @author Mario Bobic
+ */
+interface PostingsSource {
+
+    /**
+     * Returns the number of terms, whose keys are in range
+     * <tt>[0, termCount)</tt>.
+     *
+     * @return the number of terms
+     */
+    int termCount();
+
+    /**
+     * Returns the number of documents containing the term with the specified
+     * key, which is the number of postings of the term.
+     *
+     * @param term key of the term
+     * @return the number of documents containing the term
+     */
+    int documentFrequency(int term);
+
+    /**
+     * Returns true if positions of terms are given.
+     *
+     * @return true if positions of terms are given
+     */
+    boolean hasPositions();
+
+    /**
+     * Returns a new cursor over posting lists of all terms, positioned before
+     * the first term.
+     *
+     * @return a new cursor over posting lists of all terms
+     * @throws java.io.UncheckedIOException if an I/O error occurs
+     */
+    TermCursor terms();
+
+    /**
+     * Returns a source of the specified lists, where the list at index
+     * <tt>i</tt> contains postings or positions of the term with key
+     * <tt>i</tt>, or is <tt>null</tt> if the term has no postings.
+     *
+     * @param postings posting lists of all terms
+     * @param positions positions of all terms, or <tt>null</tt>
+     * @return a source of the specified lists
+     */
+    static PostingsSource of(List<IntList> postings, List<IntList> positions) {
+        return new PostingsSource() {
+            @Override
+            public int termCount() {
+                return postings.size();
+            }
+
+            @Override
+            public int documentFrequency(int term) {
+                IntList list = postings.get(term);
+                return list == null ? 0 : list.size() / 2;
+            }
+
+            @Override
+            public boolean hasPositions() {
+                return positions != null;
+            }
+
+            @Override
+            public TermCursor terms() {
+                return new TermCursor() {
+                    private int term = -1;
+
+                    @Override
+                    public boolean next() {
+                        while (++term < postings.size()) {
+                            if (postings.get(term) != null) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+
+                    @Override
+                    public int term() {
+                        return term;
+                    }
+
+                    @Override
+                    public IntList postings() {
+                        return postings.get(term);
+                    }
+
+                    @Override
+                    public IntList positions() {
+                        return positions == null ? null : positions.get(term);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * A cursor over posting lists of terms, in ascending order of term keys.
+     * Lists returned by a cursor are valid only until it is moved to the next
+     * term, and must not be modified.
+     *
+     * @author Mario Bobic
+     */
+    interface TermCursor extends AutoCloseable {
+
+        /**
+         * Moves this cursor to the next term.
+         *
+         * @return true if there is a next term, false if all terms were read
+         * @throws java.io.UncheckedIOException if an I/O error occurs
+         */
+        boolean next();
+
+        /**
+         * Returns the key of the current term.
+         *
+         * @return the key of the current term
+         */
+        int term();
+
+        /**
+         * Returns the posting list of the current term.
+         *
+         * @return the posting list of the current term
+         */
+        IntList postings();
+
+        /**
+         * Returns positions of the current term, or <tt>null</tt> if
+         * positions are not given.
+         *
+         * @return positions of the current term, or <tt>null</tt>
+         */
+        IntList positions();
+
+        /**
+         * Releases resources of this cursor.
+         */
+        @Override
+        default void close() {
+        }
+    }
+
+}
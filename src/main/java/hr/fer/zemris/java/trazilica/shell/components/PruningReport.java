@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A report of terms and postings pruned from an index by
+ * {@linkplain IndexOptions index options}. Terms are pruned by their length
+ * and document frequency, after which postings of the remaining terms may be
+ * limited to those with the greatest weight.
+ *
+ * @author Mario Bobic
+ */
+public class PruningReport {
+
+    /** Number of terms before pruning. */
+    private final int termsBefore;
+    /** Number of terms pruned for being too long. */
+    private final int longTerms;
+    /** Number of terms pruned for being contained in too few documents. */
+    private final int rareTerms;
+    /** Number of terms pruned for being contained in too many documents. */
+    private final int commonTerms;
+    /** Number of postings before pruning. */
+    private final long postingsBefore;
+    /** Number of postings of pruned terms. */
+    private final long termPostings;
+    /** Number of postings after pruning. */
+    private final long postingsAfter;
+
+    /**
+     * Constructs an instance of {@code PruningReport} with the specified
+     * numbers of terms and postings.
+     *
+     * @param termsBefore number of terms before pruning
+     * @param longTerms number of terms pruned for being too long
+     * @param rareTerms number of terms pruned for being contained in too few documents
+     * @param commonTerms number of terms pruned for being contained in too many documents
+     * @param postingsBefore number of postings before pruning
+     * @param termPostings number of postings of pruned terms
+     * @param postingsAfter number of postings after pruning
+     */
+    public PruningReport(int termsBefore, int longTerms, int rareTerms, int commonTerms,
+            long postingsBefore, long termPostings, long postingsAfter) {
+        this.termsBefore = termsBefore;
+        this.longTerms = longTerms;
+        this.rareTerms = rareTerms;
+        this.commonTerms = commonTerms;
+        this.postingsBefore = postingsBefore;
+        this.termPostings = termPostings;
+        this.postingsAfter = postingsAfter;
+    }
+
+    /**
+     * Returns the number of terms before pruning.
+     *
+     * @return the number of terms before pruning
+     */
+    public int getTermsBefore() {
+        return termsBefore;
+    }
+
+    /**
+     * Returns the number of pruned terms.
+     *
+     * @return the number of pruned terms
+     */
+    public int getPrunedTerms() {
+        return longTerms + rareTerms + commonTerms;
+    }
+
+    /**
+     * Returns the number of postings before pruning.
+     *
+     * @return the number of postings before pruning
+     */
+    public long getPostingsBefore() {
+        return postingsBefore;
+    }
+
+    /**
+     * Returns the number of pruned postings, including postings of pruned
+     * terms.
+     *
+     * @return the number of pruned postings
+     */
+    public long getPrunedPostings() {
+        return postingsBefore - postingsAfter;
+    }
+
+    /**
+     * Returns lines that describe this report, for an example:
+     * <pre>
+     * Pruned 9,823 of 18,190 terms (54.0%): 9,790 too rare, 28 too common, 5 too long
+     * Pruned 21,406 of 133,275 postings (16.1%): 16,160 of pruned terms, 5,246 of low weight
+     * </pre>
+     *
+     * @return lines that describe this report
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Pruned %,d of %,d terms (%.1f%%): %,d too rare, %,d too common, %,d too long",
+                getPrunedTerms(), termsBefore, percent(getPrunedTerms(), termsBefore),
+                rareTerms, commonTerms, longTerms));
+        lines.add(String.format("Pruned %,d of %,d postings (%.1f%%): %,d of pruned terms, %,d of low weight",
+                getPrunedPostings(), postingsBefore, percent(getPrunedPostings(), postingsBefore),
+                termPostings, getPrunedPostings() - termPostings));
+        return lines;
+    }
+
+    /**
+     * Returns the percentage of the specified <tt>part</tt> in the specified
+     * <tt>whole</tt>, or <tt>0</tt> if the whole is <tt>0</tt>.
+     *
+     * @param part the part
+     * @param whole the whole
+     * @return the percentage of the part in the whole
+     */
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+
+}
@@ -17,6 +17,12 @@ public class QueryResult implements Comparable<QueryResult> {
     public final double similarity;
     /** Path to document. */
     public final Path filePath;
+    /** Key of the document. */
+    public final int fileKey;
+    /** Keys of query terms, shared by all results of the same query. */
+    public final int[] queryTerms;
+    /** Number of near duplicates of the document. */
+    public final int duplicateCount;
 
     /**
      * Constructs an instance of {@code QueryResult} with the specified
@@ -24,10 +30,29 @@ public class QueryResult implements Comparable<QueryResult> {
      *
      * @param similarity document similarity to query
      * @param filePath path to document
+     * @param fileKey key of the document
+     * @param queryTerms keys of query terms, used for highlighting
      */
-    public QueryResult(double similarity, Path filePath) {
+    public QueryResult(double similarity, Path filePath, int fileKey, int[] queryTerms) {
+        this(similarity, filePath, fileKey, queryTerms, 0);
+    }
+
+    /**
+     * Constructs an instance of {@code QueryResult} with the specified
+     * parameters.
+     *
+     * @param similarity document similarity to query
+     * @param filePath path to document
+     * @param fileKey key of the document
+     * @param queryTerms keys of query terms, used for highlighting
+     * @param duplicateCount number of near duplicates of the document
+     */
+    public QueryResult(double similarity, Path filePath, int fileKey, int[] queryTerms, int duplicateCount) {
         this.similarity = similarity;
         this.filePath = filePath;
+        this.fileKey = fileKey;
+        this.queryTerms = queryTerms;
+        this.duplicateCount = duplicateCount;
     }
 
     @Override
@@ -0,0 +1,136 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * Reduces sparse document vectors of an {@linkplain InvertedIndex} to dense
+ * vectors of a few dimensions by random projection.
+ * <p>
+ * Each term is given a random direction whose components are
+ * <tt>+1/&radic;d</tt> or <tt>-1/&radic;d</tt>, where <tt>d</tt> is the
+ * number of dimensions, and a document vector is the sum of directions of
+ * its terms, weighted by the {@linkplain ScoringModel scoring model} of the
+ * index. By the Johnson-Lindenstrauss lemma, such projection approximately
+ * preserves scalar products, so cosine similarity of projected vectors
+ * estimates cosine similarity of documents. Directions are generated from
+ * term keys whenever they are needed and are never stored.
+ *
+ * @author Mario Bobic
+ */
+public class RandomProjection {
+
+    /** Default number of dimensions of projected vectors. */
+    public static final int DEFAULT_DIMENSIONS = 128;
+
+    /** Seed of random directions. */
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+    /** Multiplier used for mixing hashes. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Disables instantiation.
+     */
+    private RandomProjection() {
+    }
+
+    /**
+     * Returns normalized projected vectors of all documents of the specified
+     * <tt>index</tt>, stored one after another in a single array, so that the
+     * vector of document <tt>doc</tt> starts at <tt>doc * dimensions</tt>.
+     * Vectors of documents without terms are zero vectors.
+     *
+     * @param index an inverted index
+     * @param dimensions number of dimensions of projected vectors
+     * @return projected vectors of all documents
+     * @throws IllegalArgumentException if <tt>dimensions</tt> is not positive
+     *         or vectors of all documents do not fit into an array
+     */
+    public static float[] project(InvertedIndex index, int dimensions) {
+        return project(index, dimensions, 0, index.documentCount());
+    }
+
+    /**
+     * Returns normalized projected vectors of documents of the specified
+     * <tt>index</tt> whose keys are in range <tt>[from, to)</tt>, stored one
+     * after another in a single array, so that the vector of document
+     * <tt>doc</tt> starts at <tt>(doc - from) * dimensions</tt>. Vectors of
+     * documents without terms are zero vectors.
+     *
+     * @param index an inverted index
+     * @param dimensions number of dimensions of projected vectors
+     * @param from the least document key, inclusive
+     * @param to the greatest document key, exclusive
+     * @return projected vectors of documents in the range
+     * @throws IllegalArgumentException if <tt>dimensions</tt> is not positive
+     *         or vectors of all documents in the range do not fit into an array
+     */
+    public static float[] project(InvertedIndex index, int dimensions, int from, int to) {
+        if (dimensions < 1) {
+            throw new IllegalArgumentException("Number of dimensions must be positive: " + dimensions);
+        }
+        long length = (long) (to - from) * dimensions;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many projected values: " + length);
+        }
+
+        float[] vectors = new float[(int) length];
+        float[] direction = new float[dimensions];
+        ScoringModel model = index.getScoringModel();
+        PostingsCursor cursor = index.newCursor();
+        for (int term = 0, n = index.termCount(); term < n; term++) {
+            direction(term, direction);
+            double idf = model.idf(index, term);
+            cursor.reset(term);
+            for (int doc = cursor.advance(from); doc < to; doc = cursor.nextDoc()) {
+                float weight = (float) (model.tf(index, doc, cursor.freq()) * idf);
+                for (int i = 0, offset = (doc - from) * dimensions; i < dimensions; i++) {
+                    vectors[offset + i] += weight * direction[i];
+                }
+            }
+        }
+
+        for (int offset = 0; offset < vectors.length; offset += dimensions) {
+            double norm = VectorUtilities.norm(vectors, offset, dimensions);
+            if (norm > 0) {
+                float scale = (float) (1 / norm);
+                for (int i = 0; i < dimensions; i++) {
+                    vectors[offset + i] *= scale;
+                }
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Fills the specified array with the random direction of the specified
+     * <tt>term</tt>, which is always the same for the same term and number
+     * of dimensions.
+     *
+     * @param term key of the term
+     * @param direction array that is filled with the direction
+     */
+    private static void direction(int term, float[] direction) {
+        float value = (float) (1 / Math.sqrt(direction.length));
+        long state = SEED + term * GOLDEN_GAMMA;
+        long bits = 0;
+        for (int i = 0; i < direction.length; i++) {
+            if ((i & 63) == 0) {
+                state += GOLDEN_GAMMA;
+                bits = mix(state);
+            }
+            direction[i] = (bits & 1) == 0 ? value : -value;
+            bits >>>= 1;
+        }
+    }
+
+    /**
+     * Mixes bits of the specified hash, using the finalizer of MurmurHash3.
+     *
+     * @param hash a hash
+     * @return the mixed hash
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB93FE1A85A2DL;
+        return hash ^ (hash >>> 33);
+    }
+
+}
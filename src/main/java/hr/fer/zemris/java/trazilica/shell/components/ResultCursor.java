@@ -0,0 +1,281 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cursor over ranked results of the last executed query, which allows
+ * results to be read page by page without scoring the documents again.
+ * <p>
+ * Results are stored compactly, as an array of document keys and an array
+ * of their similarities, ordered by descending similarity and ascending
+ * document key. {@linkplain QueryResult} objects are created only for the
+ * results that are read. At most {@linkplain #MAX_RESULTS} results are kept,
+ * which bounds the memory taken by a cursor.
+ * <p>
+ * If {@linkplain NearDuplicates near duplicates} are detected, only the best
+ * ranked document of each cluster of near duplicates is kept, and each
+ * result tells how many near duplicates its document has.
+ * <p>
+ * A cursor expires if it is not read for {@linkplain #EXPIRY_MINUTES}
+ * minutes, after which it should be discarded.
+ *
+ * @author Mario Bobic
+ */
+public class ResultCursor {
+
+    /** Maximal number of results kept by a cursor. */
+    public static final int MAX_RESULTS = 10_000;
+    /** Number of minutes without reading after which a cursor expires. */
+    public static final int EXPIRY_MINUTES = 30;
+
+    /** Number of milliseconds without reading after which a cursor expires. */
+    private static final long EXPIRY_MILLIS = EXPIRY_MINUTES * 60_000L;
+    /** Size of ranges sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /** Keys of documents, ordered by rank. */
+    private final int[] docs;
+    /** Similarities of documents, ordered by rank. */
+    private final double[] scores;
+    /** Number of documents that matched the query. */
+    private final int matchCount;
+    /** Keys of query terms, shared by all results. */
+    private final int[] queryTerms;
+    /** Table of documents in which file paths are associated with file keys. */
+    private final DocumentTable documents;
+    /** Clusters of near-duplicate documents, or <tt>null</tt>. */
+    private final NearDuplicates duplicates;
+    /** Time of the last reading, in milliseconds. */
+    private long lastAccess;
+
+    /**
+     * Constructs an instance of {@code ResultCursor} from the first
+     * <tt>count</tt> elements of the specified arrays, which are sorted by
+     * rank and truncated to {@linkplain #MAX_RESULTS} results. The arrays
+     * are modified and may be retained by the cursor.
+     *
+     * @param docs keys of matching documents
+     * @param scores similarities of matching documents
+     * @param count number of matching documents
+     * @param queryTerms keys of query terms, used for highlighting
+     * @param documents table of documents in which file paths are associated with file keys
+     */
+    public ResultCursor(int[] docs, double[] scores, int count, int[] queryTerms, DocumentTable documents) {
+        this(docs, scores, count, count, queryTerms, documents, null);
+    }
+
+    /**
+     * Constructs an instance of {@code ResultCursor} as described by the
+     * {@linkplain #ResultCursor(int[], double[], int, int[], DocumentTable)}
+     * constructor, where the specified arrays contain only some of
+     * <tt>matchCount</tt> documents that matched the query. If
+     * <tt>duplicates</tt> are given, near duplicates of better ranked
+     * documents are removed and not counted as matches.
+     *
+     * @param docs keys of kept documents
+     * @param scores similarities of kept documents
+     * @param count number of kept documents
+     * @param matchCount number of documents that matched the query
+     * @param queryTerms keys of query terms, used for highlighting
+     * @param documents table of documents in which file paths are associated with file keys
+     * @param duplicates clusters of near-duplicate documents, may be <tt>null</tt>
+     */
+    public ResultCursor(int[] docs, double[] scores, int count, int matchCount,
+            int[] queryTerms, DocumentTable documents, NearDuplicates duplicates) {
+        sort(docs, scores, 0, count - 1);
+        if (duplicates != null) {
+            int collapsed = collapse(docs, scores, count, duplicates);
+            count -= collapsed;
+            matchCount -= collapsed;
+        }
+
+        int size = Math.min(count, MAX_RESULTS);
+        this.docs = docs.length == size ? docs : Arrays.copyOf(docs, size);
+        this.scores = scores.length == size ? scores : Arrays.copyOf(scores, size);
+        this.matchCount = matchCount;
+        this.queryTerms = queryTerms;
+        this.documents = documents;
+        this.duplicates = duplicates;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of results kept by this cursor.
+     *
+     * @return the number of results kept by this cursor
+     */
+    public int size() {
+        return docs.length;
+    }
+
+    /**
+     * Returns the number of documents that matched the query, which is
+     * greater than the {@linkplain #size() number of results} if some of
+     * them were not kept.
+     *
+     * @return the number of documents that matched the query
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Returns the result with the specified zero-based <tt>rank</tt>.
+     *
+     * @param rank rank of the result
+     * @return the result with the specified rank
+     * @throws IndexOutOfBoundsException if there is no result with the rank
+     */
+    public QueryResult get(int rank) {
+        lastAccess = System.currentTimeMillis();
+        int doc = docs[rank];
+        int duplicateCount = duplicates == null ? 0 : duplicates.duplicateCount(doc);
+        return new QueryResult(scores[rank], documents.path(doc), doc, queryTerms, duplicateCount);
+    }
+
+    /**
+     * Returns at most <tt>count</tt> results, starting with the result with
+     * the specified zero-based rank <tt>from</tt>.
+     *
+     * @param from rank of the first result
+     * @param count maximal number of results
+     * @return a list of results in the range
+     */
+    public List<QueryResult> page(int from, int count) {
+        List<QueryResult> page = new ArrayList<>();
+        for (int rank = from, end = (int) Math.min((long) from + count, size()); rank < end; rank++) {
+            page.add(get(rank));
+        }
+        return page;
+    }
+
+    /**
+     * Returns true if this cursor has not been read for
+     * {@linkplain #EXPIRY_MINUTES} minutes.
+     *
+     * @return true if this cursor has expired
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() - lastAccess > EXPIRY_MILLIS;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by this cursor.
+     *
+     * @return the estimated number of heap bytes taken by this cursor
+     */
+    public long heapBytes() {
+        return MemoryEstimator.array(docs.length, Integer.BYTES)
+                + MemoryEstimator.array(scores.length, Double.BYTES)
+                + MemoryEstimator.array(queryTerms.length, Integer.BYTES);
+    }
+
+    /**
+     * Removes documents whose cluster of near duplicates already has a
+     * better ranked document from the first <tt>count</tt> elements of the
+     * specified parallel arrays, which are sorted by rank, and moves the
+     * remaining documents to the front.
+     *
+     * @param docs keys of documents, sorted by rank
+     * @param scores similarities of documents, sorted by rank
+     * @param count number of documents
+     * @param duplicates clusters of near-duplicate documents
+     * @return the number of removed documents
+     */
+    private static int collapse(int[] docs, double[] scores, int count, NearDuplicates duplicates) {
+        Set<Integer> seen = new HashSet<>();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int doc = docs[i];
+            if (duplicates.duplicateCount(doc) > 0 && !seen.add(duplicates.representativeOf(doc))) {
+                continue;
+            }
+            docs[kept] = doc;
+            scores[kept] = scores[i];
+            kept++;
+        }
+        return count - kept;
+    }
+
+    /**
+     * Sorts the specified parallel arrays in the range <tt>[lo, hi]</tt> by
+     * descending similarity and ascending document key, using quicksort.
+     *
+     * @param docs keys of documents
+     * @param scores similarities of documents
+     * @param lo index of the first element, inclusive
+     * @param hi index of the last element, inclusive
+     */
+    private static void sort(int[] docs, double[] scores, int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            int mid = (lo + hi) >>> 1;
+            double pivotScore = scores[mid];
+            int pivotDoc = docs[mid];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (before(scores[i], docs[i], pivotScore, pivotDoc)) {
+                    i++;
+                }
+                while (before(pivotScore, pivotDoc, scores[j], docs[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(docs, scores, i++, j--);
+                }
+            }
+
+            // Recurses into the smaller part, so the stack depth is logarithmic
+            if (j - lo < hi - i) {
+                sort(docs, scores, lo, j);
+                lo = i;
+            } else {
+                sort(docs, scores, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && before(scores[j], docs[j], scores[j - 1], docs[j - 1]); j--) {
+                swap(docs, scores, j, j - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the first result is ranked before the second result.
+     *
+     * @param score1 similarity of the first result
+     * @param doc1 document key of the first result
+     * @param score2 similarity of the second result
+     * @param doc2 document key of the second result
+     * @return true if the first result is ranked before the second result
+     */
+    private static boolean before(double score1, int doc1, double score2, int doc2) {
+        return score1 > score2 || (score1 == score2 && doc1 < doc2);
+    }
+
+    /**
+     * Swaps elements at indexes <tt>i</tt> and <tt>j</tt> of the specified
+     * parallel arrays.
+     *
+     * @param docs keys of documents
+     * @param scores similarities of documents
+     * @param i index of the first element
+     * @param j index of the second element
+     */
+    private static void swap(int[] docs, double[] scores, int i, int j) {
+        int doc = docs[i];
+        docs[i] = docs[j];
+        docs[j] = doc;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+}
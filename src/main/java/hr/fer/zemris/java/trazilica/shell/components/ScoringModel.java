@@ -0,0 +1,96 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * A model by which documents of an {@linkplain InvertedIndex} are scored
+ * against a query. The score of a document is calculated as
+ * <pre>
+ * sum(queryWeight(t) * idf(t) * tf(d, t)) / (queryNorm * documentNorm(d))
+ * </pre>
+ * where the sum goes over query terms contained in the document.
+ * <p>
+ * The weight of a term in a document, <tt>idf(t) * tf(d, t) /
+ * documentNorm(d)</tt>, does not depend on the query, so it can be
+ * precomputed for every posting at index time, as an
+ * {@linkplain PostingsCursor#impact() impact}. Scoring then takes a single
+ * multiplication and addition per posting.
+ *
+ * @author Mario Bobic
+ */
+public interface ScoringModel {
+
+    /**
+     * Returns the IDF component of the term with the specified key.
+     *
+     * @param index an index
+     * @param term key of the term
+     * @return the IDF component of the term
+     */
+    double idf(InvertedIndex index, int term);
+
+    /**
+     * Returns the TF component of a term that occurs <tt>freq</tt> times in
+     * the document with the specified key.
+     *
+     * @param index an index
+     * @param doc key of the document
+     * @param freq frequency of the term in the document
+     * @return the TF component of the term in the document
+     */
+    double tf(InvertedIndex index, int doc, int freq);
+
+    /**
+     * Returns the norm by which scores of the document with the specified key
+     * are divided.
+     *
+     * @param index an index
+     * @param doc key of the document
+     * @return the norm of the document
+     */
+    double documentNorm(InvertedIndex index, int doc);
+
+    /**
+     * Returns the weight of a query term with the specified IDF component
+     * that occurs <tt>freq</tt> times in the query.
+     *
+     * @param idf IDF component of the term
+     * @param freq frequency of the term in the query
+     * @return the weight of the term in the query
+     */
+    double queryWeight(double idf, int freq);
+
+    /**
+     * Returns the norm by which all scores of a query with the specified
+     * term <tt>weights</tt> are divided.
+     *
+     * @param weights weights of query terms
+     * @return the norm of the query
+     */
+    double queryNorm(double[] weights);
+
+    /**
+     * Returns the name of this scoring model.
+     *
+     * @return the name of this scoring model
+     */
+    String getName();
+
+    /**
+     * Returns a scoring model with the specified <tt>name</tt>, ignoring case.
+     * Known models are <tt>tfidf</tt> and <tt>bm25</tt>.
+     *
+     * @param name name of the scoring model
+     * @return a scoring model with the specified name
+     * @throws IllegalArgumentException if there is no scoring model with the name
+     */
+    static ScoringModel forName(String name) {
+        switch (name.toLowerCase()) {
+        case TfIdfModel.NAME:
+            return new TfIdfModel();
+        case BM25Model.NAME:
+            return new BM25Model();
+        default:
+            throw new IllegalArgumentException("Unknown scoring model: " + name);
+        }
+    }
+
+}
@@ -19,6 +19,13 @@ import java.util.regex.Pattern;
  */
 public class ShellUtil {
 
+    /** Regular expression of an argument in quotation marks. */
+    private static final String QUOTED_ARGUMENT = "\"([^\"]*)\"";
+    /** Pattern of an argument, either in quotation marks or not. */
+    private static final Pattern ARGUMENT = Pattern.compile(QUOTED_ARGUMENT + "|(\\S+)");
+    /** Pattern of a command separator or an argument which may contain it. */
+    private static final Pattern SEPARATOR = Pattern.compile(QUOTED_ARGUMENT + "|;");
+
     /**
      * Disables instantiation.
      */
@@ -58,8 +65,7 @@ public class ShellUtil {
     public static String[] extractArguments(String s) {
         List<String> list = new ArrayList<>();
 
-        String regex = "\"([^\"]*)\"|(\\S+)";
-        Matcher m = Pattern.compile(regex).matcher(s);
+        Matcher m = ARGUMENT.matcher(s);
         while (m.find()) {
             if (m.group(1) != null) {
                 list.add(m.group(1));
@@ -71,6 +77,31 @@ public class ShellUtil {
         return list.toArray(new String[list.size()]);
     }
 
+    /**
+     * Splits the specified <tt>script</tt> into commands separated by
+     * semicolons. Semicolons inside arguments in quotation marks, as
+     * recognized by {@linkplain #extractArguments(String)}, do not separate
+     * commands, so <tt>query "a;b"; results</tt> is split into two commands.
+     *
+     * @param script commands separated by semicolons
+     * @return a list of commands, possibly empty strings
+     */
+    public static List<String> splitCommands(String script) {
+        List<String> list = new ArrayList<>();
+
+        int start = 0;
+        Matcher m = SEPARATOR.matcher(script);
+        while (m.find()) {
+            if (m.group(1) == null) {
+                list.add(script.substring(start, m.start()));
+                start = m.end();
+            }
+        }
+        list.add(script.substring(start));
+
+        return list;
+    }
+
     /**
      * Loads a textual resource file with the specified <tt>name</tt> using the
      * {@linkplain ClassLoader#getResource(String)} method. The <tt>URL</tt>
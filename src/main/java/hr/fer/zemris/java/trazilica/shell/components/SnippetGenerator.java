@@ -0,0 +1,301 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates short snippets of documents around the words of a query, with
+ * query words highlighted. A snippet is a window of
+ * {@value #WINDOW} consecutive words that contains the most distinct query
+ * words, and among such windows the most occurrences of them.
+ * <p>
+ * Documents are never read as a whole. If the index stores positions, the
+ * best window is found from the positions of query terms and the document is
+ * read from the {@linkplain TokenCheckpoints checkpoint} that precedes the
+ * window. Otherwise the best window is searched for at the beginning of the
+ * document. In both cases at most {@value #READ_LIMIT} bytes are read,
+ * although entries of archives are decompressed up to the read bytes.
+ *
+ * @author Mario Bobic
+ */
+public class SnippetGenerator {
+
+    /** Number of words in a snippet. */
+    public static final int WINDOW = 24;
+    /** Maximal number of bytes read from a document. */
+    public static final int READ_LIMIT = 16 * 1024;
+
+    /** Marks written around highlighted words. */
+    private static final String HIGHLIGHT = "**";
+    /** Marks written where a snippet is cut from the rest of the document. */
+    private static final String ELLIPSIS = "...";
+
+    /** Data loader whose documents are read. */
+    private final DataLoader loader;
+
+    /**
+     * Constructs an instance of {@code SnippetGenerator} that generates
+     * snippets of documents of the specified data <tt>loader</tt>.
+     *
+     * @param loader data loader whose documents are read
+     */
+    public SnippetGenerator(DataLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns a snippet of the document of the specified query
+     * <tt>result</tt>, with words of the query highlighted. An empty string
+     * is returned if the document contains no words.
+     *
+     * @param result a query result
+     * @return a snippet of the document of the result
+     * @throws IOException if an I/O error occurs while reading the document
+     */
+    public String snippet(QueryResult result) throws IOException {
+        int doc = result.fileKey;
+        int[] terms = result.queryTerms;
+
+        List<String> vocabulary = loader.getVocabularyList();
+        Map<String, Integer> queryWords = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            queryWords.put(vocabulary.get(terms[i]), i);
+        }
+
+        long offset = 0;
+        TokenCheckpoints checkpoints = loader.getCheckpoints();
+        if (checkpoints != null && checkpoints.count(doc) > 0) {
+            int anchor = bestPosition(doc, terms);
+            offset = checkpoints.offset(doc, checkpoints.floor(doc, Math.max(0, anchor - WINDOW)));
+        }
+
+        String text;
+        boolean truncated;
+        if (ArchiveReader.archiveOf(result.filePath) != null) {
+            try (InputStream in = ArchiveReader.open(result.filePath)) {
+                for (long remaining = offset; remaining > 0; ) {
+                    long skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        if (in.read() < 0) {
+                            break;
+                        }
+                        skipped = 1;
+                    }
+                    remaining -= skipped;
+                }
+                byte[] bytes = new byte[READ_LIMIT + 1];
+                int length = 0;
+                for (int n; length < bytes.length && (n = in.read(bytes, length, bytes.length - length)) > 0; ) {
+                    length += n;
+                }
+                truncated = length > READ_LIMIT;
+                text = new String(bytes, 0, Math.min(length, READ_LIMIT), StandardCharsets.UTF_8);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(result.filePath, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_LIMIT);
+                channel.position(offset);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // reads until the buffer is full or the end is reached
+                }
+                text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+                truncated = offset + buffer.position() < channel.size();
+            }
+        }
+
+        // Splits the text into words, the last one may be cut off
+        IntList starts = new IntList();
+        IntList ends = new IntList();
+        IntList hits = new IntList();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (Character.isLetter(text.charAt(i))) {
+                int start = i;
+                while (i < length && Character.isLetter(text.charAt(i))) {
+                    i++;
+                }
+                if (i == length && truncated) {
+                    break;
+                }
+                Integer hit = queryWords.get(text.substring(start, i).toLowerCase());
+                starts.add(start);
+                ends.add(i);
+                hits.add(hit == null ? -1 : hit);
+            }
+        }
+        int count = starts.size();
+        if (count == 0) {
+            return "";
+        }
+
+        int from = bestWindow(hits, terms.length);
+        int to = Math.min(from + WINDOW, count);
+
+        StringBuilder sb = new StringBuilder();
+        if (offset > 0 || from > 0) {
+            sb.append(ELLIPSIS).append(' ');
+        }
+        int last = starts.get(from);
+        for (int i = from; i < to; i++) {
+            appendSpace(sb, text, last, starts.get(i));
+            String word = text.substring(starts.get(i), ends.get(i));
+            if (hits.get(i) >= 0) {
+                sb.append(HIGHLIGHT).append(word).append(HIGHLIGHT);
+            } else {
+                sb.append(word);
+            }
+            last = ends.get(i);
+        }
+        if (to < count || truncated) {
+            appendSpace(sb, text, last, to < count ? starts.get(to) : length);
+            sb.append(ELLIPSIS);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the position of the first query word in the best window of the
+     * specified document, found from positions stored by the index.
+     *
+     * @param doc key of the document
+     * @param terms keys of query terms
+     * @return the position of the first query word in the best window
+     */
+    private int bestPosition(int doc, int[] terms) {
+        InvertedIndex index = loader.acquireIndex();
+        long[] occurrences;
+        int n = 0;
+        try {
+            PostingsCursor[] cursors = new PostingsCursor[terms.length];
+            int total = 0;
+            for (int i = 0; i < terms.length; i++) {
+                PostingsCursor cursor = index.newCursor().reset(terms[i]);
+                if (cursor.advance(doc) == doc) {
+                    cursors[i] = cursor;
+                    total += cursor.freq();
+                }
+            }
+
+            // Occurrences are sorted by position, with the term in low bits
+            occurrences = new long[total];
+            for (int i = 0; i < terms.length; i++) {
+                if (cursors[i] != null) {
+                    for (int f = cursors[i].freq(); f > 0; f--) {
+                        occurrences[n++] = (long) cursors[i].nextPosition() << 32 | i;
+                    }
+                }
+            }
+        } finally {
+            loader.releaseIndex(index);
+        }
+        Arrays.sort(occurrences);
+
+        int[] counts = new int[terms.length];
+        int distinct = 0;
+        long bestScore = -1;
+        int best = 0;
+        for (int left = 0, right = 0; right < n; right++) {
+            if (counts[(int) occurrences[right]]++ == 0) {
+                distinct++;
+            }
+            while ((occurrences[right] >>> 32) - (occurrences[left] >>> 32) >= WINDOW) {
+                if (--counts[(int) occurrences[left++]] == 0) {
+                    distinct--;
+                }
+            }
+            long score = (long) distinct * (WINDOW + 1) + (right - left + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = (int) (occurrences[left] >>> 32);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the index of the first word of the best window of
+     * {@value #WINDOW} words, where <tt>hits</tt> contains the index of the
+     * query term of each word, or <tt>-1</tt> if the word is not a query
+     * word. The window is shifted so that the query words it contains are in
+     * its middle.
+     *
+     * @param hits index of the query term of each word, or <tt>-1</tt>
+     * @param termCount number of query terms
+     * @return the index of the first word of the best window
+     */
+    private static int bestWindow(IntList hits, int termCount) {
+        int count = hits.size();
+        int[] counts = new int[termCount];
+        int distinct = 0;
+        int occurrences = 0;
+        long bestScore = -1;
+        int best = 0;
+        for (int i = 0; i < count; i++) {
+            int hit = hits.get(i);
+            if (hit >= 0) {
+                occurrences++;
+                if (counts[hit]++ == 0) {
+                    distinct++;
+                }
+            }
+            if (i >= WINDOW) {
+                int removed = hits.get(i - WINDOW);
+                if (removed >= 0) {
+                    occurrences--;
+                    if (--counts[removed] == 0) {
+                        distinct--;
+                    }
+                }
+            }
+            long score = (long) distinct * (WINDOW + 1) + occurrences;
+            if (score > bestScore) {
+                bestScore = score;
+                best = Math.max(0, i - WINDOW + 1);
+            }
+        }
+
+        int end = Math.min(best + WINDOW, count);
+        int first = best;
+        while (first < end - 1 && hits.get(first) < 0) {
+            first++;
+        }
+        int last = end - 1;
+        while (last > first && hits.get(last) < 0) {
+            last--;
+        }
+        int from = first - (WINDOW - (last - first + 1)) / 2;
+        return Math.max(0, Math.min(from, count - WINDOW));
+    }
+
+    /**
+     * Appends the text between two words to the specified string builder,
+     * replacing each run of whitespace and control characters with a single
+     * space.
+     *
+     * @param sb string builder
+     * @param text the text
+     * @param from index of the first character between the words
+     * @param to index after the last character between the words
+     */
+    private static void appendSpace(StringBuilder sb, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+}
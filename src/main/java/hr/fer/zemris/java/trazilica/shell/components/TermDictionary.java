@@ -0,0 +1,500 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sorted dictionary of vocabulary words, used for expanding prefix and
+ * wildcard patterns into words of the vocabulary without scanning the whole
+ * vocabulary.
+ * <p>
+ * Words are kept in an array sorted in lexicographical order, together with
+ * their term keys. Words that start with a prefix form a contiguous range of
+ * the array, which is found by binary search. Other wildcard patterns are
+ * answered using a character k-gram index, which maps every sequence of
+ * {@linkplain #KGRAM_LENGTH} characters of a word, where the word is padded by
+ * {@linkplain #BOUNDARY} characters, to the ordinals of words containing it.
+ * Candidate words of a pattern are obtained by intersecting lists of k-grams
+ * of the pattern and are then verified against the pattern. The k-gram index
+ * is built when it is first needed.
+ * <p>
+ * Patterns may contain the <tt>*</tt> wildcard, which matches any sequence of
+ * characters, and the <tt>?</tt> wildcard, which matches a single character.
+ * <p>
+ * Words within an edit distance of a given word are found by walking the
+ * sorted words with a Levenshtein automaton, which is simulated by rows of
+ * the edit distance matrix. Transposition of two adjacent characters counts
+ * as a single edit, since it is a common typing error. Words that share a prefix share its rows, and as
+ * soon as no word starting with a prefix can be close enough, all words with
+ * that prefix are skipped by binary search, so only a small part of the
+ * dictionary is ever visited.
+ *
+ * @author Mario Bobic
+ */
+public class TermDictionary {
+
+    /** Wildcard that matches any sequence of characters. */
+    public static final char ANY_STRING = '*';
+    /** Wildcard that matches a single character. */
+    public static final char ANY_CHAR = '?';
+
+    /** Length of indexed character sequences. */
+    public static final int KGRAM_LENGTH = 2;
+    /** Character that marks the start and the end of a word in k-grams. */
+    public static final char BOUNDARY = '$';
+
+    /** Words in lexicographical order. */
+    private final String[] terms;
+    /** Term keys of words, in the same order. */
+    private final int[] termKeys;
+    /** Length of the longest word. */
+    private final int maxLength;
+
+    /** Map of k-grams to ascending ordinals of words, built lazily. */
+    private Map<String, int[]> kgrams;
+
+    /**
+     * Constructs an instance of {@code TermDictionary} of the specified
+     * <tt>vocabulary</tt>, where the term key of a word is its index in the
+     * list.
+     *
+     * @param vocabulary list of vocabulary words ordered by term keys
+     */
+    public TermDictionary(List<String> vocabulary) {
+        int n = vocabulary.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> vocabulary.get(a).compareTo(vocabulary.get(b)));
+
+        terms = new String[n];
+        termKeys = new int[n];
+        int maxLength = 0;
+        for (int i = 0; i < n; i++) {
+            terms[i] = vocabulary.get(order[i]);
+            termKeys[i] = order[i];
+            maxLength = Math.max(maxLength, terms[i].length());
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the number of words in this dictionary.
+     *
+     * @return the number of words in this dictionary
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * Returns the word with the specified ordinal, which is its index in
+     * lexicographical order.
+     *
+     * @param ordinal ordinal of the word
+     * @return the word with the specified ordinal
+     */
+    public String term(int ordinal) {
+        return terms[ordinal];
+    }
+
+    /**
+     * Returns the term key of the word with the specified ordinal.
+     *
+     * @param ordinal ordinal of the word
+     * @return the term key of the word
+     */
+    public int termKey(int ordinal) {
+        return termKeys[ordinal];
+    }
+
+    /**
+     * Returns true if the specified word contains a wildcard.
+     *
+     * @param word a word
+     * @return true if the word contains a wildcard
+     */
+    public static boolean isPattern(String word) {
+        return word.indexOf(ANY_STRING) >= 0 || word.indexOf(ANY_CHAR) >= 0;
+    }
+
+    /**
+     * Returns the ordinal of the first word that is greater than or equal to
+     * the specified <tt>word</tt>, or {@linkplain #size()} if there is none.
+     *
+     * @param word a word
+     * @return the ordinal of the first word not less than <tt>word</tt>
+     */
+    public int ceiling(String word) {
+        int low = 0;
+        int high = terms.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the ordinal after the last word that starts with the specified
+     * <tt>prefix</tt>, searching from the specified ordinal of the first such
+     * word.
+     *
+     * @param prefix a prefix
+     * @param from ordinal of the first word that starts with the prefix
+     * @return the ordinal after the last word that starts with the prefix
+     */
+    private int prefixEnd(String prefix, int from) {
+        int low = from;
+        int high = terms.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns ordinals of all words that match the specified wildcard
+     * <tt>pattern</tt>, in ascending order.
+     * <p>
+     * A pattern whose only wildcard is a trailing <tt>*</tt> is answered by a
+     * range of the sorted words. Otherwise, candidates are taken either from
+     * the range of the literal prefix of the pattern or from the k-gram index,
+     * whichever yields fewer of them, and are verified against the pattern.
+     *
+     * @param pattern a wildcard pattern
+     * @return ordinals of matching words
+     * @throws IllegalArgumentException if the pattern has no literal prefix
+     *         and no k-gram, so matching it would require scanning all words
+     */
+    public IntList expand(String pattern) {
+        IntList matches = new IntList();
+
+        int wildcard = firstWildcard(pattern);
+        String prefix = pattern.substring(0, wildcard);
+        int from = ceiling(prefix);
+        int to = prefixEnd(prefix, from);
+
+        if (wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == ANY_STRING) {
+            for (int i = from; i < to; i++) {
+                matches.add(i);
+            }
+            return matches;
+        }
+
+        int[] candidates = kgramCandidates(pattern);
+        if (candidates == null && prefix.isEmpty()) {
+            throw new IllegalArgumentException("Pattern " + pattern + " must start with a letter or contain "
+                    + KGRAM_LENGTH + " consecutive letters.");
+        }
+
+        if (candidates == null || (!prefix.isEmpty() && to - from < candidates.length)) {
+            for (int i = from; i < to; i++) {
+                if (matches(pattern, terms[i])) {
+                    matches.add(i);
+                }
+            }
+        } else {
+            for (int i : candidates) {
+                if (matches(pattern, terms[i])) {
+                    matches.add(i);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns ordinals of all words whose edit distance from the specified
+     * <tt>word</tt> is at most <tt>maxEdits</tt>, in ascending order. The
+     * distance is the Levenshtein distance extended with transpositions of
+     * adjacent characters, also known as the optimal string alignment
+     * distance. If <tt>distances</tt> are not <tt>null</tt>, the distance of
+     * each returned word is added to them.
+     *
+     * @param word a word
+     * @param maxEdits maximal number of edits
+     * @param distances list where distances of words are added to, may be <tt>null</tt>
+     * @return ordinals of words within the edit distance
+     */
+    public IntList fuzzy(String word, int maxEdits, IntList distances) {
+        IntList matches = new IntList();
+        int m = word.length();
+
+        // rows[p] holds distances between the first p characters of the
+        // current word and every prefix of the searched word; only cells
+        // within maxEdits of the diagonal can be small enough, so others are
+        // not computed and their neighbours hold maxEdits + 1
+        int[][] rows = new int[Math.min(maxLength, m + maxEdits + 1) + 1][m + 1];
+        for (int j = 0; j <= m; j++) {
+            rows[0][j] = j;
+        }
+
+        String previous = "";
+        int validDepth = 0;
+        int i = 0;
+        walk:
+        while (i < terms.length) {
+            String term = terms[i];
+            int depth = Math.min(validDepth, commonPrefixLength(previous, term));
+            previous = term;
+
+            for (int p = depth; p < term.length(); p++) {
+                int[] row = rows[p];
+                int[] next = rows[p + 1];
+                char c = term.charAt(p);
+
+                int low = Math.max(1, p + 1 - maxEdits);
+                int high = Math.min(m, p + 1 + maxEdits);
+                next[0] = p + 1;
+                if (low > 1) {
+                    next[low - 1] = maxEdits + 1;
+                }
+                if (high < m) {
+                    next[high + 1] = maxEdits + 1;
+                }
+
+                int min = next[0];
+                for (int j = low; j <= high; j++) {
+                    int cost = word.charAt(j - 1) == c ? 0 : 1;
+                    int d = Math.min(Math.min(next[j - 1] + 1, row[j] + 1), row[j - 1] + cost);
+                    if (p > 0 && j > 1 && c == word.charAt(j - 2) && term.charAt(p - 1) == word.charAt(j - 1)) {
+                        d = Math.min(d, rows[p - 1][j - 2] + 1);
+                    }
+                    next[j] = d;
+                    min = Math.min(min, d);
+                }
+                validDepth = p + 1;
+
+                if (min > maxEdits) {
+                    // no word starting with this prefix can be close enough
+                    i = skipPrefix(term, p + 1, i);
+                    continue walk;
+                }
+            }
+
+            int distance = term.length() + maxEdits >= m ? rows[term.length()][m] : maxEdits + 1;
+            if (distance <= maxEdits) {
+                matches.add(i);
+                if (distances != null) {
+                    distances.add(distance);
+                }
+            }
+            i++;
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the ordinal of the first word after the specified ordinal that
+     * does not start with the first <tt>length</tt> characters of the
+     * specified <tt>term</tt>. Skipped ranges are usually short, so the end of
+     * the range is found by galloping from the specified ordinal.
+     *
+     * @param term a word whose prefix is skipped
+     * @param length length of the prefix
+     * @param from ordinal of a word that starts with the prefix
+     * @return the ordinal of the first word that does not start with the prefix
+     */
+    private int skipPrefix(String term, int length, int from) {
+        int low = from + 1;
+        int high = low;
+        for (int step = 1; high < terms.length && terms[high].regionMatches(0, term, 0, length); step <<= 1) {
+            low = high + 1;
+            high += step;
+        }
+        high = Math.min(high, terms.length - 1);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].regionMatches(0, term, 0, length)) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the length of the longest common prefix of two strings.
+     *
+     * @param a a string
+     * @param b a string
+     * @return the length of the longest common prefix
+     */
+    private static int commonPrefixLength(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns ordinals of words that contain all k-grams of the specified
+     * <tt>pattern</tt>, or <tt>null</tt> if the pattern has no k-grams.
+     *
+     * @param pattern a wildcard pattern
+     * @return ordinals of candidate words or <tt>null</tt>
+     */
+    private int[] kgramCandidates(String pattern) {
+        Map<String, int[]> kgrams = kgrams();
+        String padded = BOUNDARY + pattern + BOUNDARY;
+
+        int[] candidates = null;
+        for (int i = 0; i + KGRAM_LENGTH <= padded.length(); i++) {
+            String kgram = padded.substring(i, i + KGRAM_LENGTH);
+            if (isPattern(kgram)) {
+                continue;
+            }
+            int[] ordinals = kgrams.get(kgram);
+            if (ordinals == null) {
+                return new int[0];
+            }
+            candidates = candidates == null ? ordinals : intersect(candidates, ordinals);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the k-gram index, building it if it is not built yet.
+     *
+     * @return the k-gram index
+     */
+    private synchronized Map<String, int[]> kgrams() {
+        if (kgrams != null) {
+            return kgrams;
+        }
+
+        Map<String, IntList> lists = new HashMap<>();
+        for (int ordinal = 0; ordinal < terms.length; ordinal++) {
+            String padded = BOUNDARY + terms[ordinal] + BOUNDARY;
+            for (int i = 0; i + KGRAM_LENGTH <= padded.length(); i++) {
+                IntList list = lists.computeIfAbsent(padded.substring(i, i + KGRAM_LENGTH), k -> new IntList());
+                if (list.size() == 0 || list.get(list.size() - 1) != ordinal) {
+                    list.add(ordinal);
+                }
+            }
+        }
+
+        Map<String, int[]> index = new HashMap<>(lists.size() * 4 / 3 + 1);
+        lists.forEach((kgram, list) -> index.put(kgram, list.toArray()));
+        kgrams = index;
+        return kgrams;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by this dictionary,
+     * excluding the words themselves, which are shared with the vocabulary.
+     *
+     * @return the estimated number of heap bytes
+     */
+    public long heapBytes() {
+        long bytes = MemoryEstimator.array(terms.length, MemoryEstimator.REFERENCE)
+                + MemoryEstimator.array(termKeys.length, Integer.BYTES);
+
+        Map<String, int[]> kgrams;
+        synchronized (this) {
+            kgrams = this.kgrams;
+        }
+        if (kgrams != null) {
+            bytes += MemoryEstimator.hashMap(kgrams.size(), false);
+            for (Map.Entry<String, int[]> entry : kgrams.entrySet()) {
+                bytes += MemoryEstimator.string(entry.getKey())
+                        + MemoryEstimator.array(entry.getValue().length, Integer.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the index of the first wildcard in the specified
+     * <tt>pattern</tt>, or its length if there is none.
+     *
+     * @param pattern a wildcard pattern
+     * @return the index of the first wildcard
+     */
+    private static int firstWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == ANY_STRING || c == ANY_CHAR) {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    /**
+     * Returns true if the specified <tt>word</tt> matches the wildcard
+     * <tt>pattern</tt>. The pattern is matched greedily, backtracking only to
+     * the last <tt>*</tt> wildcard, so matching takes linear time for most
+     * patterns.
+     *
+     * @param pattern a wildcard pattern
+     * @param word a word
+     * @return true if the word matches the pattern
+     */
+    static boolean matches(String pattern, String word) {
+        int p = 0;
+        int w = 0;
+        int star = -1;
+        int starWord = 0;
+
+        while (w < word.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == ANY_CHAR || pattern.charAt(p) == word.charAt(w))) {
+                p++;
+                w++;
+            } else if (p < pattern.length() && pattern.charAt(p) == ANY_STRING) {
+                star = p++;
+                starWord = w;
+            } else if (star >= 0) {
+                p = star + 1;
+                w = ++starWord;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == ANY_STRING) {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Returns the intersection of two ascending arrays.
+     *
+     * @param a an ascending array
+     * @param b an ascending array
+     * @return ascending elements contained in both arrays
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+}
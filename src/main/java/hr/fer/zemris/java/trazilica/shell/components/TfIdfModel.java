@@ -0,0 +1,47 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * The TF-IDF scoring model, where a score is the cosine similarity of TF-IDF
+ * vectors of the query and the document. The TF component is the raw term
+ * frequency and the IDF component is
+ * <tt>log(nDocuments / nDocumentsContainingTerm)</tt>. Norms of document
+ * vectors are kept in the document table of the index.
+ *
+ * @author Mario Bobic
+ */
+public class TfIdfModel implements ScoringModel {
+
+    /** Name of this scoring model. */
+    public static final String NAME = "tfidf";
+
+    @Override
+    public double idf(InvertedIndex index, int term) {
+        return index.idf(term);
+    }
+
+    @Override
+    public double tf(InvertedIndex index, int doc, int freq) {
+        return freq;
+    }
+
+    @Override
+    public double documentNorm(InvertedIndex index, int doc) {
+        return index.documentNorm(doc);
+    }
+
+    @Override
+    public double queryWeight(double idf, int freq) {
+        return freq * idf;
+    }
+
+    @Override
+    public double queryNorm(double[] weights) {
+        return VectorUtilities.norm(weights);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+}
@@ -0,0 +1,105 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * A policy that chooses segments of an {@linkplain InvertedIndex} to be
+ * merged, by the number of their documents. Segments are grouped into size
+ * tiers on a logarithmic scale, where each tier holds segments up to
+ * <tt>mergeFactor</tt> times larger than the tier below it, and all
+ * segments of fewer than {@value #MIN_TIER_SIZE} documents are in the
+ * lowest tier.
+ * <p>
+ * When <tt>mergeFactor</tt> adjacent segments are in the same tier, they are
+ * merged into a single segment of the next tier. Only adjacent segments are
+ * merged, so that each segment keeps holding a contiguous range of document
+ * keys. Since new segments are added at the end, segments become smaller
+ * towards the end of the index, and each document is merged about once per
+ * tier, which is logarithmic in the number of documents.
+ * <p>
+ * Sizes of segments count only their live documents. A single segment is
+ * merged on its own when more than {@value #MAX_DELETED_RATIO} of its
+ * documents are deleted but not yet purged, so that postings of deleted
+ * documents are removed and statistics of the index corrected.
+ *
+ * @author Mario Bobic
+ */
+public class TieredMergePolicy {
+
+    /** Default number of segments of the same tier merged into one. */
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+    /** Number of documents below which all segments are in the lowest tier. */
+    public static final int MIN_TIER_SIZE = 1000;
+    /** Greatest ratio of deleted documents in a segment that is not purged. */
+    public static final double MAX_DELETED_RATIO = 0.25;
+
+    /** Number of segments of the same tier merged into one. */
+    private final int mergeFactor;
+
+    /**
+     * Constructs an instance of {@code TieredMergePolicy} that merges the
+     * specified number of segments of the same tier into one.
+     *
+     * @param mergeFactor number of segments of the same tier merged into one
+     * @throws IllegalArgumentException if <tt>mergeFactor</tt> is less than <tt>2</tt>
+     */
+    public TieredMergePolicy(int mergeFactor) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+        }
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * Returns the number of segments of the same tier merged into one.
+     *
+     * @return the number of segments merged into one
+     */
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    /**
+     * Returns the tier of a segment with the specified number of documents,
+     * where <tt>0</tt> is the lowest tier.
+     *
+     * @param size number of documents of a segment
+     * @return the tier of the segment
+     */
+    public int tier(int size) {
+        int tier = 0;
+        for (long limit = MIN_TIER_SIZE; size >= limit; limit *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Returns the range of segments that should be merged, given the number
+     * of live documents and of deleted documents that are not yet purged of
+     * each segment in order of the index, or <tt>null</tt> if no segments
+     * should be merged. The range is returned as an array of its first
+     * index, inclusive, and its last index, exclusive, and covers the first
+     * <tt>mergeFactor</tt> adjacent segments of the same tier. If there are
+     * none, it covers the first segment with too many deleted documents.
+     *
+     * @param sizes numbers of live documents of segments
+     * @param deletedCounts numbers of deleted documents of segments that are not purged
+     * @return the range of segments that should be merged, or <tt>null</tt>
+     */
+    public int[] findMerge(int[] sizes, int[] deletedCounts) {
+        int from = 0;
+        for (int i = 1; i < sizes.length; i++) {
+            if (tier(sizes[i]) != tier(sizes[from])) {
+                from = i;
+            } else if (i + 1 - from == mergeFactor) {
+                return new int[] {from, i + 1};
+            }
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            if (deletedCounts[i] > MAX_DELETED_RATIO * (sizes[i] + deletedCounts[i])) {
+                return new int[] {i, i + 1};
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,122 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+
+/**
+ * Sparse table of word offsets in documents, used for reading only a small
+ * part of a document around a known word position. For every document, the
+ * byte offset of every {@value #INTERVAL}-th word is stored, so a word at any
+ * position is found by seeking to the preceding checkpoint and counting at
+ * most {@value #INTERVAL} words from there.
+ * <p>
+ * Offsets of all documents are stored in a single array, ordered by document
+ * keys, and a second array holds the index of the first checkpoint of each
+ * document.
+ *
+ * @author Mario Bobic
+ */
+public class TokenCheckpoints {
+
+    /** Number of word positions between two checkpoints. */
+    public static final int INTERVAL = 64;
+
+    /** Index of the first checkpoint of each document, and the total count. */
+    private final int[] starts;
+    /** Byte offsets of checkpoints of all documents. */
+    private final int[] offsets;
+
+    /**
+     * Constructs an instance of {@code TokenCheckpoints} from the specified
+     * lists. The <tt>starts</tt> list contains the index of the first
+     * checkpoint of each document in the <tt>offsets</tt> list, followed by
+     * the size of the <tt>offsets</tt> list.
+     *
+     * @param starts indexes of the first checkpoint of each document
+     * @param offsets byte offsets of checkpoints of all documents
+     */
+    public TokenCheckpoints(IntList starts, IntList offsets) {
+        this.starts = starts.toArray();
+        this.offsets = offsets.toArray();
+    }
+
+    /**
+     * Constructs an instance of {@code TokenCheckpoints} from the specified
+     * arrays, which are not copied.
+     *
+     * @param starts indexes of the first checkpoint of each document, and the total count
+     * @param offsets byte offsets of checkpoints of all documents
+     */
+    private TokenCheckpoints(int[] starts, int[] offsets) {
+        this.starts = starts;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns a new table of word offsets of documents of this table,
+     * followed by documents given by the specified lists, as described by
+     * the {@linkplain #TokenCheckpoints(IntList, IntList)} constructor. This
+     * table is left unchanged.
+     *
+     * @param starts indexes of the first checkpoint of each added document
+     * @param offsets byte offsets of checkpoints of added documents
+     * @return a new table with the added documents
+     */
+    public TokenCheckpoints append(IntList starts, IntList offsets) {
+        int documentCount = this.starts.length - 1;
+        int[] newStarts = Arrays.copyOf(this.starts, documentCount + starts.size());
+        for (int i = 0, n = starts.size(); i < n; i++) {
+            newStarts[documentCount + i] = this.offsets.length + starts.get(i);
+        }
+        int[] newOffsets = Arrays.copyOf(this.offsets, this.offsets.length + offsets.size());
+        for (int i = 0, n = offsets.size(); i < n; i++) {
+            newOffsets[this.offsets.length + i] = offsets.get(i);
+        }
+        return new TokenCheckpoints(newStarts, newOffsets);
+    }
+
+    /**
+     * Returns the number of checkpoints of the specified document.
+     *
+     * @param doc key of the document
+     * @return the number of checkpoints of the document
+     */
+    public int count(int doc) {
+        return starts[doc + 1] - starts[doc];
+    }
+
+    /**
+     * Returns the index of the last checkpoint of the specified document that
+     * is at or before the specified word <tt>position</tt>, or <tt>-1</tt> if
+     * the document has no checkpoints. The checkpoint at index <tt>i</tt> is
+     * at word position <tt>i * {@value #INTERVAL}</tt>.
+     *
+     * @param doc key of the document
+     * @param position a word position
+     * @return index of the checkpoint at or before the position, or <tt>-1</tt>
+     */
+    public int floor(int doc, int position) {
+        return Math.min(position / INTERVAL, count(doc) - 1);
+    }
+
+    /**
+     * Returns the byte offset of the specified checkpoint of a document.
+     *
+     * @param doc key of the document
+     * @param checkpoint index of the checkpoint
+     * @return the byte offset of the checkpoint
+     */
+    public int offset(int doc, int checkpoint) {
+        return offsets[starts[doc] + checkpoint];
+    }
+
+    /**
+     * Returns the estimated number of heap bytes taken by this table.
+     *
+     * @return the estimated number of heap bytes taken by this table
+     */
+    public long heapBytes() {
+        return MemoryEstimator.array(starts.length, Integer.BYTES)
+                + MemoryEstimator.array(offsets.length, Integer.BYTES);
+    }
+
+}
@@ -0,0 +1,165 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.Arrays;
+
+/**
+ * A collector of the best scored documents of a query. At most
+ * {@linkplain #capacity} documents are kept in a binary min-heap, whose root
+ * is the worst of the kept documents, so adding a document takes a
+ * logarithmic number of steps and memory does not grow with the number of
+ * matching documents. Documents are ranked by descending score and
+ * ascending key, as by a {@linkplain ResultCursor}.
+ * <p>
+ * A collector is not thread-safe. Documents scored by several threads are
+ * collected by one collector per thread, which are {@link #addAll(TopResults)
+ * merged} at the end.
+ *
+ * @author Mario Bobic
+ */
+public class TopResults {
+
+    /** Maximal number of kept documents. */
+    private final int capacity;
+    /** Keys of kept documents, ordered as a heap. */
+    private int[] docs = new int[16];
+    /** Scores of kept documents, ordered as a heap. */
+    private double[] scores = new double[16];
+    /** Number of kept documents. */
+    private int size;
+    /** Number of added documents. */
+    private int matchCount;
+
+    /**
+     * Constructs an instance of {@code TopResults} that keeps at most
+     * {@linkplain ResultCursor#MAX_RESULTS} documents.
+     */
+    public TopResults() {
+        this(ResultCursor.MAX_RESULTS);
+    }
+
+    /**
+     * Constructs an instance of {@code TopResults} that keeps at most
+     * <tt>capacity</tt> documents.
+     *
+     * @param capacity maximal number of kept documents
+     * @throws IllegalArgumentException if <tt>capacity</tt> is not positive
+     */
+    public TopResults(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the document with the specified key and score, which is kept only
+     * if it is among the best documents added so far.
+     *
+     * @param doc key of the document
+     * @param score score of the document
+     */
+    public void add(int doc, double score) {
+        matchCount++;
+        offer(doc, score);
+    }
+
+    /**
+     * Adds all documents kept by the <tt>other</tt> collector to this
+     * collector, as well as the number of documents added to it.
+     *
+     * @param other another collector
+     */
+    public void addAll(TopResults other) {
+        matchCount += other.matchCount;
+        for (int i = 0; i < other.size; i++) {
+            offer(other.docs[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Returns the number of added documents, including those that are not
+     * kept.
+     *
+     * @return the number of added documents
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Returns a cursor over kept documents, ranked by score. This collector
+     * must not be used afterwards.
+     *
+     * @param queryTerms keys of query terms, used for highlighting
+     * @param documents table of documents in which file paths are associated with file keys
+     * @param duplicates clusters of near-duplicate documents, which are
+     *        collapsed, may be <tt>null</tt>
+     * @return a cursor over kept documents
+     */
+    public ResultCursor toCursor(int[] queryTerms, DocumentTable documents, NearDuplicates duplicates) {
+        return new ResultCursor(docs, scores, size, matchCount, queryTerms, documents, duplicates);
+    }
+
+    /**
+     * Keeps the document with the specified key and score if there is room
+     * for it or if it is better than the worst kept document, which it then
+     * replaces.
+     *
+     * @param doc key of the document
+     * @param score score of the document
+     */
+    private void offer(int doc, double score) {
+        if (size < capacity) {
+            if (size == docs.length) {
+                int length = (int) Math.min(capacity, 2L * size);
+                docs = Arrays.copyOf(docs, length);
+                scores = Arrays.copyOf(scores, length);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(doc, score, docs[parent], scores[parent])) {
+                    break;
+                }
+                docs[i] = docs[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            docs[i] = doc;
+            scores[i] = score;
+        } else if (worse(docs[0], scores[0], doc, score)) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && worse(docs[child + 1], scores[child + 1], docs[child], scores[child])) {
+                    child++;
+                }
+                if (!worse(docs[child], scores[child], doc, score)) {
+                    break;
+                }
+                docs[i] = docs[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            docs[i] = doc;
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Returns true if the first document is ranked after the second one.
+     *
+     * @param doc1 key of the first document
+     * @param score1 score of the first document
+     * @param doc2 key of the second document
+     * @param score2 score of the second document
+     * @return true if the first document is ranked after the second one
+     */
+    private static boolean worse(int doc1, double score1, int doc2, double score2) {
+        return score1 < score2 || (score1 == score2 && doc1 > doc2);
+    }
+
+}
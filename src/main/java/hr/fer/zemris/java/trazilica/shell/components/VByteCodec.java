@@ -0,0 +1,103 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A variable-byte codec. Every value is written in groups of 7 bits, starting
+ * with the least significant group, where the highest bit of each byte is set
+ * if more bytes of the same value follow. Values smaller than 128 therefore
+ * take a single byte.
+ *
+ * @author Mario Bobic
+ */
+public class VByteCodec implements PostingsCodec {
+
+    /** Name of this codec. */
+    public static final String NAME = "vbyte";
+
+    @Override
+    public int encode(int[] values, int count, ByteBuffer out, int offset) {
+        for (int i = 0; i < count; i++) {
+            offset = writeVInt(out, offset, values[i]);
+        }
+        return offset;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int offset, int[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = in.get(offset++);
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = in.get(offset++);
+                value |= (b & 0x7F) << shift;
+            }
+            values[i] = value;
+        }
+        return offset;
+    }
+
+    @Override
+    public int maxEncodedBytes(int count) {
+        return count * 5;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Writes a single variable-byte encoded <tt>value</tt> to the specified
+     * buffer at the specified <tt>offset</tt>.
+     *
+     * @param out buffer where the value is written to
+     * @param offset offset in the buffer
+     * @param value value to be written
+     * @return offset in the buffer right after the written value
+     */
+    static int writeVInt(ByteBuffer out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put(offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put(offset++, (byte) value);
+        return offset;
+    }
+
+    /**
+     * Reads a single variable-byte encoded value from the specified buffer at
+     * the specified <tt>offset</tt>. The offset after the value can be
+     * calculated using the {@linkplain #vIntLength(int)} method.
+     *
+     * @param in buffer where the value is read from
+     * @param offset offset in the buffer
+     * @return the read value
+     */
+    static int readVInt(ByteBuffer in, int offset) {
+        int b = in.get(offset++);
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get(offset++);
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes taken by the variable-byte encoded
+     * <tt>value</tt>.
+     *
+     * @param value a value
+     * @return the number of bytes taken by the encoded value
+     */
+    static int vIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+}
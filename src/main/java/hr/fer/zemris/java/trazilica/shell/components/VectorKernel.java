@@ -0,0 +1,39 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+/**
+ * Scalar products of dense vectors, computed by
+ * {@linkplain VectorUtilities} when a faster implementation than its own
+ * loops is available. Arguments are checked by the caller.
+ * <p>
+ * The implementation that uses the vector API of Java 17 and later is
+ * compiled from a separate source set, since this project is otherwise
+ * built for Java 8.
+ *
+ * @author Mario Bobic
+ */
+interface VectorKernel {
+
+    /**
+     * Calculates a scalar product of two vectors of the same length.
+     *
+     * @param vector1 first vector
+     * @param vector2 second vector
+     * @return scalar product of the two vectors
+     */
+    double scalarProduct(double[] vector1, double[] vector2);
+
+    /**
+     * Calculates a scalar product of two vectors of the specified
+     * <tt>length</tt>, which start at the specified offsets of the arrays.
+     * Products of floats are summed in double precision.
+     *
+     * @param vector1 array of the first vector
+     * @param offset1 offset of the first vector
+     * @param vector2 array of the second vector
+     * @param offset2 offset of the second vector
+     * @param length length of the vectors
+     * @return scalar product of the two vectors
+     */
+    double scalarProduct(float[] vector1, int offset1, float[] vector2, int offset2, int length);
+
+}
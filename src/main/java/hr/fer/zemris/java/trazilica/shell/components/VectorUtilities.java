@@ -5,11 +5,32 @@ import java.util.List;
 /**
  * A vector utility class. Used for defining and providing most common vector
  * utility methods used throughout this project.
+ * <p>
+ * Besides methods working with lists, there are overloads working with
+ * primitive <tt>double</tt> arrays and with <tt>float</tt> vectors packed
+ * into arrays, intended for dense vectors. These overloads sum into four
+ * independent accumulators, so that consecutive multiply-add operations do
+ * not wait for each other and the processor can execute them in parallel.
+ * As a consequence, their results may differ from a strictly sequential sum
+ * in the last few bits.
+ * <p>
+ * On Java 17 and later, when the <tt>jdk.incubator.vector</tt> module is
+ * added by the <tt>--add-modules jdk.incubator.vector</tt> option, the
+ * overloads are computed by a {@linkplain VectorKernel} that uses the vector
+ * API, which multiplies and sums as many values at once as the processor's
+ * vector registers hold. The kernel is looked up once, when this class is
+ * initialized, and the scalar loops are used if it can not be loaded.
  *
  * @author Mario Bobic
  */
 public class VectorUtilities {
 
+    /** Name of the class of the kernel that uses the vector API. */
+    private static final String VECTOR_API_KERNEL = "hr.fer.zemris.java.trazilica.shell.components.VectorApiKernel";
+
+    /** Kernel that uses the vector API, or <tt>null</tt> if it is not available. */
+    private static final VectorKernel KERNEL = loadKernel();
+
     /**
      * Disables instantiation.
      */
@@ -57,4 +78,151 @@ public class VectorUtilities {
         return Math.sqrt(sum);
     }
 
+    /**
+     * Calculates a scalar product of the two specified vectors.
+     * <p>
+     * Vectors must be of same sizes, else an
+     * {@linkplain IllegalArgumentException} is thrown.
+     *
+     * @param vector1 first vector
+     * @param vector2 second vector
+     * @return scalar product of the two specified vectors
+     * @throws IllegalArgumentException if vectors are not of same length
+     * @throws NullPointerException if either vector is <tt>null</tt>
+     */
+    public static double scalarProduct(double[] vector1, double[] vector2) {
+        if (vector1.length != vector2.length) {
+            throw new IllegalArgumentException("Vectors must be of same length!");
+        }
+        return KERNEL != null ? KERNEL.scalarProduct(vector1, vector2) : scalarLoop(vector1, vector2);
+    }
+
+    /**
+     * Calculates a scalar product of two vectors of the same length by a
+     * loop over four independent accumulators, without the vector API.
+     *
+     * @param vector1 first vector
+     * @param vector2 second vector
+     * @return scalar product of the two specified vectors
+     */
+    static double scalarLoop(double[] vector1, double[] vector2) {
+        int n = vector1.length;
+        int bound = n & ~3;
+
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += vector1[i]   * vector2[i];
+            s1 += vector1[i+1] * vector2[i+1];
+            s2 += vector1[i+2] * vector2[i+2];
+            s3 += vector1[i+3] * vector2[i+3];
+        }
+        for (; i < n; i++) {
+            s0 += vector1[i] * vector2[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Calculates the norm of the specified <tt>vector</tt>.
+     *
+     * @param vector a vector
+     * @return the norm of the specified <tt>vector</tt>
+     * @throws NullPointerException if vector is <tt>null</tt>
+     */
+    public static double norm(double[] vector) {
+        return Math.sqrt(scalarProduct(vector, vector));
+    }
+
+    /**
+     * Calculates a scalar product of two vectors of the specified
+     * <tt>length</tt>, which start at the specified offsets of the arrays,
+     * so that vectors packed into a single array are not copied. The products
+     * are summed in double precision.
+     *
+     * @param vector1 array of the first vector
+     * @param offset1 offset of the first vector
+     * @param vector2 array of the second vector
+     * @param offset2 offset of the second vector
+     * @param length length of the vectors
+     * @return scalar product of the two specified vectors
+     * @throws IndexOutOfBoundsException if either vector exceeds its array
+     * @throws NullPointerException if either array is <tt>null</tt>
+     */
+    public static double scalarProduct(float[] vector1, int offset1, float[] vector2, int offset2, int length) {
+        if (KERNEL != null) {
+            return KERNEL.scalarProduct(vector1, offset1, vector2, offset2, length);
+        }
+        return scalarLoop(vector1, offset1, vector2, offset2, length);
+    }
+
+    /**
+     * Calculates a scalar product of two vectors of the specified
+     * <tt>length</tt>, which start at the specified offsets of the arrays,
+     * by a loop over four independent accumulators, without the vector API.
+     *
+     * @param vector1 array of the first vector
+     * @param offset1 offset of the first vector
+     * @param vector2 array of the second vector
+     * @param offset2 offset of the second vector
+     * @param length length of the vectors
+     * @return scalar product of the two specified vectors
+     */
+    static double scalarLoop(float[] vector1, int offset1, float[] vector2, int offset2, int length) {
+        int bound = length & ~3;
+
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += vector1[offset1+i]   * vector2[offset2+i];
+            s1 += vector1[offset1+i+1] * vector2[offset2+i+1];
+            s2 += vector1[offset1+i+2] * vector2[offset2+i+2];
+            s3 += vector1[offset1+i+3] * vector2[offset2+i+3];
+        }
+        for (; i < length; i++) {
+            s0 += vector1[offset1+i] * vector2[offset2+i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Calculates the norm of a vector of the specified <tt>length</tt>,
+     * which starts at the specified <tt>offset</tt> of the array.
+     *
+     * @param vector array of the vector
+     * @param offset offset of the vector
+     * @param length length of the vector
+     * @return the norm of the specified vector
+     * @throws IndexOutOfBoundsException if the vector exceeds the array
+     * @throws NullPointerException if the array is <tt>null</tt>
+     */
+    public static double norm(float[] vector, int offset, int length) {
+        return Math.sqrt(scalarProduct(vector, offset, vector, offset, length));
+    }
+
+    /**
+     * Returns true if scalar products are computed by the vector API.
+     *
+     * @return true if scalar products are computed by the vector API
+     */
+    public static boolean isVectorized() {
+        return KERNEL != null;
+    }
+
+    /**
+     * Loads the kernel that uses the vector API. Its class is not found on
+     * Java 8, it can not be loaded from a class file of Java 17 by older
+     * versions, and it can not be linked if the <tt>jdk.incubator.vector</tt>
+     * module is not added, in which case <tt>null</tt> is returned.
+     *
+     * @return the kernel that uses the vector API, or <tt>null</tt>
+     */
+    private static VectorKernel loadKernel() {
+        try {
+            return (VectorKernel) Class.forName(VECTOR_API_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
 }
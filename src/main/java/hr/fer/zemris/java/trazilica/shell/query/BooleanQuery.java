@@ -0,0 +1,187 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that combines other queries, called clauses. Each clause has an
+ * {@linkplain Occur occurrence} which determines how it affects matching:
+ * <ul>
+ *   <li>all {@linkplain Occur#MUST required} clauses must match a document,
+ *   <li>if there are no required clauses, at least one
+ *   {@linkplain Occur#SHOULD optional} clause must match a document, otherwise
+ *   optional clauses only contribute to ranking, and
+ *   <li>no {@linkplain Occur#MUST_NOT prohibited} clause may match a document.
+ * </ul>
+ * A query of plain words is a boolean query of optional term queries, which
+ * matches every document that contains at least one of the words. A query of
+ * prohibited clauses only matches no documents.
+ * <p>
+ * Required clauses are intersected starting from the one with the shortest
+ * posting lists, so the cost of a restrictive query is close to the length of
+ * its rarest term's posting list.
+ *
+ * @author Mario Bobic
+ */
+public class BooleanQuery extends Query {
+
+    /** Clauses of this query. */
+    private final List<Clause> clauses;
+
+    /**
+     * Constructs an instance of {@code BooleanQuery} with the specified
+     * clauses.
+     *
+     * @param clauses clauses of this query
+     */
+    public BooleanQuery(List<Clause> clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * Returns the clauses of this query.
+     *
+     * @return the clauses of this query
+     */
+    public List<Clause> getClauses() {
+        return clauses;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        List<DocIterator> required = new ArrayList<>();
+        List<DocIterator> optional = new ArrayList<>();
+        List<DocIterator> prohibited = new ArrayList<>();
+        for (Clause clause : clauses) {
+            switch (clause.occur) {
+            case MUST:
+                required.add(clause.query.iterator(index));
+                break;
+            case SHOULD:
+                optional.add(clause.query.iterator(index));
+                break;
+            case MUST_NOT:
+                prohibited.add(clause.query.iterator(index));
+                break;
+            }
+        }
+
+        DocIterator iterator;
+        if (!required.isEmpty()) {
+            iterator = required.size() == 1 ? required.get(0) : new ConjunctionIterator(required);
+        } else if (!optional.isEmpty()) {
+            iterator = optional.size() == 1 ? optional.get(0) : new DisjunctionIterator(optional);
+        } else {
+            return DocIterator.empty();
+        }
+
+        if (!prohibited.isEmpty()) {
+            DocIterator exclusion = prohibited.size() == 1 ? prohibited.get(0) : new DisjunctionIterator(prohibited);
+            iterator = new ExclusionIterator(iterator, exclusion);
+        }
+        return iterator;
+    }
+
+    /**
+     * Collects terms of required and optional clauses. Terms of prohibited
+     * clauses never appear in matching documents, so they are not used for
+     * ranking.
+     */
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        for (Clause clause : clauses) {
+            if (clause.occur != Occur.MUST_NOT) {
+                clause.query.collectTerms(terms);
+            }
+        }
+    }
+
+    @Override
+    public boolean needsPositions() {
+        return clauses.stream().anyMatch(c -> c.occur != Occur.MUST_NOT && c.query.needsPositions());
+    }
+
+    @Override
+    public boolean isBagOfWords() {
+        return clauses.stream().allMatch(c -> c.occur == Occur.SHOULD && c.query.isBagOfWords());
+    }
+
+    @Override
+    public String toString() {
+        return clauses.stream()
+                .map(Clause::toString)
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Occurrence of a clause of a boolean query.
+     *
+     * @author Mario Bobic
+     */
+    public enum Occur {
+        /** The clause must match. */
+        MUST("+"),
+        /** The clause should match. */
+        SHOULD(""),
+        /** The clause must not match. */
+        MUST_NOT("-");
+
+        /** Prefix of the clause in the query syntax. */
+        private final String prefix;
+
+        /**
+         * Constructs an instance of {@code Occur} with the specified prefix.
+         *
+         * @param prefix prefix of the clause in the query syntax
+         */
+        private Occur(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the prefix of the clause in the query syntax.
+         *
+         * @return the prefix of the clause
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    /**
+     * A single clause of a boolean query.
+     *
+     * @author Mario Bobic
+     */
+    public static class Clause {
+
+        /** Query of the clause. */
+        public final Query query;
+        /** Occurrence of the clause. */
+        public final Occur occur;
+
+        /**
+         * Constructs an instance of {@code Clause} with the specified
+         * parameters.
+         *
+         * @param query query of the clause
+         * @param occur occurrence of the clause
+         */
+        public Clause(Query query, Occur occur) {
+            this.query = query;
+            this.occur = occur;
+        }
+
+        @Override
+        public String toString() {
+            if (query instanceof BooleanQuery) {
+                return occur.getPrefix() + "(" + query + ")";
+            }
+            return occur.getPrefix() + query;
+        }
+    }
+
+}
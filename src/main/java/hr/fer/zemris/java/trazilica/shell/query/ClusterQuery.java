@@ -0,0 +1,81 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.DocumentClusters;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that matches documents of a single cluster of
+ * {@linkplain DocumentClusters document clusters}. It has no terms, so it
+ * does not affect ranking and is used as a required clause that restricts
+ * another query to the cluster. Documents deleted from the index do not
+ * match.
+ *
+ * @author Mario Bobic
+ */
+public class ClusterQuery extends Query {
+
+    /** Clusters of documents. */
+    private final DocumentClusters clusters;
+    /** The cluster whose documents match. */
+    private final int cluster;
+
+    /**
+     * Constructs an instance of {@code ClusterQuery} that matches documents
+     * of the specified <tt>cluster</tt>.
+     *
+     * @param clusters clusters of documents
+     * @param cluster the cluster whose documents match
+     */
+    public ClusterQuery(DocumentClusters clusters, int cluster) {
+        this.clusters = clusters;
+        this.cluster = cluster;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        return new DocIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docId() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) {
+                if (doc >= target) {
+                    return doc;
+                }
+                for (int d = target, n = clusters.documentCount(); d < n; d++) {
+                    if (clusters.clusterOf(d) == cluster && !index.isDeleted(d)) {
+                        return doc = d;
+                    }
+                }
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return clusters.size(cluster);
+            }
+        };
+    }
+
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        // documents are matched by their cluster, not by terms
+    }
+
+    @Override
+    public String toString() {
+        return "cluster:" + cluster;
+    }
+
+}
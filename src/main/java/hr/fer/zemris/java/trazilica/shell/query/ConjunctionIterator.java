@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A document iterator that matches documents matched by all of its
+ * sub-iterators. Sub-iterators are ordered by increasing
+ * {@linkplain DocIterator#cost() cost}, so the cheapest one leads the
+ * intersection and the others are only {@linkplain DocIterator#advance(int)
+ * advanced} to its candidates, skipping whole blocks of their posting lists.
+ * <p>
+ * Subclasses may additionally {@linkplain #matches() verify} each document
+ * that all sub-iterators agree on, which is how phrase and proximity
+ * constraints are checked.
+ *
+ * @author Mario Bobic
+ */
+public class ConjunctionIterator extends DocIterator {
+
+    /** Sub-iterators ordered by increasing cost. */
+    protected final DocIterator[] iterators;
+
+    /** Key of the current document. */
+    private int doc = -1;
+
+    /**
+     * Constructs an instance of {@code ConjunctionIterator} over the
+     * specified sub-iterators.
+     *
+     * @param iterators sub-iterators, at least one
+     */
+    public ConjunctionIterator(List<? extends DocIterator> iterators) {
+        this.iterators = iterators.toArray(new DocIterator[iterators.size()]);
+        Arrays.sort(this.iterators, Comparator.comparingLong(DocIterator::cost));
+    }
+
+    @Override
+    public int docId() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        DocIterator lead = iterators[0];
+
+        outer:
+        for (int candidate = lead.advance(target); candidate != NO_MORE_DOCS; candidate = lead.advance(target)) {
+            for (int i = 1; i < iterators.length; i++) {
+                int other = iterators[i].advance(candidate);
+                if (other != candidate) {
+                    target = other;
+                    continue outer;
+                }
+            }
+            if (matches()) {
+                return doc = candidate;
+            }
+            target = candidate + 1;
+        }
+
+        return doc = NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+        return iterators[0].cost();
+    }
+
+    /**
+     * Returns true if the document all sub-iterators are positioned on is a
+     * match. This implementation always returns true.
+     *
+     * @return true if the current document is a match
+     */
+    protected boolean matches() {
+        return true;
+    }
+
+}
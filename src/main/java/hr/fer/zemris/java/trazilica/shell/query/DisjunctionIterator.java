@@ -0,0 +1,73 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+/**
+ * A document iterator that matches documents matched by any of its
+ * sub-iterators. The current document is the smallest current document of
+ * all sub-iterators. Queries rarely have more than a few clauses, so the
+ * smallest document is found by a linear scan instead of a priority queue.
+ *
+ * @author Mario Bobic
+ */
+public class DisjunctionIterator extends DocIterator {
+
+    /** Sub-iterators. */
+    private final DocIterator[] iterators;
+
+    /** Key of the current document. */
+    private int doc = -1;
+
+    /**
+     * Constructs an instance of {@code DisjunctionIterator} over the
+     * specified sub-iterators.
+     *
+     * @param iterators sub-iterators
+     */
+    public DisjunctionIterator(List<? extends DocIterator> iterators) {
+        this.iterators = iterators.toArray(new DocIterator[iterators.size()]);
+    }
+
+    @Override
+    public int docId() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (doc == NO_MORE_DOCS) {
+            return doc;
+        }
+        int min = NO_MORE_DOCS;
+        for (DocIterator iterator : iterators) {
+            int d = iterator.docId();
+            if (d == doc) {
+                d = iterator.nextDoc();
+            }
+            min = Math.min(min, d);
+        }
+        return doc = min;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        int min = NO_MORE_DOCS;
+        for (DocIterator iterator : iterators) {
+            min = Math.min(min, iterator.advance(target));
+        }
+        return doc = min;
+    }
+
+    @Override
+    public long cost() {
+        long cost = 0;
+        for (DocIterator iterator : iterators) {
+            cost += iterator.cost();
+        }
+        return cost;
+    }
+
+}
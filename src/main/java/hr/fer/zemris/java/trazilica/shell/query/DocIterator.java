@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import hr.fer.zemris.java.trazilica.shell.components.PostingsCursor;
+
+/**
+ * An iterator over keys of documents that match a {@linkplain Query}.
+ * Documents are visited in ascending order of their keys using the
+ * {@linkplain #nextDoc()} and {@linkplain #advance(int)} methods, which
+ * return {@linkplain #NO_MORE_DOCS} once the iterator is exhausted.
+ * <p>
+ * Document iterators are combined into trees that mirror the structure of the
+ * query, so that documents are matched one at a time without materializing
+ * sets of document keys.
+ *
+ * @author Mario Bobic
+ */
+public abstract class DocIterator {
+
+    /** Document key returned when there are no more documents. */
+    public static final int NO_MORE_DOCS = PostingsCursor.NO_MORE_DOCS;
+
+    /**
+     * Returns the key of the current document, <tt>-1</tt> if iteration has
+     * not started or {@linkplain #NO_MORE_DOCS} if it has ended.
+     *
+     * @return the key of the current document
+     */
+    public abstract int docId();
+
+    /**
+     * Advances to the next matching document and returns its key, or
+     * {@linkplain #NO_MORE_DOCS} if there are no more documents.
+     *
+     * @return key of the next document or {@linkplain #NO_MORE_DOCS}
+     */
+    public abstract int nextDoc();
+
+    /**
+     * Advances to the first matching document whose key is greater than or
+     * equal to the specified <tt>target</tt> and returns its key, or
+     * {@linkplain #NO_MORE_DOCS} if there is no such document. If the current
+     * document key is already greater than or equal to the target, the
+     * iterator is not moved.
+     *
+     * @param target key of the target document
+     * @return key of the first document beyond target or {@linkplain #NO_MORE_DOCS}
+     */
+    public abstract int advance(int target);
+
+    /**
+     * Returns an upper bound of the number of documents this iterator may
+     * visit, which is used for ordering iterators from the cheapest one.
+     *
+     * @return an upper bound of the number of matching documents
+     */
+    public abstract long cost();
+
+    /**
+     * Returns an iterator that matches no documents.
+     *
+     * @return an iterator that matches no documents
+     */
+    public static DocIterator empty() {
+        return new DocIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docId() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public int advance(int target) {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return 0;
+            }
+        };
+    }
+
+}
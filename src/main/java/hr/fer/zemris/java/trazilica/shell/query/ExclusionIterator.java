@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+/**
+ * A document iterator that matches documents matched by one iterator, but
+ * not by the other. The excluded iterator is only
+ * {@linkplain DocIterator#advance(int) advanced} to candidates of the
+ * included one, so its posting lists are mostly skipped.
+ *
+ * @author Mario Bobic
+ */
+public class ExclusionIterator extends DocIterator {
+
+    /** Iterator of included documents. */
+    private final DocIterator include;
+    /** Iterator of excluded documents. */
+    private final DocIterator exclude;
+
+    /**
+     * Constructs an instance of {@code ExclusionIterator} with the specified
+     * parameters.
+     *
+     * @param include iterator of included documents
+     * @param exclude iterator of excluded documents
+     */
+    public ExclusionIterator(DocIterator include, DocIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public int docId() {
+        return include.docId();
+    }
+
+    @Override
+    public int nextDoc() {
+        return skipExcluded(include.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return skipExcluded(include.advance(target));
+    }
+
+    @Override
+    public long cost() {
+        return include.cost();
+    }
+
+    /**
+     * Advances the included iterator until its current document is not
+     * excluded, starting with the specified document.
+     *
+     * @param doc key of the current included document
+     * @return key of the first document that is not excluded
+     */
+    private int skipExcluded(int doc) {
+        while (doc != NO_MORE_DOCS && exclude.advance(doc) == doc) {
+            doc = include.nextDoc();
+        }
+        return doc;
+    }
+
+}
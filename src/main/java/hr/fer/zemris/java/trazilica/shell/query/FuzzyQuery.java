@@ -0,0 +1,46 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.TermDictionary;
+
+/**
+ * A query that matches documents containing any vocabulary word within the
+ * specified Levenshtein distance of a word, such as <tt>widnow~1</tt>. The
+ * word is expanded into similar words by the {@linkplain TermDictionary} when
+ * the query is parsed. If there are too many similar words, the closest ones
+ * are retained, preferring words contained in more documents.
+ *
+ * @author Mario Bobic
+ */
+public class FuzzyQuery extends MultiTermQuery {
+
+    /** Maximal supported edit distance. */
+    public static final int MAX_EDITS = 2;
+
+    /** The word. */
+    private final String word;
+    /** Maximal edit distance of similar words. */
+    private final int maxEdits;
+
+    /**
+     * Constructs an instance of {@code FuzzyQuery} with the specified
+     * parameters.
+     *
+     * @param word the word
+     * @param maxEdits maximal edit distance of similar words
+     * @param expansions retained similar words
+     * @param matchCount number of all similar words
+     */
+    public FuzzyQuery(String word, int maxEdits, List<TermQuery> expansions, int matchCount) {
+        super(expansions, matchCount);
+        this.word = word;
+        this.maxEdits = maxEdits;
+    }
+
+    @Override
+    public String toString() {
+        return toString(word + "~" + maxEdits);
+    }
+
+}
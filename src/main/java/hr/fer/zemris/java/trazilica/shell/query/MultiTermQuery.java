@@ -0,0 +1,93 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that matches documents containing any of the vocabulary words a
+ * single query word is expanded into, such as words that match a wildcard
+ * pattern or words similar to a misspelled word. Every expanded word is used
+ * for ranking as if it was written in the query.
+ * <p>
+ * A query word may expand into too many words to be searched efficiently, so
+ * only some of the expanded words are retained if their number exceeds the
+ * expansion limit. Which words are retained is decided by the subclass.
+ *
+ * @author Mario Bobic
+ */
+public abstract class MultiTermQuery extends Query {
+
+    /** Retained expanded words. */
+    private final List<TermQuery> expansions;
+    /** Number of all expanded words. */
+    private final int matchCount;
+
+    /**
+     * Constructs an instance of {@code MultiTermQuery} with the specified
+     * parameters.
+     *
+     * @param expansions retained expanded words
+     * @param matchCount number of all expanded words
+     */
+    protected MultiTermQuery(List<TermQuery> expansions, int matchCount) {
+        this.expansions = expansions;
+        this.matchCount = matchCount;
+    }
+
+    /**
+     * Returns the retained expanded words.
+     *
+     * @return the retained expanded words
+     */
+    public List<TermQuery> getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Returns the number of all expanded words, which is greater than the
+     * number of {@linkplain #getExpansions() retained words} if some of the
+     * words were not retained.
+     *
+     * @return the number of all expanded words
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        if (expansions.isEmpty()) {
+            return DocIterator.empty();
+        }
+        if (expansions.size() == 1) {
+            return expansions.get(0).iterator(index);
+        }
+        List<DocIterator> iterators = new ArrayList<>();
+        for (TermQuery term : expansions) {
+            iterators.add(term.iterator(index));
+        }
+        return new DisjunctionIterator(iterators);
+    }
+
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        terms.addAll(expansions);
+    }
+
+    /**
+     * Returns the specified query word, followed by the number of retained
+     * and all expanded words if some of them were not retained.
+     *
+     * @param word the query word
+     * @return a string representation of this query
+     */
+    protected String toString(String word) {
+        if (matchCount > expansions.size()) {
+            return word + "[" + expansions.size() + " of " + matchCount + "]";
+        }
+        return word;
+    }
+
+}
@@ -0,0 +1,126 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.Arrays;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that matches documents in which two words appear within the
+ * specified distance of each other, in any order. The distance is measured in
+ * words, including stopwords, so words next to each other are at distance
+ * <tt>1</tt>.
+ *
+ * @author Mario Bobic
+ */
+public class NearQuery extends Query {
+
+    /** The first word. */
+    private final TermQuery left;
+    /** The second word. */
+    private final TermQuery right;
+    /** Maximal distance between the words. */
+    private final int distance;
+
+    /**
+     * Constructs an instance of {@code NearQuery} with the specified
+     * parameters.
+     *
+     * @param left the first word
+     * @param right the second word
+     * @param distance maximal distance between the words
+     */
+    public NearQuery(TermQuery left, TermQuery right, int distance) {
+        this.left = left;
+        this.right = right;
+        this.distance = distance;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        if (!left.exists() || !right.exists()) {
+            return DocIterator.empty();
+        }
+        return new NearIterator(left.termIterator(index), right.termIterator(index), distance);
+    }
+
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        terms.add(left);
+        terms.add(right);
+    }
+
+    @Override
+    public boolean needsPositions() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return left + " NEAR/" + distance + " " + right;
+    }
+
+    /**
+     * A conjunction of two term iterators that additionally checks if the
+     * words appear close to each other.
+     *
+     * @author Mario Bobic
+     */
+    private static class NearIterator extends ConjunctionIterator {
+
+        /** Iterator of the first word. */
+        private final TermIterator left;
+        /** Iterator of the second word. */
+        private final TermIterator right;
+        /** Maximal distance between the words. */
+        private final int distance;
+
+        /** Positions of the first word. */
+        private int[] leftPositions = new int[16];
+        /** Positions of the second word. */
+        private int[] rightPositions = new int[16];
+
+        /**
+         * Constructs an instance of {@code NearIterator} with the specified
+         * parameters.
+         *
+         * @param left iterator of the first word
+         * @param right iterator of the second word
+         * @param distance maximal distance between the words
+         */
+        public NearIterator(TermIterator left, TermIterator right, int distance) {
+            super(Arrays.asList(left, right));
+            this.left = left;
+            this.right = right;
+            this.distance = distance;
+        }
+
+        /**
+         * Merges positions of both words, checking each position against its
+         * nearest neighbours. Equal positions belong to the same occurrence of
+         * a word which is searched for twice, and are not a match.
+         */
+        @Override
+        protected boolean matches() {
+            leftPositions = left.positions(leftPositions);
+            rightPositions = right.positions(rightPositions);
+            int leftCount = left.cursor().freq();
+            int rightCount = right.cursor().freq();
+
+            for (int i = 0, j = 0; i < leftCount && j < rightCount;) {
+                int a = leftPositions[i];
+                int b = rightPositions[j];
+                if (a != b && Math.abs(a - b) <= distance) {
+                    return true;
+                }
+                if (a <= b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return false;
+        }
+    }
+
+}
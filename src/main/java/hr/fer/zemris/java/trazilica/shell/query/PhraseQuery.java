@@ -0,0 +1,132 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that matches documents containing a sequence of words. Each word of
+ * the phrase has an offset, which is its position within the phrase. Offsets
+ * count stopwords as well, so a phrase with a stopword in the middle matches
+ * any word in its place, just like the stopword was there.
+ * <p>
+ * Matching documents are found by intersecting posting lists of all words,
+ * after which positions of the words are intersected only for documents that
+ * contain all of them.
+ *
+ * @author Mario Bobic
+ */
+public class PhraseQuery extends Query {
+
+    /** Words of the phrase. */
+    private final List<TermQuery> terms;
+    /** Offsets of words within the phrase. */
+    private final int[] offsets;
+
+    /**
+     * Constructs an instance of {@code PhraseQuery} with the specified
+     * parameters.
+     *
+     * @param terms words of the phrase, at least two
+     * @param offsets ascending offsets of words within the phrase
+     */
+    public PhraseQuery(List<TermQuery> terms, int[] offsets) {
+        this.terms = terms;
+        this.offsets = offsets;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        List<TermIterator> iterators = new ArrayList<>();
+        for (TermQuery term : terms) {
+            if (!term.exists()) {
+                return DocIterator.empty();
+            }
+            iterators.add(term.termIterator(index));
+        }
+        return new PhraseIterator(iterators, offsets);
+    }
+
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        terms.addAll(this.terms);
+    }
+
+    @Override
+    public boolean needsPositions() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return terms.stream()
+                .map(TermQuery::toString)
+                .collect(Collectors.joining(" ", "\"", "\""));
+    }
+
+    /**
+     * A conjunction of term iterators that additionally checks if words
+     * appear at consecutive offsets of the phrase.
+     *
+     * @author Mario Bobic
+     */
+    private static class PhraseIterator extends ConjunctionIterator {
+
+        /** Term iterators in order of the phrase. */
+        private final TermIterator[] phrase;
+        /** Offsets of words within the phrase. */
+        private final int[] offsets;
+
+        /** Candidate start positions of the phrase. */
+        private int[] starts = new int[16];
+        /** Positions of the word being intersected. */
+        private int[] positions = new int[16];
+
+        /**
+         * Constructs an instance of {@code PhraseIterator} with the specified
+         * parameters.
+         *
+         * @param phrase term iterators in order of the phrase
+         * @param offsets offsets of words within the phrase
+         */
+        public PhraseIterator(List<TermIterator> phrase, int[] offsets) {
+            super(phrase);
+            this.phrase = phrase.toArray(new TermIterator[phrase.size()]);
+            this.offsets = offsets;
+        }
+
+        @Override
+        protected boolean matches() {
+            starts = phrase[0].positions(starts);
+            int count = phrase[0].cursor().freq();
+            for (int j = 0; j < count; j++) {
+                starts[j] -= offsets[0];
+            }
+
+            for (int i = 1; i < phrase.length && count > 0; i++) {
+                positions = phrase[i].positions(positions);
+                int freq = phrase[i].cursor().freq();
+
+                int retained = 0;
+                for (int j = 0, k = 0; j < count && k < freq;) {
+                    int start = positions[k] - offsets[i];
+                    if (starts[j] < start) {
+                        j++;
+                    } else if (starts[j] > start) {
+                        k++;
+                    } else {
+                        starts[retained++] = start;
+                        j++;
+                        k++;
+                    }
+                }
+                count = retained;
+            }
+
+            return count > 0;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A parsed search query. A query determines which documents match it, by
+ * creating a {@linkplain DocIterator document iterator} over an
+ * {@linkplain InvertedIndex inverted index}, and which terms are used for
+ * ranking the matching documents.
+ * <p>
+ * Queries are created by the {@linkplain QueryParser} and are immutable.
+ *
+ * @author Mario Bobic
+ */
+public abstract class Query {
+
+    /**
+     * Creates a new iterator over documents of the specified <tt>index</tt>
+     * that match this query.
+     *
+     * @param index an inverted index
+     * @return a new iterator over matching documents
+     */
+    public abstract DocIterator iterator(InvertedIndex index);
+
+    /**
+     * Adds all term queries used for ranking documents that match this query
+     * to the specified list, in order of their appearance in the query.
+     *
+     * @param terms list where term queries are added to
+     */
+    public abstract void collectTerms(List<TermQuery> terms);
+
+    /**
+     * Returns true if evaluating this query requires positions of terms to
+     * be stored in the index.
+     *
+     * @return true if this query requires positions
+     */
+    public boolean needsPositions() {
+        return false;
+    }
+
+    /**
+     * Returns true if this query is a plain list of words, without any
+     * operators, phrases or grouping.
+     *
+     * @return true if this query is a plain list of words
+     */
+    public boolean isBagOfWords() {
+        return false;
+    }
+
+}
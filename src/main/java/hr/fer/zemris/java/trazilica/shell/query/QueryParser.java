@@ -0,0 +1,625 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.DataLoader;
+import hr.fer.zemris.java.trazilica.shell.components.IntList;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.TermDictionary;
+import hr.fer.zemris.java.trazilica.shell.query.BooleanQuery.Clause;
+import hr.fer.zemris.java.trazilica.shell.query.BooleanQuery.Occur;
+
+/**
+ * A parser of search queries. Words are split the same way documents are, by
+ * the {@linkplain DataLoader#getWords(String)} method, and stopwords are
+ * ignored. Besides plain words, a query may contain:
+ * <ul>
+ *   <li>phrases, which are words enclosed in double quotes, such as
+ *   <tt>"operating system"</tt>,
+ *   <li>proximity operators <tt>NEAR/n</tt> between two words, such as
+ *   <tt>window NEAR/3 split</tt>, which match documents where the words are at
+ *   most <tt>n</tt> words apart,
+ *   <li>wildcard patterns, such as <tt>comput*</tt>, <tt>*tion</tt> or
+ *   <tt>colo?r</tt>, which are expanded into at most
+ *   {@linkplain #MAX_EXPANSIONS} vocabulary words contained in the most
+ *   documents, where question marks at the end of a word are punctuation and
+ *   not wildcards,
+ *   <li>fuzzy words, such as <tt>widnow~1</tt>, which are expanded into
+ *   vocabulary words within the specified Levenshtein distance, at most
+ *   {@linkplain FuzzyQuery#MAX_EDITS}, which is also the default distance of
+ *   a word followed by <tt>~</tt> only,
+ *   <li>prefixes <tt>+</tt> and <tt>-</tt>, which mark a word, a phrase or a
+ *   group as required or prohibited,
+ *   <li>operators <tt>AND</tt>, <tt>OR</tt> and <tt>NOT</tt>, written in upper
+ *   case, where <tt>NOT</tt> is the same as the <tt>-</tt> prefix, and
+ *   <li>groups enclosed in parentheses.
+ * </ul>
+ * Operators are ordered by precedence as <tt>NOT</tt>, <tt>AND</tt>,
+ * <tt>OR</tt>, and words that are not joined by an operator are optional, as
+ * if they were joined by <tt>OR</tt>. Phrases and proximity operators require
+ * the index to store positions.
+ * <p>
+ * The query is parsed by recursive descent according to the following
+ * grammar:
+ * <pre>
+ * query   := or
+ * or      := and ( [OR] and )*
+ * and     := unary ( AND unary )*
+ * unary   := ( + | - | NOT ) unary | primary
+ * primary := ( or ) | "phrase" | pattern | word~[n] | word [ NEAR/n word ]
+ * </pre>
+ *
+ * @author Mario Bobic
+ */
+public class QueryParser {
+
+    /** Keyword of the conjunction operator. */
+    private static final String AND = "AND";
+    /** Keyword of the disjunction operator. */
+    private static final String OR = "OR";
+    /** Keyword of the negation operator. */
+    private static final String NOT = "NOT";
+    /** Keyword of the proximity operator. */
+    private static final String NEAR = "NEAR";
+
+    /** Maximal number of words a wildcard pattern is expanded into. */
+    public static final int MAX_EXPANSIONS = 64;
+
+    /** Data loader whose vocabulary is used. */
+    private final DataLoader loader;
+    /** Tokens of the query. */
+    private final List<Token> tokens;
+    /** Index of the current token. */
+    private int index;
+
+    /**
+     * Constructs an instance of {@code QueryParser} with the specified
+     * parameters.
+     *
+     * @param text text of the query
+     * @param loader data loader whose vocabulary is used
+     */
+    private QueryParser(String text, DataLoader loader) {
+        this.loader = loader;
+        this.tokens = tokenize(text);
+    }
+
+    /**
+     * Parses the specified query <tt>text</tt> into a query. Words which are
+     * not contained in the vocabulary of the <tt>loader</tt> are retained as
+     * term queries that match no documents.
+     *
+     * @param text text of the query
+     * @param loader data loader whose vocabulary is used
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is not well formed or
+     *         all of its words are prohibited
+     */
+    public static Query parse(String text, DataLoader loader) {
+        QueryParser parser = new QueryParser(text, loader);
+        Clause clause = parser.parseOr();
+        if (parser.peek() != TokenType.END) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.index) + ".");
+        }
+
+        if (clause == null) {
+            return new BooleanQuery(new ArrayList<>());
+        }
+        if (!isPositive(clause)) {
+            throw new IllegalArgumentException("Query must contain at least one positive term.");
+        }
+        if (clause.occur == Occur.SHOULD && clause.query instanceof BooleanQuery) {
+            return clause.query;
+        }
+        return new BooleanQuery(asList(clause));
+    }
+
+    /**
+     * Returns true if the specified <tt>clause</tt> is not prohibited and is
+     * not a boolean query of prohibited clauses only, which matches no
+     * documents.
+     *
+     * @param clause a parsed clause
+     * @return true if the clause contains a word that is not prohibited
+     */
+    private static boolean isPositive(Clause clause) {
+        if (clause.occur == Occur.MUST_NOT) {
+            return false;
+        }
+        if (clause.query instanceof BooleanQuery) {
+            return ((BooleanQuery) clause.query).getClauses().stream().anyMatch(QueryParser::isPositive);
+        }
+        return true;
+    }
+
+    /**
+     * Parses a sequence of operands optionally joined by <tt>OR</tt>. A
+     * single operand is returned as is, otherwise the operands become
+     * clauses of an optional boolean query.
+     *
+     * @return the parsed clause or <tt>null</tt> if there are no operands
+     */
+    private Clause parseOr() {
+        List<Clause> clauses = new ArrayList<>();
+        while (peek() != TokenType.RPAREN && peek() != TokenType.END) {
+            Clause clause = parseAnd();
+            if (clause != null) {
+                clauses.add(clause);
+            }
+            if (peek() == TokenType.OR) {
+                Token operator = next();
+                if (peek() == TokenType.RPAREN || peek() == TokenType.END) {
+                    throw new IllegalArgumentException(operator + " must be followed by an operand.");
+                }
+            }
+        }
+
+        if (clauses.isEmpty()) {
+            return null;
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        return new Clause(new BooleanQuery(clauses), Occur.SHOULD);
+    }
+
+    /**
+     * Parses a sequence of operands joined by <tt>AND</tt>. A single operand
+     * is returned as is, otherwise the operands become required clauses of a
+     * boolean query, unless they are prohibited.
+     *
+     * @return the parsed clause or <tt>null</tt> if all operands are stopwords
+     */
+    private Clause parseAnd() {
+        List<Clause> operands = new ArrayList<>();
+        Clause first = parseUnary();
+        if (first != null) {
+            operands.add(first);
+        }
+        while (peek() == TokenType.AND) {
+            Token operator = next();
+            if (peek() == TokenType.RPAREN || peek() == TokenType.END) {
+                throw new IllegalArgumentException(operator + " must be followed by an operand.");
+            }
+            Clause operand = parseUnary();
+            if (operand != null) {
+                operands.add(operand);
+            }
+        }
+
+        if (operands.size() <= 1) {
+            return operands.isEmpty() ? null : operands.get(0);
+        }
+        List<Clause> clauses = new ArrayList<>();
+        for (Clause operand : operands) {
+            Occur occur = operand.occur == Occur.MUST_NOT ? Occur.MUST_NOT : Occur.MUST;
+            clauses.add(new Clause(operand.query, occur));
+        }
+        return new Clause(new BooleanQuery(clauses), Occur.SHOULD);
+    }
+
+    /**
+     * Parses an operand that is optionally prefixed by <tt>+</tt>,
+     * <tt>-</tt> or <tt>NOT</tt>.
+     *
+     * @return the parsed clause or <tt>null</tt> if the operand is a stopword
+     */
+    private Clause parseUnary() {
+        Occur occur;
+        switch (peek()) {
+        case PLUS:
+            occur = Occur.MUST;
+            break;
+        case MINUS:
+        case NOT:
+            occur = Occur.MUST_NOT;
+            break;
+        default:
+            Query primary = parsePrimary();
+            return primary == null ? null : new Clause(primary, Occur.SHOULD);
+        }
+
+        Token operator = next();
+        if (peek() == TokenType.RPAREN || peek() == TokenType.END) {
+            throw new IllegalArgumentException(operator + " must be followed by an operand.");
+        }
+        Clause operand = parseUnary();
+        return operand == null ? null : new Clause(operand.query, occur);
+    }
+
+    /**
+     * Parses a group, a phrase or a word, which may be the first operand of
+     * a proximity operator.
+     *
+     * @return the parsed query or <tt>null</tt> if the operand is a stopword
+     */
+    private Query parsePrimary() {
+        Token token = next();
+        switch (token.type) {
+        case LPAREN:
+            Clause group = parseOr();
+            if (peek() != TokenType.RPAREN) {
+                throw new IllegalArgumentException("Missing closing parenthesis.");
+            }
+            next();
+            if (group == null) {
+                return null;
+            }
+            return group.occur == Occur.SHOULD ? group.query : new BooleanQuery(asList(group));
+        case PHRASE:
+            return phraseQuery(token.text);
+        case WILDCARD:
+            return wildcardQuery(token.text);
+        case FUZZY:
+            return fuzzyQuery(token.text, token.distance);
+        case WORD:
+            TermQuery left = termQuery(token.text);
+            if (peek() != TokenType.NEAR) {
+                return left;
+            }
+            Token operator = next();
+            TermQuery right = peek() == TokenType.WORD ? termQuery(next().text) : null;
+            if (left == null || right == null) {
+                throw new IllegalArgumentException(operator + " must be placed between two words.");
+            }
+            return new NearQuery(left, right, operator.distance);
+        default:
+            throw new IllegalArgumentException("Unexpected " + token + ".");
+        }
+    }
+
+    /**
+     * Creates a query of the specified <tt>phrase</tt>. A phrase of a single
+     * word is a term query and a phrase of stopwords only is ignored, in which
+     * case <tt>null</tt> is returned.
+     *
+     * @param phrase text of the phrase
+     * @return a query of the phrase or <tt>null</tt>
+     */
+    private Query phraseQuery(String phrase) {
+        IntList positions = new IntList();
+        List<String> words = DataLoader.getWords(phrase, positions);
+        if (words.isEmpty()) {
+            return null;
+        }
+        if (words.size() == 1) {
+            return termQuery(words.get(0));
+        }
+
+        List<TermQuery> terms = new ArrayList<>();
+        for (String word : words) {
+            terms.add(termQuery(word));
+        }
+        return new PhraseQuery(terms, positions.toArray());
+    }
+
+    /**
+     * Creates a query of the specified wildcard <tt>pattern</tt>, expanded
+     * into at most {@linkplain #MAX_EXPANSIONS} matching vocabulary words.
+     * If the pattern matches more words, words contained in the most
+     * documents are retained. Words that are no longer contained in any
+     * document are not matched.
+     *
+     * @param pattern a wildcard pattern
+     * @return a query of the pattern
+     * @throws IllegalArgumentException if the pattern can not be expanded
+     *         without scanning the whole vocabulary
+     */
+    private Query wildcardQuery(String pattern) {
+        TermDictionary dictionary = loader.getTermDictionary();
+        IntList ordinals = dictionary.expand(pattern);
+
+        int count = 0;
+        Integer[] keys = new Integer[ordinals.size()];
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                int term = dictionary.termKey(ordinals.get(i));
+                if (index.documentFrequency(term) > 0) {
+                    keys[count++] = term;
+                }
+            }
+            if (count > MAX_EXPANSIONS) {
+                // stable sort keeps lexicographical order of equally frequent words
+                Arrays.sort(keys, 0, count,
+                        (a, b) -> Integer.compare(index.documentFrequency(b), index.documentFrequency(a)));
+            }
+        } finally {
+            loader.releaseIndex(index);
+        }
+
+        List<String> vocabulary = loader.getVocabularyList();
+        List<TermQuery> expansions = new ArrayList<>();
+        for (int i = 0, n = Math.min(count, MAX_EXPANSIONS); i < n; i++) {
+            expansions.add(new TermQuery(vocabulary.get(keys[i]), keys[i]));
+        }
+        return new WildcardQuery(pattern, expansions, count);
+    }
+
+    /**
+     * Creates a query of vocabulary words within <tt>maxEdits</tt> of the
+     * specified <tt>word</tt>, expanded into at most
+     * {@linkplain #MAX_EXPANSIONS} words. If there are more similar words,
+     * the closest ones are retained, preferring words contained in more
+     * documents. Words that are no longer contained in any document are
+     * not matched.
+     *
+     * @param word the word
+     * @param maxEdits maximal edit distance of similar words
+     * @return a fuzzy query of the word
+     * @throws IllegalArgumentException if <tt>maxEdits</tt> is too large
+     */
+    private Query fuzzyQuery(String word, int maxEdits) {
+        if (maxEdits > FuzzyQuery.MAX_EDITS) {
+            throw new IllegalArgumentException("Edit distance of " + word + " must be at most "
+                    + FuzzyQuery.MAX_EDITS + ".");
+        }
+        word = word.toLowerCase();
+
+        TermDictionary dictionary = loader.getTermDictionary();
+        IntList distances = new IntList();
+        IntList ordinals = dictionary.fuzzy(word, maxEdits, distances);
+
+        int count = 0;
+        Integer[] order = new Integer[ordinals.size()];
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            for (int i = 0; i < order.length; i++) {
+                if (index.documentFrequency(dictionary.termKey(ordinals.get(i))) > 0) {
+                    order[count++] = i;
+                }
+            }
+            Arrays.sort(order, 0, count, (a, b) -> {
+                int c = Integer.compare(distances.get(a), distances.get(b));
+                if (c != 0) {
+                    return c;
+                }
+                int termA = dictionary.termKey(ordinals.get(a));
+                int termB = dictionary.termKey(ordinals.get(b));
+                return Integer.compare(index.documentFrequency(termB), index.documentFrequency(termA));
+            });
+        } finally {
+            loader.releaseIndex(index);
+        }
+
+        List<TermQuery> expansions = new ArrayList<>();
+        for (int i = 0, n = Math.min(count, MAX_EXPANSIONS); i < n; i++) {
+            int ordinal = ordinals.get(order[i]);
+            expansions.add(new TermQuery(dictionary.term(ordinal), dictionary.termKey(ordinal)));
+        }
+        return new FuzzyQuery(word, maxEdits, expansions, count);
+    }
+
+    /**
+     * Creates a term query of the specified <tt>word</tt>, or returns
+     * <tt>null</tt> if the word is a stopword.
+     *
+     * @param word the word
+     * @return a term query or <tt>null</tt>
+     */
+    private TermQuery termQuery(String word) {
+        List<String> words = DataLoader.getWords(word);
+        if (words.isEmpty()) {
+            return null;
+        }
+        String w = words.get(0);
+        return new TermQuery(w, loader.getTermKey(w));
+    }
+
+    /**
+     * Returns the type of the current token.
+     *
+     * @return the type of the current token
+     */
+    private TokenType peek() {
+        return tokens.get(index).type;
+    }
+
+    /**
+     * Returns the current token and moves to the next one.
+     *
+     * @return the current token
+     */
+    private Token next() {
+        Token token = tokens.get(index);
+        if (token.type != TokenType.END) {
+            index++;
+        }
+        return token;
+    }
+
+    /**
+     * Returns a modifiable list containing the specified clause.
+     *
+     * @param clause the clause
+     * @return a list containing the clause
+     */
+    private static List<Clause> asList(Clause clause) {
+        List<Clause> list = new ArrayList<>();
+        list.add(clause);
+        return list;
+    }
+
+    /**
+     * Splits the specified query <tt>text</tt> into tokens. Characters that
+     * are neither letters nor part of the query syntax separate words. The
+     * <tt>+</tt> and <tt>-</tt> characters are prefixes only at the start of
+     * a word, so that words such as <tt>e-mail</tt> are split as usual. The
+     * closing double quote of a phrase may be omitted at the end of the
+     * query.
+     *
+     * @param text text of the query
+     * @return tokens of the query, ending with a token of type {@linkplain TokenType#END}
+     */
+    private static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int n = text.length();
+
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c) || (isWildcard(c) && startsPattern(text, i))) {
+                int start = i;
+                while (i < n && (Character.isLetter(text.charAt(i)) || isWildcard(text.charAt(i)))) {
+                    i++;
+                }
+                while (text.charAt(i - 1) == TermDictionary.ANY_CHAR) {
+                    i--;
+                }
+                String word = text.substring(start, i);
+                if (TermDictionary.isPattern(word)) {
+                    tokens.add(new Token(TokenType.WILDCARD, word.toLowerCase(), 0));
+                    continue;
+                }
+                if (i < n && text.charAt(i) == '~') {
+                    int end = i + 1;
+                    while (end < n && Character.isDigit(text.charAt(end))) {
+                        end++;
+                    }
+                    int distance = end > i + 1 ? Integer.parseInt(text.substring(i + 1, end)) : FuzzyQuery.MAX_EDITS;
+                    tokens.add(new Token(TokenType.FUZZY, word, distance));
+                    i = end;
+                    continue;
+                }
+                switch (word) {
+                case AND:
+                    tokens.add(new Token(TokenType.AND, word, 0));
+                    break;
+                case OR:
+                    tokens.add(new Token(TokenType.OR, word, 0));
+                    break;
+                case NOT:
+                    tokens.add(new Token(TokenType.NOT, word, 0));
+                    break;
+                default:
+                    int end = i + 1;
+                    while (end < n && Character.isDigit(text.charAt(end))) {
+                        end++;
+                    }
+                    if (word.equals(NEAR) && i < n && text.charAt(i) == '/' && end > i + 1) {
+                        int distance = Integer.parseInt(text.substring(i + 1, end));
+                        tokens.add(new Token(TokenType.NEAR, text.substring(start, end), distance));
+                        i = end;
+                    } else {
+                        tokens.add(new Token(TokenType.WORD, word, 0));
+                    }
+                }
+            } else if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = n;
+                }
+                tokens.add(new Token(TokenType.PHRASE, text.substring(i + 1, end), 0));
+                i = end + 1;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LPAREN, "(", 0));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RPAREN, ")", 0));
+                i++;
+            } else if ((c == '+' || c == '-') && isPrefix(text, i)) {
+                tokens.add(new Token(c == '+' ? TokenType.PLUS : TokenType.MINUS, String.valueOf(c), 0));
+                i++;
+            } else {
+                i++;
+            }
+        }
+
+        tokens.add(new Token(TokenType.END, "end of query", 0));
+        return tokens;
+    }
+
+    /**
+     * Returns true if the specified character is a wildcard.
+     *
+     * @param c a character
+     * @return true if the character is a wildcard
+     */
+    private static boolean isWildcard(char c) {
+        return c == TermDictionary.ANY_STRING || c == TermDictionary.ANY_CHAR;
+    }
+
+    /**
+     * Returns true if the wildcard at index <tt>i</tt> of the specified
+     * <tt>text</tt> starts a pattern, which is when it is followed by a letter,
+     * possibly after more wildcards.
+     *
+     * @param text text of the query
+     * @param i index of the wildcard
+     * @return true if the wildcard starts a pattern
+     */
+    private static boolean startsPattern(String text, int i) {
+        while (i < text.length() && isWildcard(text.charAt(i))) {
+            i++;
+        }
+        return i < text.length() && Character.isLetter(text.charAt(i));
+    }
+
+    /**
+     * Returns true if the character at index <tt>i</tt> of the specified
+     * <tt>text</tt> is at the start of a word and is followed by an operand.
+     *
+     * @param text text of the query
+     * @param i index of the character
+     * @return true if the character is a prefix
+     */
+    private static boolean isPrefix(String text, int i) {
+        if (i > 0) {
+            char previous = text.charAt(i - 1);
+            if (!Character.isWhitespace(previous) && previous != '(') {
+                return false;
+            }
+        }
+        if (i + 1 >= text.length()) {
+            return false;
+        }
+        char next = text.charAt(i + 1);
+        return Character.isLetter(next) || next == '"' || next == '(' || (isWildcard(next) && startsPattern(text, i + 1));
+    }
+
+    /**
+     * Type of a query token.
+     *
+     * @author Mario Bobic
+     */
+    private enum TokenType {
+        WORD, PHRASE, WILDCARD, FUZZY, NEAR, AND, OR, NOT, PLUS, MINUS, LPAREN, RPAREN, END
+    }
+
+    /**
+     * A single token of a query.
+     *
+     * @author Mario Bobic
+     */
+    private static class Token {
+
+        /** Type of the token. */
+        final TokenType type;
+        /** Text of the token. */
+        final String text;
+        /** Distance of a proximity operator or a fuzzy word. */
+        final int distance;
+
+        /**
+         * Constructs an instance of {@code Token} with the specified
+         * parameters.
+         *
+         * @param type type of the token
+         * @param text text of the token
+         * @param distance distance of a proximity operator or a fuzzy word
+         */
+        Token(TokenType type, String text, int distance) {
+            this.type = type;
+            this.text = text;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return type == TokenType.PHRASE ? "\"" + text + "\"" : text;
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import hr.fer.zemris.java.trazilica.shell.components.IndexOptions;
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+import hr.fer.zemris.java.trazilica.shell.components.PostingsCursor;
+import hr.fer.zemris.java.trazilica.shell.components.ScoringModel;
+import hr.fer.zemris.java.trazilica.shell.components.TopResults;
+
+/**
+ * Scores documents that match a query against its terms, using the
+ * {@linkplain ScoringModel scoring model} of the index, and collects the best
+ * of them into a {@linkplain TopResults} collector.
+ * <p>
+ * If the index stores impacts, the weight of each posting is read as its
+ * quantized impact, multiplied by the impact scale of the term in the
+ * posting's segment, instead of being calculated from the term frequency,
+ * so scoring takes no division or logarithm per posting.
+ * <p>
+ * Queries whose matching documents are estimated to be at least
+ * {@linkplain #PARALLEL_THRESHOLD} are scored in parallel. The range of
+ * document keys is split into blocks, each of which is scored by a task of a
+ * {@linkplain ForkJoinPool} with its own document iterator, postings cursors
+ * and collector, and collectors of blocks are merged when tasks are joined.
+ * Tasks share no mutable state. The number of threads is given by the
+ * <tt>trazilica.parallelism</tt> system property and defaults to the number
+ * of available processors, where <tt>1</tt> turns parallel scoring off. The
+ * threshold is given by the <tt>trazilica.parallelThreshold</tt> system
+ * property.
+ *
+ * @author Mario Bobic
+ */
+public class QueryScorer {
+
+    /** Number of threads that score a single query. */
+    public static final int PARALLELISM = Math.max(1, Integer.getInteger(
+            IndexOptions.PROPERTY_PREFIX + "parallelism", Runtime.getRuntime().availableProcessors()));
+    /** Least estimated number of matching documents scored in parallel. */
+    public static final int PARALLEL_THRESHOLD = Integer.getInteger(
+            IndexOptions.PROPERTY_PREFIX + "parallelThreshold", 50_000);
+    /** Least number of document keys in a block scored by a single task. */
+    public static final int MIN_BLOCK_SIZE = 4096;
+    /** Number of blocks per thread, which balances uneven blocks. */
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    /** Index whose documents are scored. */
+    private final InvertedIndex index;
+    /** Model by which documents are scored. */
+    private final ScoringModel model;
+    /** The query that documents must match. */
+    private final Query query;
+    /** Indicates if impacts are used instead of term frequencies. */
+    private final boolean impacts;
+
+    /** Keys of distinct query terms. */
+    private final int[] queryTerms;
+    /** IDF components of query terms. */
+    private final double[] idfs;
+    /** Weights of query terms. */
+    private final double[] userWeights;
+    /** Norm of the query. */
+    private final double userVectorNorm;
+    /** Least score of a collected document. */
+    private final double minScore;
+
+    /** Number of postings scored by the last call of {@link #score()}. */
+    private long postingsScored;
+
+    /**
+     * Constructs an instance of {@code QueryScorer} that scores documents of
+     * the specified <tt>index</tt> that match the <tt>query</tt>, against
+     * the specified query <tt>terms</tt> contained in the vocabulary.
+     * Documents scored less than <tt>minScore</tt> are not collected.
+     *
+     * @param index index whose documents are scored
+     * @param query the query that documents must match
+     * @param terms query terms contained in the vocabulary
+     * @param minScore least score of a collected document
+     */
+    public QueryScorer(InvertedIndex index, Query query, List<TermQuery> terms, double minScore) {
+        this.index = index;
+        this.model = index.getScoringModel();
+        this.query = query;
+        this.impacts = index.hasImpacts();
+        this.minScore = minScore;
+
+        Map<Integer, Integer> queryFrequencies = new LinkedHashMap<>();
+        for (TermQuery term : terms) {
+            queryFrequencies.merge(term.getTerm(), 1, Integer::sum);
+        }
+
+        int n = queryFrequencies.size();
+        queryTerms = new int[n];
+        idfs = new double[n];
+        userWeights = new double[n];
+
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : queryFrequencies.entrySet()) {
+            int term = entry.getKey();
+            queryTerms[i] = term;
+            idfs[i] = model.idf(index, term);
+            userWeights[i] = model.queryWeight(idfs[i], entry.getValue());
+            i++;
+        }
+        userVectorNorm = model.queryNorm(userWeights);
+    }
+
+    /**
+     * Returns keys of distinct query terms, in order of their first
+     * appearance in the query.
+     *
+     * @return keys of distinct query terms
+     */
+    public int[] getQueryTerms() {
+        return queryTerms;
+    }
+
+    /**
+     * Returns the number of postings scored by the last call of the
+     * {@linkplain #score()} method.
+     *
+     * @return the number of scored postings
+     */
+    public long getPostingsScored() {
+        return postingsScored;
+    }
+
+    /**
+     * Scores all documents that match the query and returns a collector of
+     * the best of them. Matching documents are scored in parallel if there
+     * are enough of them.
+     *
+     * @return a collector of the best scored documents
+     */
+    public TopResults score() {
+        int documentCount = index.documentCount();
+        DocIterator matches = query.iterator(index);
+        if (PARALLELISM == 1 || matches.cost() < PARALLEL_THRESHOLD || documentCount < 2 * MIN_BLOCK_SIZE) {
+            Block block = score(matches, 0, documentCount);
+            postingsScored = block.postings;
+            return block.results;
+        }
+
+        int blockSize = Math.max(MIN_BLOCK_SIZE, documentCount / (PARALLELISM * BLOCKS_PER_THREAD) + 1);
+        Block block = PoolHolder.POOL.invoke(new ScoreTask(0, documentCount, blockSize));
+        postingsScored = block.postings;
+        return block.results;
+    }
+
+    /**
+     * Scores documents that match the query and whose keys are in range
+     * <tt>[from, to)</tt>, visited by the specified iterator, which must not
+     * be positioned beyond <tt>from</tt>.
+     *
+     * @param matches iterator over documents that match the query
+     * @param from the least document key, inclusive
+     * @param to the greatest document key, exclusive
+     * @return the collector of scored documents and the number of scored postings
+     */
+    private Block score(DocIterator matches, int from, int to) {
+        int n = queryTerms.length;
+        PostingsCursor[] cursors = new PostingsCursor[n];
+        for (int i = 0; i < n; i++) {
+            cursors[i] = index.newCursor().reset(queryTerms[i]);
+        }
+
+        TopResults results = new TopResults();
+        long postings = 0;
+        for (int fileKey = matches.advance(from); fileKey < to; fileKey = matches.nextDoc()) {
+            double similarity;
+            if (impacts) {
+                double sum = 0.0;
+                for (int i = 0; i < n; i++) {
+                    if (cursors[i].advance(fileKey) == fileKey) {
+                        sum += userWeights[i] * cursors[i].impactScale() * cursors[i].impact();
+                        postings++;
+                    }
+                }
+                similarity = sum / userVectorNorm;
+            } else {
+                double scalarProduct = 0.0;
+                for (int i = 0; i < n; i++) {
+                    if (cursors[i].advance(fileKey) == fileKey) {
+                        scalarProduct += userWeights[i] * (model.tf(index, fileKey, cursors[i].freq()) * idfs[i]);
+                        postings++;
+                    }
+                }
+
+                double fileVectorNorm = model.documentNorm(index, fileKey);
+                similarity = scalarProduct / (userVectorNorm * fileVectorNorm);
+            }
+
+            if (similarity >= minScore) {
+                results.add(fileKey, similarity);
+            }
+        }
+        return new Block(results, postings);
+    }
+
+    /**
+     * The collector of a scored block of documents and the number of postings
+     * scored in it.
+     *
+     * @author Mario Bobic
+     */
+    private static class Block {
+
+        /** Collector of scored documents. */
+        private final TopResults results;
+        /** Number of scored postings. */
+        private long postings;
+
+        /**
+         * Constructs an instance of {@code Block} with the specified
+         * parameters.
+         *
+         * @param results collector of scored documents
+         * @param postings number of scored postings
+         */
+        public Block(TopResults results, long postings) {
+            this.results = results;
+            this.postings = postings;
+        }
+
+        /**
+         * Merges the <tt>other</tt> block into this block.
+         *
+         * @param other another block
+         * @return this block
+         */
+        public Block merge(Block other) {
+            results.addAll(other.results);
+            postings += other.postings;
+            return this;
+        }
+    }
+
+    /**
+     * A task that scores documents whose keys are in a range, splitting the
+     * range into halves until it is not greater than the block size.
+     *
+     * @author Mario Bobic
+     */
+    private class ScoreTask extends RecursiveTask<Block> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The least document key, inclusive. */
+        private final int from;
+        /** The greatest document key, exclusive. */
+        private final int to;
+        /** Greatest number of document keys scored without splitting. */
+        private final int blockSize;
+
+        /**
+         * Constructs an instance of {@code ScoreTask} with the specified
+         * parameters.
+         *
+         * @param from the least document key, inclusive
+         * @param to the greatest document key, exclusive
+         * @param blockSize greatest number of document keys scored without splitting
+         */
+        public ScoreTask(int from, int to, int blockSize) {
+            this.from = from;
+            this.to = to;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected Block compute() {
+            if (to - from <= blockSize) {
+                return score(query.iterator(index), from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(from, middle, blockSize);
+            left.fork();
+            Block right = new ScoreTask(middle, to, blockSize).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Holder of the pool that scores queries in parallel, created when it is
+     * first used.
+     *
+     * @author Mario Bobic
+     */
+    private static class PoolHolder {
+
+        /** Pool that scores queries in parallel. */
+        private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+    }
+
+}
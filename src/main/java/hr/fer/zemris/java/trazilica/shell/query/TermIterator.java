@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import hr.fer.zemris.java.trazilica.shell.components.PostingsCursor;
+
+/**
+ * A document iterator over the posting list of a single term. The underlying
+ * {@linkplain PostingsCursor cursor} is exposed, so that term frequencies and
+ * positions of the current document can be read from it.
+ *
+ * @author Mario Bobic
+ */
+public class TermIterator extends DocIterator {
+
+    /** Cursor over the posting list of the term. */
+    private final PostingsCursor cursor;
+
+    /**
+     * Constructs an instance of {@code TermIterator} over the posting list the
+     * specified <tt>cursor</tt> is {@linkplain PostingsCursor#reset(int) reset}
+     * to.
+     *
+     * @param cursor cursor over the posting list of the term
+     */
+    public TermIterator(PostingsCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Returns the cursor over the posting list of the term.
+     *
+     * @return the cursor over the posting list of the term
+     */
+    public PostingsCursor cursor() {
+        return cursor;
+    }
+
+    /**
+     * Reads all positions of the term in the current document into the
+     * specified <tt>buffer</tt>, which is replaced by a larger one if it can
+     * not hold them. The number of read positions is the
+     * {@linkplain PostingsCursor#freq() term frequency}.
+     *
+     * @param buffer buffer for positions
+     * @return the buffer holding positions
+     */
+    public int[] positions(int[] buffer) {
+        int freq = cursor.freq();
+        if (buffer.length < freq) {
+            buffer = new int[Math.max(freq, 2 * buffer.length)];
+        }
+        for (int i = 0; i < freq; i++) {
+            buffer[i] = cursor.nextPosition();
+        }
+        return buffer;
+    }
+
+    @Override
+    public int docId() {
+        return cursor.docId();
+    }
+
+    @Override
+    public int nextDoc() {
+        return cursor.nextDoc();
+    }
+
+    @Override
+    public int advance(int target) {
+        return cursor.advance(target);
+    }
+
+    @Override
+    public long cost() {
+        return cursor.cost();
+    }
+
+}
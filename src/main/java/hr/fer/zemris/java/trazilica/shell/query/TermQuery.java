@@ -0,0 +1,92 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.InvertedIndex;
+
+/**
+ * A query that matches documents containing a single word. A word that is not
+ * contained in the vocabulary has the term key <tt>-1</tt> and matches no
+ * documents.
+ *
+ * @author Mario Bobic
+ */
+public class TermQuery extends Query {
+
+    /** The word. */
+    private final String word;
+    /** Key of the word in the vocabulary, <tt>-1</tt> if not contained. */
+    private final int term;
+
+    /**
+     * Constructs an instance of {@code TermQuery} with the specified
+     * parameters.
+     *
+     * @param word the word
+     * @param term key of the word in the vocabulary, <tt>-1</tt> if not contained
+     */
+    public TermQuery(String word, int term) {
+        this.word = word;
+        this.term = term;
+    }
+
+    /**
+     * Returns the word.
+     *
+     * @return the word
+     */
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * Returns the key of the word in the vocabulary, <tt>-1</tt> if the word
+     * is not contained in the vocabulary.
+     *
+     * @return the key of the word in the vocabulary
+     */
+    public int getTerm() {
+        return term;
+    }
+
+    /**
+     * Returns true if the word is contained in the vocabulary.
+     *
+     * @return true if the word is contained in the vocabulary
+     */
+    public boolean exists() {
+        return term >= 0;
+    }
+
+    /**
+     * Creates a new iterator over the posting list of the word, or returns
+     * <tt>null</tt> if the word is not contained in the vocabulary.
+     *
+     * @param index an inverted index
+     * @return a new term iterator or <tt>null</tt>
+     */
+    TermIterator termIterator(InvertedIndex index) {
+        return exists() ? new TermIterator(index.newCursor().reset(term)) : null;
+    }
+
+    @Override
+    public DocIterator iterator(InvertedIndex index) {
+        return exists() ? termIterator(index) : DocIterator.empty();
+    }
+
+    @Override
+    public void collectTerms(List<TermQuery> terms) {
+        terms.add(this);
+    }
+
+    @Override
+    public boolean isBagOfWords() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return word;
+    }
+
+}
@@ -0,0 +1,39 @@
+package hr.fer.zemris.java.trazilica.shell.query;
+
+import java.util.List;
+
+import hr.fer.zemris.java.trazilica.shell.components.TermDictionary;
+
+/**
+ * A query that matches documents containing any vocabulary word that matches
+ * a wildcard pattern, such as <tt>comput*</tt> or <tt>*tion</tt>. The pattern
+ * is expanded into words by the {@linkplain TermDictionary} when the query is
+ * parsed. If the pattern matches too many words, the words contained in the
+ * most documents are retained.
+ *
+ * @author Mario Bobic
+ */
+public class WildcardQuery extends MultiTermQuery {
+
+    /** The wildcard pattern. */
+    private final String pattern;
+
+    /**
+     * Constructs an instance of {@code WildcardQuery} with the specified
+     * parameters.
+     *
+     * @param pattern the wildcard pattern
+     * @param expansions retained words that match the pattern
+     * @param matchCount number of all words that match the pattern
+     */
+    public WildcardQuery(String pattern, List<TermQuery> expansions, int matchCount) {
+        super(expansions, matchCount);
+        this.pattern = pattern;
+    }
+
+    @Override
+    public String toString() {
+        return toString(pattern);
+    }
+
+}
@@ -0,0 +1,81 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@linkplain VectorKernel} that uses the vector API of the
+ * <tt>jdk.incubator.vector</tt> module, which is compiled into vector
+ * instructions of the processor. Values are multiplied and summed a whole
+ * register at a time, into two accumulators, and the remaining values are
+ * summed one by one.
+ * <p>
+ * Floats are multiplied in float lanes of half the preferred register width
+ * and their products are converted to double lanes of the full width before
+ * they are summed, so products are rounded to floats and summed in double
+ * precision, as by the scalar loops of {@linkplain VectorUtilities}.
+ * <p>
+ * This class is loaded by {@linkplain VectorUtilities} by reflection, since
+ * it is compiled for Java 17 and needs the module to be added by the
+ * <tt>--add-modules jdk.incubator.vector</tt> option. Its species are
+ * initialized with the class, so it fails to load if the module is missing.
+ *
+ * @author Mario Bobic
+ */
+final class VectorApiKernel implements VectorKernel {
+
+    /** Species of doubles of the preferred register width. */
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    /** Species of floats with as many lanes as there are in {@linkplain #DOUBLES}. */
+    private static final VectorSpecies<Float> FLOATS =
+            FloatVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(DOUBLES.length() * Float.SIZE));
+
+    @Override
+    public double scalarProduct(double[] vector1, double[] vector2) {
+        int n = vector1.length;
+        int lanes = DOUBLES.length();
+        int bound = n - n % (2 * lanes);
+
+        DoubleVector s0 = DoubleVector.zero(DOUBLES);
+        DoubleVector s1 = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += 2 * lanes) {
+            s0 = s0.add(DoubleVector.fromArray(DOUBLES, vector1, i)
+                    .mul(DoubleVector.fromArray(DOUBLES, vector2, i)));
+            s1 = s1.add(DoubleVector.fromArray(DOUBLES, vector1, i + lanes)
+                    .mul(DoubleVector.fromArray(DOUBLES, vector2, i + lanes)));
+        }
+        double sum = s0.add(s1).reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += vector1[i] * vector2[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double scalarProduct(float[] vector1, int offset1, float[] vector2, int offset2, int length) {
+        int lanes = FLOATS.length();
+        int bound = length - length % (2 * lanes);
+
+        DoubleVector s0 = DoubleVector.zero(DOUBLES);
+        DoubleVector s1 = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += 2 * lanes) {
+            FloatVector p0 = FloatVector.fromArray(FLOATS, vector1, offset1 + i)
+                    .mul(FloatVector.fromArray(FLOATS, vector2, offset2 + i));
+            FloatVector p1 = FloatVector.fromArray(FLOATS, vector1, offset1 + i + lanes)
+                    .mul(FloatVector.fromArray(FLOATS, vector2, offset2 + i + lanes));
+            s0 = s0.add(p0.convertShape(VectorOperators.F2D, DOUBLES, 0));
+            s1 = s1.add(p1.convertShape(VectorOperators.F2D, DOUBLES, 0));
+        }
+        double sum = s0.add(s1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += vector1[offset1 + i] * vector2[offset2 + i];
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,194 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A JMH benchmark of {@linkplain PostingsCodec postings codecs}, which
+ * measures the time per posting of encoding and decoding blocks of document
+ * key deltas, and of reading a whole posting list by a
+ * {@linkplain PostingsCursor} sequentially and by skipping. Document keys are
+ * spaced by random gaps with the given average, so that dense and sparse
+ * posting lists are compared.
+ * <p>
+ * The benchmark is not run by tests. After <tt>mvn test-compile</tt>, it is
+ * run by the {@linkplain #main(String[])} method with the test class path,
+ * which also prints the number of bytes per posting of each codec.
+ *
+ * @author Mario Bobic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Number of postings of the benchmarked posting list. */
+    private static final int POSTINGS = 1 << 17;
+    /** Number of postings between targets of skipping. */
+    private static final int SKIP = 64;
+
+    /** Name of the benchmarked codec. */
+    @Param({VByteCodec.NAME, PForDeltaCodec.NAME})
+    public String codecName;
+
+    /** Average gap between document keys of consecutive postings. */
+    @Param({"2", "16", "128"})
+    public int gap;
+
+    /** The benchmarked codec. */
+    private PostingsCodec codec;
+    /** Document key deltas, in blocks. */
+    private int[] deltas;
+    /** Encoded blocks of document key deltas. */
+    private ByteBuffer encoded;
+    /** Buffer for encoding. */
+    private ByteBuffer out;
+    /** Buffer for a decoded block. */
+    private int[] block;
+    /** Index with a single term whose posting list is benchmarked. */
+    private InvertedIndex index;
+    /** Targets of skipping, every {@value #SKIP} postings. */
+    private int[] targets;
+    /** Cursor over the benchmarked posting list. */
+    private PostingsCursor cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = PostingsCodec.forName(codecName);
+        Random random = new Random(42);
+
+        deltas = new int[POSTINGS];
+        IntList postings = new IntList(2 * POSTINGS);
+        targets = new int[POSTINGS / SKIP];
+        int doc = -1;
+        for (int i = 0; i < POSTINGS; i++) {
+            // geometric gaps with the given mean
+            int delta = 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1.0 / gap));
+            doc += delta;
+            deltas[i] = delta;
+            postings.add(doc);
+            postings.add(1 + random.nextInt(3));
+            if (i % SKIP == SKIP - 1) {
+                targets[i / SKIP] = doc;
+            }
+        }
+
+        int capacity = POSTINGS / InvertedIndex.BLOCK_SIZE * codec.maxEncodedBytes(InvertedIndex.BLOCK_SIZE);
+        encoded = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        out = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        block = new int[InvertedIndex.BLOCK_SIZE];
+        encodeBlocks(encoded);
+
+        index = new InvertedIndex(doc + 1, Collections.singletonList(postings), null, codec);
+        cursor = index.newCursor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS)
+    public int encode() {
+        return encodeBlocks(out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS)
+    public void decode(Blackhole blackhole) {
+        int offset = 0;
+        for (int i = 0; i < POSTINGS; i += InvertedIndex.BLOCK_SIZE) {
+            offset = codec.decode(encoded, offset, block, InvertedIndex.BLOCK_SIZE);
+            blackhole.consume(block);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS)
+    public long nextDoc() {
+        long sum = 0;
+        cursor.reset(0);
+        for (int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            sum += doc + cursor.freq();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTINGS / SKIP)
+    public long advance() {
+        long sum = 0;
+        cursor.reset(0);
+        for (int target : targets) {
+            sum += cursor.advance(target) + cursor.freq();
+        }
+        return sum;
+    }
+
+    /**
+     * Encodes all blocks of document key deltas into the specified buffer.
+     *
+     * @param buffer buffer where blocks are encoded to
+     * @return the number of encoded bytes
+     */
+    private int encodeBlocks(ByteBuffer buffer) {
+        int offset = 0;
+        for (int i = 0; i < POSTINGS; i += InvertedIndex.BLOCK_SIZE) {
+            System.arraycopy(deltas, i, block, 0, InvertedIndex.BLOCK_SIZE);
+            offset = codec.encode(block, InvertedIndex.BLOCK_SIZE, buffer, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Prints the number of bytes per posting of encoded document key deltas
+     * for each codec and average gap, and runs the benchmark.
+     *
+     * @param args a regular expression of included benchmarks, if given
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        for (String name : new String[] {VByteCodec.NAME, PForDeltaCodec.NAME}) {
+            for (int gap : new int[] {2, 16, 128}) {
+                CodecBenchmark benchmark = new CodecBenchmark();
+                benchmark.codecName = name;
+                benchmark.gap = gap;
+                benchmark.setUp();
+                System.out.printf("%-5s gap %4d: %.2f bytes per document key%n",
+                        name, gap, (double) benchmark.encode() / POSTINGS);
+                benchmark.tearDown();
+            }
+        }
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : CodecBenchmark.class.getSimpleName());
+        new Runner(options.build()).run();
+    }
+
+}
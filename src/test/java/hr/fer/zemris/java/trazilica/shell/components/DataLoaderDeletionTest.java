@@ -0,0 +1,167 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.trazilica.shell.query.DocIterator;
+import hr.fer.zemris.java.trazilica.shell.query.Query;
+import hr.fer.zemris.java.trazilica.shell.query.QueryParser;
+import hr.fer.zemris.java.trazilica.shell.query.TermQuery;
+
+/**
+ * Tests of deleting documents from a {@linkplain DataLoader} and merging
+ * segments, after which terms of deleted documents may be left without any
+ * documents.
+ *
+ * @author Mario Bobic
+ */
+public class DataLoaderDeletionTest {
+
+    /** Folder of loaded documents. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Data loader of the folder. */
+    private DataLoader loader;
+    /** File of the only document that contains the word <tt>alpha</tt>. */
+    private Path alpha;
+
+    @Before
+    public void setUp() throws IOException {
+        alpha = write("a.txt", "alpha beta gamma");
+        write("b.txt", "beta gamma delta");
+        write("c.txt", "gamma delta epsilon");
+        loader = new DataLoader(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        loader.close();
+    }
+
+    @Test
+    public void termOfPurgedDocumentsIsNotFound() throws IOException, InterruptedException {
+        deleteAndMerge();
+
+        assertEquals(-1, loader.getTermKey("alpha"));
+        assertNull(loader.getSuggestion("alpa"));
+        assertTrue(loader.getTermKey("beta") >= 0);
+    }
+
+    @Test
+    public void termOfPurgedDocumentsHasZeroIdf() throws IOException, InterruptedException {
+        deleteAndMerge();
+
+        InvertedIndex index = loader.getIndex();
+        int term = loader.getVocabularyList().indexOf("alpha");
+        assertEquals(0, index.documentFrequency(term));
+        assertEquals(0, index.idf(term), 0);
+        for (int doc = 0; doc < index.documentCount(); doc++) {
+            assertFalse(Double.isNaN(index.documentNorm(doc)) || Double.isInfinite(index.documentNorm(doc)));
+        }
+    }
+
+    @Test
+    public void queryAfterDeleteAndMerge() throws IOException, InterruptedException {
+        deleteAndMerge();
+
+        InvertedIndex index = loader.getIndex();
+        int term = loader.getVocabularyList().indexOf("alpha");
+        assertEquals(DocIterator.NO_MORE_DOCS, new TermQuery("alpha", term).iterator(index).nextDoc());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, index.newCursor().reset(term).advance(1));
+
+        assertEquals(Collections.emptyList(), matches("alpha"));
+        assertEquals(Collections.emptyList(), matches("alph*"));
+        assertEquals(Collections.emptyList(), matches("alpa~1"));
+        assertEquals(1, matches("beta").size());
+        assertEquals(2, matches("gamma").size());
+    }
+
+    @Test
+    public void mergeAfterDeleteAndMerge() throws IOException, InterruptedException {
+        deleteAndMerge();
+
+        write("d.txt", "zeta eta theta");
+        assertEquals(1, loader.refresh());
+        loader.forceMerge();
+        assertEquals(1, loader.getIndex().segmentCount());
+        assertEquals(1, matches("zeta").size());
+        assertEquals(Collections.emptyList(), matches("alpha"));
+    }
+
+    @Test
+    public void refreshOfRemovedFile() throws IOException, InterruptedException {
+        Files.delete(alpha);
+        assertEquals(0, loader.refresh());
+        assertEquals(Collections.emptyList(), matches("alpha"));
+        assertEquals(1, matches("beta").size());
+
+        assertEquals(0, loader.refresh());
+        loader.forceMerge();
+        assertEquals(1, loader.getIndex().segment(0).purgedCount());
+        assertEquals(2, matches("gamma").size());
+    }
+
+    /**
+     * Deletes the only document that contains the word <tt>alpha</tt> and
+     * waits until segments are merged, which purges its postings. The
+     * deletion may already have been purged by a merge in the background.
+     *
+     * @throws IOException if the file of the document can not be deleted
+     * @throws InterruptedException if the thread is interrupted while merging
+     */
+    private void deleteAndMerge() throws IOException, InterruptedException {
+        Files.delete(alpha);
+        assertEquals(1, loader.delete(Collections.singleton(alpha)));
+        loader.forceMerge();
+
+        InvertedIndex index = loader.getIndex();
+        assertEquals(1, index.segmentCount());
+        assertEquals(1, index.segment(0).purgedCount());
+    }
+
+    /**
+     * Returns keys of documents that match the specified query.
+     *
+     * @param text text of the query
+     * @return keys of matching documents
+     */
+    private List<Integer> matches(String text) {
+        Query query = QueryParser.parse(text, loader);
+        DocIterator iterator = query.iterator(loader.getIndex());
+        List<Integer> docs = new ArrayList<>();
+        for (int doc = iterator.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    /**
+     * Writes a file with the specified name and text to the folder.
+     *
+     * @param name name of the file
+     * @param text text of the file
+     * @return path of the file
+     * @throws IOException if an I/O error occurs
+     */
+    private Path write(String name, String text) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
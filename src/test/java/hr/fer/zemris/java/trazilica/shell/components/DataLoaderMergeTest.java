@@ -0,0 +1,192 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of merging segments of the index of a {@linkplain DataLoader}, where
+ * segments that are merged away are closed once no acquired index holds
+ * them and norms of documents are computed again.
+ *
+ * @author Mario Bobic
+ */
+public class DataLoaderMergeTest {
+
+    /** Folder of loaded documents. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Data loader of the folder. */
+    private DataLoader loader;
+
+    @Before
+    public void setUp() throws IOException {
+        write("a.txt", "alpha beta gamma");
+        loader = new DataLoader(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        loader.close();
+    }
+
+    @Test
+    public void mergedSegmentIsClosed() throws IOException, InterruptedException {
+        InvertedIndex before = loader.getIndex();
+        addAndMerge();
+
+        assertClosed(before.segment(0));
+        loader.getIndex().checkOpen();
+    }
+
+    @Test
+    public void acquiredSegmentIsClosedWhenReleased() throws IOException, InterruptedException {
+        InvertedIndex acquired = loader.acquireIndex();
+        addAndMerge();
+
+        acquired.checkOpen();
+        int alpha = loader.getTermKey("alpha");
+        PostingsCursor cursor = acquired.newCursor().reset(alpha);
+        assertEquals(0, cursor.nextDoc());
+        assertEquals(1, cursor.freq());
+
+        loader.releaseIndex(acquired);
+        assertClosed(acquired.segment(0));
+        loader.getIndex().checkOpen();
+    }
+
+    @Test
+    public void indexIsClosedWithLoader() {
+        InvertedIndex index = loader.getIndex();
+        loader.close();
+        assertClosed(index.segment(0));
+        try {
+            loader.acquireIndex();
+            fail("Acquired an index of a closed data loader.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void acquiredIndexOutlivesLoader() {
+        InvertedIndex acquired = loader.acquireIndex();
+        loader.close();
+
+        acquired.checkOpen();
+        loader.releaseIndex(acquired);
+        assertClosed(acquired.segment(0));
+    }
+
+    @Test
+    public void normsOfOlderSegmentsKeepTheirIdf() throws IOException {
+        write("b.txt", "beta gamma delta");
+        loader.close();
+        loader = new DataLoader(folder.getRoot().toPath());
+        Map<Path, Double> before = norms(loader);
+
+        write("c.txt", "gamma delta epsilon");
+        loader.refresh();
+        Map<Path, Double> after = norms(loader);
+        // IDF of 'delta' has changed, but norms of older documents have not
+        for (Path path : before.keySet()) {
+            assertEquals(before.get(path), after.get(path), 0);
+        }
+    }
+
+    @Test
+    public void normsOfMergedIndexMatchNewIndex() throws IOException, InterruptedException {
+        write("b.txt", "beta gamma delta");
+        loader.refresh();
+        write("c.txt", "gamma delta epsilon epsilon");
+        loader.refresh();
+        write("d.txt", "alpha epsilon zeta");
+        loader.refresh();
+        loader.forceMerge();
+        assertEquals(1, loader.getIndex().segmentCount());
+
+        try (DataLoader fresh = new DataLoader(folder.getRoot().toPath())) {
+            Map<Path, Double> expected = norms(fresh);
+            Map<Path, Double> actual = norms(loader);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Path path : expected.keySet()) {
+                assertEquals(expected.get(path), actual.get(path), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Returns norms of all documents of the index of the specified loader,
+     * by paths of documents.
+     *
+     * @param loader a data loader
+     * @return norms of documents by their paths
+     */
+    private static Map<Path, Double> norms(DataLoader loader) {
+        InvertedIndex index = loader.acquireIndex();
+        try {
+            Map<Path, Double> norms = new HashMap<>();
+            loader.getDocuments().forEach((path, doc) -> norms.put(path, index.documentNorm(doc)));
+            return norms;
+        } finally {
+            loader.releaseIndex(index);
+        }
+    }
+
+    /**
+     * Adds a document in a new segment and merges all segments into one.
+     *
+     * @throws IOException if the document can not be added
+     * @throws InterruptedException if the thread is interrupted while merging
+     */
+    private void addAndMerge() throws IOException, InterruptedException {
+        IndexSegment first = loader.getIndex().segment(0);
+        write("b.txt", "beta gamma delta");
+        assertEquals(1, loader.refresh());
+        loader.forceMerge();
+
+        InvertedIndex index = loader.getIndex();
+        assertEquals(1, index.segmentCount());
+        assertNotSame(first, index.segment(0));
+    }
+
+    /**
+     * Asserts that the specified segment is closed.
+     *
+     * @param segment a segment
+     */
+    private static void assertClosed(IndexSegment segment) {
+        try {
+            segment.checkOpen();
+            fail("Segment is not closed.");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("closed"));
+        }
+    }
+
+    /**
+     * Writes a file with the specified name and text to the folder.
+     *
+     * @param name name of the file
+     * @param text text of the file
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(String name, String text) throws IOException {
+        Files.write(folder.getRoot().toPath().resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that byte offsets of words kept by {@linkplain TokenCheckpoints} of a
+ * {@linkplain DataLoader} point at the words in the bytes of documents, also
+ * when documents contain multi-byte characters and sequences of bytes that
+ * are not valid <tt>UTF-8</tt>, which are decoded into replacement
+ * characters of a different length.
+ *
+ * @author Mario Bobic
+ */
+public class DataLoaderOffsetsTest {
+
+    /** Words of generated documents, with characters of one, two and three bytes in <tt>UTF-8</tt>. */
+    private static final String[] WORDS = {"alpha", "beta", "čaša", "žaba", "δέλτα", "ωμέγα", "ﬁle"};
+    /** Separators of words, with malformed sequences of every kind. */
+    private static final byte[][] SEPARATORS = {
+            {' '},
+            {' ', (byte) 0xFF, ' '},                          // invalid byte
+            {' ', (byte) 0x80, (byte) 0x80, ' '},             // continuation bytes without a lead byte
+            {' ', (byte) 0xE2, (byte) 0x82, ' '},             // truncated three-byte sequence
+            {' ', (byte) 0xC0, (byte) 0xAF, ' '},             // overlong encoding
+            {' ', (byte) 0xED, (byte) 0xA0, (byte) 0x80, ' '}, // encoded surrogate
+            {' ', (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, ' '}, // beyond U+10FFFF
+            {' ', (byte) 0xEF, (byte) 0xBF, (byte) 0xBD, ' '}, // a valid replacement character
+            {',', ' ', (byte) 0xE2, (byte) 0x82, (byte) 0xAC, ' '}, // a valid euro sign
+            {' ', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, ' '} // a valid supplementary character
+    };
+    /** Number of words of each document. */
+    private static final int LENGTH = 20 * TokenCheckpoints.INTERVAL;
+
+    /** Folder of loaded documents. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Bytes of each document, decompressed, by names of documents. */
+    private final Map<String, byte[]> contents = new HashMap<>();
+    /** Words of each document, by names of documents. */
+    private final Map<String, List<String>> words = new HashMap<>();
+    /** Data loader of the folder. */
+    private DataLoader loader;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(23);
+        generate("valid.txt", random, false);
+        generate("malformed.txt", random, true);
+        generate("compressed.txt.gz", random, true);
+        loader = new DataLoader(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        loader.close();
+    }
+
+    @Test
+    public void checkpointsPointAtWords() {
+        TokenCheckpoints checkpoints = loader.getCheckpoints();
+        assertEquals(contents.size(), loader.getDocuments().size());
+        loader.getDocuments().forEach((path, doc) -> {
+            String name = path.getFileName().toString();
+            byte[] bytes = contents.get(name);
+            List<String> docWords = words.get(name);
+            assertEquals(name, LENGTH / TokenCheckpoints.INTERVAL, checkpoints.count(doc));
+
+            for (int checkpoint = 0; checkpoint < checkpoints.count(doc); checkpoint++) {
+                int offset = checkpoints.offset(doc, checkpoint);
+                String expected = docWords.get(checkpoint * TokenCheckpoints.INTERVAL);
+                byte[] word = expected.getBytes(StandardCharsets.UTF_8);
+                assertTrue(name + " checkpoint " + checkpoint, offset + word.length <= bytes.length);
+                String actual = new String(bytes, offset, word.length, StandardCharsets.UTF_8);
+                assertEquals(name + " checkpoint " + checkpoint, expected, actual);
+            }
+        });
+    }
+
+    @Test
+    public void malformedSequencesDoNotChangeWords() {
+        List<String> vocabulary = loader.getVocabularyList();
+        for (String word : WORDS) {
+            assertTrue(word, vocabulary.contains(word.toLowerCase()));
+        }
+    }
+
+    /**
+     * Generates a document of {@value #LENGTH} random words separated by
+     * random separators, which are malformed only if <tt>malformed</tt> is
+     * true, and writes it to a file with the specified name, compressed if
+     * the name ends with <tt>.gz</tt>. The document is named like the file,
+     * without the <tt>.gz</tt> extension.
+     *
+     * @param name name of the file
+     * @param random random number generator
+     * @param malformed true if separators may contain malformed sequences
+     * @throws IOException if the file can not be written
+     */
+    private void generate(String name, Random random, boolean malformed) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        List<String> docWords = new ArrayList<>();
+        for (int i = 0; i < LENGTH; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            docWords.add(word);
+            content.write(word.getBytes(StandardCharsets.UTF_8));
+            byte[] separator = malformed ? SEPARATORS[random.nextInt(SEPARATORS.length)] : SEPARATORS[0];
+            content.write(separator);
+        }
+        byte[] bytes = content.toByteArray();
+        String document = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+        contents.put(document, bytes);
+        words.put(document, docWords);
+
+        Path file = folder.getRoot().toPath().resolve(name);
+        try (OutputStream out = name.endsWith(".gz")
+                ? new GZIPOutputStream(Files.newOutputStream(file)) : Files.newOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the recall of approximate nearest neighbours found by an
+ * {@linkplain HnswGraph}, which is the fraction of the exact nearest
+ * neighbours by cosine similarity, found by comparing a vector to all
+ * vectors, that the graph finds. Vectors are drawn around random centres,
+ * so that they form clusters, as vectors of documents on similar topics do.
+ *
+ * @author Mario Bobic
+ */
+public class HnswGraphTest {
+
+    /** Number of nodes of the tested graph. */
+    private static final int NODES = 4000;
+    /** Number of dimensions of vectors. */
+    private static final int DIMENSIONS = 64;
+    /** Number of clusters of vectors. */
+    private static final int CLUSTERS = 40;
+    /** Number of searched neighbours. */
+    private static final int K = 10;
+    /** Number of searched nodes. */
+    private static final int QUERIES = 200;
+    /** Least accepted average recall. */
+    private static final double MIN_RECALL = 0.9;
+
+    /** Normalized vectors of all nodes, stored one after another. */
+    private float[] vectors;
+    /** The tested graph. */
+    private HnswGraph graph;
+    /** Table of documents named by numbers of nodes, used for reading results. */
+    private DocumentTable documents;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(29);
+        float[] centres = new float[CLUSTERS * DIMENSIONS];
+        for (int i = 0; i < centres.length; i++) {
+            centres[i] = (float) random.nextGaussian();
+        }
+
+        vectors = new float[NODES * DIMENSIONS];
+        graph = new HnswGraph(DIMENSIONS, NODES);
+        documents = new DocumentTable();
+        for (int node = 0; node < NODES; node++) {
+            int offset = node * DIMENSIONS;
+            int centre = random.nextInt(CLUSTERS) * DIMENSIONS;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vectors[offset + i] = centres[centre + i] + 2 * (float) random.nextGaussian();
+            }
+            double norm = VectorUtilities.norm(vectors, offset, DIMENSIONS);
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vectors[offset + i] /= norm;
+            }
+            assertEquals(node, graph.add(vectors, offset));
+            documents.add(Paths.get(Integer.toString(node)), 0);
+        }
+    }
+
+    @Test
+    public void searchFindsMostExactNeighbours() {
+        assertTrue(recall(null) >= MIN_RECALL);
+    }
+
+    @Test
+    public void filteredSearchFindsMostExactNeighbours() {
+        // most nodes are walked through without being accepted
+        IntPredicate accepted = node -> node % 10 == 0;
+        assertTrue(recall(accepted) >= MIN_RECALL);
+    }
+
+    @Test
+    public void searchExactFindsExactNeighbours() {
+        for (int query = 0; query < NODES; query += NODES / 20) {
+            assertEquals(exact(query, null), nodes(graph.searchExact(query, K)));
+        }
+    }
+
+    @Test
+    public void graphIsReproducible() {
+        HnswGraph other = new HnswGraph(DIMENSIONS, 1);
+        for (int node = 0; node < NODES; node++) {
+            other.add(vectors, node * DIMENSIONS);
+        }
+        for (int query = 0; query < NODES; query += NODES / 20) {
+            assertEquals(nodes(graph.search(query, K)), nodes(other.search(query, K)));
+        }
+    }
+
+    /**
+     * Returns the average recall of searches of evenly spread nodes for
+     * their nearest neighbours that are accepted by the specified filter.
+     *
+     * @param accepted filter of accepted nodes, or <tt>null</tt> to accept all nodes
+     * @return the average recall
+     */
+    private double recall(IntPredicate accepted) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int query = q * (NODES / QUERIES);
+            Set<Integer> exact = exact(query, accepted);
+            Set<Integer> approximate = nodes(graph.search(query, K, accepted));
+            assertTrue(approximate.size() <= K);
+            for (int node : approximate) {
+                assertTrue(accepted == null || accepted.test(node));
+                if (exact.contains(node)) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    /**
+     * Returns the {@value #K} nodes accepted by the specified filter whose
+     * vectors have the greatest cosine similarity to the vector of the
+     * specified node, not including the node itself, found by comparing the
+     * vector to vectors of all nodes in double precision.
+     *
+     * @param query the searched node
+     * @param accepted filter of accepted nodes, or <tt>null</tt> to accept all nodes
+     * @return the exact nearest neighbours of the node
+     */
+    private Set<Integer> exact(int query, IntPredicate accepted) {
+        TopResults results = new TopResults(K);
+        for (int node = 0; node < NODES; node++) {
+            if (node != query && (accepted == null || accepted.test(node))) {
+                double similarity = 0;
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    similarity += (double) vectors[query * DIMENSIONS + i] * vectors[node * DIMENSIONS + i];
+                }
+                results.add(node, similarity);
+            }
+        }
+        return nodes(results);
+    }
+
+    /**
+     * Returns the set of nodes kept by the specified results.
+     *
+     * @param results results of a search
+     * @return the set of nodes
+     */
+    private Set<Integer> nodes(TopResults results) {
+        ResultCursor cursor = results.toCursor(null, documents, null);
+        Set<Integer> nodes = new HashSet<>();
+        for (int rank = 0; rank < cursor.size(); rank++) {
+            nodes.add(cursor.get(rank).fileKey);
+        }
+        return nodes;
+    }
+
+}
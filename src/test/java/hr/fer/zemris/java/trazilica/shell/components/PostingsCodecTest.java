@@ -0,0 +1,177 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests that every {@linkplain PostingsCodec} decodes exactly what it
+ * encodes, for blocks of any length and values of any bit width.
+ *
+ * @author Mario Bobic
+ */
+@RunWith(Parameterized.class)
+public class PostingsCodecTest {
+
+    /** Numbers of values around the block size of the index. */
+    private static final int[] COUNTS = {0, 1, 2, 7, 8, 9, 127, 128, 129, 255, 256, 257, 1000};
+
+    /** The tested codec. */
+    private final PostingsCodec codec;
+
+    /**
+     * Constructs an instance of {@code PostingsCodecTest} for the codec with
+     * the specified name.
+     *
+     * @param name name of the codec
+     */
+    public PostingsCodecTest(String name) {
+        this.codec = PostingsCodec.forName(name);
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> codecs() {
+        return Arrays.asList(new Object[][] {{VByteCodec.NAME}, {PForDeltaCodec.NAME}});
+    }
+
+    @Test
+    public void roundTripOfEveryBitWidth() {
+        Random random = new Random(42);
+        for (int bits = 0; bits <= 31; bits++) {
+            for (int count : COUNTS) {
+                int[] values = new int[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = bits == 0 ? 0 : random.nextInt() >>> (32 - bits);
+                }
+                assertRoundTrip(values);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripWithExceptions() {
+        Random random = new Random(7);
+        for (int count : COUNTS) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = random.nextInt(16);
+            }
+            // a few large values among small ones, including the first and last
+            for (int i = 0; i < count; i += 1 + random.nextInt(40)) {
+                values[i] = 1 << (8 + random.nextInt(23));
+            }
+            if (count > 0) {
+                values[0] = Integer.MAX_VALUE;
+                values[count - 1] = 1 << 20;
+            }
+            assertRoundTrip(values);
+        }
+    }
+
+    @Test
+    public void roundTripOfConstantBlocks() {
+        for (int value : new int[] {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE}) {
+            for (int count : COUNTS) {
+                int[] values = new int[count];
+                Arrays.fill(values, value);
+                assertRoundTrip(values);
+            }
+        }
+    }
+
+    @Test
+    public void consecutiveBlocks() {
+        Random random = new Random(3);
+        int[][] blocks = new int[10][];
+        int capacity = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            blocks[b] = new int[b == blocks.length - 1 ? 37 : InvertedIndex.BLOCK_SIZE];
+            for (int i = 0; i < blocks[b].length; i++) {
+                blocks[b][i] = random.nextInt(1 << (b * 3));
+            }
+            capacity += codec.maxEncodedBytes(blocks[b].length);
+        }
+
+        for (ByteBuffer buffer : buffers(capacity)) {
+            int offset = 0;
+            int[] ends = new int[blocks.length];
+            for (int b = 0; b < blocks.length; b++) {
+                offset = codec.encode(blocks[b], blocks[b].length, buffer, offset);
+                ends[b] = offset;
+            }
+
+            offset = 0;
+            for (int b = 0; b < blocks.length; b++) {
+                int[] decoded = new int[blocks[b].length];
+                offset = codec.decode(buffer, offset, decoded, decoded.length);
+                assertEquals(ends[b], offset);
+                assertArrayEquals(blocks[b], decoded);
+            }
+        }
+    }
+
+    @Test
+    public void variableByteIntegers() {
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, 268_435_455, 268_435_456,
+                Integer.MAX_VALUE};
+        int[] lengths = {1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5};
+        ByteBuffer buffer = ByteBuffer.allocate(5 * values.length);
+        int offset = 0;
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(lengths[i], VByteCodec.vIntLength(values[i]));
+            int end = VByteCodec.writeVInt(buffer, offset, values[i]);
+            assertEquals(lengths[i], end - offset);
+            assertEquals(values[i], VByteCodec.readVInt(buffer, offset));
+            offset = end;
+        }
+    }
+
+    /**
+     * Encodes the specified values at an offset into buffers of both byte
+     * orders, on and off the heap, that are only as large as the codec says
+     * they need to be, and asserts that they are decoded unchanged.
+     *
+     * @param values values to be encoded
+     */
+    private void assertRoundTrip(int[] values) {
+        int start = 3;
+        for (ByteBuffer buffer : buffers(start + codec.maxEncodedBytes(values.length))) {
+            int end = codec.encode(values, values.length, buffer, start);
+            assertTrue(end <= buffer.capacity());
+
+            int[] decoded = new int[values.length + 1];
+            decoded[values.length] = -1;
+            assertEquals(end, codec.decode(buffer, start, decoded, values.length));
+            assertArrayEquals(values, Arrays.copyOf(decoded, values.length));
+            assertEquals(-1, decoded[values.length]);
+        }
+    }
+
+    /**
+     * Returns buffers of the specified capacity in both byte orders, on and
+     * off the heap.
+     *
+     * @param capacity capacity of buffers
+     * @return buffers of the specified capacity
+     */
+    private static ByteBuffer[] buffers(int capacity) {
+        return new ByteBuffer[] {
+                ByteBuffer.allocate(capacity),
+                ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN),
+                ByteBuffer.allocateDirect(capacity),
+                ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN)
+        };
+    }
+
+}
@@ -0,0 +1,289 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests that a {@linkplain PostingsCursor} reads posting lists of an
+ * {@linkplain InvertedIndex} compressed by every codec, across block
+ * boundaries, skip table entries and segments.
+ *
+ * @author Mario Bobic
+ */
+@RunWith(Parameterized.class)
+public class PostingsCursorTest {
+
+    /** Number of documents of the tested index. */
+    private static final int DOCUMENTS = 3000;
+    /** Document frequencies of terms, around multiples of the block size. */
+    private static final int[] FREQUENCIES = {1, 2, 127, 128, 129, 255, 256, 257, 1000, DOCUMENTS};
+
+    /** The tested codec. */
+    private final PostingsCodec codec;
+
+    /** Document keys of postings of each term. */
+    private int[][] docs;
+    /** Term frequencies of postings of each term. */
+    private int[][] freqs;
+    /** Posting lists of each term. */
+    private List<IntList> postings;
+    /** Positions of each term. */
+    private List<IntList> positions;
+    /** The tested index. */
+    private InvertedIndex index;
+
+    /**
+     * Constructs an instance of {@code PostingsCursorTest} for the codec
+     * with the specified name.
+     *
+     * @param name name of the codec
+     */
+    public PostingsCursorTest(String name) {
+        this.codec = PostingsCodec.forName(name);
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> codecs() {
+        return Arrays.asList(new Object[][] {{VByteCodec.NAME}, {PForDeltaCodec.NAME}});
+    }
+
+    @Before
+    public void setUp() {
+        Random random = new Random(11);
+        int terms = FREQUENCIES.length;
+        docs = new int[terms][];
+        freqs = new int[terms][];
+        postings = new ArrayList<>();
+        positions = new ArrayList<>();
+        for (int term = 0; term < terms; term++) {
+            docs[term] = sample(random, FREQUENCIES[term]);
+            freqs[term] = new int[docs[term].length];
+            IntList list = new IntList();
+            IntList termPositions = new IntList();
+            for (int i = 0; i < docs[term].length; i++) {
+                // frequencies are mostly small, with an occasional large one
+                freqs[term][i] = random.nextInt(50) == 0 ? 1 + random.nextInt(1000) : 1 + random.nextInt(4);
+                list.add(docs[term][i]);
+                list.add(freqs[term][i]);
+                int position = 0;
+                for (int f = 0; f < freqs[term][i]; f++) {
+                    position += 1 + random.nextInt(f == 0 ? 100_000 : 20);
+                    termPositions.add(position);
+                }
+            }
+            postings.add(list);
+            positions.add(termPositions);
+        }
+        index = new InvertedIndex(DOCUMENTS, postings, positions, codec);
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+    }
+
+    @Test
+    public void nextDocReadsAllPostings() {
+        PostingsCursor cursor = index.newCursor();
+        for (int term = 0; term < docs.length; term++) {
+            cursor.reset(term);
+            assertEquals(docs[term].length, cursor.cost());
+            IntList termPositions = positions.get(term);
+            int p = 0;
+            for (int i = 0; i < docs[term].length; i++) {
+                assertEquals(docs[term][i], cursor.nextDoc());
+                assertEquals(docs[term][i], cursor.docId());
+                assertEquals(freqs[term][i], cursor.freq());
+                // positions of every other posting are read
+                if (i % 2 == 0) {
+                    for (int f = 0; f < freqs[term][i]; f++) {
+                        assertEquals(termPositions.get(p + f), cursor.nextPosition());
+                    }
+                }
+                p += freqs[term][i];
+            }
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+        }
+    }
+
+    @Test
+    public void advanceToEveryDocument() {
+        PostingsCursor cursor = index.newCursor();
+        for (int term = 0; term < docs.length; term++) {
+            for (int target = 0; target < DOCUMENTS; target += 1 + target % 7) {
+                cursor.reset(term);
+                assertEquals("term " + term + ", target " + target, expected(term, target), cursor.advance(target));
+            }
+        }
+    }
+
+    @Test
+    public void advanceToBlockBoundaries() {
+        PostingsCursor cursor = index.newCursor();
+        for (int term = 0; term < docs.length; term++) {
+            int[] termDocs = docs[term];
+            cursor.reset(term);
+            // the last and first document of each pair of adjacent blocks, in order
+            for (int end = InvertedIndex.BLOCK_SIZE; end <= termDocs.length; end += InvertedIndex.BLOCK_SIZE) {
+                assertEquals(termDocs[end - 1], cursor.advance(termDocs[end - 1]));
+                assertEquals(freqs[term][end - 1], cursor.freq());
+                int next = end < termDocs.length ? termDocs[end] : PostingsCursor.NO_MORE_DOCS;
+                assertEquals(next, cursor.advance(termDocs[end - 1] + 1));
+                if (next == PostingsCursor.NO_MORE_DOCS) {
+                    break;
+                }
+                assertEquals(freqs[term][end], cursor.freq());
+            }
+        }
+    }
+
+    @Test
+    public void advanceInIncreasingSteps() {
+        Random random = new Random(5);
+        PostingsCursor cursor = index.newCursor();
+        for (int term = 0; term < docs.length; term++) {
+            for (int run = 0; run < 20; run++) {
+                cursor.reset(term);
+                int doc = -1;
+                while (doc != PostingsCursor.NO_MORE_DOCS) {
+                    int target = doc + 1 + random.nextInt(1 + random.nextInt(2 * InvertedIndex.BLOCK_SIZE));
+                    if (random.nextBoolean()) {
+                        int expected = expected(term, doc + 1);
+                        doc = cursor.nextDoc();
+                        assertEquals(expected, doc);
+                    } else {
+                        int expected = expected(term, target);
+                        doc = cursor.advance(target);
+                        assertEquals(expected, doc);
+                    }
+                    if (doc != PostingsCursor.NO_MORE_DOCS) {
+                        assertEquals(freqs[term][Arrays.binarySearch(docs[term], doc)], cursor.freq());
+                    }
+                }
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(DOCUMENTS));
+            }
+        }
+    }
+
+    @Test
+    public void advanceAcrossSegments() {
+        // the middle segment has no postings of the first term
+        List<IntList> middle = new ArrayList<>();
+        List<IntList> middlePositions = new ArrayList<>();
+        List<IntList> last = new ArrayList<>();
+        List<IntList> lastPositions = new ArrayList<>();
+        for (int term = 0; term < docs.length; term++) {
+            if (term == 0) {
+                middle.add(null);
+                middlePositions.add(null);
+            } else {
+                middle.add(list(term, 5, 17, middlePositions));
+            }
+            last.add(list(term, 3, 200, lastPositions));
+        }
+        InvertedIndex second = index.addSegment(17 * 5, PostingsSource.of(middle, middlePositions));
+        InvertedIndex third = second.addSegment(200 * 3, PostingsSource.of(last, lastPositions));
+        try {
+            int base = DOCUMENTS + 17 * 5;
+            PostingsCursor cursor = third.newCursor();
+            for (int term = 0; term < docs.length; term++) {
+                int[] termDocs = docs[term];
+                cursor.reset(term);
+                assertEquals(termDocs[termDocs.length - 1], cursor.advance(termDocs[termDocs.length - 1]));
+                int next = term == 0 ? base : DOCUMENTS;
+                assertEquals(next, cursor.nextDoc());
+                assertEquals(base + 3 * 100, cursor.advance(base + 3 * 100 - 1));
+                assertEquals(base + 3 * 199, cursor.advance(base + 3 * 199));
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(base + 3 * 200));
+            }
+        } finally {
+            third.segment(1).close();
+            third.segment(2).close();
+        }
+    }
+
+    /**
+     * Returns the first document of the specified term whose key is at least
+     * <tt>target</tt>, found by a binary search.
+     *
+     * @param term key of the term
+     * @param target key of the target document
+     * @return the first document beyond target or {@linkplain PostingsCursor#NO_MORE_DOCS}
+     */
+    private int expected(int term, int target) {
+        int i = Arrays.binarySearch(docs[term], target);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < docs[term].length ? docs[term][i] : PostingsCursor.NO_MORE_DOCS;
+    }
+
+    /**
+     * Returns a posting list with a document of every <tt>step</tt> documents
+     * of a segment with <tt>count</tt> such documents, with frequencies that
+     * depend on the term, and adds positions of the term to the specified
+     * list of positions of all terms.
+     *
+     * @param term key of the term
+     * @param step distance between documents
+     * @param count number of documents
+     * @param positions positions of all terms
+     * @return a posting list
+     */
+    private static IntList list(int term, int step, int count, List<IntList> positions) {
+        IntList list = new IntList();
+        IntList termPositions = new IntList();
+        for (int i = 0; i < count; i++) {
+            int freq = 1 + (term + i) % 3;
+            list.add(i * step);
+            list.add(freq);
+            for (int f = 1; f <= freq; f++) {
+                termPositions.add(f);
+            }
+        }
+        positions.add(termPositions);
+        return list;
+    }
+
+    /**
+     * Returns <tt>count</tt> distinct document keys in ascending order,
+     * chosen at random from all documents.
+     *
+     * @param random random number generator
+     * @param count number of documents
+     * @return ascending document keys
+     */
+    private static int[] sample(Random random, int count) {
+        boolean[] chosen = new boolean[DOCUMENTS];
+        for (int left = count; left > 0; ) {
+            int doc = random.nextInt(DOCUMENTS);
+            if (!chosen[doc]) {
+                chosen[doc] = true;
+                left--;
+            }
+        }
+        int[] sample = new int[count];
+        for (int doc = 0, i = 0; doc < DOCUMENTS; doc++) {
+            if (chosen[doc]) {
+                sample[i++] = doc;
+            }
+        }
+        return sample;
+    }
+
+}
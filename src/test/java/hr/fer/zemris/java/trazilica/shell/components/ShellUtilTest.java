@@ -0,0 +1,43 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that scripts of {@linkplain ShellUtil#splitCommands(String)} are
+ * split on semicolons only outside of quotation marks, the same way as
+ * arguments are extracted by {@linkplain ShellUtil#extractArguments(String)}.
+ *
+ * @author Mario Bobic
+ */
+public class ShellUtilTest {
+
+    @Test
+    public void splitsOnSemicolons() {
+        assertEquals(Arrays.asList("query vim window", " results 2", " exit"),
+                ShellUtil.splitCommands("query vim window; results 2; exit"));
+    }
+
+    @Test
+    public void keepsSemicolonsInQuotes() {
+        assertEquals(Arrays.asList("query \"a;b\" -\"c; d\"", " results"),
+                ShellUtil.splitCommands("query \"a;b\" -\"c; d\"; results"));
+        assertArrayEquals(new String[] {"query", "a;b"}, ShellUtil.extractArguments("query \"a;b\""));
+    }
+
+    @Test
+    public void keepsEmptyCommands() {
+        assertEquals(Arrays.asList("", "query x", "", ""), ShellUtil.splitCommands(";query x;;"));
+        assertEquals(Arrays.asList(""), ShellUtil.splitCommands(""));
+    }
+
+    @Test
+    public void unclosedQuoteDoesNotHideSemicolons() {
+        assertEquals(Arrays.asList("query \"a", "b"), ShellUtil.splitCommands("query \"a;b"));
+    }
+
+}
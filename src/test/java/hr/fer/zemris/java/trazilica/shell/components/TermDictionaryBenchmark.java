@@ -0,0 +1,231 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A JMH benchmark of fuzzy and wildcard lookups of a
+ * {@linkplain TermDictionary}, which compares the walk of the sorted words
+ * by a Levenshtein automaton and the expansion of patterns by ranges and
+ * k-grams with linear scans of the whole vocabulary, for vocabularies of
+ * several sizes. The scan of fuzzy lookups skips words whose length alone
+ * puts them too far, and computes the edit distance of the others by the
+ * full matrix. The scan of wildcard lookups matches the pattern against
+ * every word.
+ * <p>
+ * Looked up words are vocabulary words with a random typing error. Half of
+ * the patterns are vocabulary words with a <tt>?</tt> in place of a
+ * character, and the other half are the first two characters of a
+ * vocabulary word followed by a <tt>*</tt> and a letter. The k-gram index is
+ * built before measuring.
+ * <p>
+ * The benchmark is not run by tests. After <tt>mvn test-compile</tt>, it is
+ * run by the {@linkplain #main(String[])} method with the test class path.
+ *
+ * @author Mario Bobic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TermDictionaryBenchmark {
+
+    /** Number of looked up words and patterns, used in turn. */
+    private static final int LOOKUPS = 16;
+    /** Letters of generated words. */
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+    /** Number of words of the vocabulary. */
+    @Param({"10000", "100000", "1000000"})
+    public int vocabularySize;
+
+    /** Words of the vocabulary. */
+    private String[] words;
+    /** The benchmarked dictionary. */
+    private TermDictionary dictionary;
+    /** Looked up words. */
+    private String[] typos;
+    /** Looked up wildcard patterns. */
+    private String[] patterns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Set<String> vocabulary = new LinkedHashSet<>();
+        while (vocabulary.size() < vocabularySize) {
+            // lengths around those of English words
+            int length = 2 + Math.min(random.nextInt(7) + random.nextInt(7), 14);
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            vocabulary.add(sb.toString());
+        }
+        List<String> list = new ArrayList<>(vocabulary);
+        words = list.toArray(new String[0]);
+        dictionary = new TermDictionary(list);
+
+        typos = new String[LOOKUPS];
+        patterns = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            StringBuilder typo = new StringBuilder(words[random.nextInt(words.length)]);
+            int at = random.nextInt(typo.length());
+            typo.setCharAt(at, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            typos[i] = typo.toString();
+
+            StringBuilder pattern = new StringBuilder(words[random.nextInt(words.length)]);
+            if (i % 2 == 0) {
+                pattern.setCharAt(1 + random.nextInt(pattern.length() - 1), TermDictionary.ANY_CHAR);
+            } else {
+                pattern.setLength(2);
+                pattern.append(TermDictionary.ANY_STRING).append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            patterns[i] = pattern.toString();
+        }
+        dictionary.expand("a?c");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int fuzzy1() {
+        return fuzzy(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int fuzzy2() {
+        return fuzzy(2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int fuzzyScan1() {
+        return fuzzyScan(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int fuzzyScan2() {
+        return fuzzyScan(2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int wildcard() {
+        int matches = 0;
+        for (String pattern : patterns) {
+            matches += dictionary.expand(pattern).size();
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int wildcardScan() {
+        int matches = 0;
+        for (String pattern : patterns) {
+            for (String word : words) {
+                if (TermDictionary.matches(pattern, word)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Looks up every looked up word by the automaton.
+     *
+     * @param maxEdits maximal number of edits
+     * @return the total number of found words
+     */
+    private int fuzzy(int maxEdits) {
+        int matches = 0;
+        for (String typo : typos) {
+            matches += dictionary.fuzzy(typo, maxEdits, null).size();
+        }
+        return matches;
+    }
+
+    /**
+     * Looks up every looked up word by scanning the vocabulary.
+     *
+     * @param maxEdits maximal number of edits
+     * @return the total number of found words
+     */
+    private int fuzzyScan(int maxEdits) {
+        int matches = 0;
+        for (String typo : typos) {
+            for (String word : words) {
+                if (Math.abs(word.length() - typo.length()) <= maxEdits && distance(typo, word) <= maxEdits) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the optimal string alignment distance of two words, computed
+     * by the full matrix.
+     *
+     * @param a a word
+     * @param b a word
+     * @return the edit distance of the words
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args a regular expression of included benchmarks, if given
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : TermDictionaryBenchmark.class.getSimpleName());
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,264 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that fuzzy and wildcard lookups of a {@linkplain TermDictionary} find
+ * exactly the words that a scan of the whole vocabulary finds, on a generated
+ * vocabulary of a small alphabet, where words have many close neighbours and
+ * share long prefixes.
+ *
+ * @author Mario Bobic
+ */
+public class TermDictionaryTest {
+
+    /** Characters of generated words. */
+    private static final String ALPHABET = "abcdef";
+    /** Number of generated words. */
+    private static final int WORDS = 4000;
+    /** Number of looked up words and patterns. */
+    private static final int LOOKUPS = 300;
+
+    /** Random number generator of words and lookups. */
+    private Random random;
+    /** Vocabulary words ordered by term keys. */
+    private List<String> vocabulary;
+    /** The tested dictionary. */
+    private TermDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        random = new Random(17);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < WORDS) {
+            words.add(randomWord(1 + random.nextInt(10)));
+        }
+        vocabulary = new ArrayList<>(words);
+        dictionary = new TermDictionary(vocabulary);
+    }
+
+    @Test
+    public void fuzzyFindsAllWordsWithinEditDistance() {
+        for (int lookup = 0; lookup < LOOKUPS; lookup++) {
+            String word = lookup % 2 == 0 ? typo(vocabulary.get(random.nextInt(WORDS))) : randomWord(random.nextInt(13));
+            for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+                IntList distances = new IntList();
+                IntList ordinals = dictionary.fuzzy(word, maxEdits, distances);
+                assertEquals(ordinals.size(), distances.size());
+
+                List<String> expected = new ArrayList<>();
+                List<String> actual = new ArrayList<>();
+                for (int i = 0; i < dictionary.size(); i++) {
+                    String term = dictionary.term(i);
+                    int distance = distance(word, term);
+                    if (distance <= maxEdits) {
+                        expected.add(term + " " + distance);
+                    }
+                }
+                for (int i = 0; i < ordinals.size(); i++) {
+                    actual.add(dictionary.term(ordinals.get(i)) + " " + distances.get(i));
+                }
+                assertEquals(word + "~" + maxEdits, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void fuzzyReturnsTermKeysOfWords() {
+        for (int i = 0; i < dictionary.size(); i++) {
+            assertEquals(dictionary.term(i), vocabulary.get(dictionary.termKey(i)));
+        }
+        IntList exact = dictionary.fuzzy(vocabulary.get(42), 0, null);
+        assertEquals(1, exact.size());
+        assertEquals(42, dictionary.termKey(exact.get(0)));
+    }
+
+    @Test
+    public void expandFindsAllMatchingWords() {
+        for (int lookup = 0; lookup < LOOKUPS; lookup++) {
+            String pattern = pattern(vocabulary.get(random.nextInt(WORDS)));
+            Pattern regex = regex(pattern);
+
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < dictionary.size(); i++) {
+                if (regex.matcher(dictionary.term(i)).matches()) {
+                    expected.add(dictionary.term(i));
+                }
+            }
+
+            IntList ordinals;
+            try {
+                ordinals = dictionary.expand(pattern);
+            } catch (IllegalArgumentException e) {
+                // only patterns without a literal prefix and without a k-gram are refused
+                String padded = TermDictionary.BOUNDARY + pattern + TermDictionary.BOUNDARY;
+                assertTrue(pattern, TermDictionary.isPattern(pattern.substring(0, 1)));
+                for (int i = 0; i + TermDictionary.KGRAM_LENGTH <= padded.length(); i++) {
+                    assertTrue(pattern, TermDictionary.isPattern(padded.substring(i, i + TermDictionary.KGRAM_LENGTH)));
+                }
+                continue;
+            }
+            List<String> actual = new ArrayList<>();
+            for (int i = 0; i < ordinals.size(); i++) {
+                actual.add(dictionary.term(ordinals.get(i)));
+            }
+            assertEquals(pattern, expected, actual);
+        }
+    }
+
+    @Test
+    public void expandRefusesPatternsWithoutLiterals() {
+        for (String pattern : new String[] {"?", "*?*", "?a?", "*?"}) {
+            try {
+                dictionary.expand(pattern);
+                fail("Expanded " + pattern + " by scanning all words.");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Returns the optimal string alignment distance of two words, which is
+     * the Levenshtein distance where a transposition of two adjacent
+     * characters counts as a single edit, computed by the full matrix.
+     *
+     * @param a a word
+     * @param b a word
+     * @return the edit distance of the words
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    /**
+     * Returns a regular expression equivalent to the specified wildcard
+     * pattern.
+     *
+     * @param pattern a wildcard pattern
+     * @return an equivalent regular expression
+     */
+    private static Pattern regex(String pattern) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == TermDictionary.ANY_STRING) {
+                sb.append(".*");
+            } else if (c == TermDictionary.ANY_CHAR) {
+                sb.append('.');
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    /**
+     * Returns a random word of the specified length.
+     *
+     * @param length length of the word
+     * @return a random word
+     */
+    private String randomWord(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the specified word with up to three random edits: insertions,
+     * deletions, substitutions and transpositions of adjacent characters.
+     *
+     * @param word a word
+     * @return the word with typing errors
+     */
+    private String typo(String word) {
+        StringBuilder sb = new StringBuilder(word);
+        for (int edits = random.nextInt(4); edits > 0; edits--) {
+            int i = random.nextInt(sb.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (random.nextInt(4)) {
+            case 0:
+                sb.insert(i, c);
+                break;
+            case 1:
+                if (i < sb.length()) {
+                    sb.deleteCharAt(i);
+                }
+                break;
+            case 2:
+                if (i < sb.length()) {
+                    sb.setCharAt(i, c);
+                }
+                break;
+            default:
+                if (i + 1 < sb.length()) {
+                    char first = sb.charAt(i);
+                    sb.setCharAt(i, sb.charAt(i + 1));
+                    sb.setCharAt(i + 1, first);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a wildcard pattern made of the specified word, where random
+     * characters are replaced by wildcards and a <tt>*</tt> may be added at
+     * either end.
+     *
+     * @param word a word
+     * @return a wildcard pattern
+     */
+    private String pattern(String word) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextInt(4) == 0) {
+            sb.append(TermDictionary.ANY_STRING);
+        }
+        for (char c : word.toCharArray()) {
+            switch (random.nextInt(6)) {
+            case 0:
+                sb.append(TermDictionary.ANY_CHAR);
+                break;
+            case 1:
+                sb.append(TermDictionary.ANY_STRING);
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            sb.append(TermDictionary.ANY_STRING);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,121 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A JMH benchmark of scalar products of {@linkplain VectorUtilities}, which
+ * compares the product of boxed lists with the scalar loops over primitive
+ * arrays and with the products computed by the vector API, for
+ * <tt>double</tt> vectors and for <tt>float</tt> vectors packed into an
+ * array, as those of the graph of similar documents.
+ * <p>
+ * The benchmark is not run by tests. After <tt>mvn test-compile</tt> on Java
+ * 17 or later, it is run by the {@linkplain #main(String[])} method with the
+ * test class path, which adds the <tt>jdk.incubator.vector</tt> module to
+ * forked virtual machines. Without the module, the vectorized benchmarks
+ * measure the scalar loops.
+ *
+ * @author Mario Bobic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+
+    /** Number of dimensions of vectors. */
+    @Param({"64", "256", "4096"})
+    public int dimensions;
+
+    /** First vector as a boxed list. */
+    private List<Double> list1;
+    /** Second vector as a boxed list. */
+    private List<Double> list2;
+    /** First vector as a <tt>double</tt> array. */
+    private double[] doubles1;
+    /** Second vector as a <tt>double</tt> array. */
+    private double[] doubles2;
+    /** Both vectors packed into a <tt>float</tt> array. */
+    private float[] floats;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        list1 = new ArrayList<>(dimensions);
+        list2 = new ArrayList<>(dimensions);
+        doubles1 = new double[dimensions];
+        doubles2 = new double[dimensions];
+        floats = new float[2 * dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            doubles1[i] = random.nextGaussian();
+            doubles2[i] = random.nextGaussian();
+            list1.add(doubles1[i]);
+            list2.add(doubles2[i]);
+            floats[i] = (float) doubles1[i];
+            floats[dimensions + i] = (float) doubles2[i];
+        }
+    }
+
+    @Benchmark
+    public double boxedList() {
+        return VectorUtilities.scalarProduct(list1, list2);
+    }
+
+    @Benchmark
+    public double doubleLoop() {
+        return VectorUtilities.scalarLoop(doubles1, doubles2);
+    }
+
+    @Benchmark
+    public double doubleVector() {
+        return VectorUtilities.scalarProduct(doubles1, doubles2);
+    }
+
+    @Benchmark
+    public double floatLoop() {
+        return VectorUtilities.scalarLoop(floats, 0, floats, dimensions, dimensions);
+    }
+
+    @Benchmark
+    public double floatVector() {
+        return VectorUtilities.scalarProduct(floats, 0, floats, dimensions, dimensions);
+    }
+
+    /**
+     * Runs the benchmark, adding the <tt>jdk.incubator.vector</tt> module to
+     * forked virtual machines if they run on Java 9 or later.
+     *
+     * @param args a regular expression of included benchmarks, if given
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : VectorBenchmark.class.getSimpleName());
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            options.jvmArgsAppend("--add-modules", "jdk.incubator.vector");
+        }
+        new Runner(options.build()).run();
+    }
+
+}
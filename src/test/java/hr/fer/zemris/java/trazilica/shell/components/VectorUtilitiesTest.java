@@ -0,0 +1,111 @@
+package hr.fer.zemris.java.trazilica.shell.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that scalar products of {@linkplain VectorUtilities} are the same
+ * whether they are computed by the vector API or by the scalar loops, for
+ * vectors of every length around multiples of vector register widths and
+ * at any offsets, and that the vector API is used whenever its module is
+ * added.
+ *
+ * @author Mario Bobic
+ */
+public class VectorUtilitiesTest {
+
+    /** Longest tested vector. */
+    private static final int MAX_LENGTH = 200;
+    /** Relative error allowed between sums taken in different orders. */
+    private static final double EPSILON = 1e-12;
+
+    @Test
+    public void vectorApiIsUsedIfAvailable() {
+        boolean available;
+        try {
+            Class.forName("jdk.incubator.vector.DoubleVector");
+            available = true;
+        } catch (ClassNotFoundException e) {
+            available = false;
+        }
+        assertEquals(available, VectorUtilities.isVectorized());
+    }
+
+    @Test
+    public void doubleProductsMatchScalarLoop() {
+        Random random = new Random(3);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            double[] vector1 = new double[length];
+            double[] vector2 = new double[length];
+            List<Double> list1 = new ArrayList<>();
+            List<Double> list2 = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                vector1[i] = random.nextGaussian();
+                vector2[i] = random.nextGaussian();
+                list1.add(vector1[i]);
+                list2.add(vector2[i]);
+            }
+
+            double expected = VectorUtilities.scalarLoop(vector1, vector2);
+            assertEquals(expected, VectorUtilities.scalarProduct(vector1, vector2), tolerance(vector1, vector2));
+            assertEquals(expected, VectorUtilities.scalarProduct(list1, list2), tolerance(vector1, vector2));
+            assertEquals(VectorUtilities.norm(list1), VectorUtilities.norm(vector1), tolerance(vector1, vector1));
+        }
+    }
+
+    @Test
+    public void floatProductsMatchScalarLoop() {
+        Random random = new Random(5);
+        float[] vectors = new float[3 * MAX_LENGTH + 7];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            for (int offset1 : new int[] {0, 1, 7, MAX_LENGTH}) {
+                int offset2 = vectors.length - length - offset1 % 5;
+                double expected = VectorUtilities.scalarLoop(vectors, offset1, vectors, offset2, length);
+                double tolerance = 0;
+                for (int i = 0; i < length; i++) {
+                    tolerance += Math.abs(vectors[offset1 + i] * vectors[offset2 + i]);
+                }
+                assertEquals(expected, VectorUtilities.scalarProduct(vectors, offset1, vectors, offset2, length),
+                        EPSILON * tolerance);
+                assertEquals(Math.sqrt(VectorUtilities.scalarLoop(vectors, offset1, vectors, offset1, length)),
+                        VectorUtilities.norm(vectors, offset1, length), EPSILON * Math.sqrt(length));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void vectorsOfDifferentLengths() {
+        VectorUtilities.scalarProduct(new double[8], new double[9]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void vectorBeyondArray() {
+        VectorUtilities.scalarProduct(new float[64], 0, new float[64], 1, 64);
+    }
+
+    /**
+     * Returns the error allowed for a scalar product of the specified
+     * vectors, relative to the sum of absolute values of products.
+     *
+     * @param vector1 first vector
+     * @param vector2 second vector
+     * @return the allowed error
+     */
+    private static double tolerance(double[] vector1, double[] vector2) {
+        double sum = 0;
+        for (int i = 0; i < vector1.length; i++) {
+            sum += Math.abs(vector1[i] * vector2[i]);
+        }
+        return EPSILON * sum;
+    }
+
+}